@@ -26,6 +26,7 @@ import com.compomics.util.parameters.identification.advanced.PsmScoringParameter
 import com.compomics.util.parameters.identification.advanced.SequenceMatchingParameters;
 import com.compomics.util.parameters.UtilitiesUserParameters;
 import com.compomics.util.waiting.Duration;
+import com.compomics.util.io.IoUtil;
 import eu.isas.peptideshaker.preferences.ProjectDetails;
 import com.compomics.util.parameters.quantification.spectrum_counting.SpectrumCountingParameters;
 import eu.isas.peptideshaker.protein_inference.ProteinInference;
@@ -40,18 +41,26 @@ import com.compomics.util.experiment.io.biology.protein.FastaSummary;
 import com.compomics.util.experiment.mass_spectrometry.SpectrumProvider;
 import com.compomics.util.experiment.quantification.spectrumcounting.ScalingFactorsEstimators;
 import com.compomics.util.parameters.peptide_shaker.ProjectType;
+import eu.isas.peptideshaker.processing.CommitPolicy;
+import eu.isas.peptideshaker.processing.CommitScheduler;
+import eu.isas.peptideshaker.processing.ProjectCheckpoint;
+import eu.isas.peptideshaker.processing.ProjectExecutor;
 import eu.isas.peptideshaker.processing.ProteinProcessor;
 import eu.isas.peptideshaker.processing.PsmProcessor;
 import eu.isas.peptideshaker.protein_inference.GroupSimplification;
 import com.compomics.util.experiment.identification.peptide_inference.PeptideInference;
 import eu.isas.peptideshaker.validation.MatchesValidator;
+import eu.isas.peptideshaker.utils.CachedMsFileHandler;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map.Entry;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -116,7 +125,7 @@ public class PeptideShaker {
     /**
      * Metrics to be picked when loading the identification.
      */
-    private final Metrics metrics = new Metrics();
+    private Metrics metrics = new Metrics();
     /**
      * The gene maps.
      */
@@ -151,6 +160,31 @@ public class PeptideShaker {
      * appeared as first hit.
      */
     private HashMap<String, Integer> proteinCount;
+    /**
+     * The checkpoint of the project creation.
+     */
+    private ProjectCheckpoint checkpoint = null;
+    /**
+     * Indicates whether the keys of the matches changed since the last
+     * checkpoint was saved.
+     */
+    private boolean identificationKeysChanged = false;
+    /**
+     * The policy used to commit the database between the stages of the
+     * project creation.
+     */
+    private CommitPolicy commitPolicy = CommitPolicy.getDefault();
+    /**
+     * Indicates whether a checkpoint and a snapshot of the database are saved
+     * with every commit between the stages of the project creation so that
+     * an interrupted project creation can be resumed.
+     */
+    private boolean checkpointsEnabled = false;
+    /**
+     * The scheduler deciding when to commit the database during the project
+     * creation.
+     */
+    private CommitScheduler commitScheduler;
     /**
      * The input map.
      */
@@ -241,341 +275,847 @@ public class PeptideShaker {
     }
 
     /**
-     * Creates a PeptideShaker project.
+     * Resumes the creation of a project from the checkpoint saved in the
+     * database of an interrupted project creation. The database is restored
+     * from the snapshot committed with the checkpoint, discarding the changes
+     * made by the interrupted stage. The sequences are imported again and the
+     * stages completed before the checkpoint are skipped by createProject.
      *
      * @param waitingHandler the handler displaying feedback to the user
-     * @param exceptionHandler handler for exceptions
-     * @param identificationParameters the identification parameters
-     * @param processingParameters the processing parameters
-     * @param projectType the project type
-     * @param spectrumCountingParameters the spectrum counting parameters
+     * @param dbFile the database file of the interrupted project creation, the
+     * snapshot of the database must be present in the same folder
      * @param spectrumProvider the spectrum provider
-     * @param setWaitingHandlerFinshedWhenDone if true, the waiting handler is
-     * set to finished when the project is created
+     * @param identificationParameters identification parameters
      * @param projectDetails the project details
+     * @param processingParameters the initial processing preferences
+     * @param exceptionHandler the exception handler
      *
-     * @throws java.lang.InterruptedException exception thrown if a thread gets
-     * interrupted
-     * @throws java.util.concurrent.TimeoutException exception thrown if a
-     * process times out
-     * @throws java.io.IOException if an exception occurs when parsing files
+     * @return 0 if the checkpoint was loaded, 1 otherwise
      */
-    public void createProject(
-            IdentificationParameters identificationParameters,
-            ProcessingParameters processingParameters,
-            SpectrumCountingParameters spectrumCountingParameters,
+    public int resumeImport(
+            WaitingHandler waitingHandler,
+            File dbFile,
             SpectrumProvider spectrumProvider,
+            IdentificationParameters identificationParameters,
             ProjectDetails projectDetails,
-            ProjectType projectType,
-            WaitingHandler waitingHandler,
-            boolean setWaitingHandlerFinshedWhenDone,
+            ProcessingParameters processingParameters,
             ExceptionHandler exceptionHandler
-    ) throws InterruptedException, TimeoutException, IOException {
-
-        identification.getObjectsDB().commit();
-
-        identificationFeaturesGenerator = new IdentificationFeaturesGenerator(
-                identification,
-                identificationParameters,
-                sequenceProvider,
-                spectrumProvider,
-                metrics,
-                spectrumCountingParameters
-        );
-
-        matchesValidator = new MatchesValidator(
-                new TargetDecoyMap(),
-                new TargetDecoyMap(),
-                new TargetDecoyMap()
-        );
-
-        if (waitingHandler.isRunCanceled()) {
-            return;
-        }
-
-        PsmScoringParameters psmScoringPreferences = identificationParameters.getPsmScoringParameters();
-        FastaParameters fastaParameters = identificationParameters.getFastaParameters();
-
-        FastaSummary fastaSummary = FastaSummary.getSummary(
-                projectDetails.getFastaFile(),
-                fastaParameters,
-                waitingHandler
-        );
-
-        // set the background species
-        identificationParameters.getGeneParameters().setBackgroundSpeciesFromFastaSummary(fastaSummary);
+    ) {
 
-        ArrayList<Integer> usedAlgorithms = projectDetails.getIdentificationAlgorithms();
+        projectCreationDuration = new Duration();
+        projectCreationDuration.start();
 
-        if (psmScoringPreferences.isScoringNeeded(usedAlgorithms)) {
+        waitingHandler.appendReport("Resuming import process from " + dbFile.getName(), true, true);
+        waitingHandler.appendReportEndLine();
 
-            waitingHandler.appendReport("Estimating PSM scores.", true, true);
+        // a resumed project creation keeps saving checkpoints
+        checkpointsEnabled = true;
 
-            PsmScorer psmScorer = new PsmScorer(
-                    fastaParameters,
-                    sequenceProvider,
-                    spectrumProvider
-            );
+        File snapshotFile = ProjectCheckpoint.getSnapshotFile(dbFile);
 
-            psmScorer.estimateIntermediateScores(
-                    identification,
-                    inputMap,
-                    processingParameters,
-                    identificationParameters,
-                    waitingHandler,
-                    exceptionHandler
-            );
+        if (!snapshotFile.exists()) {
 
-            if (psmScoringPreferences.isTargetDecoyNeededForPsmScoring(usedAlgorithms)) {
+            waitingHandler.appendReport("No checkpoint found for " + dbFile.getName() + ".", true, true);
+            return 1;
 
-                if (fastaParameters.isTargetDecoy()) {
+        }
 
-                    waitingHandler.appendReport("Estimating intermediate scores probabilities.", true, true);
-                    psmScorer.estimateIntermediateScoreProbabilities(
-                            identification,
-                            inputMap,
-                            processingParameters,
-                            waitingHandler
-                    );
+        try {
 
-                } else {
+            // restart from the state of the database committed with the checkpoint
+            IoUtil.copyFile(snapshotFile, dbFile);
 
-                    waitingHandler.appendReport(
-                            "No decoy sequences found. Impossible to "
-                            + "estimate intermediate scores probabilities.",
-                            true,
-                            true
-                    );
+        } catch (IOException e) {
 
-                }
-            }
+            exceptionHandler.catchException(e);
+            return 1;
 
-            waitingHandler.appendReport("Scoring PSMs.", true, true);
-            psmScorer.scorePsms(
-                    identification,
-                    inputMap,
-                    processingParameters,
-                    identificationParameters,
-                    waitingHandler
-            );
         }
 
-        identification.getObjectsDB().commit();
-        System.gc();
+        objectsDB = new ObjectsDB(dbFile.getParentFile().getAbsolutePath(), dbFile.getName(), false);
+        identification = new Identification(objectsDB);
 
-        if (fastaParameters.isTargetDecoy()) {
+        if (!identification.contains(ProjectCheckpoint.KEY)
+                || !identification.contains(IdentificationKeys.KEY)) {
 
-            waitingHandler.appendReport(
-                    "Computing assumptions probabilities.",
-                    true,
-                    true
-            );
+            waitingHandler.appendReport("No checkpoint found in " + dbFile.getName() + ".", true, true);
+            return 1;
 
-        } else {
+        }
 
-            waitingHandler.appendReport(
-                    "Importing assumptions scores.",
-                    true,
-                    true
-            );
+        checkpoint = (ProjectCheckpoint) identification.retrieveObject(ProjectCheckpoint.KEY);
 
-        }
+        if (checkpoint.getStage() == null) {
 
-        inputMap.estimateProbabilities(waitingHandler);
-        waitingHandler.increasePrimaryProgressCounter();
+            waitingHandler.appendReport("The import of " + dbFile.getName() + " was not completed.", true, true);
+            return 1;
 
-        if (waitingHandler.isRunCanceled()) {
-            return;
         }
 
-        identification.getObjectsDB().commit();
-        System.gc();
-
-        waitingHandler.appendReport(
-                "Saving assumptions probabilities, selecting best match, scoring modification localization.",
-                true,
-                true
-        );
+        projectParameters = (ProjectParameters) identification.retrieveObject(ProjectParameters.key);
+        identification.setIdentificationKeys((IdentificationKeys) identification.retrieveObject(IdentificationKeys.KEY));
+        inputMap = checkpoint.getInputMap();
+        metrics = checkpoint.getMetrics();
+        geneMaps = checkpoint.getGeneMaps();
+        proteinCount = checkpoint.getProteinCount();
 
-        PsmProcessor psmProcessor = new PsmProcessor(identification);
-        psmProcessor.processPsms(
-                inputMap,
+        fileImporter = new FileImporter(
+                identification,
                 identificationParameters,
-                matchesValidator,
-                modificationLocalizationScorer,
-                sequenceProvider,
+                processingParameters,
+                metrics,
+                checkpoint.getProjectDetails(),
                 spectrumProvider,
-                modificationFactory,
-                proteinCount,
-                processingParameters.getnThreads(),
                 waitingHandler,
                 exceptionHandler
         );
-        waitingHandler.increasePrimaryProgressCounter();
 
-        if (waitingHandler.isRunCanceled()) {
-            return;
-        }
+        try {
 
-        identification.getObjectsDB().commit();
-        System.gc();
+            fileImporter.importSequences(
+                    identificationParameters.getSequenceMatchingParameters(),
+                    identificationParameters.getSearchParameters(),
+                    identificationParameters.getFastaParameters(),
+                    identificationParameters.getPeptideVariantsParameters(),
+                    waitingHandler,
+                    exceptionHandler
+            );
 
-        waitingHandler.appendReport(
-                "Computing PSM probabilities.",
-                true,
-                true
-        );
+        } catch (IOException e) {
 
-        matchesValidator.getPsmMap().estimateProbabilities(waitingHandler);
+            exceptionHandler.catchException(e);
+            return 1;
+
+        }
 
         if (waitingHandler.isRunCanceled()) {
-            return;
+            return 1;
         }
 
-        identification.getObjectsDB().commit();
-        System.gc();
+        sequenceProvider = fileImporter.getSequenceProvider();
+        proteinDetailsProvider = fileImporter.getProteinDetailsProvider();
 
-        if (projectType == ProjectType.peptide || projectType == ProjectType.protein) {
+        waitingHandler.appendReport("Resuming after stage " + checkpoint.getStage() + ".", true, true);
 
-            PeptideInference peptideInference = new PeptideInference();
+        return 0;
 
-            ModificationLocalizationParameters modificationScoringPreferences = identificationParameters.getModificationLocalizationParameters();
+    }
 
-            if (modificationScoringPreferences.getAlignNonConfidentModifications()) {
+    /**
+     * Sets the policy used to commit the database between the stages of the
+     * project creation.
+     *
+     * @param commitPolicy the commit policy
+     */
+    public void setCommitPolicy(
+            CommitPolicy commitPolicy
+    ) {
 
-                waitingHandler.appendReport("Resolving peptide inference issues.", true, true);
+        this.commitPolicy = commitPolicy;
 
-                peptideInference.peptideInference(
-                        identification,
-                        identificationParameters,
-                        sequenceProvider,
-                        modificationFactory,
-                        waitingHandler
-                );
+    }
 
-                waitingHandler.increasePrimaryProgressCounter();
+    /**
+     * Sets whether a checkpoint and a snapshot of the database are saved with
+     * every commit between the stages of the project creation. Saving the
+     * snapshot writes the matches cached in memory to the database and copies
+     * the database file, it is therefore only done on demand. Checkpoints are
+     * always saved when resuming a project creation.
+     *
+     * @param checkpointsEnabled a boolean indicating whether checkpoints
+     * should be saved
+     */
+    public void setCheckpointsEnabled(
+            boolean checkpointsEnabled
+    ) {
 
-                if (waitingHandler.isRunCanceled()) {
-                    return;
-                }
-            }
+        this.checkpointsEnabled = checkpointsEnabled;
 
-            identification.getObjectsDB().commit();
-            System.gc();
+    }
 
-        }
+    /**
+     * Returns the project details restored from the checkpoint of an
+     * interrupted project creation, null if no project creation was resumed.
+     *
+     * @return the project details restored from the checkpoint
+     */
+    public ProjectDetails getResumedProjectDetails() {
 
-        String reportTxt = "Saving probabilities";
-        String waitingTitle = "Saving Probabilities.";;
-        switch (projectType) {
-            case psm:
-                reportTxt += ".";
-                break;
-            case peptide:
-                reportTxt += ", building peptides.";
-                waitingTitle += " Building Peptides.";
-                break;
-            default:
-                reportTxt += ", building peptides and proteins.";
-                waitingTitle += " Building Peptides and Proteins.";
-        }
+        return checkpoint == null ? null : checkpoint.getProjectDetails();
 
-        waitingHandler.appendReport(reportTxt, true, true);
-        waitingHandler.setWaitingText(waitingTitle + " Please Wait...");
+    }
 
-        attachSpectrumProbabilitiesAndBuildPeptidesAndProteins(
-                sequenceProvider,
-                identificationParameters.getSequenceMatchingParameters(),
-                projectType,
-                fastaParameters,
-                waitingHandler
-        );
-        waitingHandler.increasePrimaryProgressCounter();
+    /**
+     * Commits the database after the given stage if the commit scheduler
+     * decides so. If checkpoints are enabled, the checkpoint is built and
+     * saved before the commit, and a snapshot of the committed database is
+     * saved for resuming. Otherwise the database is only committed. Nothing
+     * is saved on stages where the scheduler does not commit, the last
+     * checkpoint then lags behind the completed stages. The keys of the
+     * matches are only saved if a stage changed them since the last
+     * checkpoint. Nothing is done if the stage was already completed.
+     *
+     * @param stage the completed stage
+     * @param projectDetails the project details
+     * @param waitingHandler the handler displaying feedback to the user
+     *
+     * @throws java.lang.InterruptedException exception thrown if a thread gets
+     * interrupted
+     * @throws java.util.concurrent.TimeoutException exception thrown if a
+     * process times out
+     * @throws java.io.IOException if an exception occurs when writing to the
+     * database
+     */
+    private void saveCheckpoint(
+            ProjectCheckpoint.Stage stage,
+            ProjectDetails projectDetails,
+            WaitingHandler waitingHandler
+    ) throws InterruptedException, TimeoutException, IOException {
 
-        if (waitingHandler.isRunCanceled()) {
-            return;
-        }
+        if (!checkpoint.isCompleted(stage)) {
 
-        identification.getObjectsDB().commit();
-        System.gc();
+            if (stage.isKeysChanged()) {
 
-        if (projectType == ProjectType.peptide || projectType == ProjectType.protein) {
+                identificationKeysChanged = true;
 
-            waitingHandler.appendReport(
-                    "Generating peptide map.",
-                    true,
-                    true
-            );
-            matchesValidator.fillPeptideMaps(
-                    identification,
-                    metrics,
-                    waitingHandler,
-                    identificationParameters,
-                    sequenceProvider,
-                    spectrumProvider
-            );
+            }
 
-            if (waitingHandler.isRunCanceled()) {
+            long nModifiedMatches = 0;
 
-                return;
+            if (stage.isPsmsModified()) {
+
+                nModifiedMatches += identification.getSpectrumIdentificationSize();
 
             }
 
-            identification.getObjectsDB().commit();
-            System.gc();
+            if (stage.isPeptidesModified()) {
 
-            waitingHandler.appendReport(
-                    "Computing peptide probabilities.",
-                    true,
-                    true
-            );
+                nModifiedMatches += identification.getPeptideIdentification().size();
+
+            }
 
-            matchesValidator.getPeptideMap().estimateProbabilities(waitingHandler);
+            if (stage.isProteinsModified()) {
+
+                nModifiedMatches += identification.getProteinIdentification().size();
 
-            if (waitingHandler.isRunCanceled()) {
-                return;
             }
 
-            identification.getObjectsDB().commit();
-            System.gc();
+            if (commitScheduler.isCommitNeeded(stage.name(), nModifiedMatches)) {
+
+                if (checkpointsEnabled) {
+
+                    ProjectCheckpoint newCheckpoint = new ProjectCheckpoint();
+                    newCheckpoint.setStage(
+                            stage,
+                            inputMap,
+                            matchesValidator.getPsmMap(),
+                            matchesValidator.getPeptideMap(),
+                            matchesValidator.getProteinMap(),
+                            metrics,
+                            geneMaps,
+                            proteinCount,
+                            projectDetails
+                    );
+
+                    if (!identification.contains(IdentificationKeys.KEY)) {
+
+                        identification.addObject(IdentificationKeys.KEY, identification.getIdentificationKeys());
+
+                    } else if (identificationKeysChanged) {
+
+                        identification.updateObject(IdentificationKeys.KEY, identification.getIdentificationKeys());
+
+                    }
+
+                    identificationKeysChanged = false;
+
+                    if (identification.contains(ProjectCheckpoint.KEY)) {
+
+                        identification.updateObject(ProjectCheckpoint.KEY, newCheckpoint);
+
+                    } else {
+
+                        identification.addObject(ProjectCheckpoint.KEY, newCheckpoint);
+
+                    }
+
+                    commitScheduler.commit(identification);
+                    saveSnapshot(waitingHandler);
+
+                    checkpoint = newCheckpoint;
+
+                } else {
+
+                    commitScheduler.commit(identification);
+
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves a snapshot of the committed database next to the database file.
+     * Locking the database writes the matches cached in memory to the database
+     * file and releases them. The snapshot is written to a temporary file and
+     * moved in place once complete, so that an interruption never leaves an
+     * incomplete snapshot.
+     *
+     * @param waitingHandler the handler displaying feedback to the user
+     *
+     * @throws java.io.IOException if an exception occurs when writing the
+     * snapshot
+     */
+    private void saveSnapshot(
+            WaitingHandler waitingHandler
+    ) throws IOException {
+
+        ObjectsDB objectsDB = identification.getObjectsDB();
+        File dbFile = objectsDB.getDbFile();
+        File snapshotFile = ProjectCheckpoint.getSnapshotFile(dbFile);
+        File tempFile = new File(snapshotFile.getParentFile(), snapshotFile.getName() + ".tmp");
+
+        objectsDB.lock(waitingHandler);
+
+        try {
+
+            IoUtil.copyFile(dbFile, tempFile);
+
+        } finally {
+
+            objectsDB.unlock();
+
+        }
+
+        Files.move(
+                tempFile.toPath(),
+                snapshotFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+        );
+    }
+
+    /**
+     * Creates a PeptideShaker project.
+     *
+     * @param waitingHandler the handler displaying feedback to the user
+     * @param exceptionHandler handler for exceptions
+     * @param identificationParameters the identification parameters
+     * @param processingParameters the processing parameters
+     * @param projectType the project type
+     * @param spectrumCountingParameters the spectrum counting parameters
+     * @param spectrumProvider the spectrum provider
+     * @param setWaitingHandlerFinshedWhenDone if true, the waiting handler is
+     * set to finished when the project is created
+     * @param projectDetails the project details
+     *
+     * @throws java.lang.InterruptedException exception thrown if a thread gets
+     * interrupted
+     * @throws java.util.concurrent.TimeoutException exception thrown if a
+     * process times out
+     * @throws java.io.IOException if an exception occurs when parsing files
+     */
+    public void createProject(
+            IdentificationParameters identificationParameters,
+            ProcessingParameters processingParameters,
+            SpectrumCountingParameters spectrumCountingParameters,
+            SpectrumProvider spectrumProvider,
+            ProjectDetails projectDetails,
+            ProjectType projectType,
+            WaitingHandler waitingHandler,
+            boolean setWaitingHandlerFinshedWhenDone,
+            ExceptionHandler exceptionHandler
+    ) throws InterruptedException, TimeoutException, IOException {
+
+        ProjectExecutor projectExecutor = new ProjectExecutor(processingParameters.getnThreads());
+
+        try {
+
+            createProject(
+                    identificationParameters,
+                    processingParameters,
+                    spectrumCountingParameters,
+                    spectrumProvider,
+                    projectDetails,
+                    projectType,
+                    waitingHandler,
+                    setWaitingHandlerFinshedWhenDone,
+                    exceptionHandler,
+                    projectExecutor
+            );
+
+        } finally {
+
+            projectExecutor.shutdown();
+
+            if (commitScheduler != null) {
+
+                commitScheduler.close();
+                commitScheduler = null;
+
+            }
+
+            // the spectrum cache is only used during the creation of the project
+            if (spectrumProvider instanceof CachedMsFileHandler) {
+
+                ((CachedMsFileHandler) spectrumProvider).setCacheEnabled(false);
+
+            }
+        }
+    }
+
+    /**
+     * Creates a PeptideShaker project.
+     *
+     * @param waitingHandler the handler displaying feedback to the user
+     * @param exceptionHandler handler for exceptions
+     * @param identificationParameters the identification parameters
+     * @param processingParameters the processing parameters
+     * @param projectType the project type
+     * @param spectrumCountingParameters the spectrum counting parameters
+     * @param spectrumProvider the spectrum provider
+     * @param setWaitingHandlerFinshedWhenDone if true, the waiting handler is
+     * set to finished when the project is created
+     * @param projectDetails the project details
+     * @param projectExecutor the engine executing the parallel stages
+     *
+     * @throws java.lang.InterruptedException exception thrown if a thread gets
+     * interrupted
+     * @throws java.util.concurrent.TimeoutException exception thrown if a
+     * process times out
+     * @throws java.io.IOException if an exception occurs when parsing files
+     */
+    private void createProject(
+            IdentificationParameters identificationParameters,
+            ProcessingParameters processingParameters,
+            SpectrumCountingParameters spectrumCountingParameters,
+            SpectrumProvider spectrumProvider,
+            ProjectDetails projectDetails,
+            ProjectType projectType,
+            WaitingHandler waitingHandler,
+            boolean setWaitingHandlerFinshedWhenDone,
+            ExceptionHandler exceptionHandler,
+            ProjectExecutor projectExecutor
+    ) throws InterruptedException, TimeoutException, IOException {
+
+        identificationFeaturesGenerator = new IdentificationFeaturesGenerator(
+                identification,
+                identificationParameters,
+                sequenceProvider,
+                spectrumProvider,
+                metrics,
+                spectrumCountingParameters
+        );
+
+        commitScheduler = new CommitScheduler(
+                commitPolicy,
+                waitingHandler
+        );
+
+        if (checkpoint == null) {
+
+            checkpoint = new ProjectCheckpoint();
+            identificationKeysChanged = true;
+
+            matchesValidator = new MatchesValidator(
+                    new TargetDecoyMap(),
+                    new TargetDecoyMap(),
+                    new TargetDecoyMap()
+            );
+
+        } else {
+
+            matchesValidator = new MatchesValidator(
+                    checkpoint.getPsmMap(),
+                    checkpoint.getPeptideMap(),
+                    checkpoint.getProteinMap()
+            );
+
+        }
+
+        saveCheckpoint(
+                ProjectCheckpoint.Stage.imported,
+                projectDetails,
+                waitingHandler
+        );
+
+        if (waitingHandler.isRunCanceled()) {
+            return;
+        }
+
+        PsmScoringParameters psmScoringPreferences = identificationParameters.getPsmScoringParameters();
+        FastaParameters fastaParameters = identificationParameters.getFastaParameters();
+
+        FastaSummary fastaSummary = FastaSummary.getSummary(
+                projectDetails.getFastaFile(),
+                fastaParameters,
+                waitingHandler
+        );
+
+        // set the background species
+        identificationParameters.getGeneParameters().setBackgroundSpeciesFromFastaSummary(fastaSummary);
+
+        ArrayList<Integer> usedAlgorithms = projectDetails.getIdentificationAlgorithms();
+
+        if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.psmScoring)
+                && psmScoringPreferences.isScoringNeeded(usedAlgorithms)) {
+
+            waitingHandler.appendReport("Estimating PSM scores.", true, true);
+            projectExecutor.startStage("Estimating PSM scores.");
+
+            PsmScorer psmScorer = new PsmScorer(
+                    fastaParameters,
+                    sequenceProvider,
+                    spectrumProvider
+            );
+
+            psmScorer.estimateIntermediateScores(
+                    identification,
+                    inputMap,
+                    processingParameters,
+                    identificationParameters,
+                    waitingHandler,
+                    exceptionHandler
+            );
+
+            if (psmScoringPreferences.isTargetDecoyNeededForPsmScoring(usedAlgorithms)) {
+
+                if (fastaParameters.isTargetDecoy()) {
+
+                    waitingHandler.appendReport("Estimating intermediate scores probabilities.", true, true);
+                    projectExecutor.startStage("Estimating intermediate scores probabilities.");
+                    psmScorer.estimateIntermediateScoreProbabilities(
+                            identification,
+                            inputMap,
+                            processingParameters,
+                            waitingHandler
+                    );
+
+                } else {
+
+                    waitingHandler.appendReport(
+                            "No decoy sequences found. Impossible to "
+                            + "estimate intermediate scores probabilities.",
+                            true,
+                            true
+                    );
+
+                }
+            }
+
+            waitingHandler.appendReport("Scoring PSMs.", true, true);
+            projectExecutor.startStage("Scoring PSMs.");
+            psmScorer.scorePsms(
+                    identification,
+                    inputMap,
+                    processingParameters,
+                    identificationParameters,
+                    waitingHandler,
+                    exceptionHandler
+            );
+        }
+
+        if (waitingHandler.isRunCanceled()) {
+            return;
+        }
+
+        saveCheckpoint(
+                ProjectCheckpoint.Stage.psmScoring,
+                projectDetails,
+                waitingHandler
+        );
+
+        if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.assumptionProbabilities)) {
+
+            if (fastaParameters.isTargetDecoy()) {
+
+                waitingHandler.appendReport(
+                        "Computing assumptions probabilities.",
+                        true,
+                        true
+                );
+                projectExecutor.startStage("Computing assumptions probabilities.");
+
+            } else {
+
+                waitingHandler.appendReport(
+                        "Importing assumptions scores.",
+                        true,
+                        true
+                );
+                projectExecutor.startStage("Importing assumptions scores.");
+
+            }
+
+            inputMap.estimateProbabilities(waitingHandler);
+
+        }
+
+        waitingHandler.increasePrimaryProgressCounter();
+
+        if (waitingHandler.isRunCanceled()) {
+            return;
+        }
+
+        saveCheckpoint(
+                ProjectCheckpoint.Stage.assumptionProbabilities,
+                projectDetails,
+                waitingHandler
+        );
+
+        if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.psmProcessing)) {
+
+            waitingHandler.appendReport(
+                    "Saving assumptions probabilities, selecting best match, scoring modification localization.",
+                    true,
+                    true
+            );
+            projectExecutor.startStage("Saving assumptions probabilities, selecting best match, scoring modification localization.");
+
+            PsmProcessor psmProcessor = new PsmProcessor(identification);
+            psmProcessor.processPsms(
+                    inputMap,
+                    identificationParameters,
+                    matchesValidator,
+                    modificationLocalizationScorer,
+                    sequenceProvider,
+                    spectrumProvider,
+                    modificationFactory,
+                    proteinCount,
+                    processingParameters.getnThreads(),
+                    waitingHandler,
+                    exceptionHandler
+            );
+
+        }
+
+        waitingHandler.increasePrimaryProgressCounter();
+
+        if (waitingHandler.isRunCanceled()) {
+            return;
+        }
+
+        saveCheckpoint(
+                ProjectCheckpoint.Stage.psmProcessing,
+                projectDetails,
+                waitingHandler
+        );
+
+        if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.psmProbabilities)) {
 
             waitingHandler.appendReport(
-                    "Saving peptide probabilities.",
+                    "Computing PSM probabilities.",
                     true,
                     true
             );
-            matchesValidator.attachPeptideProbabilities(
-                    identification,
-                    fastaParameters,
+            projectExecutor.startStage("Computing PSM probabilities.");
+
+            matchesValidator.getPsmMap().estimateProbabilities(waitingHandler);
+
+        }
+
+        if (waitingHandler.isRunCanceled()) {
+            return;
+        }
+
+        saveCheckpoint(
+                ProjectCheckpoint.Stage.psmProbabilities,
+                projectDetails,
+                waitingHandler
+        );
+
+        if (projectType == ProjectType.peptide || projectType == ProjectType.protein) {
+
+            PeptideInference peptideInference = new PeptideInference();
+
+            ModificationLocalizationParameters modificationScoringPreferences = identificationParameters.getModificationLocalizationParameters();
+
+            if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.peptideInference)
+                    && modificationScoringPreferences.getAlignNonConfidentModifications()) {
+
+                waitingHandler.appendReport("Resolving peptide inference issues.", true, true);
+                projectExecutor.startStage("Resolving peptide inference issues.");
+
+                peptideInference.peptideInference(
+                        identification,
+                        identificationParameters,
+                        sequenceProvider,
+                        modificationFactory,
+                        waitingHandler
+                );
+
+                waitingHandler.increasePrimaryProgressCounter();
+
+                if (waitingHandler.isRunCanceled()) {
+                    return;
+                }
+            }
+
+            saveCheckpoint(
+                    ProjectCheckpoint.Stage.peptideInference,
+                    projectDetails,
+                    waitingHandler
+            );
+
+        }
+
+        String reportTxt = "Saving probabilities";
+        String waitingTitle = "Saving Probabilities.";;
+        switch (projectType) {
+            case psm:
+                reportTxt += ".";
+                break;
+            case peptide:
+                reportTxt += ", building peptides.";
+                waitingTitle += " Building Peptides.";
+                break;
+            default:
+                reportTxt += ", building peptides and proteins.";
+                waitingTitle += " Building Peptides and Proteins.";
+        }
+
+        if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.matchBuilding)) {
+
+            waitingHandler.appendReport(reportTxt, true, true);
+            projectExecutor.startStage(reportTxt);
+            waitingHandler.setWaitingText(waitingTitle + " Please Wait...");
+
+            projectExecutor.execute(
+                    () -> attachSpectrumProbabilitiesAndBuildPeptidesAndProteins(
+                            sequenceProvider,
+                            identificationParameters.getSequenceMatchingParameters(),
+                            projectType,
+                            fastaParameters,
+                            waitingHandler
+                    )
+            );
+
+        }
+
+        waitingHandler.increasePrimaryProgressCounter();
+
+        if (waitingHandler.isRunCanceled()) {
+            return;
+        }
+
+        saveCheckpoint(
+                ProjectCheckpoint.Stage.matchBuilding,
+                projectDetails,
+                waitingHandler
+        );
+        if (projectType == ProjectType.peptide || projectType == ProjectType.protein) {
+
+            if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.peptideMap)) {
+
+                waitingHandler.appendReport(
+                        "Generating peptide map.",
+                        true,
+                        true
+                );
+                projectExecutor.startStage("Generating peptide map.");
+                matchesValidator.fillPeptideMaps(
+                        identification,
+                        metrics,
+                        waitingHandler,
+                        exceptionHandler,
+                        identificationParameters,
+                        sequenceProvider,
+                        spectrumProvider,
+                        processingParameters
+                );
+
+            }
+
+            if (waitingHandler.isRunCanceled()) {
+
+                return;
+
+            }
+
+            saveCheckpoint(
+                    ProjectCheckpoint.Stage.peptideMap,
+                    projectDetails,
+                    waitingHandler
+            );
+
+            if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.peptideProbabilities)) {
+
+                waitingHandler.appendReport(
+                        "Computing peptide probabilities.",
+                        true,
+                        true
+                );
+                projectExecutor.startStage("Computing peptide probabilities.");
+
+                matchesValidator.getPeptideMap().estimateProbabilities(waitingHandler);
+
+            }
+
+            if (waitingHandler.isRunCanceled()) {
+                return;
+            }
+
+            saveCheckpoint(
+                    ProjectCheckpoint.Stage.peptideProbabilities,
+                    projectDetails,
                     waitingHandler
             );
+
+            if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.peptideProbabilitiesSaved)) {
+
+                waitingHandler.appendReport(
+                        "Saving peptide probabilities.",
+                        true,
+                        true
+                );
+                projectExecutor.startStage("Saving peptide probabilities.");
+                matchesValidator.attachPeptideProbabilities(
+                        identification,
+                        fastaParameters,
+                        waitingHandler,
+                        exceptionHandler,
+                        processingParameters
+                );
+
+            }
+
             waitingHandler.increasePrimaryProgressCounter();
 
             if (waitingHandler.isRunCanceled()) {
                 return;
             }
 
-            identification.getObjectsDB().commit();
-            System.gc();
+            saveCheckpoint(
+                    ProjectCheckpoint.Stage.peptideProbabilitiesSaved,
+                    projectDetails,
+                    waitingHandler
+            );
 
             if (projectType == ProjectType.protein) {
 
                 if (identificationParameters.getProteinInferenceParameters().getSimplifyGroups()) {
 
-                    waitingHandler.appendReport(
-                            "Simplifying protein groups.",
-                            true,
-                            true
-                    );
+                    if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.groupSimplification)) {
+
+                        waitingHandler.appendReport(
+                                "Simplifying protein groups.",
+                                true,
+                                true
+                        );
+                        projectExecutor.startStage("Simplifying protein groups.");
+
+                        GroupSimplification groupSimplification = new GroupSimplification();
+                        projectExecutor.execute(
+                                () -> groupSimplification.removeRedundantGroups(
+                                        identification,
+                                        identificationParameters,
+                                        sequenceProvider,
+                                        proteinDetailsProvider,
+                                        waitingHandler
+                                )
+                        );
+
+                    }
 
-                    GroupSimplification groupSimplification = new GroupSimplification();
-                    groupSimplification.removeRedundantGroups(
-                            identification,
-                            identificationParameters,
-                            sequenceProvider,
-                            proteinDetailsProvider,
-                            waitingHandler
-                    );
                     waitingHandler.increasePrimaryProgressCounter();
 
                     if (waitingHandler.isRunCanceled()) {
@@ -583,208 +1123,289 @@ public class PeptideShaker {
                     }
                 }
 
-                identification.getObjectsDB().commit();
-                System.gc();
-
-                ProteinInference proteinInference = new ProteinInference();
-                waitingHandler.appendReport(
-                        "Mapping shared peptides.",
-                        true,
-                        true
-                );
-                proteinInference.distributeSharedPeptides(
-                        identification,
+                saveCheckpoint(
+                        ProjectCheckpoint.Stage.groupSimplification,
+                        projectDetails,
                         waitingHandler
                 );
+
+                ProteinInference proteinInference = new ProteinInference();
+
+                if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.sharedPeptides)) {
+
+                    waitingHandler.appendReport(
+                            "Mapping shared peptides.",
+                            true,
+                            true
+                    );
+                    projectExecutor.startStage("Mapping shared peptides.");
+                    projectExecutor.execute(
+                            () -> proteinInference.distributeSharedPeptides(
+                                    identification,
+                                    waitingHandler
+                            )
+                    );
+
+                }
+
                 waitingHandler.increasePrimaryProgressCounter();
 
                 if (waitingHandler.isRunCanceled()) {
                     return;
                 }
 
-                identification.getObjectsDB().commit();
-                System.gc();
-
-                waitingHandler.appendReport(
-                        "Generating protein map.",
-                        true,
-                        true
-                );
-                matchesValidator.fillProteinMap(
-                        identification,
-                        spectrumProvider,
+                saveCheckpoint(
+                        ProjectCheckpoint.Stage.sharedPeptides,
+                        projectDetails,
                         waitingHandler
                 );
+
+                if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.proteinMap)) {
+
+                    waitingHandler.appendReport(
+                            "Generating protein map.",
+                            true,
+                            true
+                    );
+                    projectExecutor.startStage("Generating protein map.");
+                    matchesValidator.fillProteinMap(
+                            identification,
+                            spectrumProvider,
+                            waitingHandler,
+                            exceptionHandler,
+                            processingParameters
+                    );
+
+                }
+
                 waitingHandler.increasePrimaryProgressCounter();
 
                 if (waitingHandler.isRunCanceled()) {
                     return;
                 }
 
-                identification.getObjectsDB().commit();
-                System.gc();
-
-                waitingHandler.appendReport(
-                        "Selecting leading proteins, inferring peptide and protein inference status.",
-                        true,
-                        true
-                );
-                proteinInference.inferPiStatus(
-                        identification,
-                        metrics,
-                        matchesValidator.getProteinMap(),
-                        identificationParameters,
-                        sequenceProvider,
-                        proteinDetailsProvider,
+                saveCheckpoint(
+                        ProjectCheckpoint.Stage.proteinMap,
+                        projectDetails,
                         waitingHandler
                 );
+
+                if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.piStatus)) {
+
+                    waitingHandler.appendReport(
+                            "Selecting leading proteins, inferring peptide and protein inference status.",
+                            true,
+                            true
+                    );
+                    projectExecutor.startStage("Selecting leading proteins, inferring peptide and protein inference status.");
+                    projectExecutor.execute(
+                            () -> proteinInference.inferPiStatus(
+                                    identification,
+                                    metrics,
+                                    matchesValidator.getProteinMap(),
+                                    identificationParameters,
+                                    sequenceProvider,
+                                    proteinDetailsProvider,
+                                    waitingHandler
+                            )
+                    );
+
+                }
+
                 waitingHandler.increasePrimaryProgressCounter();
 
                 if (waitingHandler.isRunCanceled()) {
                     return;
                 }
 
-                identification.getObjectsDB().commit();
-                System.gc();
-
-                waitingHandler.appendReport(
-                        "Computing protein probabilities.",
-                        true,
-                        true
+                saveCheckpoint(
+                        ProjectCheckpoint.Stage.piStatus,
+                        projectDetails,
+                        waitingHandler
                 );
 
-                matchesValidator.getProteinMap().estimateProbabilities(waitingHandler);
+                if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.proteinProbabilities)) {
+
+                    waitingHandler.appendReport(
+                            "Computing protein probabilities.",
+                            true,
+                            true
+                    );
+                    projectExecutor.startStage("Computing protein probabilities.");
+
+                    matchesValidator.getProteinMap().estimateProbabilities(waitingHandler);
+
+                }
 
                 if (waitingHandler.isRunCanceled()) {
                     return;
                 }
 
-                identification.getObjectsDB().commit();
-                System.gc();
-
-                waitingHandler.appendReport(
-                        "Saving protein probabilities.",
-                        true,
-                        true
-                );
-                matchesValidator.attachProteinProbabilities(
-                        identification,
-                        sequenceProvider,
-                        fastaParameters,
-                        metrics,
-                        waitingHandler,
-                        identificationParameters.getFractionParameters()
+                saveCheckpoint(
+                        ProjectCheckpoint.Stage.proteinProbabilities,
+                        projectDetails,
+                        waitingHandler
                 );
+
+                if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.proteinProbabilitiesSaved)) {
+
+                    waitingHandler.appendReport(
+                            "Saving protein probabilities.",
+                            true,
+                            true
+                    );
+                    projectExecutor.startStage("Saving protein probabilities.");
+                    matchesValidator.attachProteinProbabilities(
+                            identification,
+                            sequenceProvider,
+                            fastaParameters,
+                            metrics,
+                            waitingHandler,
+                            exceptionHandler,
+                            identificationParameters.getFractionParameters(),
+                            processingParameters
+                    );
+
+                }
+
                 waitingHandler.increasePrimaryProgressCounter();
 
                 if (waitingHandler.isRunCanceled()) {
                     return;
                 }
 
-                identification.getObjectsDB().commit();
-                System.gc();
+                saveCheckpoint(
+                        ProjectCheckpoint.Stage.proteinProbabilitiesSaved,
+                        projectDetails,
+                        waitingHandler
+                );
 
             }
         }
 
-        if (fastaParameters.isTargetDecoy()) {
+        if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.validation)) {
 
-            IdMatchValidationParameters idMatchValidationParameters = identificationParameters.getIdValidationParameters();
+            if (fastaParameters.isTargetDecoy()) {
 
-            if (idMatchValidationParameters.getDefaultPsmFDR() == 1
-                    && idMatchValidationParameters.getDefaultPeptideFDR() == 1
-                    && idMatchValidationParameters.getDefaultProteinFDR() == 1) {
+                IdMatchValidationParameters idMatchValidationParameters = identificationParameters.getIdValidationParameters();
 
-                waitingHandler.appendReport(
-                        "Validating identifications at 1% FDR, quality control of matches.",
-                        true,
-                        true
-                );
+                if (idMatchValidationParameters.getDefaultPsmFDR() == 1
+                        && idMatchValidationParameters.getDefaultPeptideFDR() == 1
+                        && idMatchValidationParameters.getDefaultProteinFDR() == 1) {
 
+                    waitingHandler.appendReport(
+                            "Validating identifications at 1% FDR, quality control of matches.",
+                            true,
+                            true
+                    );
+                    projectExecutor.startStage("Validating identifications at 1% FDR, quality control of matches.");
+
+                } else {
+
+                    waitingHandler.appendReport(
+                            "Validating identifications, quality control of matches.",
+                            true,
+                            true
+                    );
+                    projectExecutor.startStage("Validating identifications, quality control of matches.");
+
+                }
             } else {
 
                 waitingHandler.appendReport(
-                        "Validating identifications, quality control of matches.",
+                        "Quality control of matches.",
                         true,
                         true
                 );
+                projectExecutor.startStage("Quality control of matches.");
 
             }
-        } else {
 
-            waitingHandler.appendReport(
-                    "Quality control of matches.",
-                    true,
-                    true
+            matchesValidator.validateIdentifications(
+                    identification,
+                    metrics,
+                    inputMap,
+                    waitingHandler,
+                    exceptionHandler,
+                    identificationFeaturesGenerator,
+                    sequenceProvider,
+                    proteinDetailsProvider,
+                    spectrumProvider,
+                    geneMaps,
+                    identificationParameters,
+                    projectType,
+                    processingParameters
             );
 
         }
 
-        matchesValidator.validateIdentifications(
-                identification,
-                metrics,
-                inputMap,
-                waitingHandler,
-                exceptionHandler,
-                identificationFeaturesGenerator,
-                sequenceProvider,
-                proteinDetailsProvider,
-                spectrumProvider,
-                geneMaps,
-                identificationParameters,
-                projectType,
-                processingParameters
-        );
         waitingHandler.increasePrimaryProgressCounter();
 
         if (waitingHandler.isRunCanceled()) {
             return;
         }
 
-        identification.getObjectsDB().commit();
-        System.gc();
+        saveCheckpoint(
+                ProjectCheckpoint.Stage.validation,
+                projectDetails,
+                waitingHandler
+        );
 
         if (projectType == ProjectType.peptide || projectType == ProjectType.protein) {
 
-            waitingHandler.appendReport(
-                    "Scoring PTMs in peptides.",
-                    true,
-                    true
-            );
-            modificationLocalizationScorer.scorePeptidePtms(
-                    identification,
-                    modificationFactory,
-                    sequenceProvider,
-                    waitingHandler,
-                    identificationParameters
-            );
+            if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.peptideModifications)) {
+
+                waitingHandler.appendReport(
+                        "Scoring PTMs in peptides.",
+                        true,
+                        true
+                );
+                projectExecutor.startStage("Scoring PTMs in peptides.");
+                modificationLocalizationScorer.scorePeptidePtms(
+                        identification,
+                        modificationFactory,
+                        sequenceProvider,
+                        waitingHandler,
+                        identificationParameters
+                );
+
+            }
+
             waitingHandler.increasePrimaryProgressCounter();
 
             if (waitingHandler.isRunCanceled()) {
                 return;
             }
 
-            identification.getObjectsDB().commit();
-            System.gc();
+            saveCheckpoint(
+                    ProjectCheckpoint.Stage.peptideModifications,
+                    projectDetails,
+                    waitingHandler
+            );
 
             if (projectType == ProjectType.protein) {
 
-                waitingHandler.appendReport(
-                        "Estimating spectrum counting scaling values.",
-                        true,
-                        true
-                );
+                if (!checkpoint.isCompleted(ProjectCheckpoint.Stage.scalingFactors)) {
 
-                ScalingFactorsEstimators scalingFactors = new ScalingFactorsEstimators(spectrumCountingParameters);
-                scalingFactors.estimateScalingFactors(
-                        identification,
-                        metrics,
-                        sequenceProvider,
-                        identificationFeaturesGenerator,
-                        waitingHandler,
-                        exceptionHandler,
-                        processingParameters
-                );
+                    waitingHandler.appendReport(
+                            "Estimating spectrum counting scaling values.",
+                            true,
+                            true
+                    );
+                    projectExecutor.startStage("Estimating spectrum counting scaling values.");
+
+                    ScalingFactorsEstimators scalingFactors = new ScalingFactorsEstimators(spectrumCountingParameters);
+                    scalingFactors.estimateScalingFactors(
+                            identification,
+                            metrics,
+                            sequenceProvider,
+                            identificationFeaturesGenerator,
+                            waitingHandler,
+                            exceptionHandler,
+                            processingParameters
+                    );
+
+                }
 
                 waitingHandler.increasePrimaryProgressCounter();
 
@@ -792,14 +1413,18 @@ public class PeptideShaker {
                     return;
                 }
 
-                identification.getObjectsDB().commit();
-                System.gc();
+                saveCheckpoint(
+                        ProjectCheckpoint.Stage.scalingFactors,
+                        projectDetails,
+                        waitingHandler
+                );
 
                 waitingHandler.appendReport(
                         "Scoring PTMs in proteins, gathering summary metrics.",
                         true,
                         true
                 );
+                projectExecutor.startStage("Scoring PTMs in proteins, gathering summary metrics.");
                 ProteinProcessor proteinProcessor = new ProteinProcessor(
                         identification,
                         identificationParameters,
@@ -819,13 +1444,29 @@ public class PeptideShaker {
                 if (waitingHandler.isRunCanceled()) {
                     return;
                 }
+            }
+        }
 
-                identification.getObjectsDB().commit();
-                System.gc();
+        // the project is complete, the checkpoint is not needed anymore
+        if (identification.contains(ProjectCheckpoint.KEY)) {
+
+            identification.removeObject(ProjectCheckpoint.KEY);
+
+        }
+
+        // the keys saved with the checkpoint can be outdated, they are saved again with the project
+        if (identification.contains(IdentificationKeys.KEY)) {
+
+            identification.removeObject(IdentificationKeys.KEY);
 
-            }
         }
 
+        commitScheduler.commit(identification);
+        checkpoint = null;
+
+        Files.deleteIfExists(ProjectCheckpoint.getSnapshotFile(identification.getObjectsDB().getDbFile()).toPath());
+
+        projectExecutor.endStage();
         projectCreationDuration.end();
         String report = "Identification processing completed (" + projectCreationDuration.toString() + ").";
 
@@ -834,6 +1475,41 @@ public class PeptideShaker {
                 true,
                 true
         );
+
+        for (Entry<String, Long> stageDuration : projectExecutor.getStageDurations().entrySet()) {
+
+            String stage = stageDuration.getKey();
+
+            if (stage.endsWith(".")) {
+
+                stage = stage.substring(0, stage.length() - 1);
+
+            }
+
+            waitingHandler.appendReport(
+                    "    " + stage + ": " + stageDuration.getValue() + " ms.",
+                    false,
+                    true
+            );
+        }
+
+        if (spectrumProvider instanceof CachedMsFileHandler) {
+
+            CachedMsFileHandler cachedMsFileHandler = (CachedMsFileHandler) spectrumProvider;
+
+            waitingHandler.appendReport(
+                    "Spectrum cache: "
+                    + cachedMsFileHandler.getnHits()
+                    + " hits, "
+                    + cachedMsFileHandler.getnMisses()
+                    + " misses, "
+                    + cachedMsFileHandler.getnEvictions()
+                    + " evictions.",
+                    true,
+                    true
+            );
+        }
+
         waitingHandler.appendReportEndLine();
         waitingHandler.appendReportEndLine();
         identification.addUrParam(
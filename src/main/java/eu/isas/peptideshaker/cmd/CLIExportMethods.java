@@ -16,6 +16,7 @@ import com.compomics.util.parameters.identification.advanced.SequenceMatchingPar
 import eu.isas.peptideshaker.PeptideShaker;
 import eu.isas.peptideshaker.export.MzIdentMLExport;
 import eu.isas.peptideshaker.followup.FastaExport;
+import eu.isas.peptideshaker.followup.FollowUpExportEngine;
 import eu.isas.peptideshaker.followup.InclusionListExport;
 import eu.isas.peptideshaker.followup.ProgenesisExport;
 import eu.isas.peptideshaker.followup.RecalibrationExporter;
@@ -39,6 +40,7 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.concurrent.TimeoutException;
 
 /**
  * This class groups standard methods used by the different command line
@@ -384,10 +386,117 @@ public class CLIExportMethods {
         );
     }
 
+    /**
+     * Runs the follow-up exports writing information on every spectrum match,
+     * i.e. the DeepLC, ms2pip, and PSM identifiers exports, as specified in
+     * the follow-up input bean. The spectrum matches are retrieved once and
+     * passed to all exports in parallel.
+     *
+     * @param followUpCLIInputBean the follow up input bean
+     * @param identification the identification
+     * @param identificationParameters the identification parameters
+     * @param sequenceProvider the sequence provider
+     * @param spectrumProvider the spectrum provider
+     * @param nThreads the number of threads to use
+     * @param waitingHandler a waiting handler to display progress
+     *
+     * @return the exported files
+     *
+     * @throws InterruptedException exception thrown if a thread is
+     * interrupted
+     * @throws TimeoutException exception thrown if the export timed out
+     */
+    public static ArrayList<File> exportSpectrumMatches(
+            FollowUpCLIInputBean followUpCLIInputBean,
+            Identification identification,
+            IdentificationParameters identificationParameters,
+            SequenceProvider sequenceProvider,
+            SpectrumProvider spectrumProvider,
+            int nThreads,
+            WaitingHandler waitingHandler
+    ) throws InterruptedException, TimeoutException {
+
+        ModificationParameters modificationParameters = identificationParameters.getSearchParameters().getModificationParameters();
+        SequenceMatchingParameters sequenceMatchingParameters = identificationParameters.getSequenceMatchingParameters();
+
+        FollowUpExportEngine followUpExportEngine = new FollowUpExportEngine();
+
+        if (followUpCLIInputBean.deepLcExportNeeded()) {
+
+            followUpExportEngine.register(
+                    new DeepLcExport.DeepLcVisitor(
+                            followUpCLIInputBean.getDeepLcStem(),
+                            followUpCLIInputBean.getPercolatorBenchmarkResultsFile(),
+                            identification,
+                            modificationParameters,
+                            sequenceMatchingParameters,
+                            sequenceProvider,
+                            spectrumProvider
+                    )
+            );
+        }
+
+        if (followUpCLIInputBean.ms2pipExportNeeded()) {
+
+            followUpExportEngine.register(
+                    new Ms2PipExport.Ms2PipVisitor(
+                            followUpCLIInputBean.getMs2pipFile(),
+                            modificationParameters,
+                            sequenceMatchingParameters,
+                            sequenceProvider
+                    )
+            );
+        }
+
+        if (followUpCLIInputBean.PSMIdentifiersExportNeeded()) {
+
+            followUpExportEngine.register(
+                    new PSMIdentExport.PsmIdentifiersVisitor(
+                            followUpCLIInputBean.getPSMIdentifiersFile(),
+                            modificationParameters,
+                            sequenceProvider,
+                            sequenceMatchingParameters,
+                            spectrumProvider
+                    )
+            );
+        }
+
+        if (followUpExportEngine.isEmpty()) {
+
+            return new ArrayList<>(0);
+
+        }
+
+        ArrayList<File> exportedFiles = followUpExportEngine.run(
+                identification,
+                nThreads,
+                waitingHandler
+        );
+
+        if (followUpCLIInputBean.ms2pipExportNeeded() && !waitingHandler.isRunCanceled()) {
+
+            File destinationFolder = followUpCLIInputBean.getMs2pipFile().getParentFile();
+            String[] models = followUpCLIInputBean.getMs2pipModels();
+
+            for (String model : models) {
+
+                File configFile = models.length == 1 ? new File(destinationFolder, "config.txt") : new File(destinationFolder, model + "_config.txt");
+
+                Ms2PipExport.writeConfigFile(configFile, model, identificationParameters.getSearchParameters());
+
+            }
+        }
+
+        return exportedFiles;
+
+    }
+
     /**
      * Exports the files needed by Percolator.
      *
      * @param followUpCLIInputBean the follow up input bean
+     * @param projectName the unique name of the project
+     * @param fastaFile the FASTA file of the project
      * @param identification the identification
      * @param searchParameters The search parameters.
      * @param sequenceMatchingParameters The sequence matching parameters.
@@ -401,6 +510,8 @@ public class CLIExportMethods {
      */
     public static void exportPercolator(
             FollowUpCLIInputBean followUpCLIInputBean,
+            String projectName,
+            File fastaFile,
             Identification identification,
             SearchParameters searchParameters,
             SequenceMatchingParameters sequenceMatchingParameters,
@@ -415,6 +526,7 @@ public class CLIExportMethods {
         File deepLcFile = followUpCLIInputBean.getPercolatorRtFile();
         File ms2pipFile = followUpCLIInputBean.getPercolatorFragmentationFile();
         File destinationFile = followUpCLIInputBean.getPercolatorFile();
+        File featuresCacheFile = followUpCLIInputBean.getPercolatorFeaturesCacheFile();
 
         File rtObsPredsFile = followUpCLIInputBean.getRTObsPredsFile();
 
@@ -423,6 +535,9 @@ public class CLIExportMethods {
                 deepLcFile,
                 rtObsPredsFile,
                 ms2pipFile,
+                featuresCacheFile,
+                projectName,
+                fastaFile,
                 identification,
                 searchParameters,
                 sequenceMatchingParameters,
@@ -632,6 +747,7 @@ public class CLIExportMethods {
      * @param nSurroundingAA the number of amino acids to export on the side of
      * peptide sequences
      * @param spectrumCountingPreferences the spectrum counting preferences
+     * @param nThreads the number of threads to use
      * @param waitingHandler waiting handler displaying feedback to the user
      * @return File file containing the exported report
      *
@@ -652,6 +768,7 @@ public class CLIExportMethods {
             SpectrumProvider spectrumProvider,
             int nSurroundingAA,
             SpectrumCountingParameters spectrumCountingPreferences,
+            int nThreads,
             WaitingHandler waitingHandler
     ) throws IOException {
 
@@ -686,6 +803,7 @@ public class CLIExportMethods {
                 proteinDetailsProvider,
                 spectrumProvider,
                 spectrumCountingPreferences,
+                nThreads,
                 waitingHandler
         );
 
@@ -727,6 +845,7 @@ public class CLIExportMethods {
      * @param mzidCLIInputBean the user input
      * @param psbdParent a PSDB file parent allowing accessing the information
      * it contains
+     * @param nThreads the number of threads to use
      * @param waitingHandler a waiting handler allowing display of progress and
      * interruption of the export
      *
@@ -736,6 +855,7 @@ public class CLIExportMethods {
     public static void exportMzId(
             MzidCLIInputBean mzidCLIInputBean,
             PsdbParent psbdParent,
+            int nThreads,
             WaitingHandler waitingHandler
     ) throws IOException {
 
@@ -776,7 +896,10 @@ public class CLIExportMethods {
                 mzidCLIInputBean.isGzip()
         );
 
-        mzIdentMLExport.createMzIdentMLFile(mzidCLIInputBean.getMzIdentMLVersion());
+        mzIdentMLExport.createMzIdentMLFile(
+                mzidCLIInputBean.getMzIdentMLVersion(),
+                nThreads
+        );
 
     }
 }
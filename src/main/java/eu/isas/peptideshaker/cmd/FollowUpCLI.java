@@ -6,6 +6,7 @@ import com.compomics.util.experiment.biology.taxonomy.SpeciesFactory;
 import com.compomics.util.waiting.WaitingHandler;
 import com.compomics.util.gui.waiting.waitinghandlers.WaitingHandlerCLIImpl;
 import com.compomics.util.parameters.UtilitiesUserParameters;
+import com.compomics.util.parameters.tools.ProcessingParameters;
 import eu.isas.peptideshaker.PeptideShaker;
 import eu.isas.peptideshaker.utils.PsdbParent;
 import java.io.File;
@@ -471,58 +472,35 @@ public class FollowUpCLI extends PsdbParent {
             }
         }
 
-        // DeepLC export
-        if (followUpCLIInputBean.deepLcExportNeeded()) {
+        // DeepLC, ms2pip, and PSM identifiers exports, done in a single pass over the spectrum matches
+        if (followUpCLIInputBean.deepLcExportNeeded()
+                || followUpCLIInputBean.ms2pipExportNeeded()
+                || followUpCLIInputBean.PSMIdentifiersExportNeeded()) {
 
-            waitingHandler.appendReport("DeepLC export.", true, true);
+            waitingHandler.appendReport("Spectrum matches export.", true, true);
 
-            try {
-
-                CLIExportMethods.exportDeepLC(
-                        followUpCLIInputBean,
-                        identification,
-                        identificationParameters.getSearchParameters().getModificationParameters(),
-                        identificationParameters.getSequenceMatchingParameters(),
-                        sequenceProvider,
-                        msFileHandler,
-                        waitingHandler
-                );
-
-            } catch (Exception e) {
-
-                waitingHandler.appendReport(
-                        "An error occurred while generating the DeepLC export.",
-                        true,
-                        true
-                );
-
-                e.printStackTrace();
-                waitingHandler.setRunCanceled();
+            Integer nThreads = followUpCLIInputBean.getnThreads();
 
+            if (nThreads == null) {
+                nThreads = new ProcessingParameters().getnThreads();
             }
-        }
-
-        // ms2pip export
-        if (followUpCLIInputBean.ms2pipExportNeeded()) {
-
-            waitingHandler.appendReport("ms2pip export.", true, true);
 
             try {
 
-                CLIExportMethods.exportMs2pip(
+                CLIExportMethods.exportSpectrumMatches(
                         followUpCLIInputBean,
                         identification,
-                        identificationParameters.getSearchParameters(),
-                        identificationParameters.getSequenceMatchingParameters(),
+                        identificationParameters,
                         sequenceProvider,
                         msFileHandler,
+                        nThreads,
                         waitingHandler
                 );
 
             } catch (Exception e) {
 
                 waitingHandler.appendReport(
-                        "An error occurred while generating the MS2PIP export.",
+                        "An error occurred while exporting the spectrum matches.",
                         true,
                         true
                 );
@@ -542,6 +520,8 @@ public class FollowUpCLI extends PsdbParent {
 
                 CLIExportMethods.exportPercolator(
                         followUpCLIInputBean,
+                        getProjectParameters().getProjectUniqueName(),
+                        new File(projectDetails.getFastaFile()),
                         identification,
                         identificationParameters.getSearchParameters(),
                         identificationParameters.getSequenceMatchingParameters(),
@@ -601,37 +581,6 @@ public class FollowUpCLI extends PsdbParent {
             }
         }
         
-        // PSM identifiers export
-        if (followUpCLIInputBean.PSMIdentifiersExportNeeded()) {
-
-            waitingHandler.appendReport("PSM identifiers export.", true, true);
-
-            try {
-
-                CLIExportMethods.exportPSMIdentifiers(
-                        followUpCLIInputBean,
-                        identification,
-                        identificationParameters.getSearchParameters().getModificationParameters(),
-                        sequenceProvider,
-                        identificationParameters.getSequenceMatchingParameters(),
-                        msFileHandler,
-                        waitingHandler
-                );
-
-            } catch (Exception e) {
-
-                waitingHandler.appendReport(
-                        "An error occurred while generating the PSM identifiers export.",
-                        true,
-                        true
-                );
-
-                e.printStackTrace();
-                waitingHandler.setRunCanceled();
-
-            }
-        }
-        
         // peaks intensities export
         if (followUpCLIInputBean.peaksIntensitiesObsExportNeeded()) {
 
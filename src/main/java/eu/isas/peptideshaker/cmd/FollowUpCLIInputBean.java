@@ -119,6 +119,10 @@ public class FollowUpCLIInputBean {
      * The file where to write the Percolator training file.
      */
     private File percolatorFile = null;
+    /**
+     * The file where to cache the Percolator features.
+     */
+    private File percolatorFeaturesCacheFile = null;
     /**
      * The file where to write the RT observed and predicted values.
      */
@@ -139,6 +143,10 @@ public class FollowUpCLIInputBean {
      * The models to export ms2pip config files for.
      */
     private String[] ms2pipModels = new String[]{"CID", "HCD", "HCDch2", "CIDch2"};
+    /**
+     * The number of threads to use.
+     */
+    private Integer nThreads = null;
     
     /**
      * The path settings.
@@ -275,6 +283,17 @@ public class FollowUpCLIInputBean {
             }
         }
         
+        if (aLine.hasOption(FollowUpCLIParams.PERCOLATOR_FEATURES_CACHE.id)) {
+            
+            percolatorFeaturesCacheFile = new File(aLine.getOptionValue(FollowUpCLIParams.PERCOLATOR_FEATURES_CACHE.id));
+            
+            if (!percolatorFeaturesCacheFile.getAbsoluteFile().getParentFile().exists()) {
+                
+                throw new IllegalArgumentException("Folder where to write the percolator features cache file '" + percolatorFeaturesCacheFile + "' not found.");
+                
+            }
+        }
+        
         if (aLine.hasOption(FollowUpCLIParams.RT_OBS_PRED.id)){
             
             rtPredsObsFile = new File(aLine.getOptionValue(FollowUpCLIParams.RT_OBS_PRED.id));
@@ -329,6 +348,11 @@ public class FollowUpCLIInputBean {
             
         }
         
+        // n threads
+        if (aLine.hasOption(FollowUpCLIParams.THREADS.id)) {
+            nThreads = Integer.valueOf(aLine.getOptionValue(FollowUpCLIParams.THREADS.id));
+        }
+
         pathSettingsCLIInputBean = new PathSettingsCLIInputBean(aLine);
         
     }
@@ -513,6 +537,16 @@ public class FollowUpCLIInputBean {
     public File getPercolatorFile() {
         return percolatorFile;
     }
+
+    /**
+     * Returns the file where to cache the features for Percolator, null if
+     * not set.
+     * 
+     * @return The file where to cache the features for Percolator.
+     */
+    public File getPercolatorFeaturesCacheFile() {
+        return percolatorFeaturesCacheFile;
+    }
     
     /**
      * Returns the file where to write the RT observed and predicted values.
@@ -770,6 +804,15 @@ public class FollowUpCLIInputBean {
         return psmIdentifiersFile != null;
     }
 
+    /**
+     * Returns the number of threads to use, null if not set.
+     *
+     * @return the number of threads to use
+     */
+    public Integer getnThreads() {
+        return nThreads;
+    }
+
     /**
      * Returns the path settings provided by the user.
      *
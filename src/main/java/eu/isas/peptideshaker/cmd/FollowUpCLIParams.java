@@ -42,6 +42,7 @@ public enum FollowUpCLIParams {
     PERCOLATOR_RT("precolator_rt_file", "Path to the file containing the RT predictions to include in the percolator training file.", true, false),
     PERCOLATOR_FRAGMENTATION("precolator_fragmentation_file", "Path to the file containing the fragmentation predictions to include in the percolator training file.", true, false),
     PERCOLATOR_FILE("precolator_file", "Path to the file where to write the percolator training file. DeepLC and ms2pip files can be provided using the respective options. (Should end with .gz. Existing file will be overwritten.)", true, false),
+    PERCOLATOR_FEATURES_CACHE("percolator_features_cache", "Path to the file where to cache the Percolator features that do not depend on the RT and fragmentation predictions, so that they are reused by later exports of the same project with the same parameters. Complements the 'percolator_cache' option of the PeptideShakerCLI, which caches the features during the project creation.", true, false),
 
     RT_OBS_PRED("rt_obs_pred_file", "Path to the file where to write the observed and predicted RT values for each PSM. (Existing file will be overwritten.)", true, false),
     PEAK_INTS_OBS_PRED("peaks_intensities_file", "Path to the file where to write the observed and predicted peaks intensities for each PSM. (Existing file will be overwritten.)", true, false),
@@ -49,7 +50,9 @@ public enum FollowUpCLIParams {
     
     PERCOLATOR_BENCHMARK_RESULTS("percolator_benchmark_results", "Path to the file containing Percolator results for each PSM. (Existing file will be overwritten.)", true, false),
 
-    PSM_IDENTIFIERS_EXPORT("psm_identifiers_file", "Path to the file where to write the existing identifiers for each PSM. (Existing file will be overwritten.)", true, false);
+    PSM_IDENTIFIERS_EXPORT("psm_identifiers_file", "Path to the file where to write the existing identifiers for each PSM. (Existing file will be overwritten.)", true, false),
+
+    THREADS("threads", "The number of threads to use. Defaults to the number of available CPUs.", true, false);
     
     /**
      * Short Id for the CLI parameter.
@@ -115,6 +118,9 @@ public enum FollowUpCLIParams {
         output += "\n\nOptional Output Parameters:\n";
         output += getOutputOptionsAsString();
 
+        output += "\n\nOptional Processing Parameters:\n\n";
+        output += "-" + String.format(formatter, THREADS.id) + " " + THREADS.description + "\n";
+
         output += "\n\nOptional Temporary Folder:\n\n";
         output += "-" + String.format(formatter, PathSettingsCLIParams.ALL.id) + " " + PathSettingsCLIParams.ALL.description + "\n";
 
@@ -173,6 +179,7 @@ public enum FollowUpCLIParams {
         output += "-" + String.format(formatter, PERCOLATOR_RT.id) + " " + PERCOLATOR_RT.description + "\n";
         output += "-" + String.format(formatter, PERCOLATOR_FRAGMENTATION.id) + " " + PERCOLATOR_FRAGMENTATION.description + "\n";
         output += "-" + String.format(formatter, PERCOLATOR_FILE.id) + " " + PERCOLATOR_FILE.description + "\n";
+        output += "-" + String.format(formatter, PERCOLATOR_FEATURES_CACHE.id) + " " + PERCOLATOR_FEATURES_CACHE.description + "\n";
         
         output += "-" + String.format(formatter, RT_OBS_PRED.id) + " " + RT_OBS_PRED.description + "\n";
         output += "-" + String.format(formatter, PEAK_INTS_OBS_PRED.id) + " " + PEAK_INTS_OBS_PRED.description + "\n";
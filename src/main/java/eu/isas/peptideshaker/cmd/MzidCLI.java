@@ -8,6 +8,7 @@ import com.compomics.util.gui.waiting.waitinghandlers.WaitingHandlerCLIImpl;
 import com.compomics.util.io.IoUtil;
 import com.compomics.util.parameters.UtilitiesUserParameters;
 import com.compomics.util.parameters.identification.IdentificationParameters;
+import com.compomics.util.parameters.tools.ProcessingParameters;
 import com.compomics.util.waiting.WaitingHandler;
 import eu.isas.peptideshaker.PeptideShaker;
 import eu.isas.peptideshaker.utils.PsdbParent;
@@ -177,7 +178,7 @@ public class MzidCLI extends PsdbParent {
         this.getIdentificationParameters().getAnnotationParameters().setIntensityLimit(0.0);
 
         try {
-            CLIExportMethods.exportMzId(mzidCLIInputBean, this, waitingHandler);
+            CLIExportMethods.exportMzId(mzidCLIInputBean, this, new ProcessingParameters().getnThreads(), waitingHandler);
         } catch (Exception e) {
             waitingHandler.appendReport("An error occurred while generating the mzid file.", true, true);
             e.printStackTrace();
@@ -16,7 +16,7 @@ import com.compomics.util.exceptions.ExceptionHandler;
 import com.compomics.util.experiment.ProjectParameters;
 import com.compomics.util.experiment.io.biology.protein.FastaSummary;
 import com.compomics.util.experiment.io.mass_spectrometry.MsFileExporter;
-import com.compomics.util.experiment.io.mass_spectrometry.MsFileHandler;
+import eu.isas.peptideshaker.utils.CachedMsFileHandler;
 import com.compomics.util.waiting.WaitingHandler;
 import com.compomics.util.gui.waiting.waitinghandlers.WaitingDialog;
 import com.compomics.util.gui.waiting.waitinghandlers.WaitingHandlerCLIImpl;
@@ -31,6 +31,7 @@ import com.compomics.util.parameters.identification.advanced.ValidationQcParamet
 import eu.isas.peptideshaker.export.ProjectExport;
 import eu.isas.peptideshaker.utils.PsdbParent;
 import eu.isas.peptideshaker.preferences.ProjectDetails;
+import eu.isas.peptideshaker.processing.ProjectCheckpoint;
 import com.compomics.util.parameters.quantification.spectrum_counting.SpectrumCountingParameters;
 import com.compomics.util.experiment.io.mass_spectrometry.cms.CmsFolder;
 import com.compomics.util.experiment.io.mass_spectrometry.mgf.IndexedMgfReader;
@@ -277,9 +278,32 @@ public class PeptideShakerCLI extends PsdbParent implements Callable {
             // see if the project was created or canceled
             if (waitingHandler.isRunCanceled()) {
 
+                File[] snapshotFiles = PeptideShaker.getMatchesFolder().listFiles(
+                        (folder, fileName) -> fileName.endsWith(ProjectCheckpoint.SNAPSHOT_EXTENSION)
+                );
+
+                if (snapshotFiles != null) {
+
+                    for (File snapshotFile : snapshotFiles) {
+
+                        String snapshotPath = snapshotFile.getAbsolutePath();
+                        String dbPath = snapshotPath.substring(0, snapshotPath.length() - ProjectCheckpoint.SNAPSHOT_EXTENSION.length());
+
+                        waitingHandler.appendReport(
+                                "The project creation can be resumed from its last checkpoint using -"
+                                + PeptideShakerCLIParams.RESUME.id
+                                + " "
+                                + dbPath
+                                + ".",
+                                true,
+                                true
+                        );
+                    }
+                }
+
                 try {
 
-                    closePeptideShaker(identification);
+                    closePeptideShaker(identification, true);
 
                 } catch (Exception e) {
 
@@ -572,54 +596,29 @@ public class PeptideShakerCLI extends PsdbParent implements Callable {
                     }
                 }
 
-                // DeepLC export
-                if (followUpCLIInputBean.deepLcExportNeeded()) {
+                // DeepLC, ms2pip, and PSM identifiers exports, done in a single pass over the spectrum matches
+                if (followUpCLIInputBean.deepLcExportNeeded()
+                        || followUpCLIInputBean.ms2pipExportNeeded()
+                        || followUpCLIInputBean.PSMIdentifiersExportNeeded()) {
 
-                    waitingHandler.appendReport("DeepLC export.", true, true);
+                    waitingHandler.appendReport("Spectrum matches export.", true, true);
 
-                    try {
-
-                        followupAnalysisFiles.addAll(
-                                CLIExportMethods.exportDeepLC(
-                                        followUpCLIInputBean,
-                                        identification,
-                                        identificationParameters.getSearchParameters().getModificationParameters(),
-                                        identificationParameters.getSequenceMatchingParameters(),
-                                        sequenceProvider,
-                                        msFileHandler,
-                                        waitingHandler
-                                )
-                        );
-
-                    } catch (Exception e) {
-
-                        waitingHandler.appendReport(
-                                "An error occurred while generating the proteoforms list.",
-                                true,
-                                true
-                        );
-
-                        e.printStackTrace();
-                        waitingHandler.setRunCanceled();
+                    Integer nThreads = cliInputBean.getnThreads();
 
+                    if (nThreads == null) {
+                        nThreads = new ProcessingParameters().getnThreads();
                     }
-                }
-
-                // ms2pip export
-                if (followUpCLIInputBean.ms2pipExportNeeded()) {
-
-                    waitingHandler.appendReport("ms2pip export.", true, true);
 
                     try {
 
                         followupAnalysisFiles.addAll(
-                                CLIExportMethods.exportMs2pip(
+                                CLIExportMethods.exportSpectrumMatches(
                                         followUpCLIInputBean,
                                         identification,
-                                        identificationParameters.getSearchParameters(),
-                                        identificationParameters.getSequenceMatchingParameters(),
+                                        identificationParameters,
                                         sequenceProvider,
                                         msFileHandler,
+                                        nThreads,
                                         waitingHandler
                                 )
                         );
@@ -627,7 +626,7 @@ public class PeptideShakerCLI extends PsdbParent implements Callable {
                     } catch (Exception e) {
 
                         waitingHandler.appendReport(
-                                "An error occurred while generating the proteoforms list.",
+                                "An error occurred while exporting the spectrum matches. " + getLogFileMessage(),
                                 true,
                                 true
                         );
@@ -680,6 +679,12 @@ public class PeptideShakerCLI extends PsdbParent implements Callable {
 
                         int nSurroundingAAs = 2; //@TODO: this shall not be hard coded //peptideShakerGUI.getDisplayPreferences().getnAASurroundingPeptides()
 
+                        Integer nThreads = cliInputBean.getnThreads();
+
+                        if (nThreads == null) {
+                            nThreads = new ProcessingParameters().getnThreads();
+                        }
+
                         for (String reportType : reportCLIInputBean.getReportTypes()) {
 
                             waitingHandler.appendReport("Exporting " + reportType + ".", true, true);
@@ -701,6 +706,7 @@ public class PeptideShakerCLI extends PsdbParent implements Callable {
                                                 msFileHandler,
                                                 nSurroundingAAs,
                                                 spectrumCountingParameters,
+                                                nThreads,
                                                 waitingHandler
                                         )
                                 );
@@ -773,9 +779,15 @@ public class PeptideShakerCLI extends PsdbParent implements Callable {
                 double currentIntensityLimit = this.getIdentificationParameters().getAnnotationParameters().getAnnotationIntensityLimit();
                 this.getIdentificationParameters().getAnnotationParameters().setIntensityLimit(0.0);
 
+                Integer nThreads = cliInputBean.getnThreads();
+
+                if (nThreads == null) {
+                    nThreads = new ProcessingParameters().getnThreads();
+                }
+
                 try {
 
-                    CLIExportMethods.exportMzId(mzidCLIInputBean, this, waitingHandler);
+                    CLIExportMethods.exportMzId(mzidCLIInputBean, this, nThreads, waitingHandler);
 
                 } catch (Exception e) {
 
@@ -837,6 +849,11 @@ public class PeptideShakerCLI extends PsdbParent implements Callable {
                 }
 
                 File fastaFile = new File(projectDetails.getFastaFile());
+                Integer nThreads = cliInputBean.getnThreads();
+
+                if (nThreads == null) {
+                    nThreads = new ProcessingParameters().getnThreads();
+                }
 
                 try {
 
@@ -849,6 +866,7 @@ public class PeptideShakerCLI extends PsdbParent implements Callable {
                             mzidFile,
                             psdbFile,
                             true,
+                            nThreads,
                             waitingHandler
                     );
 
@@ -1081,7 +1099,7 @@ public class PeptideShakerCLI extends PsdbParent implements Callable {
         projectDetails.setPeptideShakerVersion(new Properties().getVersion());
 
         // set up spectrum provider
-        msFileHandler = new MsFileHandler();
+        msFileHandler = new CachedMsFileHandler();
 
         // get the input files
         ArrayList<File> identificationFilesInput = cliInputBean.getIdFiles();
@@ -1463,17 +1481,42 @@ public class PeptideShakerCLI extends PsdbParent implements Callable {
 
         // create a shaker which will perform the analysis
         PeptideShaker peptideShaker = new PeptideShaker(projectParameters);
+        peptideShaker.setCommitPolicy(cliInputBean.getCommitPolicy());
+        peptideShaker.setCheckpointsEnabled(cliInputBean.isCheckpoint());
+
+        int outcome;
+
+        if (cliInputBean.getResumeDb() != null) {
+
+            // resume an interrupted project creation
+            outcome = peptideShaker.resumeImport(
+                    waitingHandler,
+                    cliInputBean.getResumeDb(),
+                    msFileHandler,
+                    identificationParameters,
+                    projectDetails,
+                    processingParameters,
+                    exceptionHandler
+            );
+
+            if (outcome == 0) {
+                projectDetails = peptideShaker.getResumedProjectDetails();
+            }
+
+        } else {
+
+            // import the files
+            outcome = peptideShaker.importFiles(
+                    waitingHandler,
+                    identificationFiles,
+                    msFileHandler,
+                    identificationParameters,
+                    projectDetails,
+                    processingParameters,
+                    exceptionHandler
+            );
 
-        // import the files
-        int outcome = peptideShaker.importFiles(
-                waitingHandler,
-                identificationFiles,
-                msFileHandler,
-                identificationParameters,
-                projectDetails,
-                processingParameters,
-                exceptionHandler
-        );
+        }
 
         if (outcome == 0) {
 
@@ -1544,6 +1587,29 @@ public class PeptideShakerCLI extends PsdbParent implements Callable {
      */
     public static void closePeptideShaker(Identification identification) throws IOException, SQLException {
 
+        closePeptideShaker(identification, false);
+
+    }
+
+    /**
+     * Close the PeptideShaker instance. Closes file connections and deletes
+     * temporary files.
+     *
+     * @param identification the identification to close
+     * @param keepCheckpoints if true, the database snapshots saved with the
+     * checkpoints of an interrupted project creation are kept in the matches
+     * folder so that the project creation can be resumed
+     *
+     * @throws java.io.IOException exception thrown whenever an error occurred
+     * while writing the object
+     * @throws SQLException exception thrown whenever an error occurred while
+     * closing the database connection
+     */
+    public static void closePeptideShaker(
+            Identification identification,
+            boolean keepCheckpoints
+    ) throws IOException, SQLException {
+
         try {
 
             if (identification != null) {
@@ -1563,6 +1629,12 @@ public class PeptideShakerCLI extends PsdbParent implements Callable {
 
                 for (File currentFile : tempFiles) {
 
+                    if (keepCheckpoints && currentFile.getName().endsWith(ProjectCheckpoint.SNAPSHOT_EXTENSION)) {
+
+                        continue;
+
+                    }
+
                     boolean deleted = IoUtil.deleteDir(currentFile);
 
                     if (!deleted) {
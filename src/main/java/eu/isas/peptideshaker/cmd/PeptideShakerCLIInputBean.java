@@ -3,6 +3,7 @@ package eu.isas.peptideshaker.cmd;
 import com.compomics.software.cli.CommandLineUtils;
 import com.compomics.cli.identification_parameters.IdentificationParametersInputBean;
 import com.compomics.util.parameters.peptide_shaker.ProjectType;
+import eu.isas.peptideshaker.processing.CommitPolicy;
 import org.apache.commons.cli.CommandLine;
 
 import java.io.File;
@@ -96,6 +97,19 @@ public class PeptideShakerCLIInputBean {
      * The Percolator feature cache option.
      */
     private Boolean cachePercolatorFeatures = null;
+    /**
+     * The policy used to commit the database between processing stages.
+     */
+    private CommitPolicy commitPolicy = CommitPolicy.getDefault();
+    /**
+     * Indicates whether checkpoints should be saved during the project
+     * creation.
+     */
+    private boolean checkpoint = false;
+    /**
+     * The database of an interrupted project creation to resume.
+     */
+    private File resumeDb = null;
 
     /**
      * Construct a PeptideShakerCLIInputBean from an Apache CLI instance.
@@ -191,6 +205,45 @@ public class PeptideShakerCLIInputBean {
             }
         }
 
+        // commit policy
+        if (aLine.hasOption(PeptideShakerCLIParams.COMMIT_POLICY.id)) {
+
+            String optionValue = aLine.getOptionValue(PeptideShakerCLIParams.COMMIT_POLICY.id);
+
+            int index;
+
+            try {
+
+                index = Integer.parseInt(optionValue.trim());
+
+            } catch (Exception e) {
+
+                throw new IllegalArgumentException(
+                        "Input for "
+                        + PeptideShakerCLIParams.COMMIT_POLICY.id
+                        + " (" + optionValue
+                        + ") could not be parsed as an integer."
+                );
+
+            }
+
+            commitPolicy = CommitPolicy.getCommitPolicy(index);
+
+        }
+
+        // checkpoints
+        if (aLine.hasOption(PeptideShakerCLIParams.CHECKPOINT.id)) {
+            String option = aLine.getOptionValue(PeptideShakerCLIParams.CHECKPOINT.id);
+            if (option.trim().equals("1")) {
+                checkpoint = true;
+            }
+        }
+
+        // resume an interrupted project creation
+        if (aLine.hasOption(PeptideShakerCLIParams.RESUME.id)) {
+            resumeDb = new File(aLine.getOptionValue(PeptideShakerCLIParams.RESUME.id));
+        }
+
         followUpCLIInputBean = new FollowUpCLIInputBean(aLine);
         reportCLIInputBean = new ReportCLIInputBean(aLine);
         mzidCLIInputBean = new MzidCLIInputBean(aLine);
@@ -223,6 +276,38 @@ public class PeptideShakerCLIInputBean {
         return zipExport;
     }
 
+    /**
+     * Returns the policy used to commit the database between processing
+     * stages.
+     *
+     * @return the policy used to commit the database between processing
+     * stages
+     */
+    public CommitPolicy getCommitPolicy() {
+        return commitPolicy;
+    }
+
+    /**
+     * Returns a boolean indicating whether checkpoints should be saved during
+     * the project creation.
+     *
+     * @return a boolean indicating whether checkpoints should be saved during
+     * the project creation
+     */
+    public boolean isCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Returns the database of an interrupted project creation to resume. Null
+     * if not set.
+     *
+     * @return the database of an interrupted project creation to resume
+     */
+    public File getResumeDb() {
+        return resumeDb;
+    }
+
     /**
      * When exporting the project to a zip file, returns whether mgf file/s
      * should be written apart from it, into the same folder.
@@ -595,6 +680,14 @@ public class PeptideShakerCLIInputBean {
             }
         }
 
+        if (aLine.hasOption(PeptideShakerCLIParams.CHECKPOINT.id)) {
+            String option = aLine.getOptionValue(PeptideShakerCLIParams.CHECKPOINT.id);
+            if (!option.trim().equals("1") && !option.trim().equals("0")) {
+                System.out.println("\nThe value for the \'" + PeptideShakerCLIParams.CHECKPOINT.id + "\' option should be \'0\' or \'1\', \'" + option + "\' found.\n");
+                return false;
+            }
+        }
+
 //        // Check the identification parameters
 //        if (!IdentificationParametersInputBean.isValidStartup(aLine, false)) { // @TODO: ok to add?
 //            return false;
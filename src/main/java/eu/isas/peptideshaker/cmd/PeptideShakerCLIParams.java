@@ -2,6 +2,7 @@ package eu.isas.peptideshaker.cmd;
 
 import com.compomics.cli.identification_parameters.IdentificationParametersCLIParams;
 import com.compomics.util.parameters.peptide_shaker.ProjectType;
+import eu.isas.peptideshaker.processing.CommitPolicy;
 import static eu.isas.peptideshaker.cmd.PathSettingsCLIParams.LOG_FOLDER;
 import static eu.isas.peptideshaker.cmd.PathSettingsCLIParams.USE_LOG_FOLDER;
 import org.apache.commons.cli.Options;
@@ -28,7 +29,10 @@ public enum PeptideShakerCLIParams {
     ZIP("zip", "Exports the entire project as a zip file in the file specified.", false),
     OUTPUT_MGF("output_mgf", "When using zipped output, exports mgf file(s) out of the zip file into the same folder in addition (0: no, 1: yes, default is '0').", false),
     THREADS("threads", "The number of threads to use. Defaults to the number of available CPUs.", false),
-    PERCOLATOR_CACHE("percolator_cache", "Enable the caching of Percolator features (1: true, 0: false, default is '0').", false),
+    PERCOLATOR_CACHE("percolator_cache", "Enable the caching of Percolator features during the project creation (1: true, 0: false, default is '0'). See also 'percolator_features_cache' to cache the features between Percolator exports.", false),
+    COMMIT_POLICY("commit_policy", "The policy used to commit the database between processing stages. " + CommitPolicy.getCommandLineOptions(), false),
+    CHECKPOINT("checkpoint", "Save a checkpoint and a snapshot of the database with every commit between processing stages, allowing to resume an interrupted project creation. Note: the snapshot is a copy of the database (0: no, 1: yes, default is '0').", false),
+    RESUME("resume", "The database of an interrupted project creation. The project creation is resumed from the snapshot saved with the last checkpoint, see the 'checkpoint' option.", false),
     CONFIG_FOLDER("config_folder", "The complete path to the config folder. Default resources\\conf.", false);
 
     /**
@@ -113,6 +117,9 @@ public enum PeptideShakerCLIParams {
         output += "-" + String.format(formatter, GUI.id) + " " + GUI.description + "\n";
         output += "-" + String.format(formatter, THREADS.id) + " " + THREADS.description + "\n";
         output += "-" + String.format(formatter, PERCOLATOR_CACHE.id) + " " + PERCOLATOR_CACHE.description + "\n";
+        output += "-" + String.format(formatter, COMMIT_POLICY.id) + " " + COMMIT_POLICY.description + "\n";
+        output += "-" + String.format(formatter, CHECKPOINT.id) + " " + CHECKPOINT.description + "\n";
+        output += "-" + String.format(formatter, RESUME.id) + " " + RESUME.description + "\n";
 
         output += "\n\nOptional Export Parameters:\n\n";
         output += "-" + String.format(formatter, ZIP.id) + " " + ZIP.description + "\n";
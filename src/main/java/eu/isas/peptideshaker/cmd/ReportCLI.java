@@ -7,6 +7,7 @@ import com.compomics.util.waiting.WaitingHandler;
 import com.compomics.util.gui.waiting.waitinghandlers.WaitingHandlerCLIImpl;
 import com.compomics.util.io.IoUtil;
 import com.compomics.util.parameters.UtilitiesUserParameters;
+import com.compomics.util.parameters.tools.ProcessingParameters;
 import eu.isas.peptideshaker.PeptideShaker;
 import eu.isas.peptideshaker.utils.PsdbParent;
 import java.io.File;
@@ -248,6 +249,12 @@ public class ReportCLI extends PsdbParent {
         // export report(s)
         if (reportCLIInputBean.exportNeeded()) {
 
+            Integer nThreads = reportCLIInputBean.getnThreads();
+
+            if (nThreads == null) {
+                nThreads = new ProcessingParameters().getnThreads();
+            }
+
             for (String reportType : reportCLIInputBean.getReportTypes()) {
 
                 try {
@@ -266,6 +273,7 @@ public class ReportCLI extends PsdbParent {
                             msFileHandler,
                             displayParameters.getnAASurroundingPeptides(),
                             spectrumCountingParameters,
+                            nThreads,
                             waitingHandler
                     );
 
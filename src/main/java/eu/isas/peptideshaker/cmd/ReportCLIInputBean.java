@@ -43,6 +43,10 @@ public class ReportCLIInputBean {
      * The documentation types required by the user.
      */
     private final ArrayList<String> documentationTypes = new ArrayList<>();
+    /**
+     * The number of threads to use.
+     */
+    private Integer nThreads = null;
     /**
      * The path settings.
      */
@@ -99,6 +103,11 @@ public class ReportCLIInputBean {
             gzip = index == 1;
         }
 
+        // n threads
+        if (aLine.hasOption(ReportCLIParams.THREADS.id)) {
+            nThreads = Integer.valueOf(aLine.getOptionValue(ReportCLIParams.THREADS.id));
+        }
+
         pathSettingsCLIInputBean = new PathSettingsCLIInputBean(aLine);
 
     }
@@ -202,6 +211,15 @@ public class ReportCLIInputBean {
         return !documentationTypes.isEmpty();
     }
 
+    /**
+     * Returns the number of threads to use, null if not set.
+     *
+     * @return the number of threads to use
+     */
+    public Integer getnThreads() {
+        return nThreads;
+    }
+
     /**
      * Returns the path settings provided by the user.
      *
@@ -16,7 +16,8 @@ public enum ReportCLIParams {
     EXPORT_PREFIX("report_prefix", "Prefix added to the report file name.", false, true),
     REPORT_TYPE("reports", "Comma separated list of types of report to export. " + PSExportFactory.getInstance().getCommandLineOptions(), false, true),
     DOCUMENTATION_TYPE("documentation", "Comma separated list of types of report documentation to export. " + PSExportFactory.getInstance().getCommandLineOptions(), false, true),
-    GZIP("gzip", "Indicates whether the report should be compressed (0: no, 1: yes, default is 0).", false, true);
+    GZIP("gzip", "Indicates whether the report should be compressed (0: no, 1: yes, default is 0).", false, true),
+    THREADS("threads", "The number of threads to use. Defaults to the number of available CPUs.", false, true);
 
     /**
      * Short Id for the CLI parameter.
@@ -83,6 +84,9 @@ public enum ReportCLIParams {
         output += "\n\nOptional output parameters:\n";
         output += getOutputOptionsAsString();
 
+        output += "\n\nOptional processing parameters:\n\n";
+        output += "-" + String.format(formatter, THREADS.id) + THREADS.description + "\n";
+
         output += "\n\nOptional temporary folder and name prefix:\n\n";
         output += "-" + String.format(formatter, EXPORT_PREFIX.id) + EXPORT_PREFIX.description + "\n";
         output += "-" + String.format(formatter, PathSettingsCLIParams.ALL.id) + PathSettingsCLIParams.ALL.description + "\n";
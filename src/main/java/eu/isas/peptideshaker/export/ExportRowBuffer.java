@@ -0,0 +1,137 @@
+package eu.isas.peptideshaker.export;
+
+import com.compomics.util.io.export.ExportWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Buffer recording the content of rows of a report, so that rows can be
+ * rendered on worker threads and written later by the thread owning the
+ * export writer. The line indexes are not part of the buffer, they are
+ * written when the rows are sent to the writer.
+ *
+ * @author Marc Vaudel
+ */
+public class ExportRowBuffer {
+
+    /**
+     * Marker for a separator.
+     */
+    private static final Object SEPARATOR = new Object();
+    /**
+     * Marker for the end of a row.
+     */
+    private static final Object NEW_LINE = new Object();
+    /**
+     * The content of the buffer, text and markers in the order they were
+     * added.
+     */
+    private final ArrayList<Object> content = new ArrayList<>();
+    /**
+     * The number of rows in the buffer.
+     */
+    private int nRows = 0;
+
+    /**
+     * Constructor.
+     */
+    public ExportRowBuffer() {
+    }
+
+    /**
+     * Appends text to the current row.
+     *
+     * @param text the text
+     */
+    public void write(
+            String text
+    ) {
+
+        content.add(text);
+
+    }
+
+    /**
+     * Appends a separator to the current row.
+     */
+    public void addSeparator() {
+
+        content.add(SEPARATOR);
+
+    }
+
+    /**
+     * Ends the current row.
+     */
+    public void newLine() {
+
+        content.add(NEW_LINE);
+        nRows++;
+
+    }
+
+    /**
+     * Returns the number of rows in the buffer.
+     *
+     * @return the number of rows in the buffer
+     */
+    public int getnRows() {
+
+        return nRows;
+
+    }
+
+    /**
+     * Writes the content of the buffer. If indexes are used, every row is
+     * preceded by the line prefix and the line number, the rows are then
+     * expected to start with a separator.
+     *
+     * @param writer the export writer
+     * @param indexes indicates whether the line indexes should be written
+     * @param linePrefix the line prefix, can be null
+     * @param line the number of the first row
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     */
+    public void writeTo(
+            ExportWriter writer,
+            boolean indexes,
+            String linePrefix,
+            int line
+    ) throws IOException {
+
+        boolean rowStart = true;
+
+        for (Object element : content) {
+
+            if (rowStart && indexes) {
+
+                if (linePrefix != null) {
+
+                    writer.write(linePrefix);
+
+                }
+
+                writer.write(Integer.toString(line++));
+
+            }
+
+            rowStart = false;
+
+            if (element == SEPARATOR) {
+
+                writer.addSeparator();
+
+            } else if (element == NEW_LINE) {
+
+                writer.newLine();
+                rowStart = true;
+
+            } else {
+
+                writer.write((String) element);
+
+            }
+        }
+    }
+}
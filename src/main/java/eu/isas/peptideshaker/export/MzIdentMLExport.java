@@ -53,13 +53,21 @@ import com.compomics.util.io.flat.SimpleFileWriter;
 import java.io.*;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.commons.text.StringEscapeUtils;
 
 /**
@@ -70,10 +78,15 @@ import org.apache.commons.text.StringEscapeUtils;
  */
 public class MzIdentMLExport {
 
+    /**
+     * The number of spectrum matches per chunk when writing the spectrum
+     * identification results in parallel.
+     */
+    public static final int CHUNK_SIZE = 1000;
     /**
      * The writer.
      */
-    private SimpleFileWriter writer;
+    private final TextOutput writer;
     /**
      * Integer keeping track of the number of tabs to include at the beginning
      * of each line.
@@ -139,11 +152,11 @@ public class MzIdentMLExport {
     /**
      * The peptide evidence IDs.
      */
-    private final HashMap<String, String> pepEvidenceIds = new HashMap<>();
+    private final HashMap<String, String> pepEvidenceIds;
     /**
      * The spectrum IDs.
      */
-    private final HashMap<Long, String> spectrumIds = new HashMap<>();
+    private final ConcurrentHashMap<Long, String> spectrumIds;
     /**
      * The identification parameters.
      */
@@ -151,11 +164,11 @@ public class MzIdentMLExport {
     /**
      * Map of PTM indexes: PTM mass to index.
      */
-    private final HashMap<Double, Integer> modIndexMap = new HashMap<>();
+    private final HashMap<Double, Integer> modIndexMap;
     /**
      * Map of the spectrum title to index.
      */
-    private final HashMap<String, HashMap<String, Integer>> spectrumTitleToIndexMap = new HashMap<>(0);
+    private final HashMap<String, HashMap<String, Integer>> spectrumTitleToIndexMap;
     /**
      * If true, the fragment ions will be written to the mzid file.
      */
@@ -217,10 +230,52 @@ public class MzIdentMLExport {
         this.includeProteinSequences = includeProteinSequences;
         this.waitingHandler = waitingHandler;
         this.peptideSpectrumAnnotator = new PeptideSpectrumAnnotator();
+        this.pepEvidenceIds = new HashMap<>();
+        this.spectrumIds = new ConcurrentHashMap<>();
+        this.modIndexMap = new HashMap<>();
+        this.spectrumTitleToIndexMap = new HashMap<>(0);
 
         setSpectrumTitlesMap();
 
-        writer = new SimpleFileWriter(outputFile, gzip);
+        writer = new FileOutput(new SimpleFileWriter(outputFile, gzip));
+
+    }
+
+    /**
+     * Constructor for an export rendering parts of the file of the given
+     * export into the given output. The export shares the content of the
+     * given export but has its own output, tab counter and spectrum annotator,
+     * so that parts of the file can be rendered concurrently.
+     *
+     * @param parentExport the export of the file
+     * @param writer the output
+     */
+    private MzIdentMLExport(
+            MzIdentMLExport parentExport,
+            TextOutput writer
+    ) {
+
+        this.peptideShakerVersion = parentExport.peptideShakerVersion;
+        this.identification = parentExport.identification;
+        this.projectDetails = parentExport.projectDetails;
+        this.identificationParameters = parentExport.identificationParameters;
+        this.sequenceProvider = parentExport.sequenceProvider;
+        this.proteinDetailsProvider = parentExport.proteinDetailsProvider;
+        this.spectrumProvider = parentExport.spectrumProvider;
+        this.modificationProvider = parentExport.modificationProvider;
+        this.fastaSummary = parentExport.fastaSummary;
+        this.identificationFeaturesGenerator = parentExport.identificationFeaturesGenerator;
+        this.includeProteinSequences = parentExport.includeProteinSequences;
+        this.waitingHandler = parentExport.waitingHandler;
+        this.peptideSpectrumAnnotator = new PeptideSpectrumAnnotator();
+        this.pepEvidenceIds = parentExport.pepEvidenceIds;
+        this.spectrumIds = parentExport.spectrumIds;
+        this.modIndexMap = parentExport.modIndexMap;
+        this.spectrumTitleToIndexMap = parentExport.spectrumTitleToIndexMap;
+        this.mzIdentMLVersion = parentExport.mzIdentMLVersion;
+        this.maxNeutralLosses = parentExport.maxNeutralLosses;
+        this.tabCounter = parentExport.tabCounter;
+        this.writer = writer;
 
     }
 
@@ -254,6 +309,26 @@ public class MzIdentMLExport {
             MzIdentMLVersion mzIdentMLVersion
     ) {
 
+        createMzIdentMLFile(
+                mzIdentMLVersion,
+                1
+        );
+
+    }
+
+    /**
+     * Creates the mzIdentML file. If more than one thread is used, the
+     * spectrum identification results are rendered in parallel and written in
+     * the order of the spectrum matches.
+     *
+     * @param mzIdentMLVersion The version of mzIdentML to use.
+     * @param nThreads The number of threads to use.
+     */
+    public void createMzIdentMLFile(
+            MzIdentMLVersion mzIdentMLVersion,
+            int nThreads
+    ) {
+
         this.mzIdentMLVersion = mzIdentMLVersion;
 
         switch (mzIdentMLVersion) {
@@ -312,7 +387,7 @@ public class MzIdentMLExport {
         writeAnalysisProtocol();
 
         // write the data collection
-        writeDataCollection();
+        writeDataCollection(nThreads);
 
         // the experiment end tag
         writeMzIdentMLEndTag();
@@ -1928,8 +2003,12 @@ public class MzIdentMLExport {
 
     /**
      * Write the data collection.
+     *
+     * @param nThreads the number of threads to use
      */
-    private void writeDataCollection() {
+    private void writeDataCollection(
+            int nThreads
+    ) {
 
         writer.write(getCurrentTabSpace());
         writer.write("<DataCollection>");
@@ -1937,7 +2016,7 @@ public class MzIdentMLExport {
         tabCounter++;
 
         writeInputFileDetails();
-        writeDataAnalysis();
+        writeDataAnalysis(nThreads);
 
         tabCounter--;
         writer.write(getCurrentTabSpace());
@@ -1948,8 +2027,12 @@ public class MzIdentMLExport {
 
     /**
      * Write the data analysis section.
+     *
+     * @param nThreads the number of threads to use
      */
-    private void writeDataAnalysis() {
+    private void writeDataAnalysis(
+            int nThreads
+    ) {
 
         writer.write(getCurrentTabSpace());
         writer.write("<AnalysisData>");
@@ -1963,26 +2046,33 @@ public class MzIdentMLExport {
 
         writeFragmentationTable();
 
-        int psmCount = 0;
+        if (nThreads > 1) {
 
-        // iterate the PSMs
-        SpectrumMatchesIterator psmIterator = identification.getSpectrumMatchesIterator(waitingHandler);
+            writeSpectrumIdentificationResults(nThreads);
 
-        SpectrumMatch spectrumMatch;
-        while ((spectrumMatch = psmIterator.next()) != null) {
+        } else {
 
-            writeSpectrumIdentificationResult(
-                    spectrumMatch.getSpectrumFile(),
-                    spectrumMatch.getSpectrumTitle(),
-                    ++psmCount
-            );
+            int psmCount = 0;
 
-            waitingHandler.increasePrimaryProgressCounter();
+            // iterate the PSMs
+            SpectrumMatchesIterator psmIterator = identification.getSpectrumMatchesIterator(waitingHandler);
 
-            if (waitingHandler.isRunCanceled()) {
+            SpectrumMatch spectrumMatch;
+            while ((spectrumMatch = psmIterator.next()) != null) {
 
-                break;
+                writeSpectrumIdentificationResult(
+                        spectrumMatch.getSpectrumFile(),
+                        spectrumMatch.getSpectrumTitle(),
+                        ++psmCount
+                );
+
+                waitingHandler.increasePrimaryProgressCounter();
+
+                if (waitingHandler.isRunCanceled()) {
 
+                    break;
+
+                }
             }
         }
 
@@ -2233,6 +2323,158 @@ public class MzIdentMLExport {
 
     }
 
+    /**
+     * Writes the spectrum identification results of all spectrum matches. The
+     * spectrum matches are read in order and grouped in chunks, the chunks are
+     * rendered in parallel into pooled buffers, and the buffers are written in
+     * the order of the spectrum matches.
+     *
+     * @param nThreads the number of threads to use
+     */
+    private void writeSpectrumIdentificationResults(
+            int nThreads
+    ) {
+
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        ConcurrentLinkedQueue<BlockBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+        ArrayDeque<Future<BlockBuffer>> chunksInProgress = new ArrayDeque<>();
+
+        try {
+
+            SpectrumMatchesIterator psmIterator = identification.getSpectrumMatchesIterator(waitingHandler);
+            int psmCount = 0;
+            boolean lastChunk = false;
+
+            while (!lastChunk && !waitingHandler.isRunCanceled()) {
+
+                ArrayList<SpectrumMatch> chunk = new ArrayList<>(CHUNK_SIZE);
+                SpectrumMatch spectrumMatch;
+
+                while (chunk.size() < CHUNK_SIZE && (spectrumMatch = psmIterator.next()) != null) {
+
+                    chunk.add(spectrumMatch);
+                    waitingHandler.increasePrimaryProgressCounter();
+
+                }
+
+                lastChunk = chunk.size() < CHUNK_SIZE;
+
+                if (!chunk.isEmpty()) {
+
+                    int firstIndex = psmCount + 1;
+                    psmCount += chunk.size();
+
+                    chunksInProgress.add(
+                            pool.submit(
+                                    () -> renderSpectrumIdentificationResults(
+                                            chunk,
+                                            firstIndex,
+                                            bufferPool
+                                    )
+                            )
+                    );
+                }
+
+                while (chunksInProgress.size() >= 2 * nThreads
+                        || (lastChunk && !chunksInProgress.isEmpty())) {
+
+                    BlockBuffer blockBuffer = getChunk(chunksInProgress.poll());
+
+                    blockBuffer.writeTo(writer);
+                    blockBuffer.clear();
+                    bufferPool.offer(blockBuffer);
+
+                }
+            }
+
+        } finally {
+
+            pool.shutdownNow();
+
+        }
+    }
+
+    /**
+     * Renders the spectrum identification results of the given spectrum
+     * matches into a buffer taken from the given pool.
+     *
+     * @param spectrumMatches the spectrum matches
+     * @param firstIndex the index of the first spectrum match
+     * @param bufferPool the pool of buffers
+     *
+     * @return the buffer containing the spectrum identification results
+     */
+    private BlockBuffer renderSpectrumIdentificationResults(
+            ArrayList<SpectrumMatch> spectrumMatches,
+            int firstIndex,
+            ConcurrentLinkedQueue<BlockBuffer> bufferPool
+    ) {
+
+        BlockBuffer blockBuffer = bufferPool.poll();
+
+        if (blockBuffer == null) {
+
+            blockBuffer = new BlockBuffer();
+
+        }
+
+        MzIdentMLExport chunkExport = new MzIdentMLExport(this, blockBuffer);
+        int spectrumMatchIndex = firstIndex;
+
+        for (SpectrumMatch spectrumMatch : spectrumMatches) {
+
+            chunkExport.writeSpectrumIdentificationResult(
+                    spectrumMatch.getSpectrumFile(),
+                    spectrumMatch.getSpectrumTitle(),
+                    spectrumMatchIndex++
+            );
+
+        }
+
+        return blockBuffer;
+
+    }
+
+    /**
+     * Waits for the rendering of a chunk and returns its buffer. Errors thrown
+     * during the rendering are thrown again.
+     *
+     * @param future the future of the chunk
+     *
+     * @return the buffer of the chunk
+     */
+    private static BlockBuffer getChunk(
+            Future<BlockBuffer> future
+    ) {
+
+        try {
+
+            return future.get();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("mzIdentML export interrupted.", e);
+
+        } catch (ExecutionException e) {
+
+            Throwable cause = e.getCause();
+
+            if (cause instanceof Error) {
+
+                throw (Error) cause;
+
+            } else if (cause instanceof RuntimeException) {
+
+                throw (RuntimeException) cause;
+
+            }
+
+            throw new RuntimeException("An error occurred while rendering the spectrum identification results.", cause);
+
+        }
+    }
+
     /**
      * Write a spectrum identification result.
      *
@@ -3555,4 +3797,189 @@ public class MzIdentMLExport {
         writer.newLine();
 
     }
+
+    /**
+     * Destination of the text of the mzIdentML file.
+     */
+    private interface TextOutput {
+
+        /**
+         * Writes the given text.
+         *
+         * @param text the text
+         */
+        public void write(
+                String text
+        );
+
+        /**
+         * Writes the given text and a new line.
+         *
+         * @param line the text
+         */
+        public void writeLine(
+                String line
+        );
+
+        /**
+         * Writes a new line.
+         */
+        public void newLine();
+
+        /**
+         * Closes the output.
+         */
+        public void close();
+
+    }
+
+    /**
+     * Output writing to a file.
+     */
+    private static class FileOutput implements TextOutput {
+
+        /**
+         * The writer of the file.
+         */
+        private final SimpleFileWriter simpleFileWriter;
+
+        /**
+         * Constructor.
+         *
+         * @param simpleFileWriter the writer of the file
+         */
+        public FileOutput(
+                SimpleFileWriter simpleFileWriter
+        ) {
+
+            this.simpleFileWriter = simpleFileWriter;
+
+        }
+
+        @Override
+        public void write(
+                String text
+        ) {
+
+            simpleFileWriter.write(text);
+
+        }
+
+        @Override
+        public void writeLine(
+                String line
+        ) {
+
+            simpleFileWriter.writeLine(line);
+
+        }
+
+        @Override
+        public void newLine() {
+
+            simpleFileWriter.newLine();
+
+        }
+
+        @Override
+        public void close() {
+
+            simpleFileWriter.close();
+
+        }
+    }
+
+    /**
+     * Output buffering the text in memory. The positions of the new lines are
+     * recorded so that the new lines of the destination are used when the
+     * buffer is written.
+     */
+    private static class BlockBuffer implements TextOutput {
+
+        /**
+         * The text buffered.
+         */
+        private final StringBuilder text = new StringBuilder();
+        /**
+         * The positions of the new lines in the text.
+         */
+        private int[] lineEnds = new int[1024];
+        /**
+         * The number of new lines.
+         */
+        private int nLines = 0;
+
+        @Override
+        public void write(
+                String text
+        ) {
+
+            this.text.append(text);
+
+        }
+
+        @Override
+        public void writeLine(
+                String line
+        ) {
+
+            write(line);
+            newLine();
+
+        }
+
+        @Override
+        public void newLine() {
+
+            if (nLines == lineEnds.length) {
+
+                lineEnds = Arrays.copyOf(lineEnds, 2 * lineEnds.length);
+
+            }
+
+            lineEnds[nLines++] = text.length();
+
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /**
+         * Writes the content of the buffer to the given output.
+         *
+         * @param output the output
+         */
+        public void writeTo(
+                TextOutput output
+        ) {
+
+            int start = 0;
+
+            for (int i = 0; i < nLines; i++) {
+
+                int end = lineEnds[i];
+                output.write(text.substring(start, end));
+                output.newLine();
+                start = end;
+
+            }
+
+            if (start < text.length()) {
+
+                output.write(text.substring(start));
+
+            }
+        }
+
+        /**
+         * Clears the buffer so that it can be reused.
+         */
+        public void clear() {
+
+            text.setLength(0);
+            nLines = 0;
+
+        }
+    }
 }
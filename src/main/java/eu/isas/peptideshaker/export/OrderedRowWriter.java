@@ -0,0 +1,300 @@
+package eu.isas.peptideshaker.export;
+
+import com.compomics.util.io.export.ExportWriter;
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Writes the rows of a report section where the rows are rendered in
+ * parallel. The matches are read in order on the calling thread and grouped
+ * in chunks, the chunks are rendered on worker threads, and the rendered rows
+ * are written by the calling thread in the order of the matches. Sections
+ * with less than one chunk of matches are rendered on the calling thread.
+ *
+ * @author Marc Vaudel
+ */
+public class OrderedRowWriter {
+
+    /**
+     * The number of matches per chunk.
+     */
+    public static final int CHUNK_SIZE = 1000;
+    /**
+     * The export writer.
+     */
+    private final ExportWriter writer;
+    /**
+     * Indicates whether the line indexes should be written.
+     */
+    private final boolean indexes;
+    /**
+     * The line prefix, can be null.
+     */
+    private final String linePrefix;
+    /**
+     * The number of threads to use.
+     */
+    private final int nThreads;
+    /**
+     * The number of the next line.
+     */
+    private int line = 1;
+
+    /**
+     * Constructor using as many threads as processors available.
+     *
+     * @param writer the export writer
+     * @param indexes indicates whether the line indexes should be written
+     * @param linePrefix the line prefix, can be null
+     */
+    public OrderedRowWriter(
+            ExportWriter writer,
+            boolean indexes,
+            String linePrefix
+    ) {
+
+        this(
+                writer,
+                indexes,
+                linePrefix,
+                Runtime.getRuntime().availableProcessors()
+        );
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param writer the export writer
+     * @param indexes indicates whether the line indexes should be written
+     * @param linePrefix the line prefix, can be null
+     * @param nThreads the number of threads to use
+     */
+    public OrderedRowWriter(
+            ExportWriter writer,
+            boolean indexes,
+            String linePrefix,
+            int nThreads
+    ) {
+
+        this.writer = writer;
+        this.indexes = indexes;
+        this.linePrefix = linePrefix;
+        this.nThreads = Math.max(1, nThreads);
+
+    }
+
+    /**
+     * Renders and writes the rows of the given matches. The renderer is called
+     * concurrently and returns the rows of a match, or null if the match is
+     * not exported. If indexes are used, the rendered rows must start with a
+     * separator.
+     *
+     * @param <T> the type of match
+     * @param matches supplier of the matches in the order of the export,
+     * returns null when no match is left
+     * @param renderer the renderer of the rows of a match
+     * @param waitingHandler the waiting handler, can be null
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the rows
+     */
+    public <T> void writeRows(
+            Supplier<T> matches,
+            Function<T, ExportRowBuffer> renderer,
+            WaitingHandler waitingHandler
+    ) throws IOException {
+
+        ExecutorService pool = null;
+        ArrayDeque<Future<ArrayList<ExportRowBuffer>>> chunksInProgress = new ArrayDeque<>();
+
+        try {
+
+            while (true) {
+
+                ArrayList<T> chunk = new ArrayList<>(CHUNK_SIZE);
+                T match;
+
+                while (chunk.size() < CHUNK_SIZE && (match = matches.get()) != null) {
+
+                    if (waitingHandler != null) {
+
+                        if (waitingHandler.isRunCanceled()) {
+
+                            return;
+
+                        }
+
+                        waitingHandler.increaseSecondaryProgressCounter();
+
+                    }
+
+                    chunk.add(match);
+
+                }
+
+                if (chunk.isEmpty()) {
+
+                    break;
+
+                }
+
+                boolean lastChunk = chunk.size() < CHUNK_SIZE;
+
+                if (pool == null && lastChunk) {
+
+                    writeChunk(renderChunk(chunk, renderer));
+                    break;
+
+                }
+
+                if (pool == null) {
+
+                    pool = Executors.newFixedThreadPool(nThreads);
+
+                }
+
+                chunksInProgress.add(pool.submit(() -> renderChunk(chunk, renderer)));
+
+                while (chunksInProgress.size() >= 2 * nThreads) {
+
+                    writeChunk(getChunk(chunksInProgress.poll()));
+
+                }
+
+                if (lastChunk) {
+
+                    break;
+
+                }
+            }
+
+            while (!chunksInProgress.isEmpty()) {
+
+                if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+
+                    return;
+
+                }
+
+                writeChunk(getChunk(chunksInProgress.poll()));
+
+            }
+
+        } finally {
+
+            if (pool != null) {
+
+                pool.shutdownNow();
+
+            }
+        }
+    }
+
+    /**
+     * Renders the rows of the matches of a chunk.
+     *
+     * @param <T> the type of match
+     * @param chunk the matches of the chunk
+     * @param renderer the renderer of the rows of a match
+     *
+     * @return the rows of the chunk
+     */
+    private static <T> ArrayList<ExportRowBuffer> renderChunk(
+            ArrayList<T> chunk,
+            Function<T, ExportRowBuffer> renderer
+    ) {
+
+        ArrayList<ExportRowBuffer> rows = new ArrayList<>(chunk.size());
+
+        for (T match : chunk) {
+
+            ExportRowBuffer row = renderer.apply(match);
+
+            if (row != null) {
+
+                rows.add(row);
+
+            }
+        }
+
+        return rows;
+
+    }
+
+    /**
+     * Writes the rows of a chunk.
+     *
+     * @param rows the rows of the chunk
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the rows
+     */
+    private void writeChunk(
+            ArrayList<ExportRowBuffer> rows
+    ) throws IOException {
+
+        for (ExportRowBuffer row : rows) {
+
+            row.writeTo(
+                    writer,
+                    indexes,
+                    linePrefix,
+                    line
+            );
+
+            line += row.getnRows();
+
+        }
+    }
+
+    /**
+     * Waits for the rendering of a chunk and returns its rows. Errors thrown
+     * during the rendering are thrown again.
+     *
+     * @param future the future of the chunk
+     *
+     * @return the rows of the chunk
+     *
+     * @throws IOException exception thrown if the rendering was interrupted
+     */
+    private static ArrayList<ExportRowBuffer> getChunk(
+            Future<ArrayList<ExportRowBuffer>> future
+    ) throws IOException {
+
+        try {
+
+            return future.get();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted.", e);
+
+        } catch (ExecutionException e) {
+
+            Throwable cause = e.getCause();
+
+            if (cause instanceof Error) {
+
+                throw (Error) cause;
+
+            } else if (cause instanceof RuntimeException) {
+
+                throw (RuntimeException) cause;
+
+            }
+
+            throw new IOException("An error occurred while rendering the export.", cause);
+
+        }
+    }
+}
@@ -331,6 +331,8 @@ public class PSExportFactory implements ExportFactory {
      * @param spectrumProvider the spectrum provider
      * @param spectrumCountingPreferences the spectrum counting preferences
      * (mandatory for the spectrum counting section)
+     * @param nThreads the number of threads to use to render the rows of the
+     * Protein, Peptide and PSM sections
      * @param waitingHandler the waiting handler
      *
      * @throws IOException exception thrown whenever an IO exception occurred
@@ -355,6 +357,7 @@ public class PSExportFactory implements ExportFactory {
             ProteinDetailsProvider proteinDetailsProvider,
             SpectrumProvider spectrumProvider,
             SpectrumCountingParameters spectrumCountingPreferences,
+            int nThreads,
             WaitingHandler waitingHandler
     )
             throws IOException {
@@ -439,6 +442,7 @@ public class PSExportFactory implements ExportFactory {
                             "",
                             exportScheme.isValidatedOnly(),
                             exportScheme.isIncludeDecoy(),
+                            nThreads,
                             waitingHandler
                     );
                     break;
@@ -478,6 +482,7 @@ public class PSExportFactory implements ExportFactory {
                             nSurroundingAA,
                             exportScheme.isValidatedOnly(),
                             exportScheme.isIncludeDecoy(),
+                            nThreads,
                             waitingHandler
                     );
                     break;
@@ -502,6 +507,7 @@ public class PSExportFactory implements ExportFactory {
                             nSurroundingAA,
                             exportScheme.isValidatedOnly(),
                             exportScheme.isIncludeDecoy(),
+                            nThreads,
                             waitingHandler
                     );
                     break;
@@ -524,6 +530,7 @@ public class PSExportFactory implements ExportFactory {
                             psmKeys,
                             "",
                             nSurroundingAA,
+                            nThreads,
                             waitingHandler
                     );
                     break;
@@ -3,14 +3,11 @@ package eu.isas.peptideshaker.export;
 import com.compomics.util.experiment.io.mass_spectrometry.cms.CmsFileUtils;
 import com.compomics.util.experiment.mass_spectrometry.SpectrumProvider;
 import com.compomics.util.io.IoUtil;
-import com.compomics.util.io.compression.ZipUtils;
 import com.compomics.util.waiting.WaitingHandler;
-import java.io.BufferedOutputStream;
+import eu.isas.peptideshaker.utils.ParallelZipWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.zip.ZipOutputStream;
 
 /**
  * This class takes care of exporting the entire project as a single file.
@@ -29,7 +26,8 @@ public class ProjectExport {
     public final static String DEFAULT_REPORTS_FOLDER = "reports";
 
     /**
-     * Exports the project as zip file.
+     * Exports the project as zip file. The files are compressed in parallel
+     * using the given number of threads.
      *
      * @param zipFile the destination file
      * @param fastaFile path to the FASTA file
@@ -37,6 +35,7 @@ public class ProjectExport {
      * @param psdbFile the psdb file
      * @param moveFilesIntoZip if true, the files will be moved into the zip
      * file, i.e. not just copied
+     * @param nThreads the number of threads to use for the compression
      * @param waitingHandler a waiting handler to display progress to the user
      * and cancel the process (can be null)
      *
@@ -49,6 +48,7 @@ public class ProjectExport {
             SpectrumProvider spectrumProvider,
             File psdbFile,
             boolean moveFilesIntoZip,
+            int nThreads,
             WaitingHandler waitingHandler
     ) throws IOException {
 
@@ -61,12 +61,14 @@ public class ProjectExport {
                 null,
                 psdbFile,
                 moveFilesIntoZip,
+                nThreads,
                 waitingHandler
         );
     }
 
     /**
-     * Exports the project as zip file adding reports to it.
+     * Exports the project as zip file adding reports to it. The files are
+     * compressed in parallel using the given number of threads.
      *
      * @param zipFile the destination file
      * @param fastaFile path to the FASTA file
@@ -77,6 +79,7 @@ public class ProjectExport {
      * @param psdbFile the psdb file
      * @param moveFilesIntoZip if true, the files will be moved into the zip
      * file, i.e. not just copied
+     * @param nThreads the number of threads to use for the compression
      * @param waitingHandler a waiting handler to display progress to the user
      * and cancel the process (can be null)
      *
@@ -92,6 +95,7 @@ public class ProjectExport {
             File mzidFile,
             File psdbFile,
             boolean moveFilesIntoZip,
+            int nThreads,
             WaitingHandler waitingHandler
     ) throws IOException {
 
@@ -104,7 +108,10 @@ public class ProjectExport {
 
         String fastaExtension = IoUtil.getExtension(fastaFile);
         File FMFile = new File(fastaFile.getAbsolutePath().replace(fastaExtension, ".fmi"));
-        dataFiles.add(FMFile.getAbsolutePath());
+
+        if (FMFile.exists()) {
+            dataFiles.add(FMFile.getAbsolutePath());
+        }
 
         if (waitingHandler != null) {
             waitingHandler.setWaitingText("Getting Spectrum Files. Please Wait...");
@@ -142,14 +149,10 @@ public class ProjectExport {
         }
 
         // zip the project
-        try (
-                 ZipOutputStream out = new ZipOutputStream(
-                        new BufferedOutputStream(
-                                new FileOutputStream(
-                                        zipFile
-                                )
-                        )
-                )) {
+        try (ParallelZipWriter out = new ParallelZipWriter(zipFile, nThreads)) {
+
+            // the files to delete once the zip file is in place if they are moved into the zip
+            ArrayList<File> zippedFiles = new ArrayList<>();
 
             // get the total uncompressed size
             long totalUncompressedSize = 0;
@@ -185,7 +188,7 @@ public class ProjectExport {
             if (reportFiles != null && reportFiles.size() > 0) {
 
                 // create the reports folder in the zip file
-                ZipUtils.addFolderToZip(DEFAULT_REPORTS_FOLDER, out);
+                out.addFolder(DEFAULT_REPORTS_FOLDER);
 
                 // move the files to the reports folder
                 for (File reportFile : reportFiles) {
@@ -202,26 +205,21 @@ public class ProjectExport {
 
                     }
 
-                    ZipUtils.addFileToZip(
+                    out.addFile(
                             DEFAULT_REPORTS_FOLDER,
                             reportFile,
-                            out,
                             waitingHandler,
                             totalUncompressedSize
                     );
 
-                    if (moveFilesIntoZip) {
-
-                        reportFile.delete();
-
-                    }
+                    zippedFiles.add(reportFile);
                 }
             }
 
             if (followupAnalysisFiles != null && followupAnalysisFiles.size() > 0) {
                 if (reportFiles == null || reportFiles.isEmpty()) {
                     // create the reports folder in the zip file if it was not previously created
-                    ZipUtils.addFolderToZip(DEFAULT_REPORTS_FOLDER, out);
+                    out.addFolder(DEFAULT_REPORTS_FOLDER);
                 }
 
                 // move the files to the reports folder
@@ -234,26 +232,20 @@ public class ProjectExport {
                         waitingHandler.increaseSecondaryProgressCounter();
                     }
 
-                    ZipUtils.addFileToZip(
+                    out.addFile(
                             DEFAULT_REPORTS_FOLDER,
                             followupAnalysisFile,
-                            out,
                             waitingHandler,
                             totalUncompressedSize
                     );
 
-                    if (moveFilesIntoZip) {
-                        followupAnalysisFile.delete();
-                    }
+                    zippedFiles.add(followupAnalysisFile);
                 }
             }
 
             // add the data
             // create the data folder in the zip file
-            ZipUtils.addFolderToZip(
-                    DEFAULT_DATA_FOLDER,
-                    out
-            );
+            out.addFolder(DEFAULT_DATA_FOLDER);
 
             // add the files to the data folder
             for (String dataFilePath : dataFiles) {
@@ -266,10 +258,9 @@ public class ProjectExport {
                 }
 
                 File dataFile = new File(dataFilePath);
-                ZipUtils.addFileToZip(
+                out.addFile(
                         DEFAULT_DATA_FOLDER,
                         dataFile,
-                        out,
                         waitingHandler,
                         totalUncompressedSize
                 );
@@ -285,27 +276,30 @@ public class ProjectExport {
                 }
 
                 // move the mzid file to the zip folder
-                ZipUtils.addFileToZip(
+                out.addFile(
                         mzidFile,
-                        out,
                         waitingHandler,
                         totalUncompressedSize
                 );
-                if (moveFilesIntoZip) {
-                    mzidFile.delete();
-                }
+                zippedFiles.add(mzidFile);
             }
 
             // move the psdb file to the zip
             if (psdbFile != null) {
-                ZipUtils.addFileToZip(
+                out.addFile(
                         psdbFile,
-                        out,
                         waitingHandler,
                         totalUncompressedSize
                 );
-                if (moveFilesIntoZip) {
-                    psdbFile.delete();
+                zippedFiles.add(psdbFile);
+            }
+
+            // write the central directory and move the zip file into place, the zip file is discarded if not finished
+            out.finish();
+
+            if (moveFilesIntoZip) {
+                for (File zippedFile : zippedFiles) {
+                    zippedFile.delete();
                 }
             }
 
@@ -14,6 +14,7 @@ import eu.isas.peptideshaker.parameters.PeptideShakerParameters;
 import eu.isas.peptideshaker.preferences.ProjectDetails;
 import com.compomics.util.parameters.quantification.spectrum_counting.SpectrumCountingParameters;
 import eu.isas.peptideshaker.scoring.PSMaps;
+import eu.isas.peptideshaker.utils.FmIndexSidecar;
 import com.compomics.util.experiment.identification.features.IdentificationFeaturesCache;
 import com.compomics.util.experiment.identification.peptide_shaker.Metrics;
 import com.compomics.util.experiment.identification.protein_inference.fm_index.FMIndex;
@@ -128,7 +129,14 @@ public class PsdbExporter {
                 identification.updateObject(PeptideShakerParameters.KEY, peptideShakerParameters);
 
                 identification.getObjectsDB().lock(waitingHandler);
-                IoUtil.copyFile(identification.getObjectsDB().getDbFile(), destinationFile);
+
+                // the database can be opened in place, in which case it is saved by the lock
+                File dbFile = identification.getObjectsDB().getDbFile();
+
+                if (!dbFile.getCanonicalFile().equals(destinationFile.getCanonicalFile())) {
+                    IoUtil.copyFile(dbFile, destinationFile);
+                }
+
                 // @TODO: re-add when the zipping works
 //                GzUtils.gzFile(
 //                        identification.getObjectsDB().getDbFile(),
@@ -142,6 +150,19 @@ public class PsdbExporter {
                 peptideShakerParameters.setProteinDetailsProvider(tmpProteinDetailsProvider);
                 identification.updateObject(PeptideShakerParameters.KEY, peptideShakerParameters);
 
+                // save the FM index next to the psdb file so that it does not need to be rebuilt when opening the project
+                if (sequenceProvider instanceof FMIndex) {
+
+                    saveFmIndex(
+                            destinationFile,
+                            (FMIndex) sequenceProvider,
+                            projectDetails,
+                            identificationParameters,
+                            waitingHandler
+                    );
+
+                }
+
             }
 
         } finally {
@@ -151,4 +172,58 @@ public class PsdbExporter {
 
         }
     }
+
+    /**
+     * Saves the given FM index in the sidecar file of the given psdb file,
+     * unless the sidecar file already contains an index built from the same
+     * FASTA file and parameters. The sidecar file is optional, errors are
+     * therefore only reported: the index will be built again when opening the
+     * project.
+     *
+     * @param psdbFile the psdb file
+     * @param fmIndex the FM index
+     * @param projectDetails the project details
+     * @param identificationParameters the identification parameters
+     * @param waitingHandler a waiting handler used to report errors, can be
+     * null
+     */
+    private static void saveFmIndex(
+            File psdbFile,
+            FMIndex fmIndex,
+            ProjectDetails projectDetails,
+            IdentificationParameters identificationParameters,
+            WaitingHandler waitingHandler
+    ) {
+
+        File fastaFile = new File(projectDetails.getFastaFile());
+
+        if (!fastaFile.exists()) {
+            return;
+        }
+
+        try {
+
+            String key = FmIndexSidecar.getKey(
+                    fastaFile,
+                    identificationParameters.getFastaParameters(),
+                    identificationParameters.getPeptideVariantsParameters(),
+                    identificationParameters.getSearchParameters()
+            );
+            File sidecarFile = FmIndexSidecar.getSidecarFile(psdbFile);
+
+            if (!key.equals(FmIndexSidecar.readKey(sidecarFile))) {
+
+                FmIndexSidecar.write(sidecarFile, key, fmIndex);
+
+            }
+
+        } catch (IOException e) {
+
+            // the folder of the project is not writable, the index will be built again at the next opening
+            if (waitingHandler != null) {
+                waitingHandler.appendReport("The protein index could not be saved next to the project: " + e.getMessage(), true, true);
+            }
+
+        }
+    }
 }
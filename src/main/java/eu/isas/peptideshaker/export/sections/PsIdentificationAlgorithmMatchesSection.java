@@ -32,6 +32,8 @@ import com.compomics.util.io.export.features.peptideshaker.PsIdentificationAlgor
 import com.compomics.util.experiment.identification.peptide_shaker.PSParameter;
 import com.compomics.util.experiment.identification.features.IdentificationFeaturesGenerator;
 import com.compomics.util.experiment.mass_spectrometry.SpectrumProvider;
+import eu.isas.peptideshaker.export.ExportRowBuffer;
+import eu.isas.peptideshaker.export.OrderedRowWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -73,9 +75,10 @@ public class PsIdentificationAlgorithmMatchesSection {
      */
     private final ExportWriter writer;
     /**
-     * A peptide spectrum annotator.
+     * A peptide spectrum annotator per thread, the rows being possibly rendered
+     * concurrently.
      */
-    private static final PeptideSpectrumAnnotator peptideSpectrumAnnotator = new PeptideSpectrumAnnotator();
+    private static final ThreadLocal<PeptideSpectrumAnnotator> peptideSpectrumAnnotator = ThreadLocal.withInitial(PeptideSpectrumAnnotator::new);
 
     /**
      * Constructor.
@@ -145,6 +148,7 @@ public class PsIdentificationAlgorithmMatchesSection {
      * @param keys The keys of the spectrum matches to output.
      * @param linePrefix The line prefix.
      * @param nSurroundingAA The number of surrounding amino acids to export.
+     * @param nThreads The number of threads to use.
      * @param waitingHandler The waiting handler.
      *
      * @throws IOException exception thrown whenever an error occurred while
@@ -160,6 +164,7 @@ public class PsIdentificationAlgorithmMatchesSection {
             long[] keys,
             String linePrefix,
             int nSurroundingAA,
+            int nThreads,
             WaitingHandler waitingHandler
     ) throws IOException {
 
@@ -184,6 +189,36 @@ public class PsIdentificationAlgorithmMatchesSection {
 
         SpectrumMatchesIterator psmIterator = identification.getSpectrumMatchesIterator(waitingHandler);
 
+        if (fragmentSection == null) {
+
+            OrderedRowWriter orderedRowWriter = new OrderedRowWriter(
+                    writer,
+                    indexes,
+                    linePrefix,
+                    nThreads
+            );
+
+            orderedRowWriter.writeRows(
+                    psmIterator::next,
+                    spectrumMatch -> getRows(
+                            identification,
+                            identificationFeaturesGenerator,
+                            sequenceProvider,
+                            proteinDetailsProvider,
+                            spectrumProvider,
+                            identificationParameters,
+                            spectrumMatch,
+                            linePrefix,
+                            nSurroundingAA,
+                            waitingHandler
+                    ),
+                    waitingHandler
+            );
+
+            return;
+
+        }
+
         SpectrumMatch spectrumMatch;
         while ((spectrumMatch = psmIterator.next()) != null) {
 
@@ -379,6 +414,153 @@ public class PsIdentificationAlgorithmMatchesSection {
         }
     }
 
+    /**
+     * Renders the rows of the assumptions of the given spectrum match without
+     * line index. If indexes are used, the rows start with a separator. This
+     * method can be called concurrently.
+     *
+     * @param identification the identification of the project
+     * @param identificationFeaturesGenerator the identification features
+     * generator of the project
+     * @param sequenceProvider the sequence provider
+     * @param proteinDetailsProvider the protein details provider
+     * @param spectrumProvider the spectrum provider
+     * @param identificationParameters the identification parameters
+     * @param spectrumMatch the spectrum match
+     * @param linePrefix the line prefix
+     * @param nSurroundingAA the number of surrounding amino acids to export
+     * @param waitingHandler the waiting handler
+     *
+     * @return the rows of the assumptions of the spectrum match
+     */
+    private ExportRowBuffer getRows(
+            Identification identification,
+            IdentificationFeaturesGenerator identificationFeaturesGenerator,
+            SequenceProvider sequenceProvider,
+            ProteinDetailsProvider proteinDetailsProvider,
+            SpectrumProvider spectrumProvider,
+            IdentificationParameters identificationParameters,
+            SpectrumMatch spectrumMatch,
+            String linePrefix,
+            int nSurroundingAA,
+            WaitingHandler waitingHandler
+    ) {
+
+        ExportRowBuffer rows = new ExportRowBuffer();
+        String spectrumFile = spectrumMatch.getSpectrumFile();
+        String spectrumTitle = spectrumMatch.getSpectrumTitle();
+
+        HashMap<Integer, TreeMap<Double, ArrayList<PeptideAssumption>>> peptideAssumptions = spectrumMatch.getPeptideAssumptionsMap();
+
+        for (int advocateId : peptideAssumptions.keySet()) {
+
+            TreeMap<Double, ArrayList<PeptideAssumption>> advocateAssumptions = peptideAssumptions.get(advocateId);
+            ArrayList<Double> scores = new ArrayList<>(advocateAssumptions.keySet());
+            Collections.sort(scores);
+
+            for (double score : scores) {
+
+                for (PeptideAssumption peptideAssumption : advocateAssumptions.get(score)) {
+
+                    boolean firstFeature = !indexes;
+                    PSParameter psParameter = (PSParameter) peptideAssumption.getUrParam(PSParameter.dummy);
+
+                    for (PsIdentificationAlgorithmMatchesFeature identificationAlgorithmMatchesFeature : matchExportFeatures) {
+
+                        if (!firstFeature) {
+
+                            rows.addSeparator();
+
+                        } else {
+
+                            firstFeature = false;
+
+                        }
+
+                        rows.write(
+                                getPeptideAssumptionFeature(
+                                        identification,
+                                        identificationFeaturesGenerator,
+                                        sequenceProvider,
+                                        proteinDetailsProvider,
+                                        spectrumProvider,
+                                        identificationParameters,
+                                        linePrefix,
+                                        nSurroundingAA,
+                                        peptideAssumption,
+                                        spectrumFile,
+                                        spectrumTitle,
+                                        psParameter,
+                                        identificationAlgorithmMatchesFeature,
+                                        waitingHandler
+                                )
+                        );
+
+                    }
+
+                    rows.addSeparator();
+                    rows.newLine();
+
+                }
+            }
+        }
+
+        HashMap<Integer, TreeMap<Double, ArrayList<TagAssumption>>> tagAssumptions = spectrumMatch.getTagAssumptionsMap();
+
+        for (int advocateId : tagAssumptions.keySet()) {
+
+            TreeMap<Double, ArrayList<TagAssumption>> advocateAssumptions = tagAssumptions.get(advocateId);
+            ArrayList<Double> scores = new ArrayList<>(advocateAssumptions.keySet());
+            Collections.sort(scores);
+
+            for (double score : scores) {
+
+                for (TagAssumption tagAssumption : advocateAssumptions.get(score)) {
+
+                    boolean firstFeature = !indexes;
+                    PSParameter psParameter = (PSParameter) tagAssumption.getUrParam(PSParameter.dummy);
+
+                    for (PsIdentificationAlgorithmMatchesFeature identificationAlgorithmMatchesFeature : matchExportFeatures) {
+
+                        if (!firstFeature) {
+
+                            rows.addSeparator();
+
+                        } else {
+
+                            firstFeature = false;
+
+                        }
+
+                        rows.write(
+                                getTagAssumptionFeature(
+                                        identification,
+                                        identificationFeaturesGenerator,
+                                        spectrumProvider,
+                                        identificationParameters,
+                                        linePrefix,
+                                        tagAssumption,
+                                        spectrumFile,
+                                        spectrumTitle,
+                                        psParameter,
+                                        identificationAlgorithmMatchesFeature,
+                                        waitingHandler
+                                )
+                        );
+
+                    }
+
+                    rows.addSeparator();
+                    rows.newLine();
+
+                }
+            }
+        }
+
+        return rows;
+
+    }
+
     /**
      * Returns a map of the modifications in a peptide. Modification name &gt;
      * sites.
@@ -635,9 +817,9 @@ public class PsIdentificationAlgorithmMatchesSection {
                         modificationParameters,
                         sequenceProvider,
                         modificationSequenceMatchingParameters,
-                        peptideSpectrumAnnotator
+                        peptideSpectrumAnnotator.get()
                 );
-                IonMatch[] matches = peptideSpectrumAnnotator.getSpectrumAnnotation(annotationParameters,
+                IonMatch[] matches = peptideSpectrumAnnotator.get().getSpectrumAnnotation(annotationParameters,
                         specificAnnotationParameters,
                         spectrumFile,
                         spectrumTitle,
@@ -825,9 +1007,9 @@ public class PsIdentificationAlgorithmMatchesSection {
                         modificationParameters,
                         sequenceProvider,
                         modificationSequenceMatchingParameters,
-                        peptideSpectrumAnnotator
+                        peptideSpectrumAnnotator.get()
                 );
-                matches = peptideSpectrumAnnotator.getSpectrumAnnotation(annotationParameters,
+                matches = peptideSpectrumAnnotator.get().getSpectrumAnnotation(annotationParameters,
                         specificAnnotationParameters,
                         spectrumFile,
                         spectrumTitle,
@@ -863,9 +1045,9 @@ public class PsIdentificationAlgorithmMatchesSection {
                         modificationParameters,
                         sequenceProvider,
                         modificationSequenceMatchingParameters,
-                        peptideSpectrumAnnotator
+                        peptideSpectrumAnnotator.get()
                 );
-                matches = peptideSpectrumAnnotator.getSpectrumAnnotation(annotationParameters,
+                matches = peptideSpectrumAnnotator.get().getSpectrumAnnotation(annotationParameters,
                         specificAnnotationParameters,
                         spectrumFile,
                         spectrumTitle,
@@ -968,9 +1150,9 @@ public class PsIdentificationAlgorithmMatchesSection {
                         modificationParameters,
                         sequenceProvider,
                         modificationSequenceMatchingParameters,
-                        peptideSpectrumAnnotator
+                        peptideSpectrumAnnotator.get()
                 );
-                matches = peptideSpectrumAnnotator.getSpectrumAnnotation(annotationParameters,
+                matches = peptideSpectrumAnnotator.get().getSpectrumAnnotation(annotationParameters,
                         specificAnnotationParameters,
                         spectrumFile,
                         spectrumTitle,
@@ -1061,9 +1243,9 @@ public class PsIdentificationAlgorithmMatchesSection {
                         modificationParameters,
                         sequenceProvider,
                         modificationSequenceMatchingParameters,
-                        peptideSpectrumAnnotator
+                        peptideSpectrumAnnotator.get()
                 );
-                matches = peptideSpectrumAnnotator.getSpectrumAnnotation(annotationParameters,
+                matches = peptideSpectrumAnnotator.get().getSpectrumAnnotation(annotationParameters,
                         specificAnnotationParameters,
                         spectrumFile,
                         spectrumTitle,
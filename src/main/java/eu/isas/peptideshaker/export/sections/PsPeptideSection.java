@@ -24,7 +24,9 @@ import com.compomics.util.experiment.identification.validation.MatchValidationLe
 import com.compomics.util.experiment.identification.peptide_shaker.ModificationScoring;
 import com.compomics.util.experiment.identification.features.IdentificationFeaturesGenerator;
 import com.compomics.util.experiment.mass_spectrometry.SpectrumProvider;
+import eu.isas.peptideshaker.export.ExportRowBuffer;
 import eu.isas.peptideshaker.export.ExportUtils;
+import eu.isas.peptideshaker.export.OrderedRowWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -133,6 +135,7 @@ public class PsPeptideSection {
      * @param nSurroundingAA The number of surrounding amino acids to export.
      * @param validatedOnly Whether only validated matches should be exported.
      * @param decoys Whether decoy matches should be exported as well.
+     * @param nThreads The number of threads to use.
      * @param waitingHandler The waiting handler.
      *
      * @throws java.io.IOException exception thrown if an error occurred while
@@ -150,6 +153,7 @@ public class PsPeptideSection {
             String linePrefix,
             boolean validatedOnly,
             boolean decoys,
+            int nThreads,
             WaitingHandler waitingHandler
     ) throws IOException {
 
@@ -161,8 +165,6 @@ public class PsPeptideSection {
             writeHeader();
         }
 
-        int lineNumber = 1;
-
         if (waitingHandler != null) {
 
             waitingHandler.setWaitingText("Exporting. Please Wait...");
@@ -173,6 +175,39 @@ public class PsPeptideSection {
 
         PeptideMatchesIterator peptideMatchesIterator = identification.getPeptideMatchesIterator(keys, waitingHandler);
 
+        if (psmSection == null) {
+
+            OrderedRowWriter orderedRowWriter = new OrderedRowWriter(
+                    writer,
+                    indexes,
+                    linePrefix,
+                    nThreads
+            );
+
+            orderedRowWriter.writeRows(
+                    peptideMatchesIterator::next,
+                    peptideMatch -> getRow(
+                            identification,
+                            identificationFeaturesGenerator,
+                            sequenceProvider,
+                            proteinDetailsProvider,
+                            identificationParameters,
+                            peptideMatch,
+                            nSurroundingAA,
+                            linePrefix,
+                            validatedOnly,
+                            decoys,
+                            waitingHandler
+                    ),
+                    waitingHandler
+            );
+
+            return;
+
+        }
+
+        int lineNumber = 1;
+
         PeptideMatch peptideMatch;
         while ((peptideMatch = peptideMatchesIterator.next()) != null) {
 
@@ -183,114 +218,169 @@ public class PsPeptideSection {
                 waitingHandler.increaseSecondaryProgressCounter();
             }
 
-            PSParameter psParameter = (PSParameter) peptideMatch.getUrParam(PSParameter.dummy);
-
-            if (!validatedOnly || psParameter.getMatchValidationLevel().isValidated()) {
+            ExportRowBuffer row = getRow(
+                    identification,
+                    identificationFeaturesGenerator,
+                    sequenceProvider,
+                    proteinDetailsProvider,
+                    identificationParameters,
+                    peptideMatch,
+                    nSurroundingAA,
+                    linePrefix,
+                    validatedOnly,
+                    decoys,
+                    waitingHandler
+            );
 
-                if (decoys || !PeptideUtils.isDecoy(peptideMatch.getPeptide(), sequenceProvider)) {
+            if (row != null) {
 
-                    boolean first = true;
+                row.writeTo(
+                        writer,
+                        indexes,
+                        linePrefix,
+                        lineNumber
+                );
 
-                    if (indexes) {
+                String psmSectionPrefix = "";
 
-                        if (linePrefix != null) {
+                if (linePrefix != null) {
 
-                            writer.write(linePrefix);
+                    psmSectionPrefix += linePrefix;
 
-                        }
+                }
 
-                        writer.write(Integer.toString(lineNumber));
-                        first = false;
+                psmSectionPrefix += lineNumber + ".";
+                writer.increaseDepth();
 
-                    }
+                if (waitingHandler != null) {
 
-                    for (ExportFeature exportFeature : peptideFeatures) {
+                    waitingHandler.setDisplayProgress(false);
 
-                        if (!first) {
+                }
 
-                            writer.addSeparator();
+                psmSection.writeSection(
+                        identification,
+                        identificationFeaturesGenerator,
+                        sequenceProvider,
+                        proteinDetailsProvider,
+                        spectrumProvider,
+                        identificationParameters,
+                        peptideMatch.getSpectrumMatchesKeys(),
+                        psmSectionPrefix,
+                        nSurroundingAA,
+                        validatedOnly,
+                        decoys,
+                        waitingHandler
+                );
 
-                        } else {
+                if (waitingHandler != null) {
 
-                            first = false;
+                    waitingHandler.setDisplayProgress(true);
 
-                        }
+                }
 
-                        PsPeptideFeature peptideFeature = (PsPeptideFeature) exportFeature;
-                        writer.write(
-                                getfeature(
-                                        identification,
-                                        identificationFeaturesGenerator,
-                                        sequenceProvider,
-                                        proteinDetailsProvider,
-                                        identificationParameters,
-                                        nSurroundingAA,
-                                        linePrefix,
-                                        peptideMatch,
-                                        peptideFeature,
-                                        validatedOnly,
-                                        decoys,
-                                        waitingHandler
-                                )
-                        );
+                writer.decreaseDepth();
 
-                    }
+                lineNumber++;
 
-                    writer.newLine();
+            }
+        }
+    }
 
-                    if (psmSection != null) {
+    /**
+     * Renders the row of the given peptide match without line index. If
+     * indexes are used, the row starts with a separator. This method can be
+     * called concurrently.
+     *
+     * @param identification the identification of the project
+     * @param identificationFeaturesGenerator the identification features
+     * generator of the project
+     * @param sequenceProvider the sequence provider
+     * @param proteinDetailsProvider the protein details provider
+     * @param identificationParameters the identification parameters
+     * @param peptideMatch the peptide match
+     * @param nSurroundingAA the number of surrounding amino acids to export
+     * @param linePrefix the line prefix
+     * @param validatedOnly whether only validated matches should be exported
+     * @param decoys whether decoy matches should be exported as well
+     * @param waitingHandler the waiting handler
+     *
+     * @return the row of the peptide match, null if the match is not exported
+     */
+    private ExportRowBuffer getRow(
+            Identification identification,
+            IdentificationFeaturesGenerator identificationFeaturesGenerator,
+            SequenceProvider sequenceProvider,
+            ProteinDetailsProvider proteinDetailsProvider,
+            IdentificationParameters identificationParameters,
+            PeptideMatch peptideMatch,
+            int nSurroundingAA,
+            String linePrefix,
+            boolean validatedOnly,
+            boolean decoys,
+            WaitingHandler waitingHandler
+    ) {
 
-                        String psmSectionPrefix = "";
+        PSParameter psParameter = (PSParameter) peptideMatch.getUrParam(PSParameter.dummy);
 
-                        if (linePrefix != null) {
+        if (validatedOnly && !psParameter.getMatchValidationLevel().isValidated()) {
 
-                            psmSectionPrefix += linePrefix;
+            return null;
 
-                        }
+        }
 
-                        psmSectionPrefix += lineNumber + ".";
-                        writer.increaseDepth();
+        if (!decoys && PeptideUtils.isDecoy(peptideMatch.getPeptide(), sequenceProvider)) {
 
-                        if (waitingHandler != null) {
+            return null;
 
-                            waitingHandler.setDisplayProgress(false);
+        }
 
-                        }
+        ExportRowBuffer row = new ExportRowBuffer();
+        boolean first = !indexes;
 
-                        psmSection.writeSection(
-                                identification,
-                                identificationFeaturesGenerator,
-                                sequenceProvider,
-                                proteinDetailsProvider,
-                                spectrumProvider,
-                                identificationParameters,
-                                peptideMatch.getSpectrumMatchesKeys(),
-                                psmSectionPrefix,
-                                nSurroundingAA,
-                                validatedOnly,
-                                decoys,
-                                waitingHandler
-                        );
+        for (ExportFeature exportFeature : peptideFeatures) {
 
-                        if (waitingHandler != null) {
+            if (!first) {
 
-                            waitingHandler.setDisplayProgress(true);
+                row.addSeparator();
 
-                        }
+            } else {
 
-                        writer.decreaseDepth();
+                first = false;
 
-                    }
+            }
 
-                    lineNumber++;
+            PsPeptideFeature peptideFeature = (PsPeptideFeature) exportFeature;
+            row.write(
+                    getfeature(
+                            identification,
+                            identificationFeaturesGenerator,
+                            sequenceProvider,
+                            proteinDetailsProvider,
+                            identificationParameters,
+                            nSurroundingAA,
+                            linePrefix,
+                            peptideMatch,
+                            peptideFeature,
+                            validatedOnly,
+                            decoys,
+                            waitingHandler
+                    )
+            );
 
-                }
-            }
         }
+
+        row.newLine();
+
+        return row;
+
     }
 
     /**
      * Returns the component of the section corresponding to the given feature.
+     * Rows can be rendered concurrently, the calls to the identification
+     * features generator filling its caches are therefore synchronized on the
+     * generator.
      *
      * @param identification the identification of the project
      * @param identificationFeaturesGenerator the identification features
@@ -499,12 +589,16 @@ public class PsPeptideSection {
 
             case nValidatedProteinGroups:
 
-                return Integer.toString(
-                        identificationFeaturesGenerator.getNValidatedProteinGroups(
-                                peptideMatch.getKey(),
-                                waitingHandler
-                        )
-                );
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Integer.toString(
+                            identificationFeaturesGenerator.getNValidatedProteinGroups(
+                                    peptideMatch.getKey(),
+                                    waitingHandler
+                            )
+                    );
+
+                }
 
             case unique_group:
 
@@ -517,7 +611,11 @@ public class PsPeptideSection {
 
             case validated_psms:
 
-                return Integer.toString(identificationFeaturesGenerator.getNValidatedSpectraForPeptide(peptideMatch.getKey()));
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Integer.toString(identificationFeaturesGenerator.getNValidatedSpectraForPeptide(peptideMatch.getKey()));
+
+                }
 
             case probabilistic_score:
 
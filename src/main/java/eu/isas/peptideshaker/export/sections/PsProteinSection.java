@@ -23,7 +23,9 @@ import com.compomics.util.experiment.identification.validation.MatchValidationLe
 import com.compomics.util.experiment.identification.features.IdentificationFeaturesGenerator;
 import com.compomics.util.experiment.identification.matches.ModificationMatch;
 import com.compomics.util.experiment.mass_spectrometry.SpectrumProvider;
+import eu.isas.peptideshaker.export.ExportRowBuffer;
 import eu.isas.peptideshaker.export.ExportUtils;
+import eu.isas.peptideshaker.export.OrderedRowWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -35,7 +37,13 @@ import java.util.stream.Collectors;
 import no.uib.jsparklines.data.XYDataPoint;
 
 /**
- * This class outputs the protein related export features.
+ * This class outputs the protein related export features. Without peptide
+ * subsection the rows are rendered by an {@link OrderedRowWriter}, but the
+ * caches of the identification features generator are not thread safe and
+ * almost every protein feature is computed while holding a lock on the
+ * generator. The rendering of the protein section is therefore effectively
+ * serialized, only the features not using the generator and the writing of
+ * the rows overlap between threads.
  *
  * @author Marc Vaudel
  * @author Harald Barsnes
@@ -137,6 +145,7 @@ public class PsProteinSection {
      * @param nSurroundingAa The number of surrounding amino acids to export.
      * @param validatedOnly Whether only validated matches should be exported.
      * @param decoys Whether decoy matches should be exported as well.
+     * @param nThreads The number of threads to use.
      * @param waitingHandler The waiting handler.
      *
      * @throws IOException exception thrown whenever an error occurred while
@@ -154,6 +163,7 @@ public class PsProteinSection {
             int nSurroundingAa,
             boolean validatedOnly,
             boolean decoys,
+            int nThreads,
             WaitingHandler waitingHandler
     ) throws IOException {
 
@@ -177,8 +187,6 @@ public class PsProteinSection {
 
         }
 
-        int line = 1;
-
         if (waitingHandler != null) {
 
             waitingHandler.setWaitingText("Exporting. Please Wait...");
@@ -187,6 +195,41 @@ public class PsProteinSection {
 
         }
 
+        if (peptideSection == null) {
+
+            long[] proteinKeys = keys;
+            int[] keyIndex = new int[1];
+            OrderedRowWriter orderedRowWriter = new OrderedRowWriter(
+                    writer,
+                    indexes,
+                    null,
+                    nThreads
+            );
+
+            orderedRowWriter.writeRows(
+                    () -> keyIndex[0] < proteinKeys.length ? identification.getProteinMatch(proteinKeys[keyIndex[0]++]) : null,
+                    proteinMatch -> getRow(
+                            identification,
+                            identificationFeaturesGenerator,
+                            sequenceProvider,
+                            proteinDetailsProvider,
+                            geneMaps,
+                            identificationParameters,
+                            proteinMatch,
+                            nSurroundingAa,
+                            validatedOnly,
+                            decoys,
+                            waitingHandler
+                    ),
+                    waitingHandler
+            );
+
+            return;
+
+        }
+
+        int line = 1;
+
         for (long key : keys) {
 
             ProteinMatch proteinMatch = identification.getProteinMatch(key);
@@ -203,120 +246,179 @@ public class PsProteinSection {
 
             }
 
-            if (decoys || !proteinMatch.isDecoy()) {
+            ExportRowBuffer row = getRow(
+                    identification,
+                    identificationFeaturesGenerator,
+                    sequenceProvider,
+                    proteinDetailsProvider,
+                    geneMaps,
+                    identificationParameters,
+                    proteinMatch,
+                    nSurroundingAa,
+                    validatedOnly,
+                    decoys,
+                    waitingHandler
+            );
 
-                PSParameter psParameter = (PSParameter) proteinMatch.getUrParam(PSParameter.dummy);
+            if (row != null) {
 
-                if (!validatedOnly || psParameter.getMatchValidationLevel().isValidated()) {
+                row.writeTo(
+                        writer,
+                        indexes,
+                        null,
+                        line
+                );
 
-                    boolean first = true;
+                writer.increaseDepth();
 
-                    if (indexes) {
+                if (waitingHandler != null) {
 
-                        writer.write(Integer.toString(line));
-                        first = false;
+                    waitingHandler.setDisplayProgress(false);
 
-                    }
+                }
 
-                    for (ExportFeature exportFeature : proteinFeatures) {
+                peptideSection.writeSection(identification,
+                        identificationFeaturesGenerator,
+                        sequenceProvider,
+                        proteinDetailsProvider,
+                        spectrumProvider,
+                        identificationParameters,
+                        proteinMatch.getPeptideMatchesKeys(),
+                        nSurroundingAa,
+                        line + ".",
+                        validatedOnly,
+                        decoys,
+                        waitingHandler
+                );
 
-                        if (!first) {
+                if (waitingHandler != null) {
 
-                            writer.addSeparator();
+                    waitingHandler.setDisplayProgress(true);
 
-                        } else {
+                }
 
-                            first = false;
+                writer.decreaseDepth();
 
-                        }
+                line++;
 
-                        PsProteinFeature tempProteinFeature = (PsProteinFeature) exportFeature;
-
-                        if (tempProteinFeature.isPerFraction()) {
-                            for (int fractionsCount = 0; fractionsCount < identification.getFractions().size(); fractionsCount++) {
-
-                                String fractionName = identification.getFractions().get(fractionsCount);
-
-                                if (fractionsCount > 0) {
-                                    writer.addSeparator();
-                                }
-
-                                writer.write(getFeature(identificationFeaturesGenerator,
-                                        sequenceProvider,
-                                        proteinDetailsProvider,
-                                        geneMaps,
-                                        identificationParameters,
-                                        nSurroundingAa,
-                                        key,
-                                        proteinMatch,
-                                        fractionName,
-                                        psParameter,
-                                        tempProteinFeature,
-                                        waitingHandler
-                                )
-                                );
-                            }
-                        } else {
-
-                            writer.write(getFeature(identificationFeaturesGenerator,
-                                    sequenceProvider,
-                                    proteinDetailsProvider,
-                                    geneMaps,
-                                    identificationParameters,
-                                    nSurroundingAa,
-                                    key,
-                                    proteinMatch,
-                                    psParameter,
-                                    tempProteinFeature,
-                                    waitingHandler
-                            )
-                            );
+            }
+        }
+    }
 
-                        }
+    /**
+     * Renders the row of the given protein match without line index. If
+     * indexes are used, the row starts with a separator. This method can be
+     * called concurrently.
+     *
+     * @param identification the identification of the project
+     * @param identificationFeaturesGenerator the identification features
+     * generator of the project
+     * @param sequenceProvider the sequence provider
+     * @param proteinDetailsProvider the protein details provider
+     * @param geneMaps the gene maps
+     * @param identificationParameters the identification parameters
+     * @param proteinMatch the protein match
+     * @param nSurroundingAa the number of surrounding amino acids to export
+     * @param validatedOnly whether only validated matches should be exported
+     * @param decoys whether decoy matches should be exported as well
+     * @param waitingHandler the waiting handler
+     *
+     * @return the row of the protein match, null if the match is not exported
+     */
+    private ExportRowBuffer getRow(
+            Identification identification,
+            IdentificationFeaturesGenerator identificationFeaturesGenerator,
+            SequenceProvider sequenceProvider,
+            ProteinDetailsProvider proteinDetailsProvider,
+            GeneMaps geneMaps,
+            IdentificationParameters identificationParameters,
+            ProteinMatch proteinMatch,
+            int nSurroundingAa,
+            boolean validatedOnly,
+            boolean decoys,
+            WaitingHandler waitingHandler
+    ) {
 
-                    }
+        if (!decoys && proteinMatch.isDecoy()) {
 
-                    writer.newLine();
+            return null;
 
-                    if (peptideSection != null) {
+        }
 
-                        writer.increaseDepth();
+        PSParameter psParameter = (PSParameter) proteinMatch.getUrParam(PSParameter.dummy);
 
-                        if (waitingHandler != null) {
+        if (validatedOnly && !psParameter.getMatchValidationLevel().isValidated()) {
 
-                            waitingHandler.setDisplayProgress(false);
+            return null;
 
-                        }
+        }
 
-                        peptideSection.writeSection(identification,
-                                identificationFeaturesGenerator,
-                                sequenceProvider,
-                                proteinDetailsProvider,
-                                spectrumProvider,
-                                identificationParameters,
-                                proteinMatch.getPeptideMatchesKeys(),
-                                nSurroundingAa,
-                                line + ".",
-                                validatedOnly,
-                                decoys,
-                                waitingHandler
-                        );
+        long key = proteinMatch.getKey();
+        ExportRowBuffer row = new ExportRowBuffer();
+        boolean first = !indexes;
 
-                        if (waitingHandler != null) {
+        for (ExportFeature exportFeature : proteinFeatures) {
 
-                            waitingHandler.setDisplayProgress(true);
+            if (!first) {
 
-                        }
+                row.addSeparator();
 
-                        writer.decreaseDepth();
+            } else {
 
-                    }
+                first = false;
+
+            }
 
-                    line++;
+            PsProteinFeature tempProteinFeature = (PsProteinFeature) exportFeature;
 
+            if (tempProteinFeature.isPerFraction()) {
+                for (int fractionsCount = 0; fractionsCount < identification.getFractions().size(); fractionsCount++) {
+
+                    String fractionName = identification.getFractions().get(fractionsCount);
+
+                    if (fractionsCount > 0) {
+                        row.addSeparator();
+                    }
+
+                    row.write(getFeature(identificationFeaturesGenerator,
+                            sequenceProvider,
+                            proteinDetailsProvider,
+                            geneMaps,
+                            identificationParameters,
+                            nSurroundingAa,
+                            key,
+                            proteinMatch,
+                            fractionName,
+                            psParameter,
+                            tempProteinFeature,
+                            waitingHandler
+                    )
+                    );
                 }
+            } else {
+
+                row.write(getFeature(identificationFeaturesGenerator,
+                        sequenceProvider,
+                        proteinDetailsProvider,
+                        geneMaps,
+                        identificationParameters,
+                        nSurroundingAa,
+                        key,
+                        proteinMatch,
+                        psParameter,
+                        tempProteinFeature,
+                        waitingHandler
+                )
+                );
+
             }
+
         }
+
+        row.newLine();
+
+        return row;
+
     }
 
     /**
@@ -368,6 +470,9 @@ public class PsProteinSection {
 
     /**
      * Returns the part of the desired section.
+     * Rows can be rendered concurrently, the calls to the identification
+     * features generator filling its caches are therefore synchronized on the
+     * generator, which serializes the rendering of most protein features.
      *
      * @param identificationFeaturesGenerator the identification features
      * generator of the project
@@ -637,28 +742,44 @@ public class PsProteinSection {
 
             case coverage:
 
-                double value = 100 * identificationFeaturesGenerator.getValidatedSequenceCoverage(proteinKey);
-                return Double.toString(Util.roundDouble(value, 2));
+                synchronized (identificationFeaturesGenerator) {
+
+                    double value = 100 * identificationFeaturesGenerator.getValidatedSequenceCoverage(proteinKey);
+                    return Double.toString(Util.roundDouble(value, 2));
+
+                }
 
             case confident_coverage:
 
-                HashMap<Integer, Double> sequenceCoverage = identificationFeaturesGenerator.getSequenceCoverage(proteinKey);
-                value = 100 * sequenceCoverage.get(MatchValidationLevel.confident.getIndex());
-                return Double.toString(Util.roundDouble(value, 2));
+                synchronized (identificationFeaturesGenerator) {
+
+                    HashMap<Integer, Double> sequenceCoverage = identificationFeaturesGenerator.getSequenceCoverage(proteinKey);
+                    double value = 100 * sequenceCoverage.get(MatchValidationLevel.confident.getIndex());
+                    return Double.toString(Util.roundDouble(value, 2));
+
+                }
 
             case all_coverage:
 
-                sequenceCoverage = identificationFeaturesGenerator.getSequenceCoverage(proteinKey);
-                Double sequenceCoverageConfident = 100 * sequenceCoverage.get(MatchValidationLevel.confident.getIndex());
-                Double sequenceCoverageDoubtful = 100 * sequenceCoverage.get(MatchValidationLevel.doubtful.getIndex());
-                Double sequenceCoverageNotValidated = 100 * sequenceCoverage.get(MatchValidationLevel.not_validated.getIndex());
-                double totalCoverage = sequenceCoverageConfident + sequenceCoverageDoubtful + sequenceCoverageNotValidated;
-                return Double.toString(Util.roundDouble(totalCoverage, 2));
+                synchronized (identificationFeaturesGenerator) {
+
+                    HashMap<Integer, Double> sequenceCoverage = identificationFeaturesGenerator.getSequenceCoverage(proteinKey);
+                    Double sequenceCoverageConfident = 100 * sequenceCoverage.get(MatchValidationLevel.confident.getIndex());
+                    Double sequenceCoverageDoubtful = 100 * sequenceCoverage.get(MatchValidationLevel.doubtful.getIndex());
+                    Double sequenceCoverageNotValidated = 100 * sequenceCoverage.get(MatchValidationLevel.not_validated.getIndex());
+                    double totalCoverage = sequenceCoverageConfident + sequenceCoverageDoubtful + sequenceCoverageNotValidated;
+                    return Double.toString(Util.roundDouble(totalCoverage, 2));
+
+                }
 
             case possible_coverage:
 
-                value = 100 * identificationFeaturesGenerator.getObservableCoverage(proteinKey);
-                return Double.toString(Util.roundDouble(value, 2));
+                synchronized (identificationFeaturesGenerator) {
+
+                    double value = 100 * identificationFeaturesGenerator.getObservableCoverage(proteinKey);
+                    return Double.toString(Util.roundDouble(value, 2));
+
+                }
 
             case decoy:
 
@@ -732,12 +853,16 @@ public class PsProteinSection {
 
             case non_enzymatic:
 
-                return Integer.toString(
-                        identificationFeaturesGenerator.getNonEnzymatic(
-                                proteinKey,
-                                identificationParameters.getSearchParameters().getDigestionParameters()
-                        ).length
-                );
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Integer.toString(
+                            identificationFeaturesGenerator.getNonEnzymatic(
+                                    proteinKey,
+                                    identificationParameters.getSearchParameters().getDigestionParameters()
+                            ).length
+                    );
+
+                }
 
             case pi:
 
@@ -750,28 +875,48 @@ public class PsProteinSection {
 
             case psms:
 
-                return Integer.toString(
-                        identificationFeaturesGenerator.getNSpectra(proteinKey));
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Integer.toString(
+                            identificationFeaturesGenerator.getNSpectra(proteinKey));
+
+                }
 
             case validated_peptides:
 
-                return Integer.toString(
-                        identificationFeaturesGenerator.getNValidatedPeptides(proteinKey));
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Integer.toString(
+                            identificationFeaturesGenerator.getNValidatedPeptides(proteinKey));
+
+                }
 
             case unique_peptides:
 
-                return Integer.toString(
-                        identificationFeaturesGenerator.getNUniquePeptides(proteinKey));
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Integer.toString(
+                            identificationFeaturesGenerator.getNUniquePeptides(proteinKey));
+
+                }
 
             case unique_validated_peptides:
 
-                return Integer.toString(
-                        identificationFeaturesGenerator.getNUniqueValidatedPeptides(proteinKey));
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Integer.toString(
+                            identificationFeaturesGenerator.getNUniqueValidatedPeptides(proteinKey));
+
+                }
 
             case validated_psms:
 
-                return Integer.toString(
-                        identificationFeaturesGenerator.getNValidatedSpectra(proteinKey));
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Integer.toString(
+                            identificationFeaturesGenerator.getNValidatedSpectra(proteinKey));
+
+                }
 
             case score:
 
@@ -784,126 +929,178 @@ public class PsProteinSection {
 
             case spectrum_counting:
 
-                return Double.toString(
-                        identificationFeaturesGenerator.getNormalizedSpectrumCounting(proteinKey)
-                );
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Double.toString(
+                            identificationFeaturesGenerator.getNormalizedSpectrumCounting(proteinKey)
+                    );
+
+                }
 
             case spectrum_counting_nsaf:
 
-                return Double.toString(
-                        identificationFeaturesGenerator.getSpectrumCounting(
-                                proteinKey,
-                                SpectrumCountingMethod.NSAF
-                        )
-                );
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Double.toString(
+                            identificationFeaturesGenerator.getSpectrumCounting(
+                                    proteinKey,
+                                    SpectrumCountingMethod.NSAF
+                            )
+                    );
+
+                }
 
             case spectrum_counting_empai:
 
-                return Double.toString(
-                        identificationFeaturesGenerator.getSpectrumCounting(
-                                proteinKey,
-                                SpectrumCountingMethod.EMPAI
-                        )
-                );
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Double.toString(
+                            identificationFeaturesGenerator.getSpectrumCounting(
+                                    proteinKey,
+                                    SpectrumCountingMethod.EMPAI
+                            )
+                    );
+
+                }
 
             case label_free_quantification:
 
-                return Double.toString(
-                        identificationFeaturesGenerator.getSpectrumCounting(
-                                proteinKey,
-                                SpectrumCountingMethod.LFQ
-                        )
-                );
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Double.toString(
+                            identificationFeaturesGenerator.getSpectrumCounting(
+                                    proteinKey,
+                                    SpectrumCountingMethod.LFQ
+                            )
+                    );
+
+                }
 
             case spectrum_counting_empai_percent:
 
-                return Double.toString(
-                        identificationFeaturesGenerator.getNormalizedSpectrumCounting(
-                                proteinKey,
-                                Units.percent,
-                                SpectrumCountingMethod.EMPAI
-                        )
-                );
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Double.toString(
+                            identificationFeaturesGenerator.getNormalizedSpectrumCounting(
+                                    proteinKey,
+                                    Units.percent,
+                                    SpectrumCountingMethod.EMPAI
+                            )
+                    );
+
+                }
 
             case spectrum_counting_nsaf_percent:
 
-                return Double.toString(
-                        identificationFeaturesGenerator.getNormalizedSpectrumCounting(
-                                proteinKey,
-                                Units.percent,
-                                SpectrumCountingMethod.NSAF
-                        )
-                );
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Double.toString(
+                            identificationFeaturesGenerator.getNormalizedSpectrumCounting(
+                                    proteinKey,
+                                    Units.percent,
+                                    SpectrumCountingMethod.NSAF
+                            )
+                    );
+
+                }
 
             case label_free_quantification_percent:
 
-                return Double.toString(
-                        identificationFeaturesGenerator.getNormalizedSpectrumCounting(
-                                proteinKey,
-                                Units.percent,
-                                SpectrumCountingMethod.LFQ
-                        )
-                );
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Double.toString(
+                            identificationFeaturesGenerator.getNormalizedSpectrumCounting(
+                                    proteinKey,
+                                    Units.percent,
+                                    SpectrumCountingMethod.LFQ
+                            )
+                    );
+
+                }
 
             case spectrum_counting_empai_ppm:
 
-                return Double.toString(
-                        identificationFeaturesGenerator.getNormalizedSpectrumCounting(
-                                proteinKey,
-                                Units.ppm,
-                                SpectrumCountingMethod.EMPAI
-                        )
-                );
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Double.toString(
+                            identificationFeaturesGenerator.getNormalizedSpectrumCounting(
+                                    proteinKey,
+                                    Units.ppm,
+                                    SpectrumCountingMethod.EMPAI
+                            )
+                    );
+
+                }
 
             case spectrum_counting_nsaf_ppm:
 
-                return Double.toString(
-                        identificationFeaturesGenerator.getNormalizedSpectrumCounting(
-                                proteinKey,
-                                Units.ppm,
-                                SpectrumCountingMethod.NSAF
-                        )
-                );
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Double.toString(
+                            identificationFeaturesGenerator.getNormalizedSpectrumCounting(
+                                    proteinKey,
+                                    Units.ppm,
+                                    SpectrumCountingMethod.NSAF
+                            )
+                    );
+
+                }
 
             case label_free_quantification_ppm:
 
-                return Double.toString(
-                        identificationFeaturesGenerator.getNormalizedSpectrumCounting(
-                                proteinKey,
-                                Units.ppm,
-                                SpectrumCountingMethod.LFQ
-                        )
-                );
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Double.toString(
+                            identificationFeaturesGenerator.getNormalizedSpectrumCounting(
+                                    proteinKey,
+                                    Units.ppm,
+                                    SpectrumCountingMethod.LFQ
+                            )
+                    );
+
+                }
 
             case spectrum_counting_empai_fmol:
 
-                return Double.toString(
-                        identificationFeaturesGenerator.getNormalizedSpectrumCounting(
-                                proteinKey,
-                                Units.fmol,
-                                SpectrumCountingMethod.EMPAI
-                        )
-                );
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Double.toString(
+                            identificationFeaturesGenerator.getNormalizedSpectrumCounting(
+                                    proteinKey,
+                                    Units.fmol,
+                                    SpectrumCountingMethod.EMPAI
+                            )
+                    );
+
+                }
 
             case spectrum_counting_nsaf_fmol:
 
-                return Double.toString(
-                        identificationFeaturesGenerator.getNormalizedSpectrumCounting(
-                                proteinKey,
-                                Units.fmol,
-                                SpectrumCountingMethod.NSAF
-                        )
-                );
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Double.toString(
+                            identificationFeaturesGenerator.getNormalizedSpectrumCounting(
+                                    proteinKey,
+                                    Units.fmol,
+                                    SpectrumCountingMethod.NSAF
+                            )
+                    );
+
+                }
 
             case label_free_quantification_fmol:
 
-                return Double.toString(
-                        identificationFeaturesGenerator.getNormalizedSpectrumCounting(
-                                proteinKey,
-                                Units.fmol,
-                                SpectrumCountingMethod.LFQ
-                        )
-                );
+                synchronized (identificationFeaturesGenerator) {
+
+                    return Double.toString(
+                            identificationFeaturesGenerator.getNormalizedSpectrumCounting(
+                                    proteinKey,
+                                    Units.fmol,
+                                    SpectrumCountingMethod.LFQ
+                            )
+                    );
+
+                }
 
             case starred:
 
@@ -26,7 +26,9 @@ import com.compomics.util.experiment.identification.validation.MatchValidationLe
 import com.compomics.util.experiment.identification.peptide_shaker.ModificationScoring;
 import com.compomics.util.experiment.identification.features.IdentificationFeaturesGenerator;
 import com.compomics.util.experiment.mass_spectrometry.SpectrumProvider;
+import eu.isas.peptideshaker.export.ExportRowBuffer;
 import eu.isas.peptideshaker.export.ExportUtils;
+import eu.isas.peptideshaker.export.OrderedRowWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -145,6 +147,7 @@ public class PsPsmSection {
      * @param nSurroundingAA The number of surrounding amino acids to export.
      * @param validatedOnly Whether only validated matches should be exported.
      * @param decoys Whether decoy matches should be exported as well.
+     * @param nThreads The number of threads to use.
      * @param waitingHandler The waiting handler.
      *
      * @throws java.io.IOException exception thrown if an error occurred while
@@ -162,6 +165,7 @@ public class PsPsmSection {
             int nSurroundingAA,
             boolean validatedOnly,
             boolean decoys,
+            int nThreads,
             WaitingHandler waitingHandler
     ) throws IOException {
 
@@ -173,7 +177,6 @@ public class PsPsmSection {
             writeHeader();
         }
 
-        int line = 1;
         int totalSize = identification.getNumber(SpectrumMatch.class);
 
         if (waitingHandler != null) {
@@ -183,6 +186,40 @@ public class PsPsmSection {
         }
 
         SpectrumMatchesIterator psmIterator = identification.getSpectrumMatchesIterator(keys, waitingHandler);
+
+        if (fragmentSection == null) {
+
+            OrderedRowWriter orderedRowWriter = new OrderedRowWriter(
+                    writer,
+                    indexes,
+                    linePrefix,
+                    nThreads
+            );
+
+            orderedRowWriter.writeRows(
+                    psmIterator::next,
+                    spectrumMatch -> getRow(
+                            identification,
+                            identificationFeaturesGenerator,
+                            sequenceProvider,
+                            proteinDetailsProvider,
+                            spectrumProvider,
+                            identificationParameters,
+                            spectrumMatch,
+                            linePrefix,
+                            nSurroundingAA,
+                            validatedOnly,
+                            decoys,
+                            waitingHandler
+                    ),
+                    waitingHandler
+            );
+
+            return;
+
+        }
+
+        int line = 1;
         SpectrumMatch spectrumMatch;
 
         while ((spectrumMatch = psmIterator.next()) != null) {
@@ -194,175 +231,228 @@ public class PsPsmSection {
                 waitingHandler.increaseSecondaryProgressCounter();
             }
 
-            String spectrumFile = spectrumMatch.getSpectrumFile();
-            String spectrumTitle = spectrumMatch.getSpectrumTitle();
-            PSParameter psParameter = (PSParameter) spectrumMatch.getUrParam(PSParameter.dummy);
+            ExportRowBuffer row = getRow(
+                    identification,
+                    identificationFeaturesGenerator,
+                    sequenceProvider,
+                    proteinDetailsProvider,
+                    spectrumProvider,
+                    identificationParameters,
+                    spectrumMatch,
+                    linePrefix,
+                    nSurroundingAA,
+                    validatedOnly,
+                    decoys,
+                    waitingHandler
+            );
 
-            if (!validatedOnly || psParameter.getMatchValidationLevel().isValidated()) {
+            if (row != null) {
+
+                row.writeTo(
+                        writer,
+                        indexes,
+                        linePrefix,
+                        line
+                );
 
+                String spectrumFile = spectrumMatch.getSpectrumFile();
+                String spectrumTitle = spectrumMatch.getSpectrumTitle();
                 PeptideAssumption peptideAssumption = spectrumMatch.getBestPeptideAssumption();
                 TagAssumption tagAssumption = spectrumMatch.getBestTagAssumption();
 
-                if (peptideAssumption != null || tagAssumption != null) {
+                StringBuilder fractionPrefix = new StringBuilder();
 
-                    if (decoys
-                            || (peptideAssumption != null && !PeptideUtils.isDecoy(peptideAssumption.getPeptide(), sequenceProvider))
-                            || (tagAssumption != null) // @TODO: check whether the tag is a decoy..?
-                            ) {
+                if (linePrefix != null) {
 
-                        boolean first = true;
+                    fractionPrefix.append(linePrefix);
 
-                        if (indexes) {
+                }
 
-                            if (linePrefix != null) {
+                fractionPrefix.append(line).append(".");
+                writer.increaseDepth();
+
+                if (peptideAssumption != null) {
+
+                    fragmentSection.writeSection(
+                            spectrumFile,
+                            spectrumTitle,
+                            peptideAssumption,
+                            sequenceProvider,
+                            spectrumProvider,
+                            identificationParameters,
+                            fractionPrefix.toString(),
+                            null
+                    );
+
+                } else if (tagAssumption != null) {
+
+                    fragmentSection.writeSection(
+                            spectrumFile,
+                            spectrumTitle,
+                            tagAssumption,
+                            sequenceProvider,
+                            spectrumProvider,
+                            identificationParameters,
+                            fractionPrefix.toString(),
+                            null
+                    );
+                }
 
-                                writer.write(linePrefix);
+                writer.decreaseDepth();
 
-                            }
+                line++;
 
-                            writer.write(Integer.toString(line));
-                            first = false;
+            }
+        }
+    }
 
-                        }
+    /**
+     * Renders the row of the given spectrum match without line index. If
+     * indexes are used, the row starts with a separator. This method can be
+     * called concurrently.
+     *
+     * @param identification the identification of the project
+     * @param identificationFeaturesGenerator the identification features
+     * generator of the project
+     * @param sequenceProvider the sequence provider
+     * @param proteinDetailsProvider the protein details provider
+     * @param spectrumProvider the spectrum provider
+     * @param identificationParameters the identification parameters
+     * @param spectrumMatch the spectrum match
+     * @param linePrefix the line prefix
+     * @param nSurroundingAA the number of surrounding amino acids to export
+     * @param validatedOnly whether only validated matches should be exported
+     * @param decoys whether decoy matches should be exported as well
+     * @param waitingHandler the waiting handler
+     *
+     * @return the row of the spectrum match, null if the match is not exported
+     */
+    private ExportRowBuffer getRow(
+            Identification identification,
+            IdentificationFeaturesGenerator identificationFeaturesGenerator,
+            SequenceProvider sequenceProvider,
+            ProteinDetailsProvider proteinDetailsProvider,
+            SpectrumProvider spectrumProvider,
+            IdentificationParameters identificationParameters,
+            SpectrumMatch spectrumMatch,
+            String linePrefix,
+            int nSurroundingAA,
+            boolean validatedOnly,
+            boolean decoys,
+            WaitingHandler waitingHandler
+    ) {
 
-                        for (PsIdentificationAlgorithmMatchesFeature identificationAlgorithmMatchesFeature : identificationAlgorithmMatchesFeatures) {
+        String spectrumFile = spectrumMatch.getSpectrumFile();
+        String spectrumTitle = spectrumMatch.getSpectrumTitle();
+        PSParameter psParameter = (PSParameter) spectrumMatch.getUrParam(PSParameter.dummy);
 
-                            if (!first) {
+        if (validatedOnly && !psParameter.getMatchValidationLevel().isValidated()) {
 
-                                writer.addSeparator();
+            return null;
 
-                            } else {
+        }
 
-                                first = false;
+        PeptideAssumption peptideAssumption = spectrumMatch.getBestPeptideAssumption();
+        TagAssumption tagAssumption = spectrumMatch.getBestTagAssumption();
 
-                            }
+        if (peptideAssumption == null && tagAssumption == null) {
 
-                            String feature;
-
-                            if (peptideAssumption != null) {
-
-                                feature = PsIdentificationAlgorithmMatchesSection.getPeptideAssumptionFeature(
-                                        identification,
-                                        identificationFeaturesGenerator,
-                                        sequenceProvider,
-                                        proteinDetailsProvider,
-                                        spectrumProvider,
-                                        identificationParameters,
-                                        linePrefix,
-                                        nSurroundingAA,
-                                        peptideAssumption,
-                                        spectrumFile,
-                                        spectrumTitle,
-                                        psParameter,
-                                        identificationAlgorithmMatchesFeature,
-                                        waitingHandler
-                                );
-
-                            } else if (tagAssumption != null) {
-
-                                feature = PsIdentificationAlgorithmMatchesSection.getTagAssumptionFeature(
-                                        identification,
-                                        identificationFeaturesGenerator,
-                                        spectrumProvider,
-                                        identificationParameters,
-                                        linePrefix,
-                                        tagAssumption,
-                                        spectrumFile,
-                                        spectrumTitle,
-                                        psParameter,
-                                        identificationAlgorithmMatchesFeature,
-                                        waitingHandler
-                                );
-
-                            } else {
-
-                                throw new IllegalArgumentException(
-                                        "No best match found for spectrum "
-                                        + spectrumTitle
-                                        + " in "
-                                        + spectrumFile
-                                        + "."
-                                );
+            return null;
 
-                            }
+        }
 
-                            writer.write(feature);
+        if (!decoys
+                && (peptideAssumption == null || PeptideUtils.isDecoy(peptideAssumption.getPeptide(), sequenceProvider))
+                && tagAssumption == null // @TODO: check whether the tag is a decoy..?
+                ) {
 
-                        }
-                        for (PsPsmFeature psmFeature : psmFeatures) {
-                            if (!first) {
-                                writer.addSeparator();
-                            } else {
-                                first = false;
-                            }
-                            writer.write(
-                                    getFeature(
-                                            identification,
-                                            identificationFeaturesGenerator,
-                                            identificationParameters,
-                                            linePrefix,
-                                            spectrumMatch,
-                                            psParameter,
-                                            psmFeature,
-                                            validatedOnly,
-                                            decoys,
-                                            waitingHandler
-                                    )
-                            );
-                        }
+            return null;
 
-                        writer.newLine();
+        }
 
-                        if (fragmentSection != null) {
+        ExportRowBuffer row = new ExportRowBuffer();
+        boolean first = !indexes;
 
-                            StringBuilder fractionPrefix = new StringBuilder();
+        for (PsIdentificationAlgorithmMatchesFeature identificationAlgorithmMatchesFeature : identificationAlgorithmMatchesFeatures) {
 
-                            if (linePrefix != null) {
+            if (!first) {
 
-                                fractionPrefix.append(linePrefix);
+                row.addSeparator();
 
-                            }
+            } else {
 
-                            fractionPrefix.append(line).append(".");
-                            writer.increaseDepth();
-
-                            if (peptideAssumption != null) {
-
-                                fragmentSection.writeSection(
-                                        spectrumFile,
-                                        spectrumTitle,
-                                        peptideAssumption,
-                                        sequenceProvider,
-                                        spectrumProvider,
-                                        identificationParameters,
-                                        fractionPrefix.toString(),
-                                        null
-                                );
-
-                            } else if (tagAssumption != null) {
-
-                                fragmentSection.writeSection(
-                                        spectrumFile,
-                                        spectrumTitle,
-                                        tagAssumption,
-                                        sequenceProvider,
-                                        spectrumProvider,
-                                        identificationParameters,
-                                        fractionPrefix.toString(),
-                                        null
-                                );
-                            }
+                first = false;
 
-                            writer.decreaseDepth();
+            }
 
-                        }
+            String feature;
+
+            if (peptideAssumption != null) {
+
+                feature = PsIdentificationAlgorithmMatchesSection.getPeptideAssumptionFeature(
+                        identification,
+                        identificationFeaturesGenerator,
+                        sequenceProvider,
+                        proteinDetailsProvider,
+                        spectrumProvider,
+                        identificationParameters,
+                        linePrefix,
+                        nSurroundingAA,
+                        peptideAssumption,
+                        spectrumFile,
+                        spectrumTitle,
+                        psParameter,
+                        identificationAlgorithmMatchesFeature,
+                        waitingHandler
+                );
 
-                        line++;
+            } else {
+
+                feature = PsIdentificationAlgorithmMatchesSection.getTagAssumptionFeature(
+                        identification,
+                        identificationFeaturesGenerator,
+                        spectrumProvider,
+                        identificationParameters,
+                        linePrefix,
+                        tagAssumption,
+                        spectrumFile,
+                        spectrumTitle,
+                        psParameter,
+                        identificationAlgorithmMatchesFeature,
+                        waitingHandler
+                );
 
-                    }
-                }
             }
+
+            row.write(feature);
+
         }
+        for (PsPsmFeature psmFeature : psmFeatures) {
+            if (!first) {
+                row.addSeparator();
+            } else {
+                first = false;
+            }
+            row.write(
+                    getFeature(
+                            identification,
+                            identificationFeaturesGenerator,
+                            identificationParameters,
+                            linePrefix,
+                            spectrumMatch,
+                            psParameter,
+                            psmFeature,
+                            validatedOnly,
+                            decoys,
+                            waitingHandler
+                    )
+            );
+        }
+
+        row.newLine();
+
+        return row;
+
     }
 
     /**
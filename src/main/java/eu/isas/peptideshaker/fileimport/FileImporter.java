@@ -20,6 +20,7 @@ import com.compomics.util.parameters.identification.search.SearchParameters;
 import com.compomics.util.gui.JOptionEditorPane;
 import com.compomics.util.waiting.WaitingHandler;
 import com.compomics.util.gui.waiting.waitinghandlers.WaitingDialog;
+import com.compomics.util.gui.waiting.waitinghandlers.WaitingHandlerCLIImpl;
 import com.compomics.util.parameters.identification.advanced.GeneParameters;
 import com.compomics.util.parameters.identification.IdentificationParameters;
 import com.compomics.util.parameters.identification.advanced.PeptideVariantsParameters;
@@ -37,6 +38,11 @@ import javax.swing.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
@@ -272,14 +278,26 @@ public class FileImporter {
                         true
                 );
 
-                for (File idFile : sortedIdFiles) {
+                if (processingParameters.getnThreads() > 1 && sortedIdFiles.size() > 1) {
 
-                    importPsms(idFile);
+                    importPsmsConcurrently(sortedIdFiles);
 
                     if (waitingHandler.isRunCanceled()) {
 
                         return 1;
                     }
+
+                } else {
+
+                    for (File idFile : sortedIdFiles) {
+
+                        importPsms(idFile);
+
+                        if (waitingHandler.isRunCanceled()) {
+
+                            return 1;
+                        }
+                    }
                 }
 
                 if (nRetained == 0) {
@@ -411,6 +429,130 @@ public class FileImporter {
         return 0;
     }
 
+    /**
+     * Imports the PSMs from the given identification files in the given order.
+     * The next file is parsed on a separate thread while the current file is
+     * imported, and at most one parsed file waits for import, so that no more
+     * than two files are in memory at a time. The parsing thread is taken
+     * from the threads set in the processing parameters, the import of the
+     * spectrum matches uses the others. The file readers of the parsing thread
+     * report their progress to a separate waiting handler that is not
+     * displayed, the secondary progress thus follows the import. The spectrum
+     * matches are imported one file at a time, in the given order, hence
+     * assumptions are merged into existing spectrum matches as in a
+     * sequential import.
+     *
+     * @param idFiles the identification files
+     *
+     * @throws java.io.IOException exception thrown if an error occurred when
+     * parsing a file
+     * @throws java.lang.InterruptedException Exception thrown if a thread is
+     * interrupted.
+     * @throws java.util.concurrent.TimeoutException Exception thrown if the
+     * process timed out.
+     */
+    public void importPsmsConcurrently(
+            ArrayList<File> idFiles
+    ) throws IOException, InterruptedException, TimeoutException {
+
+        int nImportThreads = Math.max(processingParameters.getnThreads() - 1, 1);
+        // the progress of the readers is not displayed, the secondary progress follows the import
+        WaitingHandler parsingWaitingHandler = new WaitingHandlerCLIImpl();
+        parsingWaitingHandler.setDisplayProgress(false);
+
+        ExecutorService parsingPool = Executors.newSingleThreadExecutor();
+        Semaphore parsedFilesSemaphore = new Semaphore(1);
+
+        ArrayList<Future<ParsedIdFile>> parsedIdFiles = new ArrayList<>(idFiles.size());
+
+        for (File idFile : idFiles) {
+
+            parsedIdFiles.add(
+                    parsingPool.submit(
+                            () -> {
+
+                                parsedFilesSemaphore.acquire();
+
+                                if (waitingHandler.isRunCanceled()) {
+                                    return null;
+                                }
+
+                                ParsedIdFile parsedIdFile = parseIdFile(idFile, parsingWaitingHandler);
+
+                                if (parsingWaitingHandler.isRunCanceled()) {
+                                    waitingHandler.setRunCanceled();
+                                }
+
+                                return parsedIdFile;
+
+                            }
+                    )
+            );
+        }
+
+        parsingPool.shutdown();
+
+        try {
+
+            for (Future<ParsedIdFile> future : parsedIdFiles) {
+
+                ParsedIdFile parsedIdFile;
+
+                try {
+
+                    parsedIdFile = future.get();
+
+                } catch (ExecutionException e) {
+
+                    Throwable cause = e.getCause();
+
+                    if (cause instanceof Error) {
+
+                        throw (Error) cause;
+
+                    } else if (cause instanceof IOException) {
+
+                        throw (IOException) cause;
+
+                    }
+
+                    throw new IOException(cause);
+
+                }
+
+                // Let the parsing thread start on the next file
+                parsedFilesSemaphore.release();
+
+                if (parsedIdFile != null) {
+
+                    importPsms(
+                            parsedIdFile.idFile,
+                            parsedIdFile.fileReader,
+                            parsedIdFile.spectrumMatches,
+                            nImportThreads
+                    );
+
+                }
+
+                if (waitingHandler.isRunCanceled()) {
+
+                    return;
+
+                }
+            }
+
+        } finally {
+
+            // Stops the reader and releases the parsing thread waiting for a permit if the import stopped early
+            if (waitingHandler.isRunCanceled()) {
+                parsingWaitingHandler.setRunCanceled();
+            }
+
+            parsingPool.shutdownNow();
+
+        }
+    }
+
     /**
      * Imports the PSMs from an identification file.
      *
@@ -427,7 +569,39 @@ public class FileImporter {
             File idFile
     ) throws IOException, InterruptedException, TimeoutException {
 
-        waitingHandler.setSecondaryProgressCounterIndeterminate(true);
+        ParsedIdFile parsedIdFile = parseIdFile(idFile, waitingHandler);
+
+        if (parsedIdFile != null) {
+
+            importPsms(
+                    parsedIdFile.idFile,
+                    parsedIdFile.fileReader,
+                    parsedIdFile.spectrumMatches,
+                    processingParameters.getnThreads()
+            );
+
+        }
+    }
+
+    /**
+     * Parses the spectrum matches of an identification file. The reports are
+     * appended to the waiting handler of the import, the file reader reports
+     * its progress to the given waiting handler.
+     *
+     * @param idFile the identification file
+     * @param readerWaitingHandler the waiting handler of the file reader
+     *
+     * @return the parsed file, null if the file format was not recognized
+     *
+     * @throws java.io.IOException exception thrown if an error occurred when
+     * opening the file
+     */
+    private ParsedIdFile parseIdFile(
+            File idFile,
+            WaitingHandler readerWaitingHandler
+    ) throws IOException {
+
+        readerWaitingHandler.setSecondaryProgressCounterIndeterminate(true);
         waitingHandler.appendReport(
                 "Parsing " + idFile.getName() + ".",
                 true,
@@ -461,19 +635,20 @@ public class FileImporter {
             );
 
             waitingHandler.setRunCanceled();
-            return;
+            return null;
 
         }
 
-        waitingHandler.setSecondaryProgressCounterIndeterminate(true);
+        readerWaitingHandler.setSecondaryProgressCounterIndeterminate(true);
 
         ArrayList<SpectrumMatch> idFileSpectrumMatches = null;
 
         try {
 
+            // the reader returns all the matches of the file at once, only their hand-off to the import threads is bounded
             idFileSpectrumMatches = fileReader.getAllSpectrumMatches(
                     spectrumProvider,
-                    waitingHandler,
+                    readerWaitingHandler,
                     identificationParameters.getSearchParameters(),
                     identificationParameters.getSequenceMatchingParameters(),
                     true
@@ -494,6 +669,37 @@ public class FileImporter {
 
         }
 
+        return new ParsedIdFile(
+                idFile,
+                fileReader,
+                idFileSpectrumMatches
+        );
+
+    }
+
+    /**
+     * Imports the spectrum matches parsed from an identification file.
+     *
+     * @param idFile the identification file
+     * @param fileReader the reader used to parse the file
+     * @param idFileSpectrumMatches the spectrum matches parsed from the file,
+     * null if an error occurred during parsing
+     * @param nImportThreads the number of threads to use for the import
+     *
+     * @throws java.io.IOException exception thrown if an error occurred when
+     * closing the file
+     * @throws java.lang.InterruptedException Exception thrown if a thread is
+     * interrupted.
+     * @throws java.util.concurrent.TimeoutException Exception thrown if the
+     * process timed out.
+     */
+    private void importPsms(
+            File idFile,
+            IdfileReader fileReader,
+            ArrayList<SpectrumMatch> idFileSpectrumMatches,
+            int nImportThreads
+    ) throws IOException, InterruptedException, TimeoutException {
+
         // set the search engine name and version for this file
         HashMap<String, ArrayList<String>> software = fileReader.getSoftwareVersions();
         projectDetails.setIdentificationAlgorithmsForFile(IoUtil.getFileName(idFile), software);
@@ -618,7 +824,7 @@ public class FileImporter {
 
                 }
 
-                waitingHandler.setMaxSecondaryProgressCounter(2 * nMatches);
+                waitingHandler.setMaxSecondaryProgressCounter(nMatches);
                 waitingHandler.appendReport(
                         "Importing PSMs from " + idFile.getName(),
                         true,
@@ -637,6 +843,7 @@ public class FileImporter {
                         spectrumProvider,
                         fastaMapper,
                         processingParameters,
+                        nImportThreads,
                         waitingHandler,
                         exceptionHandler
                 );
@@ -1085,4 +1292,43 @@ public class FileImporter {
         return proteinCount;
     }
 
+    /**
+     * The spectrum matches parsed from an identification file, waiting to be
+     * imported.
+     */
+    private static class ParsedIdFile {
+
+        /**
+         * The identification file.
+         */
+        private final File idFile;
+        /**
+         * The reader used to parse the file.
+         */
+        private final IdfileReader fileReader;
+        /**
+         * The spectrum matches parsed from the file, null if an error occurred
+         * during parsing.
+         */
+        private final ArrayList<SpectrumMatch> spectrumMatches;
+
+        /**
+         * Constructor.
+         *
+         * @param idFile the identification file
+         * @param fileReader the reader used to parse the file
+         * @param spectrumMatches the spectrum matches parsed from the file
+         */
+        private ParsedIdFile(
+                File idFile,
+                IdfileReader fileReader,
+                ArrayList<SpectrumMatch> spectrumMatches
+        ) {
+
+            this.idFile = idFile;
+            this.fileReader = fileReader;
+            this.spectrumMatches = spectrumMatches;
+
+        }
+    }
 }
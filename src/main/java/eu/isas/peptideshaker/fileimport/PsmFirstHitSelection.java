@@ -1,6 +1,5 @@
 package eu.isas.peptideshaker.fileimport;
 
-import com.compomics.util.exceptions.ExceptionHandler;
 import com.compomics.util.experiment.biology.proteins.Peptide;
 import com.compomics.util.experiment.identification.filtering.PeptideAssumptionFilter;
 import com.compomics.util.experiment.identification.matches.SpectrumMatch;
@@ -13,7 +12,6 @@ import com.compomics.util.experiment.mass_spectrometry.SpectrumProvider;
 import com.compomics.util.parameters.identification.IdentificationParameters;
 import com.compomics.util.parameters.identification.advanced.SequenceMatchingParameters;
 import com.compomics.util.parameters.identification.search.SearchParameters;
-import com.compomics.util.waiting.WaitingHandler;
 import eu.isas.peptideshaker.scoring.maps.InputMap;
 import eu.isas.peptideshaker.scoring.psm_scoring.BestMatchSelection;
 import java.util.ArrayList;
@@ -21,15 +19,17 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * This class tries to find a best hit per search engine for each spectrum
- * match.
+ * match. An instance is used by a single import thread. Spectrum matches with
+ * equally scoring candidates are set aside until the protein count of the
+ * file is complete, so that the ties are broken independently of the
+ * progress of the other import threads.
  *
  * @author Marc Vaudel
  */
-public class PsmFirstHitRunnable implements Runnable {
+public class PsmFirstHitSelection {
 
     /**
      * The identification parameters.
@@ -55,10 +55,6 @@ public class PsmFirstHitRunnable implements Runnable {
      * The best match selection module.
      */
     private final BestMatchSelection bestMatchSelection;
-    /**
-     * Iterator for the spectrum matches to import.
-     */
-    private final ConcurrentLinkedQueue<SpectrumMatch> spectrumMatchQueue;
     /**
      * The number of PSMs which did not pass the import filters.
      */
@@ -104,45 +100,34 @@ public class PsmFirstHitRunnable implements Runnable {
      */
     private final HashSet<Integer> charges = new HashSet<>();
     /**
-     * The waiting handler to display feedback to the user.
+     * The spectrum matches with equally scoring candidates, processed once the
+     * protein count is complete.
      */
-    private final WaitingHandler waitingHandler;
-    /**
-     * Exception handler.
-     */
-    private final ExceptionHandler exceptionHandler;
+    private final ArrayList<SpectrumMatch> tiedSpectrumMatches = new ArrayList<>();
 
     /**
      * Constructor.
      *
-     * @param spectrumMatchQueue The spectrum matches iterator to use.
      * @param identificationParameters The identification parameters.
      * @param sequenceProvider The protein sequence provider.
      * @param spectrumProvider The spectrum provider.
      * @param inputMap The input scores map.
-     * @param proteinCount The map of protein occurrence.
-     * @param waitingHandler The waiting handler to display feedback to the
-     * user.
-     * @param exceptionHandler The handler of exceptions.
+     * @param proteinCount The map of protein occurrence, shared with the
+     * other import threads and only read when processing the tied spectrum
+     * matches.
      */
-    public PsmFirstHitRunnable(
-            ConcurrentLinkedQueue<SpectrumMatch> spectrumMatchQueue,
+    public PsmFirstHitSelection(
             IdentificationParameters identificationParameters,
             SequenceProvider sequenceProvider,
             SpectrumProvider spectrumProvider,
             InputMap inputMap,
-            HashMap<String, Integer> proteinCount,
-            WaitingHandler waitingHandler,
-            ExceptionHandler exceptionHandler
+            Map<String, Integer> proteinCount
     ) {
 
-        this.spectrumMatchQueue = spectrumMatchQueue;
         this.identificationParameters = identificationParameters;
         this.sequenceProvider = sequenceProvider;
         this.spectrumProvider = spectrumProvider;
         this.inputMap = inputMap;
-        this.waitingHandler = waitingHandler;
-        this.exceptionHandler = exceptionHandler;
 
         this.bestMatchSelection = new BestMatchSelection(
                 proteinCount,
@@ -154,38 +139,91 @@ public class PsmFirstHitRunnable implements Runnable {
 
     }
 
-    @Override
-    public void run() {
+    /**
+     * Selects the first hit for the given spectrum match. If equally scoring
+     * candidates are found, the spectrum match is set aside and processed by
+     * processTiedPsms.
+     *
+     * @param spectrumMatch The spectrum match.
+     */
+    public void processPsm(
+            SpectrumMatch spectrumMatch
+    ) {
 
-        try {
+        if (hasTies(spectrumMatch)) {
 
-            SpectrumMatch spectrumMatch;
-            while ((spectrumMatch = spectrumMatchQueue.poll()) != null) {
+            tiedSpectrumMatches.add(spectrumMatch);
 
-                processPsm(spectrumMatch);
+        } else {
 
-                if (waitingHandler.isRunCanceled()) {
-                    return;
-                }
+            selectFirstHits(spectrumMatch);
 
-                waitingHandler.increaseSecondaryProgressCounter();
+        }
+    }
 
-            }
+    /**
+     * Selects the first hits of the spectrum matches set aside because of
+     * equally scoring candidates. To be called when the protein count of the
+     * file is complete.
+     */
+    public void processTiedPsms() {
+
+        for (SpectrumMatch spectrumMatch : tiedSpectrumMatches) {
+
+            selectFirstHits(spectrumMatch);
+
+        }
+
+        tiedSpectrumMatches.clear();
 
-        } catch (Exception e) {
+    }
+
+    /**
+     * Returns the number of spectrum matches set aside because of equally
+     * scoring candidates.
+     *
+     * @return the number of spectrum matches set aside
+     */
+    public int getnTiedPsms() {
+        return tiedSpectrumMatches.size();
+    }
+
+    /**
+     * Indicates whether the given spectrum match has equally scoring
+     * candidates for an algorithm, in which case the selection of the first
+     * hit might depend on the protein count.
+     *
+     * @param spectrumMatch The spectrum match.
+     *
+     * @return a boolean indicating whether the spectrum match has equally
+     * scoring candidates
+     */
+    private boolean hasTies(
+            SpectrumMatch spectrumMatch
+    ) {
+
+        for (TreeMap<Double, ArrayList<PeptideAssumption>> assumptionsForAdvocate : spectrumMatch.getPeptideAssumptionsMap().values()) {
+
+            for (ArrayList<PeptideAssumption> assumptions : assumptionsForAdvocate.values()) {
 
-            waitingHandler.setRunCanceled();
-            exceptionHandler.catchException(e);
+                if (assumptions.size() > 1) {
 
+                    return true;
+
+                }
+            }
         }
+
+        return false;
+
     }
 
     /**
      * Selects the first hit for the given spectrum match.
      *
-     * @param spectrumMatch
+     * @param spectrumMatch The spectrum match.
      */
-    private void processPsm(
+    private void selectFirstHits(
             SpectrumMatch spectrumMatch
     ) {
 
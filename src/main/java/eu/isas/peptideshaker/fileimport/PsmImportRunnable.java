@@ -17,12 +17,14 @@ import com.compomics.util.experiment.identification.validation.percolator.Percol
 import com.compomics.util.experiment.identification.validation.percolator.PercolatorFeaturesCache;
 import com.compomics.util.experiment.io.biology.protein.SequenceProvider;
 import com.compomics.util.experiment.io.identification.IdfileReader;
+import com.compomics.util.experiment.mass_spectrometry.SpectrumProvider;
 import com.compomics.util.parameters.identification.IdentificationParameters;
 import com.compomics.util.parameters.identification.advanced.SequenceMatchingParameters;
 import com.compomics.util.parameters.identification.search.ModificationParameters;
 import com.compomics.util.parameters.identification.search.SearchParameters;
 import com.compomics.util.parameters.tools.ProcessingParameters;
 import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.peptideshaker.scoring.maps.InputMap;
 import eu.isas.peptideshaker.utils.PercolatorUtils;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -30,11 +32,12 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.IntStream;
 
 /**
- * Runnable for the import of PSMs.
+ * Runnable for the import of PSMs. Every spectrum match is imported and its
+ * first hits are selected in a single pass.
  *
  * @author Marc Vaudel
  */
@@ -49,9 +52,9 @@ public class PsmImportRunnable implements Runnable {
      */
     private final ModificationFactory modificationFactory = ModificationFactory.getInstance();
     /**
-     * Iterator for the spectrum matches to import.
+     * Queue of the batches of spectrum matches to import.
      */
-    private final ConcurrentLinkedQueue<SpectrumMatch> spectrumMatchQueue;
+    private final SpectrumMatchBatchQueue spectrumMatchQueue;
     /**
      * Map of the objects to add to the database.
      */
@@ -78,9 +81,14 @@ public class PsmImportRunnable implements Runnable {
      */
     private final IdfileReader fileReader;
     /**
-     * Map of the number of times proteins appeared as first hit.
+     * Map of the number of times proteins appeared as first hit, shared with
+     * the other import threads.
      */
-    private final HashMap<String, Integer> proteinCount = new HashMap<>(10000);
+    private final ConcurrentHashMap<String, Integer> proteinCount;
+    /**
+     * The selection of the first hits.
+     */
+    private final PsmFirstHitSelection firstHitSelection;
     /**
      * The identification object database.
      */
@@ -113,7 +121,7 @@ public class PsmImportRunnable implements Runnable {
     /**
      * Constructor.
      *
-     * @param spectrumMatchQueue the spectrum matches iterator to use
+     * @param spectrumMatchQueue the queue of spectrum match batches to import
      * @param identificationParameters the identification parameters
      * @param processingParameters the processing parameters
      * @param fileReader the reader of the file which the matches are imported
@@ -121,19 +129,26 @@ public class PsmImportRunnable implements Runnable {
      * @param identification the identification object where to store the
      * matches
      * @param sequenceProvider the protein sequence provider
+     * @param spectrumProvider the spectrum provider
      * @param fastaMapper the FASTA mapper used to map peptides to proteins
+     * @param inputMap the input scores map
+     * @param proteinCount the map of protein occurrence shared between the
+     * import threads
      * @param waitingHandler The waiting handler to display feedback to the
      * user.
      * @param exceptionHandler The handler of exceptions.
      */
     public PsmImportRunnable(
-            ConcurrentLinkedQueue<SpectrumMatch> spectrumMatchQueue,
+            SpectrumMatchBatchQueue spectrumMatchQueue,
             IdentificationParameters identificationParameters,
             ProcessingParameters processingParameters,
             IdfileReader fileReader,
             Identification identification,
             SequenceProvider sequenceProvider,
+            SpectrumProvider spectrumProvider,
             FastaMapper fastaMapper,
+            InputMap inputMap,
+            ConcurrentHashMap<String, Integer> proteinCount,
             WaitingHandler waitingHandler,
             ExceptionHandler exceptionHandler
     ) {
@@ -145,9 +160,18 @@ public class PsmImportRunnable implements Runnable {
         this.identification = identification;
         this.sequenceProvider = sequenceProvider;
         this.fastaMapper = fastaMapper;
+        this.proteinCount = proteinCount;
         this.waitingHandler = waitingHandler;
         this.exceptionHandler = exceptionHandler;
 
+        this.firstHitSelection = new PsmFirstHitSelection(
+                identificationParameters,
+                sequenceProvider,
+                spectrumProvider,
+                inputMap,
+                proteinCount
+        );
+
     }
 
     @Override
@@ -155,17 +179,21 @@ public class PsmImportRunnable implements Runnable {
 
         try {
 
-            SpectrumMatch spectrumMatch;
-            while ((spectrumMatch = spectrumMatchQueue.poll()) != null) {
+            ArrayList<SpectrumMatch> batch;
+            while ((batch = spectrumMatchQueue.take()) != null) {
 
-                importPsm(spectrumMatch);
+                for (SpectrumMatch spectrumMatch : batch) {
 
-                if (waitingHandler.isRunCanceled()) {
-                    return;
-                }
+                    importPsm(spectrumMatch);
+                    firstHitSelection.processPsm(spectrumMatch);
 
-                waitingHandler.increaseSecondaryProgressCounter();
+                    if (waitingHandler.isRunCanceled()) {
+                        return;
+                    }
+
+                    waitingHandler.increaseSecondaryProgressCounter();
 
+                }
             }
 
             if (!matchesToAdd.isEmpty()) {
@@ -422,13 +450,8 @@ public class PsmImportRunnable implements Runnable {
                             // Get protein count
                             for (String protein : peptide.getProteinMapping().navigableKeySet()) {
 
-                                Integer count = proteinCount.get(protein);
+                                proteinCount.merge(protein, 1, Integer::sum);
 
-                                if (count != null) {
-                                    proteinCount.put(protein, count + 1);
-                                } else {
-                                    proteinCount.put(protein, 1);
-                                }
                             }
 
                             // Cache the Percolator features
@@ -569,11 +592,11 @@ public class PsmImportRunnable implements Runnable {
     }
 
     /**
-     * Returns the occurrence of each protein.
+     * Returns the first hit selection module of this thread.
      *
-     * @return the occurrence of each protein
+     * @return the first hit selection module of this thread
      */
-    public HashMap<String, Integer> getProteinCount() {
-        return proteinCount;
+    public PsmFirstHitSelection getFirstHitSelection() {
+        return firstHitSelection;
     }
 }
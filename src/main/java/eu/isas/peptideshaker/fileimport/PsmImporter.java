@@ -22,10 +22,8 @@ import static eu.isas.peptideshaker.PeptideShaker.TIMEOUT_DAYS;
 import eu.isas.peptideshaker.scoring.maps.InputMap;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -109,9 +107,10 @@ public class PsmImporter {
     private final HashSet<Integer> charges = new HashSet<>();
     /**
      * Map of proteins found several times with the number of times they
-     * appeared as first hit.
+     * appeared as first hit. Shared by the import threads, the count is only
+     * used to break ties once the import of the file is complete.
      */
-    private HashMap<String, Integer> proteinCount = new HashMap<>(10000);
+    private final ConcurrentHashMap<String, Integer> proteinCount = new ConcurrentHashMap<>(10000);
 
     /**
      * Constructor.
@@ -121,7 +120,12 @@ public class PsmImporter {
     }
 
     /**
-     * Imports PSMs.
+     * Imports PSMs. The parsed matches are handed over to the import threads
+     * in bounded batches, and the references to the matches are released from
+     * the given list when handed over. Each thread imports the matches and selects their
+     * first hits in a single pass, except for the matches with equally scoring
+     * candidates, which are processed in a second pass once the protein count
+     * of the file is complete.
      *
      * @param spectrumMatches The PSMs to import.
      * @param identification The identification object.
@@ -132,6 +136,7 @@ public class PsmImporter {
      * @param spectrumProvider The spectrum provider.
      * @param fastaMapper The sequence mapper.
      * @param processingParameters The processing parameters.
+     * @param nThreads The number of import threads.
      * @param waitingHandler The waiting handler to display progress and allow
      * canceling the import.
      * @param exceptionHandler The handler of exceptions.
@@ -151,14 +156,17 @@ public class PsmImporter {
             SpectrumProvider spectrumProvider,
             FastaMapper fastaMapper,
             ProcessingParameters processingParameters,
+            int nThreads,
             WaitingHandler waitingHandler,
             ExceptionHandler exceptionHandler
     ) 
             throws InterruptedException, TimeoutException {
-        
-        int nThreads = processingParameters.getnThreads();
 
-        ConcurrentLinkedQueue<SpectrumMatch> spectrumMatchQueue = new ConcurrentLinkedQueue<>(spectrumMatches);
+        SpectrumMatchBatchQueue spectrumMatchQueue = new SpectrumMatchBatchQueue(
+                nThreads,
+                SpectrumMatchBatchQueue.DEFAULT_BATCH_SIZE,
+                waitingHandler
+        );
 
         ExecutorService importPool = Executors.newFixedThreadPool(nThreads);
 
@@ -174,7 +182,10 @@ public class PsmImporter {
                             fileReader,
                             identification,
                             sequenceProvider,
+                            spectrumProvider,
                             fastaMapper,
+                            inputMap,
+                            proteinCount,
                             waitingHandler,
                             exceptionHandler
                     )
@@ -185,6 +196,9 @@ public class PsmImporter {
                 worker -> importPool.submit(worker)
         );
 
+        spectrumMatchQueue.handOver(spectrumMatches, true);
+        spectrumMatchQueue.close();
+
         importPool.shutdown();
 
         if (!importPool.awaitTermination(TIMEOUT_DAYS, TimeUnit.DAYS)) {
@@ -194,82 +208,66 @@ public class PsmImporter {
             );
         }
 
-        // Gather metrics from each thread
-        for (PsmImportRunnable runnable : importRunnables) {
+        // Break the ties now that the protein count is complete
+        if (!waitingHandler.isRunCanceled()) {
 
-            nPSMs += runnable.getnPSMs();
-            nPeptideAssumptionsTotal += runnable.getnPeptideAssumptionsTotal();
-            peptideIssue += runnable.getPeptideIssue();
-            modificationIssue += runnable.getModificationIssue();
+            ExecutorService tiePool = Executors.newFixedThreadPool(nThreads);
 
-            for (Entry<String, Integer> entry : runnable.getProteinCount().entrySet()) {
+            for (PsmImportRunnable runnable : importRunnables) {
 
-                String accession = entry.getKey();
-                int threadCount = entry.getValue();
-                Integer count = proteinCount.get(accession);
+                PsmFirstHitSelection firstHitSelection = runnable.getFirstHitSelection();
 
-                if (count != null) {
+                if (firstHitSelection.getnTiedPsms() > 0) {
 
-                    proteinCount.put(accession, count + threadCount);
+                    tiePool.submit(
+                            () -> {
 
-                } else {
+                                try {
 
-                    proteinCount.put(accession, threadCount);
+                                    firstHitSelection.processTiedPsms();
 
-                }
-            }
-        }
-
-        spectrumMatchQueue = new ConcurrentLinkedQueue<>(spectrumMatches);
+                                } catch (Exception e) {
 
-        ExecutorService firstHitPool = Executors.newFixedThreadPool(nThreads);
-
-        ArrayList<PsmFirstHitRunnable> firstHitRunnables = new ArrayList<>(nThreads);
-
-        for (int i = 0; i < nThreads; i++) {
+                                    waitingHandler.setRunCanceled();
+                                    exceptionHandler.catchException(e);
 
-            firstHitRunnables.add(
-                    new PsmFirstHitRunnable(
-                            spectrumMatchQueue,
-                            identificationParameters,
-                            sequenceProvider,
-                            spectrumProvider,
-                            inputMap,
-                            proteinCount,
-                            waitingHandler,
-                            exceptionHandler
-                    )
-            );
-        }
-
-        firstHitRunnables.forEach(
-                worker -> firstHitPool.submit(worker)
-        );
-
-        firstHitPool.shutdown();
+                                }
+                            }
+                    );
+                }
+            }
 
-        if (!firstHitPool.awaitTermination(TIMEOUT_DAYS, TimeUnit.DAYS)) {
+            tiePool.shutdown();
 
-            throw new TimeoutException(
-                    "Analysis timed out (time out: " + TIMEOUT_DAYS + " days)"
-            );
+            if (!tiePool.awaitTermination(TIMEOUT_DAYS, TimeUnit.DAYS)) {
 
+                throw new TimeoutException(
+                        "Analysis timed out (time out: " + TIMEOUT_DAYS + " days)"
+                );
+            }
         }
 
         // Gather metrics from each thread
-        for (PsmFirstHitRunnable runnable : firstHitRunnables) {
+        for (PsmImportRunnable runnable : importRunnables) {
 
-            psmsRejected += runnable.getPsmsRejected();
-            proteinIssue += runnable.getProteinIssue();
+            nPSMs += runnable.getnPSMs();
+            nPeptideAssumptionsTotal += runnable.getnPeptideAssumptionsTotal();
             peptideIssue += runnable.getPeptideIssue();
-            precursorIssue += runnable.getPrecursorIssue();
-            nRetained += runnable.getnRetained();
-            missingProteins += runnable.getMissingProteins();
-            maxPeptideErrorPpm = Math.max(maxPeptideErrorPpm, runnable.getMaxPeptideErrorPpm());
-            maxPeptideErrorDa = Math.max(maxPeptideErrorDa, runnable.getMaxPeptideErrorDa());
-            maxTagErrorPpm = Math.max(maxTagErrorPpm, runnable.getMaxPeptideErrorPpm());
-            maxTagErrorDa = Math.max(maxTagErrorDa, runnable.getMaxPeptideErrorDa());
-            charges.addAll(runnable.getCharges());
+            modificationIssue += runnable.getModificationIssue();
+
+            PsmFirstHitSelection firstHitSelection = runnable.getFirstHitSelection();
+
+            psmsRejected += firstHitSelection.getPsmsRejected();
+            proteinIssue += firstHitSelection.getProteinIssue();
+            peptideIssue += firstHitSelection.getPeptideIssue();
+            precursorIssue += firstHitSelection.getPrecursorIssue();
+            nRetained += firstHitSelection.getnRetained();
+            missingProteins += firstHitSelection.getMissingProteins();
+            maxPeptideErrorPpm = Math.max(maxPeptideErrorPpm, firstHitSelection.getMaxPeptideErrorPpm());
+            maxPeptideErrorDa = Math.max(maxPeptideErrorDa, firstHitSelection.getMaxPeptideErrorDa());
+            maxTagErrorPpm = Math.max(maxTagErrorPpm, firstHitSelection.getMaxPeptideErrorPpm());
+            maxTagErrorDa = Math.max(maxTagErrorDa, firstHitSelection.getMaxPeptideErrorDa());
+            charges.addAll(firstHitSelection.getCharges());
 
         }
     }
@@ -475,7 +473,7 @@ public class PsmImporter {
      *
      * @return the occurrence of each protein
      */
-    public HashMap<String, Integer> getProteinCount() {
+    public ConcurrentHashMap<String, Integer> getProteinCount() {
         return proteinCount;
     }
 }
@@ -0,0 +1,184 @@
+package eu.isas.peptideshaker.fileimport;
+
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import com.compomics.util.waiting.WaitingHandler;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded queue of spectrum match batches used to hand over parsed spectrum
+ * matches to the import threads. Producers are blocked when the consumers lag
+ * behind, so that the number of matches waiting in the queue is proportional
+ * to the batch size. The matches are however still parsed by the
+ * IdfileReader into a single list, the peak memory of the import thus still
+ * scales with the size of the identification file until the readers can
+ * produce batches of matches while parsing.
+ *
+ * @author Marc Vaudel
+ */
+public class SpectrumMatchBatchQueue {
+
+    /**
+     * The default number of spectrum matches per batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    /**
+     * The number of batches that can be queued per consumer.
+     */
+    private static final int BATCHES_PER_CONSUMER = 2;
+    /**
+     * The time in milliseconds to wait before checking whether the run was
+     * canceled when the queue is full.
+     */
+    private static final long OFFER_TIMEOUT_MS = 100;
+    /**
+     * Batch used to signal the end of the matches to the consumers.
+     */
+    private static final ArrayList<SpectrumMatch> END_OF_MATCHES = new ArrayList<>(0);
+    /**
+     * The queue of batches.
+     */
+    private final ArrayBlockingQueue<ArrayList<SpectrumMatch>> queue;
+    /**
+     * The number of consumers.
+     */
+    private final int nConsumers;
+    /**
+     * The number of spectrum matches per batch.
+     */
+    private final int batchSize;
+    /**
+     * The waiting handler used to check whether the run was canceled.
+     */
+    private final WaitingHandler waitingHandler;
+
+    /**
+     * Constructor.
+     *
+     * @param nConsumers The number of threads consuming the batches.
+     * @param batchSize The number of spectrum matches per batch.
+     * @param waitingHandler The waiting handler used to check whether the run
+     * was canceled.
+     */
+    public SpectrumMatchBatchQueue(
+            int nConsumers,
+            int batchSize,
+            WaitingHandler waitingHandler
+    ) {
+
+        this.nConsumers = nConsumers;
+        this.batchSize = batchSize;
+        this.waitingHandler = waitingHandler;
+        this.queue = new ArrayBlockingQueue<>(BATCHES_PER_CONSUMER * nConsumers);
+
+    }
+
+    /**
+     * Hands over the given spectrum matches to the consumers in batches. If
+     * release is true, the matches are removed from the list when handed over
+     * so that they can be garbage collected once processed.
+     *
+     * @param spectrumMatches The spectrum matches to hand over.
+     * @param release If true the references to the matches are removed from
+     * the list.
+     *
+     * @return A boolean indicating whether all the matches were handed over,
+     * false if the run was canceled.
+     *
+     * @throws InterruptedException Exception thrown if a thread is
+     * interrupted.
+     */
+    public boolean handOver(
+            ArrayList<SpectrumMatch> spectrumMatches,
+            boolean release
+    ) throws InterruptedException {
+
+        ArrayList<SpectrumMatch> batch = new ArrayList<>(batchSize);
+
+        for (int i = 0; i < spectrumMatches.size(); i++) {
+
+            batch.add(spectrumMatches.get(i));
+
+            if (release) {
+                spectrumMatches.set(i, null);
+            }
+
+            if (batch.size() == batchSize) {
+
+                if (!put(batch)) {
+                    return false;
+                }
+
+                batch = new ArrayList<>(batchSize);
+
+            }
+        }
+
+        return batch.isEmpty() || put(batch);
+
+    }
+
+    /**
+     * Puts a batch in the queue, waits if the queue is full.
+     *
+     * @param batch The batch to add.
+     *
+     * @return A boolean indicating whether the batch was added, false if the
+     * run was canceled.
+     *
+     * @throws InterruptedException Exception thrown if a thread is
+     * interrupted.
+     */
+    public boolean put(
+            ArrayList<SpectrumMatch> batch
+    ) throws InterruptedException {
+
+        while (!queue.offer(batch, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+
+            if (waitingHandler.isRunCanceled()) {
+                return false;
+            }
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Returns the next batch, waits if the queue is empty. Null if the end of
+     * the matches is reached.
+     *
+     * @return The next batch.
+     *
+     * @throws InterruptedException Exception thrown if a thread is
+     * interrupted.
+     */
+    public ArrayList<SpectrumMatch> take() throws InterruptedException {
+
+        ArrayList<SpectrumMatch> batch = queue.take();
+
+        return batch == END_OF_MATCHES ? null : batch;
+
+    }
+
+    /**
+     * Signals the end of the matches to every consumer. If the run was
+     * canceled, batches not yet consumed are discarded.
+     *
+     * @throws InterruptedException Exception thrown if a thread is
+     * interrupted.
+     */
+    public void close() throws InterruptedException {
+
+        for (int i = 0; i < nConsumers; i++) {
+
+            while (!queue.offer(END_OF_MATCHES, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+
+                if (waitingHandler.isRunCanceled()) {
+                    queue.removeIf(batch -> batch != END_OF_MATCHES);
+                }
+            }
+        }
+    }
+}
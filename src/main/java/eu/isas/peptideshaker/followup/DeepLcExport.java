@@ -326,51 +326,20 @@ public class DeepLcExport {
                         }
                     }
 
-                    // Measured retention time
-                    String spectrumFile = spectrumMatch.getSpectrumFile();
-                    String spectrumTitle = spectrumMatch.getSpectrumTitle();
-                    Precursor precursor = spectrumProvider.getPrecursor(spectrumFile, spectrumTitle);
-                    double retentionTime = precursor.rt;
-
-                    // Export all candidate peptides
-                    SpectrumMatch tempSpectrumMatch = spectrumMatch;
-                    tempSpectrumMatch.getAllPeptideAssumptions()
-                            .parallel()
-                            .forEach(
-                                    peptideAssumption -> writePeptideCandidate(
-                                            null,
-                                            peptideAssumption,
-                                            retentionTime,
-                                            tempSpectrumMatch,
-                                            modificationParameters,
-                                            sequenceProvider,
-                                            sequenceMatchingParameters,
-                                            modificationFactory,
-                                            processedPeptideKeys,
-                                            writingSemaphore,
-                                            writer
-                                    )
-                            );
-
-                    // Export all confident candidate peptides
-                    //SpectrumMatch tempSpectrumMatch2 = spectrumMatch;
-                    tempSpectrumMatch.getAllPeptideAssumptions()
-                            .parallel()
-                            .forEach(
-                                    peptideAssumption -> writePeptideCandidate(
-                                            confidenceScores,
-                                            peptideAssumption,
-                                            retentionTime,
-                                            tempSpectrumMatch,
-                                            modificationParameters,
-                                            sequenceProvider,
-                                            sequenceMatchingParameters,
-                                            modificationFactory,
-                                            processedConfidentPeptideKeys,
-                                            writingSemaphore,
-                                            writerConfident
-                                    )
-                            );
+                    exportSpectrumMatch(
+                            spectrumMatch,
+                            confidenceScores,
+                            modificationParameters,
+                            sequenceMatchingParameters,
+                            sequenceProvider,
+                            spectrumProvider,
+                            modificationFactory,
+                            processedPeptideKeys,
+                            processedConfidentPeptideKeys,
+                            writingSemaphore,
+                            writer,
+                            writerConfident
+                    );
 
                     // Check whether the spectrum yielded a confident peptide
                     /*if (spectrumMatch.getBestPeptideAssumption() != null
@@ -399,6 +368,260 @@ public class DeepLcExport {
         }
     }
 
+    /**
+     * Exports the candidate peptides of a spectrum match.
+     *
+     * @param spectrumMatch The spectrum match.
+     * @param confidenceScores Confidence score for each PSM.
+     * @param modificationParameters The modification parameters.
+     * @param sequenceMatchingParameters The sequence matching parameters.
+     * @param sequenceProvider The sequence provider.
+     * @param spectrumProvider The spectrum provider.
+     * @param modificationFactory The factory containing the modification
+     * details.
+     * @param processedPeptideKeys The keys of the peptides already exported.
+     * @param processedConfidentPeptideKeys The keys of the peptides already
+     * exported for confident hits.
+     * @param writingSemaphore A semaphore to synchronize the writing to the
+     * sets of already processed peptides.
+     * @param writer The writer to use.
+     * @param writerConfident The writer to use for confident hits.
+     */
+    private static void exportSpectrumMatch(
+            SpectrumMatch spectrumMatch,
+            HashMap<String, Double> confidenceScores,
+            ModificationParameters modificationParameters,
+            SequenceMatchingParameters sequenceMatchingParameters,
+            SequenceProvider sequenceProvider,
+            SpectrumProvider spectrumProvider,
+            ModificationFactory modificationFactory,
+            HashSet<Long> processedPeptideKeys,
+            HashSet<Long> processedConfidentPeptideKeys,
+            SimpleSemaphore writingSemaphore,
+            SimpleFileWriter writer,
+            SimpleFileWriter writerConfident
+    ) {
+
+        // Measured retention time
+        String spectrumFile = spectrumMatch.getSpectrumFile();
+        String spectrumTitle = spectrumMatch.getSpectrumTitle();
+        Precursor precursor = spectrumProvider.getPrecursor(spectrumFile, spectrumTitle);
+        double retentionTime = precursor.rt;
+
+        // Export all candidate peptides
+        SpectrumMatch tempSpectrumMatch = spectrumMatch;
+        tempSpectrumMatch.getAllPeptideAssumptions()
+                .parallel()
+                .forEach(
+                        peptideAssumption -> writePeptideCandidate(
+                                null,
+                                peptideAssumption,
+                                retentionTime,
+                                tempSpectrumMatch,
+                                modificationParameters,
+                                sequenceProvider,
+                                sequenceMatchingParameters,
+                                modificationFactory,
+                                processedPeptideKeys,
+                                writingSemaphore,
+                                writer
+                        )
+                );
+
+        // Export all confident candidate peptides
+        //SpectrumMatch tempSpectrumMatch2 = spectrumMatch;
+        tempSpectrumMatch.getAllPeptideAssumptions()
+                .parallel()
+                .forEach(
+                        peptideAssumption -> writePeptideCandidate(
+                                confidenceScores,
+                                peptideAssumption,
+                                retentionTime,
+                                tempSpectrumMatch,
+                                modificationParameters,
+                                sequenceProvider,
+                                sequenceMatchingParameters,
+                                modificationFactory,
+                                processedConfidentPeptideKeys,
+                                writingSemaphore,
+                                writerConfident
+                        )
+                );
+    }
+
+    /**
+     * Visitor writing DeepLC training files for each of the spectrum files.
+     */
+    public static class DeepLcVisitor implements SpectrumMatchVisitor {
+
+        /**
+         * The stem to use for the path.
+         */
+        private final String destinationStem;
+        /**
+         * The names of the spectrum files.
+         */
+        private final ArrayList<String> spectrumFiles;
+        /**
+         * Boolean indicating whether the name of the spectrum file should be
+         * appended to the stem.
+         */
+        private final boolean addSuffix;
+        /**
+         * Confidence score for each PSM.
+         */
+        private final HashMap<String, Double> confidenceScores;
+        /**
+         * The modification parameters.
+         */
+        private final ModificationParameters modificationParameters;
+        /**
+         * The sequence matching parameters.
+         */
+        private final SequenceMatchingParameters sequenceMatchingParameters;
+        /**
+         * The sequence provider.
+         */
+        private final SequenceProvider sequenceProvider;
+        /**
+         * The spectrum provider.
+         */
+        private final SpectrumProvider spectrumProvider;
+        /**
+         * The factory containing the modification details.
+         */
+        private final ModificationFactory modificationFactory = ModificationFactory.getInstance();
+        /**
+         * The writers indexed by spectrum file.
+         */
+        private final HashMap<String, SimpleFileWriter> writers = new HashMap<>();
+        /**
+         * The writers for confident hits indexed by spectrum file.
+         */
+        private final HashMap<String, SimpleFileWriter> confidentWriters = new HashMap<>();
+        /**
+         * The keys of the peptides already exported indexed by spectrum file.
+         */
+        private final HashMap<String, HashSet<Long>> processedPeptideKeys = new HashMap<>();
+        /**
+         * The keys of the peptides already exported for confident hits
+         * indexed by spectrum file.
+         */
+        private final HashMap<String, HashSet<Long>> processedConfidentPeptideKeys = new HashMap<>();
+        /**
+         * The semaphores synchronizing the writing indexed by spectrum file.
+         */
+        private final HashMap<String, SimpleSemaphore> writingSemaphores = new HashMap<>();
+
+        /**
+         * Constructor. Opens the files and writes the headers.
+         *
+         * @param destinationStem The stem to use for the path.
+         * @param percolatorBenchmarkResultsFile The file containing Percolator
+         * results for all PSMs.
+         * @param identification The identification object containing the
+         * matches.
+         * @param modificationParameters The modification parameters.
+         * @param sequenceMatchingParameters The sequence matching parameters.
+         * @param sequenceProvider The sequence provider.
+         * @param spectrumProvider The spectrum provider.
+         */
+        public DeepLcVisitor(
+                String destinationStem,
+                File percolatorBenchmarkResultsFile,
+                Identification identification,
+                ModificationParameters modificationParameters,
+                SequenceMatchingParameters sequenceMatchingParameters,
+                SequenceProvider sequenceProvider,
+                SpectrumProvider spectrumProvider
+        ) {
+
+            this.destinationStem = destinationStem;
+            this.modificationParameters = modificationParameters;
+            this.sequenceMatchingParameters = sequenceMatchingParameters;
+            this.sequenceProvider = sequenceProvider;
+            this.spectrumProvider = spectrumProvider;
+
+            confidenceScores = percolatorBenchmarkResultsFile == null ? null : getPercolatorResults(percolatorBenchmarkResultsFile);
+
+            spectrumFiles = new ArrayList<>(identification.getSpectrumIdentification().keySet());
+            addSuffix = spectrumFiles.size() > 1;
+
+            try {
+
+                for (String spectrumFile : spectrumFiles) {
+
+                    SimpleFileWriter writer = new SimpleFileWriter(getDestinationFile(destinationStem, spectrumFile, addSuffix), true);
+                    writers.put(spectrumFile, writer);
+                    writer.writeLine("seq,modifications,tr");
+
+                    SimpleFileWriter writerConfident = new SimpleFileWriter(getConfidentHitsDestinationFile(destinationStem, spectrumFile, addSuffix), true);
+                    confidentWriters.put(spectrumFile, writerConfident);
+                    writerConfident.writeLine("seq,modifications,tr");
+
+                    processedPeptideKeys.put(spectrumFile, new HashSet<>());
+                    processedConfidentPeptideKeys.put(spectrumFile, new HashSet<>());
+                    writingSemaphores.put(spectrumFile, new SimpleSemaphore(1));
+
+                }
+
+            } catch (RuntimeException e) {
+
+                // close the files already opened
+                close();
+                throw e;
+
+            }
+        }
+
+        @Override
+        public void visit(
+                SpectrumMatch spectrumMatch
+        ) {
+
+            String spectrumFile = spectrumMatch.getSpectrumFile();
+
+            exportSpectrumMatch(
+                    spectrumMatch,
+                    confidenceScores,
+                    modificationParameters,
+                    sequenceMatchingParameters,
+                    sequenceProvider,
+                    spectrumProvider,
+                    modificationFactory,
+                    processedPeptideKeys.get(spectrumFile),
+                    processedConfidentPeptideKeys.get(spectrumFile),
+                    writingSemaphores.get(spectrumFile),
+                    writers.get(spectrumFile),
+                    confidentWriters.get(spectrumFile)
+            );
+        }
+
+        @Override
+        public void close() {
+
+            writers.values().forEach(SimpleFileWriter::close);
+            confidentWriters.values().forEach(SimpleFileWriter::close);
+
+        }
+
+        @Override
+        public ArrayList<File> getExportedFiles() {
+
+            ArrayList<File> exportedFiles = new ArrayList<>(2 * spectrumFiles.size());
+
+            for (String spectrumFile : spectrumFiles) {
+
+                exportedFiles.add(getDestinationFile(destinationStem, spectrumFile, addSuffix));
+                exportedFiles.add(getConfidentHitsDestinationFile(destinationStem, spectrumFile, addSuffix));
+
+            }
+
+            return exportedFiles;
+
+        }
+    }
+
     /**
      * Writes a peptide candidate to the export if not done already.
      *
@@ -0,0 +1,189 @@
+package eu.isas.peptideshaker.followup;
+
+import com.compomics.util.experiment.identification.Identification;
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import com.compomics.util.experiment.identification.matches_iterators.SpectrumMatchesIterator;
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs follow-up exports in a single pass over the spectrum matches. Every
+ * spectrum match is retrieved from the database once and passed to all the
+ * registered exports, the matches being processed in parallel.
+ *
+ * @author Marc Vaudel
+ */
+public class FollowUpExportEngine {
+
+    /**
+     * The exports registered.
+     */
+    private final ArrayList<SpectrumMatchVisitor> visitors = new ArrayList<>();
+    /**
+     * The first error encountered while visiting the matches, null if none.
+     */
+    private Throwable error = null;
+
+    /**
+     * Constructor.
+     */
+    public FollowUpExportEngine() {
+    }
+
+    /**
+     * Registers an export.
+     *
+     * @param visitor the export to register
+     */
+    public void register(
+            SpectrumMatchVisitor visitor
+    ) {
+
+        visitors.add(visitor);
+
+    }
+
+    /**
+     * Indicates whether exports were registered.
+     *
+     * @return a boolean indicating whether exports were registered
+     */
+    public boolean isEmpty() {
+
+        return visitors.isEmpty();
+
+    }
+
+    /**
+     * Passes all spectrum matches of the given identification to the
+     * registered exports, and closes the exports. Errors thrown by the
+     * exports cancel the process and are thrown again once the exports are
+     * closed.
+     *
+     * @param identification the identification
+     * @param nThreads the number of threads to use
+     * @param waitingHandler the waiting handler
+     *
+     * @return the files written by the exports
+     *
+     * @throws InterruptedException exception thrown if a thread is
+     * interrupted
+     * @throws TimeoutException exception thrown if the process timed out
+     */
+    public ArrayList<File> run(
+            Identification identification,
+            int nThreads,
+            WaitingHandler waitingHandler
+    ) throws InterruptedException, TimeoutException {
+
+        try {
+
+            waitingHandler.resetSecondaryProgressCounter();
+            waitingHandler.setMaxSecondaryProgressCounter(identification.getSpectrumIdentificationSize());
+
+            SpectrumMatchesIterator spectrumMatchesIterator = identification.getSpectrumMatchesIterator(null);
+            ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+
+            for (int i = 0; i < nThreads; i++) {
+
+                pool.submit(
+                        () -> visitMatches(
+                                spectrumMatchesIterator,
+                                waitingHandler
+                        )
+                );
+
+            }
+
+            pool.shutdown();
+
+            if (!pool.awaitTermination(identification.getSpectrumIdentificationSize(), TimeUnit.MINUTES)) {
+
+                throw new TimeoutException("Follow-up export timed out. Please contact the developers.");
+
+            }
+
+        } finally {
+
+            for (SpectrumMatchVisitor visitor : visitors) {
+
+                visitor.close();
+
+            }
+        }
+
+        if (error instanceof Error) {
+
+            throw (Error) error;
+
+        } else if (error instanceof RuntimeException) {
+
+            throw (RuntimeException) error;
+
+        } else if (error != null) {
+
+            throw new RuntimeException(error);
+
+        }
+
+        ArrayList<File> exportedFiles = new ArrayList<>();
+
+        for (SpectrumMatchVisitor visitor : visitors) {
+
+            exportedFiles.addAll(visitor.getExportedFiles());
+
+        }
+
+        return exportedFiles;
+
+    }
+
+    /**
+     * Passes the spectrum matches of the iterator to all exports until the
+     * iterator is exhausted or the process canceled.
+     *
+     * @param spectrumMatchesIterator the spectrum matches iterator
+     * @param waitingHandler the waiting handler
+     */
+    private void visitMatches(
+            SpectrumMatchesIterator spectrumMatchesIterator,
+            WaitingHandler waitingHandler
+    ) {
+
+        try {
+
+            SpectrumMatch spectrumMatch;
+
+            while ((spectrumMatch = spectrumMatchesIterator.next()) != null && !waitingHandler.isRunCanceled()) {
+
+                for (SpectrumMatchVisitor visitor : visitors) {
+
+                    visitor.visit(spectrumMatch);
+
+                }
+
+                waitingHandler.increaseSecondaryProgressCounter();
+
+            }
+
+        } catch (Throwable e) {
+
+            synchronized (this) {
+
+                if (error == null) {
+
+                    error = e;
+
+                }
+            }
+
+            waitingHandler.setRunCanceled();
+
+        }
+    }
+}
@@ -197,17 +197,17 @@ public class Ms2PipExport {
             WaitingHandler waitingHandler
     ) {
 
-        ModificationFactory modificationFactory = ModificationFactory.getInstance();
-
-        try (SimpleFileWriter writer = new SimpleFileWriter(peprecFile, true)) {
+        Ms2PipVisitor visitor = new Ms2PipVisitor(
+                peprecFile,
+                modificationParameters,
+                sequenceMatchingParameters,
+                sequenceProvider
+        );
 
-            writer.writeLine("spec_id modifications peptide charge");
+        try {
 
             SpectrumMatchesIterator spectrumMatchesIterator = identification.getSpectrumMatchesIterator(waitingHandler);
 
-            HashSet<Long> processedPeptideKeys = new HashSet<>();
-            SimpleSemaphore writingSemaphore = new SimpleSemaphore(1);
-
             SpectrumMatch spectrumMatch;
 
             while ((spectrumMatch = spectrumMatchesIterator.next()) != null) {
@@ -224,22 +224,119 @@ public class Ms2PipExport {
                     }
                 }
 
-                // Export all candidate peptides
-                spectrumMatch.getAllPeptideAssumptions()
-                        .parallel()
-                        .forEach(
-                                peptideAssumption -> writePeptideCandidate(
-                                        peptideAssumption,
-                                        modificationParameters,
-                                        sequenceProvider,
-                                        sequenceMatchingParameters,
-                                        modificationFactory,
-                                        processedPeptideKeys,
-                                        writingSemaphore,
-                                        writer
-                                )
-                        );
+                visitor.visit(spectrumMatch);
+
             }
+
+        } finally {
+
+            visitor.close();
+
+        }
+    }
+
+    /**
+     * Visitor writing the peptides of the spectrum matches to a peprec file.
+     * All candidate peptides are exported once.
+     */
+    public static class Ms2PipVisitor implements SpectrumMatchVisitor {
+
+        /**
+         * The file where to write the export.
+         */
+        private final File peprecFile;
+        /**
+         * The writer to use.
+         */
+        private final SimpleFileWriter writer;
+        /**
+         * The modification parameters.
+         */
+        private final ModificationParameters modificationParameters;
+        /**
+         * The sequence matching parameters.
+         */
+        private final SequenceMatchingParameters sequenceMatchingParameters;
+        /**
+         * The sequence provider.
+         */
+        private final SequenceProvider sequenceProvider;
+        /**
+         * The factory containing the modification details.
+         */
+        private final ModificationFactory modificationFactory = ModificationFactory.getInstance();
+        /**
+         * The keys of the peptides already processed.
+         */
+        private final HashSet<Long> processedPeptideKeys = new HashSet<>();
+        /**
+         * A semaphore to synchronize the writing to the set of already
+         * processed peptides.
+         */
+        private final SimpleSemaphore writingSemaphore = new SimpleSemaphore(1);
+
+        /**
+         * Constructor. Opens the file and writes the header.
+         *
+         * @param peprecFile The file where to write the export.
+         * @param modificationParameters The modification parameters.
+         * @param sequenceMatchingParameters The sequence matching parameters.
+         * @param sequenceProvider The sequence provider.
+         */
+        public Ms2PipVisitor(
+                File peprecFile,
+                ModificationParameters modificationParameters,
+                SequenceMatchingParameters sequenceMatchingParameters,
+                SequenceProvider sequenceProvider
+        ) {
+
+            this.peprecFile = peprecFile;
+            this.modificationParameters = modificationParameters;
+            this.sequenceMatchingParameters = sequenceMatchingParameters;
+            this.sequenceProvider = sequenceProvider;
+
+            writer = new SimpleFileWriter(peprecFile, true);
+            writer.writeLine("spec_id modifications peptide charge");
+
+        }
+
+        @Override
+        public void visit(
+                SpectrumMatch spectrumMatch
+        ) {
+
+            // Export all candidate peptides
+            spectrumMatch.getAllPeptideAssumptions()
+                    .parallel()
+                    .forEach(
+                            peptideAssumption -> writePeptideCandidate(
+                                    peptideAssumption,
+                                    modificationParameters,
+                                    sequenceProvider,
+                                    sequenceMatchingParameters,
+                                    modificationFactory,
+                                    processedPeptideKeys,
+                                    writingSemaphore,
+                                    writer
+                            )
+                    );
+        }
+
+        @Override
+        public void close() {
+
+            writer.close();
+
+        }
+
+        @Override
+        public ArrayList<File> getExportedFiles() {
+
+            ArrayList<File> exportedFiles = new ArrayList<>(1);
+            exportedFiles.add(peprecFile);
+
+            return exportedFiles;
+
         }
     }
 
@@ -17,6 +17,7 @@ import eu.isas.peptideshaker.utils.Ms2PipUtils;
 import eu.isas.peptideshaker.utils.PercolatorUtils;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.TreeMap;
@@ -54,33 +55,22 @@ public class PSMIdentExport {
         waitingHandler.resetSecondaryProgressCounter();
         waitingHandler.setMaxSecondaryProgressCounter(identification.getSpectrumIdentificationSize());
 
-        SimpleSemaphore writingSemaphore = new SimpleSemaphore(1);
-
-        try ( SimpleFileWriter writer = new SimpleFileWriter(psmIdentifiersFile, true)) {
-
-            String header = String.join("\t", "PSMId", "SpectrumTitle", "SpectrumFilename", "Proteins", "Position", "Sequence", "SequenceWithMods");
+        PsmIdentifiersVisitor visitor = new PsmIdentifiersVisitor(
+                psmIdentifiersFile,
+                modificationParameters,
+                sequenceProvider,
+                sequenceMatchingParameters,
+                spectrumProvider
+        );
 
-            writer.writeLine(header);
+        try {
 
             SpectrumMatchesIterator spectrumMatchesIterator = identification.getSpectrumMatchesIterator(waitingHandler);
 
             SpectrumMatch spectrumMatch;
 
-            //Add spectra filenames to the export
-            String[] spectraFilenames = spectrumProvider.getOrderedFileNamesWithoutExtensions();
-            String spectraFilenamesString = spectraFilenames[0];
-            for (int i = 1; i < spectraFilenames.length; i++) {
-                String fileNameWithoutExtension = spectraFilenames[i];
-                spectraFilenamesString = String.join(";", spectraFilenamesString, fileNameWithoutExtension);
-            }
-
-            final String spectraFilenamesStringFinal = spectraFilenamesString;
-
             while ((spectrumMatch = spectrumMatchesIterator.next()) != null) {
 
-                // Make sure that there is no duplicate in the export
-                HashSet<String> processedPSMs = new HashSet<>();
-
                 // Display progress
                 if (waitingHandler != null) {
 
@@ -93,27 +83,127 @@ public class PSMIdentExport {
                     }
                 }
 
-                // Export all candidate peptides
-                SpectrumMatch tempSpectrumMatch = spectrumMatch;
-                tempSpectrumMatch.getAllPeptideAssumptions()
-                        .parallel()
-                        .forEach(
-                                peptideAssumption -> writePeptideCandidate(
-                                        spectraFilenamesStringFinal,
-                                        tempSpectrumMatch,
-                                        peptideAssumption,
-                                        processedPSMs,
-                                        modificationParameters,
-                                        sequenceProvider,
-                                        sequenceMatchingParameters,
-                                        writingSemaphore,
-                                        writer
-                                )
-                        );
+                visitor.visit(spectrumMatch);
+
             }
 
+        } finally {
+
+            visitor.close();
+
         }
+    }
+
+    /**
+     * Visitor writing the identifiers of all candidate peptides of the
+     * spectrum matches.
+     */
+    public static class PsmIdentifiersVisitor implements SpectrumMatchVisitor {
+
+        /**
+         * The file to write the export.
+         */
+        private final File psmIdentifiersFile;
+        /**
+         * The writer to use.
+         */
+        private final SimpleFileWriter writer;
+        /**
+         * The spectrum file names.
+         */
+        private final String spectraFilenames;
+        /**
+         * The modification parameters.
+         */
+        private final ModificationParameters modificationParameters;
+        /**
+         * The sequence provider.
+         */
+        private final SequenceProvider sequenceProvider;
+        /**
+         * The sequence matching parameters.
+         */
+        private final SequenceMatchingParameters sequenceMatchingParameters;
+        /**
+         * The writing semaphore.
+         */
+        private final SimpleSemaphore writingSemaphore = new SimpleSemaphore(1);
+
+        /**
+         * Constructor. Opens the file and writes the header.
+         *
+         * @param psmIdentifiersFile The file to write the export.
+         * @param modificationParameters The modification parameters.
+         * @param sequenceProvider The sequence provider.
+         * @param sequenceMatchingParameters The sequence matching parameters.
+         * @param spectrumProvider The spectrum provider.
+         */
+        public PsmIdentifiersVisitor(
+                File psmIdentifiersFile,
+                ModificationParameters modificationParameters,
+                SequenceProvider sequenceProvider,
+                SequenceMatchingParameters sequenceMatchingParameters,
+                SpectrumProvider spectrumProvider
+        ) {
+
+            this.psmIdentifiersFile = psmIdentifiersFile;
+            this.modificationParameters = modificationParameters;
+            this.sequenceProvider = sequenceProvider;
+            this.sequenceMatchingParameters = sequenceMatchingParameters;
 
+            //Add spectra filenames to the export
+            spectraFilenames = String.join(";", spectrumProvider.getOrderedFileNamesWithoutExtensions());
+
+            writer = new SimpleFileWriter(psmIdentifiersFile, true);
+
+            String header = String.join("\t", "PSMId", "SpectrumTitle", "SpectrumFilename", "Proteins", "Position", "Sequence", "SequenceWithMods");
+
+            writer.writeLine(header);
+
+        }
+
+        @Override
+        public void visit(
+                SpectrumMatch spectrumMatch
+        ) {
+
+            // Make sure that there is no duplicate in the export
+            HashSet<String> processedPSMs = new HashSet<>();
+
+            // Export all candidate peptides
+            spectrumMatch.getAllPeptideAssumptions()
+                    .parallel()
+                    .forEach(
+                            peptideAssumption -> writePeptideCandidate(
+                                    spectraFilenames,
+                                    spectrumMatch,
+                                    peptideAssumption,
+                                    processedPSMs,
+                                    modificationParameters,
+                                    sequenceProvider,
+                                    sequenceMatchingParameters,
+                                    writingSemaphore,
+                                    writer
+                            )
+                    );
+        }
+
+        @Override
+        public void close() {
+
+            writer.close();
+
+        }
+
+        @Override
+        public ArrayList<File> getExportedFiles() {
+
+            ArrayList<File> exportedFiles = new ArrayList<>(1);
+            exportedFiles.add(psmIdentifiersFile);
+
+            return exportedFiles;
+
+        }
     }
 
     /**
@@ -21,6 +21,7 @@ import com.compomics.util.threading.SimpleSemaphore;
 import com.compomics.util.waiting.WaitingHandler;
 import eu.isas.peptideshaker.utils.Ms2PipUtils;
 import eu.isas.peptideshaker.utils.PercolatorUtils;
+import eu.isas.peptideshaker.utils.PredictionStore;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -63,40 +64,50 @@ public class PeaksIntensitiesExport {
             WaitingHandler waitingHandler
     ) {
 
-        HashMap<String, ArrayList<Spectrum>> fragmentationPrediction = null;
+        ArrayList<String> psmIDs = null;
 
-        if (ms2pipFile != null) {
+        if (psmIDsFile != null) {
 
-            waitingHandler.setWaitingText("Exporting mass spectra peaks intensities - Parsing ms2pip results");
+            waitingHandler.setWaitingText("Exporting mass spectra peaks intensities - Parsing PSM IDs");
 
-            fragmentationPrediction = PercolatorExport.getIntensitiesPrediction(ms2pipFile);
+            psmIDs = getPSMids(psmIDsFile);
 
         }
 
-        ArrayList<String> psmIDs = null;
+        PredictionStore fragmentationPrediction = null;
 
-        if (psmIDsFile != null) {
+        try {
 
-            waitingHandler.setWaitingText("Exporting mass spectra peaks intensities - Parsing PSM IDs");
+            if (ms2pipFile != null) {
 
-            psmIDs = getPSMids(psmIDsFile);
+                waitingHandler.setWaitingText("Exporting mass spectra peaks intensities - Parsing ms2pip results");
 
-        }
+                fragmentationPrediction = PredictionStore.getFragmentationStore(ms2pipFile);
 
-        peaksIntensitiesExport(
-                peaksIntensitiesFile,
-                fragmentationPrediction,
-                psmIDs,
-                identification,
-                modificationParameters,
-                sequenceProvider,
-                sequenceMatchingParameters,
-                annotationParameters,
-                modificationLocalizationParameters,
-                spectrumProvider,
-                waitingHandler
-        );
+            }
+
+            peaksIntensitiesExport(
+                    peaksIntensitiesFile,
+                    fragmentationPrediction,
+                    psmIDs,
+                    identification,
+                    modificationParameters,
+                    sequenceProvider,
+                    sequenceMatchingParameters,
+                    annotationParameters,
+                    modificationLocalizationParameters,
+                    spectrumProvider,
+                    waitingHandler
+            );
 
+        } finally {
+
+            if (fragmentationPrediction != null) {
+
+                fragmentationPrediction.close();
+
+            }
+        }
     }
 
     /**
@@ -126,8 +137,8 @@ public class PeaksIntensitiesExport {
      * Export the peak intensities.
      *
      * @param peaksIntensitiesFile The file to write the export.
-     * @param fragmentationPrediction the map of predicted spectrum key to
-     * fragmentation predictions.
+     * @param fragmentationPrediction the store of the fragmentation
+     * predictions.
      * @param psmIDs the list of PSM ids to be used for the export.
      * @param identification the identification
      * @param modificationParameters The modification parameters.
@@ -141,7 +152,7 @@ public class PeaksIntensitiesExport {
      */
     public static void peaksIntensitiesExport(
             File peaksIntensitiesFile,
-            HashMap<String, ArrayList<Spectrum>> fragmentationPrediction,
+            PredictionStore fragmentationPrediction,
             ArrayList<String> psmIDs,
             Identification identification,
             ModificationParameters modificationParameters,
@@ -219,8 +230,8 @@ public class PeaksIntensitiesExport {
     /**
      * Writes a peptide candidate to the export if not done already.
      *
-     * @param fragmentationPrediction the map of predicted spectrum key to
-     * fragmentation predictions.
+     * @param fragmentationPrediction the store of the fragmentation
+     * predictions.
      * @param peptideAssumption The peptide assumption to write.
      * @param modificationParameters The modification parameters.
      * @param annotationParameters The annotation parameters.
@@ -236,7 +247,7 @@ public class PeaksIntensitiesExport {
      * @param writer The writer to use.
      */
     private static void writePeptideCandidate(
-            HashMap<String, ArrayList<Spectrum>> fragmentationPrediction,
+            PredictionStore fragmentationPrediction,
             ArrayList<String> psmIDs,
             PeptideAssumption peptideAssumption,
             ModificationParameters modificationParameters,
@@ -272,7 +283,7 @@ public class PeaksIntensitiesExport {
             return;
         }
 
-        ArrayList<Spectrum> predictedSpectra = fragmentationPrediction.get(peptideID);
+        ArrayList<Spectrum> predictedSpectra = fragmentationPrediction.getSpectra(peptideID);
 
         if (predictedSpectra == null) {
             System.out.println("No MS2PIP prediction for PSM with ID: " + psmID);
@@ -287,20 +298,17 @@ public class PeaksIntensitiesExport {
         // Get measured spectrum
         Spectrum measuredSpectrum = spectrumProvider.getSpectrum(spectrumFile, spectrumTitle);
 
-        ArrayList<ArrayList<Integer>> aligned_peaks = PercolatorUtils.getAlignedPeaks(measuredSpectrum, predictedSpectrum);
+        int[] alignedPeaks = new int[2 * predictedSpectrum.mz.length];
+        int nAligned = PercolatorUtils.getAlignedPeaks(measuredSpectrum, predictedSpectrum, alignedPeaks);
 
-        ArrayList<ArrayList<Integer>> matchedPeaks = new ArrayList<>();
-        ArrayList<Integer> measuredAlignedIndices = new ArrayList<>();
-        ArrayList<Integer> predictedAlignedIndices = new ArrayList<>();
-        for (int i = 0; i < aligned_peaks.size(); i++) {
-            if (aligned_peaks.get(i).get(0) != -1) {
-                matchedPeaks.add(aligned_peaks.get(i));
-                measuredAlignedIndices.add(aligned_peaks.get(i).get(0));
-                predictedAlignedIndices.add(aligned_peaks.get(i).get(1));
+        boolean[] measuredAligned = new boolean[measuredSpectrum.mz.length];
+        for (int i = 0; i < nAligned; i++) {
+            if (alignedPeaks[2 * i] != -1) {
+                measuredAligned[alignedPeaks[2 * i]] = true;
             }
         }
 
-        ArrayList<Spectrum> spectraScaledIntensities = PercolatorUtils.scaleIntensities(measuredSpectrum, predictedSpectrum, matchedPeaks);
+        ArrayList<Spectrum> spectraScaledIntensities = PercolatorUtils.scaleIntensities(measuredSpectrum, predictedSpectrum, alignedPeaks, nAligned);
 
         Spectrum measuredScaledSpectrum = spectraScaledIntensities.get(0);
         Spectrum predictedScaledSpectrum = spectraScaledIntensities.get(1);
@@ -409,7 +417,7 @@ public class PeaksIntensitiesExport {
 
             }
 
-            String matchedLabel = measuredAlignedIndices.contains(i) ? "1" : "0";
+            String matchedLabel = i < measuredAligned.length && measuredAligned[i] ? "1" : "0";
 
             String line = String.join(
                     ",",
@@ -438,7 +446,7 @@ public class PeaksIntensitiesExport {
 
             }
 
-            String matchedLabel = measuredAlignedIndices.contains(i) ? "1" : "0";
+            String matchedLabel = i < measuredAligned.length && measuredAligned[i] ? "1" : "0";
 
             String line = String.join(
                     ",",
@@ -9,7 +9,6 @@ import com.compomics.util.experiment.identification.spectrum_assumptions.Peptide
 import com.compomics.util.experiment.io.biology.protein.SequenceProvider;
 import com.compomics.util.experiment.mass_spectrometry.SpectrumProvider;
 import com.compomics.util.experiment.mass_spectrometry.spectra.Spectrum;
-import com.compomics.util.io.flat.SimpleFileReader;
 import com.compomics.util.io.flat.SimpleFileWriter;
 import com.compomics.util.parameters.identification.advanced.ModificationLocalizationParameters;
 import com.compomics.util.parameters.identification.advanced.SequenceMatchingParameters;
@@ -19,15 +18,21 @@ import com.compomics.util.threading.SimpleSemaphore;
 import com.compomics.util.waiting.WaitingHandler;
 import eu.isas.peptideshaker.utils.DeepLcUtils;
 import eu.isas.peptideshaker.utils.Ms2PipUtils;
+import eu.isas.peptideshaker.utils.PercolatorFeatureStore;
+import eu.isas.peptideshaker.utils.PercolatorFeatureStore.PsmFeatures;
 import eu.isas.peptideshaker.utils.PercolatorUtils;
+import eu.isas.peptideshaker.utils.PredictionStore;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,6 +44,12 @@ import java.util.logging.Logger;
  */
 public class PercolatorExport {
 
+    /**
+     * The number of rows buffered by a thread before writing them to the
+     * export.
+     */
+    public static final int ROWS_PER_BLOCK = 1000;
+
     /**
      * Exports a Percolator training file for each of the spectrum files.
      * Returns an ArrayList of the files exported.
@@ -48,6 +59,12 @@ public class PercolatorExport {
      * @param rtObsPredsFile The file to write RT observed and predicted values
      * per PSM.
      * @param ms2pipFile The ms2pip results.
+     * @param featuresCacheFile The file where the features that do not depend
+     * on predictions are cached between exports, ignored if null.
+     * @param projectName The unique name of the project, used to check that
+     * the cached features belong to this project.
+     * @param fastaFile The FASTA file of the project, used to check that the
+     * cached features were computed with this FASTA file.
      * @param identification The identification object containing the matches.
      * @param searchParameters The search parameters.
      * @param sequenceMatchingParameters The sequence matching parameters.
@@ -63,6 +80,9 @@ public class PercolatorExport {
             File deepLcFile,
             File rtObsPredsFile,
             File ms2pipFile,
+            File featuresCacheFile,
+            String projectName,
+            File fastaFile,
             Identification identification,
             SearchParameters searchParameters,
             SequenceMatchingParameters sequenceMatchingParameters,
@@ -74,309 +94,101 @@ public class PercolatorExport {
             WaitingHandler waitingHandler
     ) {
 
-        // Parse retention time prediction
-        HashMap<String, ArrayList<Double>> rtPrediction = null;
-
-        if (deepLcFile != null) {
-
-            waitingHandler.setWaitingText("Exporting Percolator output - Parsing DeepLC results");
-
-            rtPrediction = getRtPrediction(deepLcFile);
-
-        }
-
-        // Parse fragmentation prediction
-        HashMap<String, ArrayList<Spectrum>> fragmentationPrediction = null;
-
-        if (ms2pipFile != null) {
-
-            waitingHandler.setWaitingText("Exporting Percolator output - Parsing ms2pip results");
-
-            fragmentationPrediction = getIntensitiesPrediction(ms2pipFile);
-
-        }
-
-        // Export Percolator training file
-        waitingHandler.setWaitingText("Exporting Percolator output - Writing export");
+        PredictionStore rtPrediction = null;
+        PredictionStore fragmentationPrediction = null;
 
         try {
-            percolatorExport(
-                    destinationFile,
-                    rtObsPredsFile,
-                    rtPrediction,
-                    fragmentationPrediction,
-                    identification,
-                    searchParameters,
-                    sequenceMatchingParameters,
-                    annotationParameters,
-                    modificationLocalizationParameters,
-                    modificationParameters,
-                    sequenceProvider,
-                    spectrumProvider,
-                    waitingHandler
-            );
-        } catch (InterruptedException | ExecutionException ex) {
-            Logger.getLogger(PercolatorExport.class.getName()).log(Level.SEVERE, null, ex);
-        }
-    }
-
-    /**
-     * Parses the Rt prediction from DeepLC.
-     *
-     * Expected format: ,seq,modifications,predicted_tr
-     * 0,NSVNGTFPAEPMKGPIAMQSGPKPLFR,12|Oxidation,3878.9216854262777
-     *
-     * @param deepLcFile File with RT predictions from DeepLC.
-     * @return
-     */
-    private static HashMap<String, ArrayList<Double>> getRtPrediction(
-            File deepLcFile
-    ) {
-
-        HashMap<String, ArrayList<Double>> result = new HashMap<>();
-
-        try ( SimpleFileReader reader = SimpleFileReader.getFileReader(deepLcFile)) {
-
-            String line = reader.readLine();
-
-            while ((line = reader.readLine()) != null) {
-
-                String[] lineSplit = line.split(",");
-
-                String key = String.join(",", lineSplit[1], lineSplit[2]);
-
-                double rt = Double.parseDouble(lineSplit[4]);
-
-                /*ArrayList<Double> rtsForPeptide = result.get(key);
-
-                if (rtsForPeptide == null) {
-
-                    rtsForPeptide = new ArrayList<>(1);
 
-                }
-
-                rtsForPeptide.add(rt);*/
-                if (result.get(key) == null) {
-
-                    ArrayList<Double> rtsForPeptide = new ArrayList<>(1);
-                    rtsForPeptide.add(rt);
-                    result.put(key, rtsForPeptide);
+            // Parse retention time prediction
+            if (deepLcFile != null) {
 
-                } else {
+                waitingHandler.setWaitingText("Exporting Percolator output - Parsing DeepLC results");
 
-                    result.get(key).add(rt);
-
-                }
+                rtPrediction = PredictionStore.getRetentionTimeStore(deepLcFile);
 
             }
-        }
 
-        return result;
+            // Parse fragmentation prediction
+            if (ms2pipFile != null) {
 
-    }
+                waitingHandler.setWaitingText("Exporting Percolator output - Parsing ms2pip results");
 
-    /**
-     * Parses the peaks intensities prediction from MS2PIP.
-     *
-     * Expected format:
-     * predicted_spectrum_key,charge,ion,ionnumber,mz,prediction
-     * 2238942014911164193,3,B,1,138.066,0
-     *
-     * @param ms2pipFile File with spectra fragmentation predictions from
-     * MS2PIP.
-     *
-     * @return Map with pairs (Ms2PipKey, [Spectrum, bSpectrum, ySpectrum])
-     */
-    public static HashMap<String, ArrayList<Spectrum>> getIntensitiesPrediction(
-            File ms2pipFile
-    ) {
-
-        HashMap<String, ArrayList<Spectrum>> result = new HashMap<>();
-
-        try ( SimpleFileReader reader = SimpleFileReader.getFileReader(ms2pipFile)) {
-
-            String line = reader.readLine();
-
-            //read 1st line of data outside while loop
-            String firstDataLine = reader.readLine();
-            String[] firstDataLineSplit = firstDataLine.split(",");
-
-            String predictedSpectrumKey = firstDataLineSplit[0];
+                fragmentationPrediction = PredictionStore.getFragmentationStore(ms2pipFile);
 
-            String firstIon = firstDataLineSplit[2];
-
-            double firstMz = Double.parseDouble(firstDataLineSplit[4]);
-            double firstPrediction = Double.parseDouble(firstDataLineSplit[5]);
-
-            ArrayList<Double> mzs = new ArrayList<>();
-            ArrayList<Double> predictions = new ArrayList<>();
-            mzs.add(firstMz);
-            predictions.add(firstPrediction);
-
-            ArrayList<Double> mzsB = new ArrayList<>();
-            ArrayList<Double> predictionsB = new ArrayList<>();
-            ArrayList<Double> mzsY = new ArrayList<>();
-            ArrayList<Double> predictionsY = new ArrayList<>();
-
-            if ((firstIon.equals("B")) || (firstIon.equals("B2"))) {
-                mzsB.add(firstMz);
-                predictionsB.add(firstPrediction);
-            } else if ((firstIon.equals("Y")) || (firstIon.equals("Y2"))) {
-                mzsY.add(firstMz);
-                predictionsY.add(firstPrediction);
             }
 
-            while ((line = reader.readLine()) != null) {
-
-                String[] lineSplit = line.split(",");
+            // Load the features of previous exports
+            PercolatorFeatureStore featureStore = null;
 
-                String key = lineSplit[0];
+            if (featuresCacheFile != null) {
 
-                String ion = lineSplit[2];
+                waitingHandler.setWaitingText("Exporting Percolator output - Loading cached features");
 
-                double mz = Double.parseDouble(lineSplit[4]);
-                double prediction = Double.parseDouble(lineSplit[5]);
-
-                if (key.equals(predictedSpectrumKey)) {
-                    mzs.add(mz);
-                    predictions.add(prediction);
-
-                    if ((ion.equals("B")) || (ion.equals("B2"))) {
-                        mzsB.add(mz);
-                        predictionsB.add(prediction);
-                    } else if ((ion.equals("Y")) || (ion.equals("Y2"))) {
-                        mzsY.add(mz);
-                        predictionsY.add(prediction);
-                    }
-
-                } else {
-
-                    //Create Spectrum object with all predicted peaks
-                    ArrayList<Double> mzsUnsorted = new ArrayList<>(mzs);
-                    Collections.sort(mzs);
-
-                    double[] mzsArray = new double[mzs.size()];
-                    double[] predictionsArray = new double[mzs.size()];
-                    for (int i = 0; i < predictionsArray.length; i++) {
-                        mzsArray[i] = mzs.get(i);
-                        int index = mzsUnsorted.indexOf(mzs.get(i));
-                        predictionsArray[i] = predictions.get(index);
-                    }
-
-                    Spectrum predictedSpectrum = new Spectrum(null, mzsArray, predictionsArray, 2);
-
-                    //Create Spectrum object with all B predicted peaks
-                    ArrayList<Double> mzsBUnsorted = new ArrayList<>(mzsB);
-                    Collections.sort(mzsB);
-
-                    double[] mzsBArray = new double[mzsB.size()];
-                    double[] predictionsBArray = new double[mzsB.size()];
-                    for (int i = 0; i < predictionsBArray.length; i++) {
-                        mzsBArray[i] = mzsB.get(i);
-                        int index = mzsBUnsorted.indexOf(mzsB.get(i));
-                        predictionsBArray[i] = predictionsB.get(index);
-                    }
-
-                    Spectrum predictedBionSpectrum = new Spectrum(null, mzsBArray, predictionsBArray, 2);
-
-                    //Create Spectrum object with all Y predicted peaks
-                    ArrayList<Double> mzsYUnsorted = new ArrayList<>(mzsY);
-                    Collections.sort(mzsY);
-
-                    double[] mzsYArray = new double[mzsY.size()];
-                    double[] predictionsYArray = new double[mzsY.size()];
-                    for (int i = 0; i < predictionsYArray.length; i++) {
-                        mzsYArray[i] = mzsY.get(i);
-                        int index = mzsYUnsorted.indexOf(mzsY.get(i));
-                        predictionsYArray[i] = predictionsY.get(index);
-                    }
+                featureStore = PercolatorFeatureStore.load(
+                        featuresCacheFile,
+                        projectName,
+                        fastaFile,
+                        searchParameters,
+                        sequenceMatchingParameters,
+                        annotationParameters,
+                        modificationLocalizationParameters,
+                        modificationParameters
+                );
 
-                    Spectrum predictedYionSpectrum = new Spectrum(null, mzsYArray, predictionsYArray, 2);
+            }
 
-                    ArrayList<Spectrum> predictedSpectra = new ArrayList<>();
-                    predictedSpectra.add(predictedSpectrum);
-                    predictedSpectra.add(predictedBionSpectrum);
-                    predictedSpectra.add(predictedYionSpectrum);
+            // Export Percolator training file
+            waitingHandler.setWaitingText("Exporting Percolator output - Writing export");
 
-                    result.put(predictedSpectrumKey, predictedSpectra);
+            try {
+                percolatorExport(
+                        destinationFile,
+                        rtObsPredsFile,
+                        rtPrediction,
+                        fragmentationPrediction,
+                        featureStore,
+                        identification,
+                        searchParameters,
+                        sequenceMatchingParameters,
+                        annotationParameters,
+                        modificationLocalizationParameters,
+                        modificationParameters,
+                        sequenceProvider,
+                        spectrumProvider,
+                        waitingHandler
+                );
+            } catch (InterruptedException | ExecutionException ex) {
+                Logger.getLogger(PercolatorExport.class.getName()).log(Level.SEVERE, null, ex);
+            }
 
-                    mzs = new ArrayList<>();
-                    predictions = new ArrayList<>();
+            // Save the features for the next exports
+            if (featureStore != null && !waitingHandler.isRunCanceled()) {
 
-                    mzs.add(mz);
-                    predictions.add(prediction);
+                waitingHandler.setWaitingText("Exporting Percolator output - Saving features");
 
-                    mzsB = new ArrayList<>();
-                    predictionsB = new ArrayList<>();
-                    mzsY = new ArrayList<>();
-                    predictionsY = new ArrayList<>();
+                try {
 
-                    if ((ion.equals("B")) || (ion.equals("B2"))) {
-                        mzsB.add(mz);
-                        predictionsB.add(prediction);
-                    } else if ((ion.equals("Y")) || (ion.equals("Y2"))) {
-                        mzsY.add(mz);
-                        predictionsY.add(prediction);
-                    }
+                    featureStore.save();
 
-                    predictedSpectrumKey = key;
+                } catch (IOException ex) {
+                    Logger.getLogger(PercolatorExport.class.getName()).log(Level.SEVERE, null, ex);
                 }
-
             }
 
-            //Create Spectrum object with all predicted peaks
-            ArrayList<Double> mzsUnsorted = new ArrayList<>(mzs);
-            Collections.sort(mzs);
-
-            double[] mzsArray = new double[mzs.size()];
-            double[] predictionsArray = new double[mzs.size()];
-            for (int i = 0; i < predictionsArray.length; i++) {
-                mzsArray[i] = mzs.get(i);
-                int index = mzsUnsorted.indexOf(mzs.get(i));
-                predictionsArray[i] = predictions.get(index);
-            }
+        } finally {
 
-            Spectrum predictedSpectrum = new Spectrum(null, mzsArray, predictionsArray, 2);
+            if (rtPrediction != null) {
 
-            //Create Spectrum object with all B predicted peaks
-            ArrayList<Double> mzsBUnsorted = new ArrayList<>(mzsB);
-            Collections.sort(mzsB);
+                rtPrediction.close();
 
-            double[] mzsBArray = new double[mzsB.size()];
-            double[] predictionsBArray = new double[mzsB.size()];
-            for (int i = 0; i < predictionsBArray.length; i++) {
-                mzsBArray[i] = mzsB.get(i);
-                int index = mzsBUnsorted.indexOf(mzsB.get(i));
-                predictionsBArray[i] = predictionsB.get(index);
             }
 
-            Spectrum predictedBionSpectrum = new Spectrum(null, mzsBArray, predictionsBArray, 2);
+            if (fragmentationPrediction != null) {
 
-            //Create Spectrum object with all Y predicted peaks
-            ArrayList<Double> mzsYUnsorted = new ArrayList<>(mzsY);
-            Collections.sort(mzsY);
+                fragmentationPrediction.close();
 
-            double[] mzsYArray = new double[mzsY.size()];
-            double[] predictionsYArray = new double[mzsY.size()];
-            for (int i = 0; i < predictionsYArray.length; i++) {
-                mzsYArray[i] = mzsY.get(i);
-                int index = mzsYUnsorted.indexOf(mzsY.get(i));
-                predictionsYArray[i] = predictionsY.get(index);
             }
-
-            Spectrum predictedYionSpectrum = new Spectrum(null, mzsYArray, predictionsYArray, 2);
-
-            ArrayList<Spectrum> predictedSpectra = new ArrayList<>();
-            predictedSpectra.add(predictedSpectrum);
-            predictedSpectra.add(predictedBionSpectrum);
-            predictedSpectra.add(predictedYionSpectrum);
-
-            result.put(predictedSpectrumKey, predictedSpectra);
-
         }
-
-        return result;
-
     }
 
     /**
@@ -387,6 +199,8 @@ public class PercolatorExport {
      * per PSM.
      * @param rtPrediction The retention time prediction.
      * @param fragmentationPrediction The fragmentation prediction.
+     * @param featureStore The store of the features that do not depend on
+     * predictions, can be null.
      * @param identification The identification object containing the matches.
      * @param searchParameters The search parameters.
      * @param sequenceMatchingParameters The sequence matching parameters.
@@ -405,8 +219,9 @@ public class PercolatorExport {
     public static void percolatorExport(
             File destinationFile,
             File rtObsPredsFile,
-            HashMap<String, ArrayList<Double>> rtPrediction,
-            HashMap<String, ArrayList<Spectrum>> fragmentationPrediction,
+            PredictionStore rtPrediction,
+            PredictionStore fragmentationPrediction,
+            PercolatorFeatureStore featureStore,
             Identification identification,
             SearchParameters searchParameters,
             SequenceMatchingParameters sequenceMatchingParameters,
@@ -434,155 +249,214 @@ public class PercolatorExport {
             Boolean rtPredictionsAvailable = rtPrediction != null;
             Boolean spectraPredictionsAvailable = fragmentationPrediction != null;
 
-            HashMap<String, ArrayList<Double>> allRTvalues = null;
-            if (rtPredictionsAvailable) {
-                allRTvalues = getAllObservedPredictedRT(
-                        identification,
-                        rtPrediction,
-                        searchParameters,
-                        sequenceProvider,
-                        sequenceMatchingParameters,
-                        modificationFactory,
-                        spectrumProvider,
-                        waitingHandler
-                );
-            }
-            final HashMap<String, ArrayList<Double>> allRTs = allRTvalues;
-
             String header = PercolatorUtils.getHeader(searchParameters, rtPredictionsAvailable, spectraPredictionsAvailable);
 
             writer.writeLine(header);
 
             SpectrumMatchesIterator spectrumMatchesIterator = identification.getSpectrumMatchesIterator(waitingHandler);
 
-            // create a custom thread pool to manage the number of threads
-            System.out.println("Creating a custom thread pool: " + threadCount + " threads.");
-            ForkJoinPool customThreadPool = new ForkJoinPool(threadCount);
-
-            // aggregate all the spectrum matches into a list -> iterate over it
-            SpectrumMatch match;
-            ArrayList<SpectrumMatch> allSpectrumMatches = new ArrayList<>();
-            while ((match = spectrumMatchesIterator.next()) != null) {
-                allSpectrumMatches.add(match);
+            // stream the spectrum matches to the threads of the pool
+            ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+            ArrayList<Future<?>> futures = new ArrayList<>(threadCount);
+
+            for (int i = 0; i < threadCount; i++) {
+
+                futures.add(
+                        pool.submit(
+                                () -> writeSpectrumMatches(
+                                        spectrumMatchesIterator,
+                                        rtPrediction,
+                                        fragmentationPrediction,
+                                        featureStore,
+                                        searchParameters,
+                                        sequenceProvider,
+                                        sequenceMatchingParameters,
+                                        annotationParameters,
+                                        modificationLocalizationParameters,
+                                        modificationFactory,
+                                        modificationParameters,
+                                        spectrumProvider,
+                                        writingSemaphore,
+                                        writer,
+                                        waitingHandler
+                                )
+                        )
+                );
             }
-            System.out.println("Processing " + allSpectrumMatches.size() + " matches");
-
-            //while ((spectrumMatch = spectrumMatchesIterator.next()) != null) {
-            // parallelize over all scans
-            try {
-                customThreadPool.submit(() -> allSpectrumMatches.parallelStream().forEach(spectrumMatch -> {
-                    //SpectrumMatch spectrumMatch = spectrumMatchesIterator.next();
-                    if (spectrumMatch == null) {
-                        return;
-                    }
 
-                    // Make sure that there is no duplicate in the export
-                    HashSet<Long> processedPsmKeys = new HashSet<>();
+            pool.shutdown();
 
-                    // Display progress
-                    if (waitingHandler != null) {
+            try {
 
-                        waitingHandler.increaseSecondaryProgressCounter();
+                for (Future<?> future : futures) {
 
-                        if (waitingHandler.isRunCanceled()) {
+                    future.get();
 
-                            return;
+                }
 
-                        }
-                    }
+            } finally {
 
-                    Boolean rtFileWriterFlag = false;
-
-                    // Export all candidate peptides
-                    SpectrumMatch tempSpectrumMatch = spectrumMatch;
-                    tempSpectrumMatch.getAllPeptideAssumptions()
-                            .forEach(
-                                    peptideAssumption -> writePeptideCandidate(
-                                            tempSpectrumMatch,
-                                            peptideAssumption,
-                                            allRTs,
-                                            rtFileWriterFlag,
-                                            fragmentationPrediction,
-                                            searchParameters,
-                                            sequenceProvider,
-                                            sequenceMatchingParameters,
-                                            annotationParameters,
-                                            modificationLocalizationParameters,
-                                            modificationFactory,
-                                            modificationParameters,
-                                            spectrumProvider,
-                                            processedPsmKeys,
-                                            writingSemaphore,
-                                            writer
-                                    )
-                            );
-                })).join();
+                // stop the remaining workers and wait for them before the writer is closed
+                futures.forEach(future -> future.cancel(true));
+                pool.shutdownNow();
+                pool.awaitTermination(1, TimeUnit.HOURS);
 
-            } finally {
-                System.out.println("Shutting down thread pool.");
-                customThreadPool.shutdown();
             }
-
         }
-
     }
 
     /**
+     * Writes the peptide candidates of the spectrum matches of the given
+     * iterator until the iterator is exhausted, the process is canceled, or
+     * the thread is interrupted. The rows are buffered and written in blocks,
+     * so that the threads do not wait for each other at every row.
      *
-     * @param identification The identification object containing the matches.
-     * @param searchParameters The search parameters.
+     * @param spectrumMatchesIterator The iterator of the spectrum matches,
+     * shared between threads.
+     * @param rtPrediction The retention time predictions, can be null.
+     * @param fragmentationPrediction The mass spectrum predictions for all
+     * peptides.
+     * @param featureStore The store of the features that do not depend on
+     * predictions, can be null. The features missing from the store are
+     * collected in a batch of this thread.
+     * @param searchParameters The parameters of the search.
+     * @param sequenceProvider The sequence provider.
      * @param sequenceMatchingParameters The sequence matching parameters.
      * @param annotationParameters The annotation parameters.
-     * @param sequenceProvider The sequence provider.
+     * @param modificationLocalizationParameters The modification localization
+     * parameters.
+     * @param modificationFactory The factory containing the modification
+     * details.
+     * @param modificationParameters The modification parameters.
      * @param spectrumProvider The spectrum provider.
+     * @param writingSemaphore A semaphore to synchronize the writing.
+     * @param writer The writer to use.
      * @param waitingHandler The waiting handler.
      */
-    private static HashMap<String, ArrayList<Double>> getAllObservedPredictedRT(
-            Identification identification,
-            HashMap<String, ArrayList<Double>> rtPrediction,
+    private static void writeSpectrumMatches(
+            SpectrumMatchesIterator spectrumMatchesIterator,
+            PredictionStore rtPrediction,
+            PredictionStore fragmentationPrediction,
+            PercolatorFeatureStore featureStore,
             SearchParameters searchParameters,
             SequenceProvider sequenceProvider,
             SequenceMatchingParameters sequenceMatchingParameters,
+            AnnotationParameters annotationParameters,
+            ModificationLocalizationParameters modificationLocalizationParameters,
             ModificationFactory modificationFactory,
+            ModificationParameters modificationParameters,
             SpectrumProvider spectrumProvider,
+            SimpleSemaphore writingSemaphore,
+            SimpleFileWriter writer,
             WaitingHandler waitingHandler
     ) {
 
-        if (rtPrediction == null) {
-            return null;
-        }
+        ArrayList<String> rows = new ArrayList<>(ROWS_PER_BLOCK);
+        PercolatorFeatureStore.Batch featureBatch = featureStore == null ? null : featureStore.newBatch();
+        SpectrumMatch spectrumMatch;
 
-        HashMap<String, ArrayList<Double>> allRTvalues = new HashMap<>();
+        while (!Thread.currentThread().isInterrupted()
+                && (spectrumMatch = spectrumMatchesIterator.next()) != null) {
 
-        SpectrumMatchesIterator spectrumMatchesIterator = identification.getSpectrumMatchesIterator(waitingHandler);
+            // Display progress
+            if (waitingHandler != null) {
 
-        SpectrumMatch spectrumMatch;
+                waitingHandler.increaseSecondaryProgressCounter();
 
-        while ((spectrumMatch = spectrumMatchesIterator.next()) != null) {
+                if (waitingHandler.isRunCanceled()) {
+
+                    return;
+
+                }
+            }
 
-            final HashMap<String, ArrayList<Double>> rtPreds = rtPrediction;
+            // Make sure that there is no duplicate in the export
+            HashSet<Long> processedPsmKeys = new HashSet<>();
 
             // Export all candidate peptides
             SpectrumMatch tempSpectrumMatch = spectrumMatch;
             tempSpectrumMatch.getAllPeptideAssumptions()
-                    .parallel()
                     .forEach(
-                            peptideAssumption -> addPeptideCandidateRT(
-                                    allRTvalues,
-                                    tempSpectrumMatch,
-                                    peptideAssumption,
-                                    rtPreds,
-                                    searchParameters,
-                                    sequenceProvider,
-                                    sequenceMatchingParameters,
-                                    modificationFactory,
-                                    spectrumProvider
-                            )
+                            peptideAssumption -> {
+
+                                String peptideData = getPeptideCandidate(
+                                        tempSpectrumMatch,
+                                        peptideAssumption,
+                                        null,
+                                        rtPrediction,
+                                        false,
+                                        fragmentationPrediction,
+                                        featureStore,
+                                        featureBatch,
+                                        searchParameters,
+                                        sequenceProvider,
+                                        sequenceMatchingParameters,
+                                        annotationParameters,
+                                        modificationLocalizationParameters,
+                                        modificationFactory,
+                                        modificationParameters,
+                                        spectrumProvider
+                                );
+
+                                if (peptideData != null
+                                        && processedPsmKeys.add(PercolatorUtils.getPsmKey(peptideData))) {
+
+                                    rows.add(peptideData);
+
+                                }
+                            }
                     );
 
+            if (rows.size() >= ROWS_PER_BLOCK) {
+
+                writeRows(rows, writingSemaphore, writer);
+
+            }
         }
 
-        return allRTvalues;
+        if (!Thread.currentThread().isInterrupted()) {
+
+            writeRows(rows, writingSemaphore, writer);
+
+        }
+    }
+
+    /**
+     * Writes the given rows and clears the list.
+     *
+     * @param rows The rows to write.
+     * @param writingSemaphore A semaphore to synchronize the writing.
+     * @param writer The writer to use.
+     */
+    private static void writeRows(
+            ArrayList<String> rows,
+            SimpleSemaphore writingSemaphore,
+            SimpleFileWriter writer
+    ) {
+
+        if (rows.isEmpty()) {
+
+            return;
+
+        }
+
+        writingSemaphore.acquire();
+
+        try {
+
+            for (String row : rows) {
+
+                writer.writeLine(row);
+
+            }
+
+        } finally {
+
+            writingSemaphore.release();
+
+        }
+
+        rows.clear();
 
     }
 
@@ -618,13 +492,13 @@ public class PercolatorExport {
         Boolean rtPredictionsAvailable = deepLcFile != null;
 
         // Parse retention time prediction
-        HashMap<String, ArrayList<Double>> rtPrediction = new HashMap<>();
+        PredictionStore rtPrediction;
 
         if (deepLcFile != null) {
 
             waitingHandler.setWaitingText("Exporting Percolator output - Parsing DeepLC results");
 
-            rtPrediction = getRtPrediction(deepLcFile);
+            rtPrediction = PredictionStore.getRetentionTimeStore(deepLcFile);
 
         } else {
             return;
@@ -638,16 +512,26 @@ public class PercolatorExport {
 
         SimpleSemaphore writingSemaphore = new SimpleSemaphore(1);
 
-        HashMap<String, ArrayList<Double>> allRTvalues = getAllObservedPredictedRTScaled(
-                identification,
-                rtPrediction,
-                searchParameters,
-                sequenceProvider,
-                sequenceMatchingParameters,
-                modificationFactory,
-                spectrumProvider,
-                waitingHandler
-        );
+        HashMap<String, ArrayList<Double>> allRTvalues;
+
+        try {
+
+            allRTvalues = getAllObservedPredictedRTScaled(
+                    identification,
+                    rtPrediction,
+                    searchParameters,
+                    sequenceProvider,
+                    sequenceMatchingParameters,
+                    modificationFactory,
+                    spectrumProvider,
+                    waitingHandler
+            );
+
+        } finally {
+
+            rtPrediction.close();
+
+        }
 
         //Write to file RT observed and predicted values
         try ( SimpleFileWriter writer = new SimpleFileWriter(rtObsPredsFile, true)) {
@@ -725,7 +609,7 @@ public class PercolatorExport {
      */
     private static HashMap<String, ArrayList<Double>> getAllObservedPredictedRTScaled(
             Identification identification,
-            HashMap<String, ArrayList<Double>> rtPrediction,
+            PredictionStore rtPrediction,
             SearchParameters searchParameters,
             SequenceProvider sequenceProvider,
             SequenceMatchingParameters sequenceMatchingParameters,
@@ -742,7 +626,7 @@ public class PercolatorExport {
 
         while ((spectrumMatch = spectrumMatchesIterator.next()) != null) {
 
-            final HashMap<String, ArrayList<Double>> rtPreds = rtPrediction;
+            final PredictionStore rtPreds = rtPrediction;
 
             // Export all candidate peptides
             SpectrumMatch tempSpectrumMatch = spectrumMatch;
@@ -860,7 +744,7 @@ public class PercolatorExport {
             SequenceProvider sequenceProvider,
             SequenceMatchingParameters sequenceMatchingParameters,
             ModificationFactory modificationFactory,
-            HashMap<String, ArrayList<Double>> rtPrediction
+            PredictionStore rtPrediction
     ) {
 
         ArrayList<Double> predictedRts;
@@ -876,7 +760,7 @@ public class PercolatorExport {
                 )
         );
 
-        predictedRts = rtPrediction.get(deepLcKey);
+        predictedRts = rtPrediction.getRetentionTimes(deepLcKey);
 
         return predictedRts;
     }
@@ -885,7 +769,7 @@ public class PercolatorExport {
             HashMap<String, ArrayList<Double>> allRTvalues,
             SpectrumMatch spectrumMatch,
             PeptideAssumption peptideAssumption,
-            HashMap<String, ArrayList<Double>> rtPrediction,
+            PredictionStore rtPrediction,
             SearchParameters searchParameters,
             SequenceProvider sequenceProvider,
             SequenceMatchingParameters sequenceMatchingParameters,
@@ -937,6 +821,8 @@ public class PercolatorExport {
      * @param spectrumMatch The spectrum match where the peptide was found.
      * @param peptideAssumption The peptide assumption.
      * @param allRTvalues The retention time predictions for all peptides.
+     * @param rtFileWriterFlag If true, the retention time data are written
+     * instead of the Percolator features.
      * @param fragmentationPrediction The mass spectrum predictions for all
      * peptides.
      * @param searchParameters The parameters of the search.
@@ -947,6 +833,7 @@ public class PercolatorExport {
      * parameters.
      * @param modificationFactory The factory containing the modification
      * details.
+     * @param modificationParameters The modification parameters.
      * @param spectrumProvider The spectrum provider.
      * @param processedPsms The keys of the PSMs already processed.
      * @param writingSemaphore A semaphore to synchronize the writing to the set
@@ -958,7 +845,7 @@ public class PercolatorExport {
             PeptideAssumption peptideAssumption,
             HashMap<String, ArrayList<Double>> allRTvalues,
             Boolean rtFileWriterFlag,
-            HashMap<String, ArrayList<Spectrum>> fragmentationPrediction,
+            PredictionStore fragmentationPrediction,
             SearchParameters searchParameters,
             SequenceProvider sequenceProvider,
             SequenceMatchingParameters sequenceMatchingParameters,
@@ -972,8 +859,112 @@ public class PercolatorExport {
             SimpleFileWriter writer
     ) {
 
+        String peptideData = getPeptideCandidate(
+                spectrumMatch,
+                peptideAssumption,
+                allRTvalues,
+                null,
+                rtFileWriterFlag,
+                fragmentationPrediction,
+                null,
+                null,
+                searchParameters,
+                sequenceProvider,
+                sequenceMatchingParameters,
+                annotationParameters,
+                modificationLocalizationParameters,
+                modificationFactory,
+                modificationParameters,
+                spectrumProvider
+        );
+
+        if (peptideData == null) {
+
+            return;
+
+        }
+
+        // Get identifiers
+        long psmKey = PercolatorUtils.getPsmKey(peptideData);
+
+        // Export if not done already
+        writingSemaphore.acquire();
+
+        if (!processedPsms.contains(psmKey)) {
+
+            writer.writeLine(peptideData);
+
+            processedPsms.add(psmKey);
+
+        }
+
+        writingSemaphore.release();
+
+    }
+
+    /**
+     * Returns the line of a peptide candidate in the export, null if a
+     * prediction is missing for the peptide.
+     *
+     * @param spectrumMatch The spectrum match where the peptide was found.
+     * @param peptideAssumption The peptide assumption.
+     * @param allRTvalues The observed and predicted retention times of all
+     * peptides, can be null.
+     * @param rtPrediction The retention time predictions, used when
+     * allRTvalues is null, can be null.
+     * @param rtFileWriterFlag If true, the retention time data are returned
+     * instead of the Percolator features.
+     * @param fragmentationPrediction The mass spectrum predictions for all
+     * peptides.
+     * @param featureStore The store of the features that do not depend on
+     * predictions, can be null.
+     * @param featureBatch The batch of the current thread where to collect the
+     * features missing from the store, can be null.
+     * @param searchParameters The parameters of the search.
+     * @param sequenceProvider The sequence provider.
+     * @param sequenceMatchingParameters The sequence matching parameters.
+     * @param annotationParameters The annotation parameters.
+     * @param modificationLocalizationParameters The modification localization
+     * parameters.
+     * @param modificationFactory The factory containing the modification
+     * details.
+     * @param modificationParameters The modification parameters.
+     * @param spectrumProvider The spectrum provider.
+     *
+     * @return The line of the peptide candidate in the export.
+     */
+    private static String getPeptideCandidate(
+            SpectrumMatch spectrumMatch,
+            PeptideAssumption peptideAssumption,
+            HashMap<String, ArrayList<Double>> allRTvalues,
+            PredictionStore rtPrediction,
+            Boolean rtFileWriterFlag,
+            PredictionStore fragmentationPrediction,
+            PercolatorFeatureStore featureStore,
+            PercolatorFeatureStore.Batch featureBatch,
+            SearchParameters searchParameters,
+            SequenceProvider sequenceProvider,
+            SequenceMatchingParameters sequenceMatchingParameters,
+            AnnotationParameters annotationParameters,
+            ModificationLocalizationParameters modificationLocalizationParameters,
+            ModificationFactory modificationFactory,
+            ModificationParameters modificationParameters,
+            SpectrumProvider spectrumProvider
+    ) {
+
+        // Get the features cached by previous exports
+        long featuresKey = 0;
+        PsmFeatures psmFeatures = null;
+
+        if (featureStore != null) {
+
+            featuresKey = PercolatorFeatureStore.getKey(spectrumMatch, peptideAssumption);
+            psmFeatures = featureStore.get(featuresKey);
+
+        }
+
         // Get peptide RTs
-        Boolean rtPredictionsAvailable = allRTvalues != null;
+        Boolean rtPredictionsAvailable = allRTvalues != null || rtPrediction != null;
         ArrayList<Double> peptideRTs = null;
 
         if (rtPredictionsAvailable) {
@@ -989,12 +980,29 @@ public class PercolatorExport {
                     )
             );
 
-            peptideRTs = allRTvalues.get(deepLcKey);
+            if (allRTvalues != null) {
+
+                peptideRTs = allRTvalues.get(deepLcKey);
+
+            } else {
+
+                // Compare the measured retention time of this spectrum to the closest prediction
+                ArrayList<Double> predictedRts = rtPrediction.getRetentionTimes(deepLcKey);
+
+                if (predictedRts != null) {
+
+                    peptideRTs = PercolatorUtils.getPeptideObservedPredictedRT(
+                            spectrumMatch,
+                            predictedRts,
+                            spectrumProvider
+                    );
+                }
+            }
 
             //DeepLC prediction is missing
             if (peptideRTs == null) {
                 System.out.println("Missing DeepLC prediction for peptide: " + deepLcKey);
-                return;
+                return null;
             }
         }
 
@@ -1004,23 +1012,34 @@ public class PercolatorExport {
 
         if (spectraPredictionsAvailable) {
 
-            // Get peptide data
-            String peptideData = Ms2PipUtils.getPeptideData(
-                    peptideAssumption,
-                    modificationParameters,
-                    sequenceProvider,
-                    sequenceMatchingParameters,
-                    modificationFactory
-            );
+            long peptideKey;
+
+            if (psmFeatures != null) {
+
+                peptideKey = psmFeatures.getMs2PipKey();
+
+            } else {
 
-            // Get corresponding key
-            long peptideKey = Ms2PipUtils.getPeptideKey(peptideData);
-            predictedSpectrum = fragmentationPrediction.get(Long.toString(peptideKey));
+                // Get peptide data
+                String peptideData = Ms2PipUtils.getPeptideData(
+                        peptideAssumption,
+                        modificationParameters,
+                        sequenceProvider,
+                        sequenceMatchingParameters,
+                        modificationFactory
+                );
+
+                // Get corresponding key
+                peptideKey = Ms2PipUtils.getPeptideKey(peptideData);
+
+            }
+
+            predictedSpectrum = fragmentationPrediction.getSpectra(Long.toString(peptideKey));
 
             //MS2PIP prediction is missing
             if (predictedSpectrum == null) {
                 System.out.println("Missing MS2PIP prediction for peptide: " + Long.toString(peptideKey));
-                return;
+                return null;
             }
         }
 
@@ -1042,37 +1061,40 @@ public class PercolatorExport {
 
         } else {
 
+            if (psmFeatures == null) {
+
+                psmFeatures = PercolatorUtils.getPsmFeatures(
+                        spectrumMatch,
+                        peptideAssumption,
+                        searchParameters,
+                        sequenceProvider,
+                        sequenceMatchingParameters,
+                        annotationParameters,
+                        modificationLocalizationParameters,
+                        modificationFactory,
+                        spectrumProvider,
+                        modificationParameters
+                );
+
+                if (featureBatch != null) {
+
+                    featureBatch.put(featuresKey, psmFeatures);
+
+                }
+            }
+
             peptideData = PercolatorUtils.getPeptideData(
                     spectrumMatch,
                     peptideAssumption,
+                    psmFeatures,
                     peptideRTs,
                     predictedSpectrum,
                     searchParameters,
-                    sequenceProvider,
-                    sequenceMatchingParameters,
-                    annotationParameters,
-                    modificationLocalizationParameters,
-                    modificationFactory,
-                    spectrumProvider,
-                    modificationParameters
+                    spectrumProvider
             );
         }
 
-        // Get identifiers
-        long psmKey = PercolatorUtils.getPsmKey(peptideData);
-
-        // Export if not done already
-        writingSemaphore.acquire();
-
-        if (!processedPsms.contains(psmKey)) {
-
-            writer.writeLine(peptideData);
-
-            processedPsms.add(psmKey);
-
-        }
-
-        writingSemaphore.release();
+        return peptideData;
 
     }
 }
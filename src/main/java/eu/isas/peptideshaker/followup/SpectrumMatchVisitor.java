@@ -0,0 +1,39 @@
+package eu.isas.peptideshaker.followup;
+
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * Interface for the follow-up exports writing information on every spectrum
+ * match. The exports are registered to a {@link FollowUpExportEngine} which
+ * visits all exports in a single pass over the spectrum matches.
+ *
+ * @author Marc Vaudel
+ */
+public interface SpectrumMatchVisitor {
+
+    /**
+     * Exports the given spectrum match. This method is called concurrently
+     * from different threads.
+     *
+     * @param spectrumMatch the spectrum match
+     */
+    public void visit(
+            SpectrumMatch spectrumMatch
+    );
+
+    /**
+     * Closes the export. Called once after all spectrum matches were visited,
+     * also if the export was canceled.
+     */
+    public void close();
+
+    /**
+     * Returns the files written by the export.
+     *
+     * @return the files written by the export
+     */
+    public ArrayList<File> getExportedFiles();
+
+}
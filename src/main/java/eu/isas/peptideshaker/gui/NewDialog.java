@@ -36,6 +36,7 @@ import eu.isas.peptideshaker.gui.parameters.ProjectParametersDialog;
 import eu.isas.peptideshaker.preferences.DisplayParameters;
 import com.compomics.util.parameters.quantification.spectrum_counting.SpectrumCountingParameters;
 import com.compomics.util.experiment.io.mass_spectrometry.cms.CmsFolder;
+import eu.isas.peptideshaker.utils.CachedMsFileHandler;
 import eu.isas.peptideshaker.utils.PsZipUtils;
 import eu.isas.peptideshaker.utils.Tips;
 import eu.isas.peptideshaker.validation.MatchesValidator;
@@ -124,7 +125,7 @@ public class NewDialog extends javax.swing.JDialog {
     /**
      * The handler for mass spectrometry files.
      */
-    private MsFileHandler msFileHandler = new MsFileHandler();
+    private MsFileHandler msFileHandler = new CachedMsFileHandler();
 
     /**
      * Creates a new open dialog.
@@ -906,7 +907,7 @@ public class NewDialog extends javax.swing.JDialog {
 
         spectrumFiles = new ArrayList<>();
         spectrumFilesTxt.setText(spectrumFiles.size() + " file(s) selected");
-        msFileHandler = new MsFileHandler();
+        msFileHandler = new CachedMsFileHandler();
         validateInput();
 
 }//GEN-LAST:event_clearSpectraActionPerformed
@@ -8395,6 +8395,7 @@ public class PeptideShakerGUI extends JFrame implements ClipboardOwner, JavaHome
                                     null,
                                     psdbFile,
                                     false,
+                                    getProcessingParameters().getnThreads(),
                                     progressDialog
                             );
 
@@ -593,6 +593,7 @@ public class FeaturesExportDialog extends javax.swing.JDialog {
                                 peptideShakerGUI.getProteinDetailsProvider(),
                                 peptideShakerGUI.getSpectrumProvider(),
                                 peptideShakerGUI.getSpectrumCountingParameters(),
+                                peptideShakerGUI.getProcessingParameters().getnThreads(),
                                 progressDialog
                         );
 
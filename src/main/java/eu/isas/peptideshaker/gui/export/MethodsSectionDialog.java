@@ -239,6 +239,7 @@ public class MethodsSectionDialog extends javax.swing.JDialog {
                                 peptideShakerGUI.getProteinDetailsProvider(),
                                 peptideShakerGUI.getSpectrumProvider(),
                                 peptideShakerGUI.getSpectrumCountingParameters(),
+                                peptideShakerGUI.getProcessingParameters().getnThreads(),
                                 progressDialog
                         );
 
@@ -737,7 +737,10 @@ public class MzIdentMLExportDialog extends javax.swing.JDialog {
                             progressDialog,
                             true
                     );
-                    mzIdentMLExport.createMzIdentMLFile(mzIdentMLVersion);
+                    mzIdentMLExport.createMzIdentMLFile(
+                            mzIdentMLVersion,
+                            peptideShakerGUI.getProcessingParameters().getnThreads()
+                    );
 
                     // validate the mzidentml file
                     if (validateMzIdentML && !progressDialog.isRunCanceled()) {
@@ -1222,6 +1222,7 @@ public class AnnotationPanel extends javax.swing.JPanel {
                                             peptideShakerGUI.getProteinDetailsProvider(), 
                                             peptideShakerGUI.getSpectrumProvider(), 
                                             peptideShakerGUI.getSpectrumCountingParameters(), 
+                                            peptideShakerGUI.getProcessingParameters().getnThreads(),
                                             progressDialog
                                     );
 
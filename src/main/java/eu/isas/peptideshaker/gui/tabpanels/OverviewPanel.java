@@ -6448,6 +6448,7 @@ public class OverviewPanel extends javax.swing.JPanel implements ProteinSequence
                                             peptideShakerGUI.getProteinDetailsProvider(),
                                             peptideShakerGUI.getSpectrumProvider(),
                                             peptideShakerGUI.getSpectrumCountingParameters(),
+                                            peptideShakerGUI.getProcessingParameters().getnThreads(),
                                             progressDialog
                                     );
 
@@ -6507,6 +6508,7 @@ public class OverviewPanel extends javax.swing.JPanel implements ProteinSequence
                                             peptideShakerGUI.getProteinDetailsProvider(),
                                             peptideShakerGUI.getSpectrumProvider(),
                                             peptideShakerGUI.getSpectrumCountingParameters(),
+                                            peptideShakerGUI.getProcessingParameters().getnThreads(),
                                             progressDialog
                                     );
 
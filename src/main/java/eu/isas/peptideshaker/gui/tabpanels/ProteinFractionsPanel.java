@@ -1970,6 +1970,7 @@ public class ProteinFractionsPanel extends javax.swing.JPanel implements Protein
                                     peptideShakerGUI.getProteinDetailsProvider(),
                                     peptideShakerGUI.getSpectrumProvider(),
                                     peptideShakerGUI.getSpectrumCountingParameters(),
+                                    peptideShakerGUI.getProcessingParameters().getnThreads(),
                                     progressDialog
                             );
 
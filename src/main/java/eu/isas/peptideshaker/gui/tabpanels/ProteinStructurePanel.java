@@ -3807,6 +3807,7 @@ public class ProteinStructurePanel extends javax.swing.JPanel {
                                             peptideShakerGUI.getProteinDetailsProvider(),
                                             peptideShakerGUI.getSpectrumProvider(),
                                             peptideShakerGUI.getSpectrumCountingParameters(),
+                                            peptideShakerGUI.getProcessingParameters().getnThreads(),
                                             progressDialog
                                     );
 
@@ -3866,6 +3867,7 @@ public class ProteinStructurePanel extends javax.swing.JPanel {
                                             peptideShakerGUI.getProteinDetailsProvider(),
                                             peptideShakerGUI.getSpectrumProvider(),
                                             peptideShakerGUI.getSpectrumCountingParameters(),
+                                            peptideShakerGUI.getProcessingParameters().getnThreads(),
                                             progressDialog
                                     );
 
@@ -0,0 +1,108 @@
+package eu.isas.peptideshaker.processing;
+
+/**
+ * Enum of the policies used to commit the database between the stages of the
+ * creation of a project.
+ *
+ * @author Marc Vaudel
+ */
+public enum CommitPolicy {
+
+    /**
+     * Commits the database after every stage.
+     */
+    every_stage(0, "Commit after every stage"),
+    /**
+     * Commits the database only when the heap occupancy after garbage
+     * collection is high, when many matches were modified since the last
+     * commit, or when the last commit is old. The checkpoints are only saved
+     * with a commit and can therefore lag behind the completed stages.
+     */
+    memory_pressure(1, "Commit when memory is needed, checkpoints can lag behind the stages");
+    /**
+     * The index of the policy.
+     */
+    public final int index;
+    /**
+     * The description of the policy.
+     */
+    public final String description;
+
+    /**
+     * Constructor.
+     *
+     * @param index the index of the policy
+     * @param description the description of the policy
+     */
+    private CommitPolicy(
+            int index,
+            String description
+    ) {
+
+        this.index = index;
+        this.description = description;
+
+    }
+
+    /**
+     * Returns the default policy.
+     *
+     * @return the default policy
+     */
+    public static CommitPolicy getDefault() {
+
+        return every_stage;
+
+    }
+
+    /**
+     * Returns the policy corresponding to the given index.
+     *
+     * @param index the index of the policy
+     *
+     * @return the policy corresponding to the given index
+     */
+    public static CommitPolicy getCommitPolicy(
+            int index
+    ) {
+
+        for (CommitPolicy commitPolicy : values()) {
+
+            if (commitPolicy.index == index) {
+
+                return commitPolicy;
+
+            }
+        }
+
+        throw new IllegalArgumentException("No commit policy found for index " + index + ".");
+
+    }
+
+    /**
+     * Returns the options for the command line.
+     *
+     * @return the options for the command line
+     */
+    public static String getCommandLineOptions() {
+
+        StringBuilder options = new StringBuilder();
+
+        for (CommitPolicy commitPolicy : values()) {
+
+            if (options.length() > 0) {
+
+                options.append(", ");
+
+            }
+
+            options.append(commitPolicy.index).append(": ").append(commitPolicy.description);
+
+        }
+
+        options.append(" (default is '").append(getDefault().index).append("').");
+
+        return options.toString();
+
+    }
+}
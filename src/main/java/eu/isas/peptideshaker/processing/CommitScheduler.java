@@ -0,0 +1,302 @@
+package eu.isas.peptideshaker.processing;
+
+import com.compomics.util.experiment.identification.Identification;
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * Decides when to commit the database between the stages of the creation of
+ * a project according to a commit policy. No garbage collection is ever
+ * requested. With the memory pressure policy, the collection usage thresholds
+ * of the heap memory pools are set and their notifications listened to, so
+ * that commits are done when the heap remains occupied after garbage
+ * collection. Commits are also done when many matches were modified since the
+ * last commit, and when the last commit is old.
+ *
+ * @author Marc Vaudel
+ */
+public class CommitScheduler {
+
+    /**
+     * The share of the heap above which a commit is done with the memory
+     * pressure policy.
+     */
+    public static final double HEAP_OCCUPANCY_THRESHOLD = 0.7;
+    /**
+     * The number of matches modified since the last commit above which a
+     * commit is done with the memory pressure policy.
+     */
+    public static final long MODIFIED_MATCHES_THRESHOLD = 1000000;
+    /**
+     * The time in milliseconds after which a commit is done with the memory
+     * pressure policy, even if the heap occupancy is low, so that the
+     * checkpoints saved in the database remain recent.
+     */
+    public static final long MAX_COMMIT_INTERVAL = 30 * 60 * 1000;
+    /**
+     * The commit policy.
+     */
+    private final CommitPolicy commitPolicy;
+    /**
+     * The handler displaying feedback to the user.
+     */
+    private final WaitingHandler waitingHandler;
+    /**
+     * The time of the last commit in milliseconds.
+     */
+    private long lastCommit;
+    /**
+     * The number of matches modified since the last commit.
+     */
+    private long nModifiedMatches = 0;
+    /**
+     * Indicates whether a collection usage threshold was exceeded since the
+     * last commit.
+     */
+    private volatile boolean thresholdExceeded = false;
+    /**
+     * The listener of the memory notifications, null if not registered.
+     */
+    private NotificationListener memoryListener = null;
+    /**
+     * The collection usage thresholds of the memory pools before they were
+     * set by this scheduler.
+     */
+    private final HashMap<MemoryPoolMXBean, Long> previousThresholds = new HashMap<>();
+
+    /**
+     * Constructor. With the memory pressure policy, the collection usage
+     * thresholds are set and listened to until the scheduler is closed.
+     *
+     * @param commitPolicy the commit policy
+     * @param waitingHandler the handler displaying feedback to the user
+     */
+    public CommitScheduler(
+            CommitPolicy commitPolicy,
+            WaitingHandler waitingHandler
+    ) {
+
+        this.commitPolicy = commitPolicy;
+        this.waitingHandler = waitingHandler;
+        this.lastCommit = System.currentTimeMillis();
+
+        if (commitPolicy == CommitPolicy.memory_pressure) {
+
+            registerMemoryListener();
+
+        }
+    }
+
+    /**
+     * Sets the collection usage thresholds of the heap memory pools and
+     * registers a listener for the notifications sent when they are exceeded.
+     */
+    private void registerMemoryListener() {
+
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+
+            if (memoryPool.getType() == MemoryType.HEAP
+                    && memoryPool.isCollectionUsageThresholdSupported()) {
+
+                long max = memoryPool.getUsage().getMax();
+
+                if (max > 0) {
+
+                    previousThresholds.put(memoryPool, memoryPool.getCollectionUsageThreshold());
+                    memoryPool.setCollectionUsageThreshold((long) (HEAP_OCCUPANCY_THRESHOLD * max));
+
+                }
+            }
+        }
+
+        memoryListener = (notification, handback) -> {
+
+            if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+
+                thresholdExceeded = true;
+
+            }
+        };
+
+        NotificationEmitter memoryEmitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        memoryEmitter.addNotificationListener(memoryListener, null, null);
+
+    }
+
+    /**
+     * Indicates whether the database should be committed after the given
+     * stage according to the policy.
+     *
+     * @param stageName the name of the completed stage
+     * @param nStageModifiedMatches the number of matches modified by the stage
+     *
+     * @return a boolean indicating whether the database should be committed
+     */
+    public boolean isCommitNeeded(
+            String stageName,
+            long nStageModifiedMatches
+    ) {
+
+        nModifiedMatches += nStageModifiedMatches;
+
+        switch (commitPolicy) {
+
+            case memory_pressure:
+
+                return isMemoryCommitNeeded(stageName);
+
+            case every_stage:
+            default:
+
+                return true;
+
+        }
+    }
+
+    /**
+     * Indicates whether the database should be committed after the given
+     * stage according to the memory pressure policy. The decisions to commit
+     * are logged.
+     *
+     * @param stageName the name of the completed stage
+     *
+     * @return a boolean indicating whether the database should be committed
+     */
+    private boolean isMemoryCommitNeeded(
+            String stageName
+    ) {
+
+        if (thresholdExceeded || isThresholdExceeded()) {
+
+            waitingHandler.appendReport(
+                    "Heap occupancy above "
+                    + Math.round(100 * HEAP_OCCUPANCY_THRESHOLD)
+                    + "% after garbage collection at stage "
+                    + stageName
+                    + ", committing matches to the database.",
+                    true,
+                    true
+            );
+            return true;
+
+        }
+
+        if (nModifiedMatches >= MODIFIED_MATCHES_THRESHOLD) {
+
+            waitingHandler.appendReport(
+                    nModifiedMatches
+                    + " matches modified since the last commit at stage "
+                    + stageName
+                    + ", committing matches to the database.",
+                    true,
+                    true
+            );
+            return true;
+
+        }
+
+        if (System.currentTimeMillis() - lastCommit >= MAX_COMMIT_INTERVAL) {
+
+            waitingHandler.appendReport(
+                    "No commit since "
+                    + (MAX_COMMIT_INTERVAL / 60000)
+                    + " minutes at stage "
+                    + stageName
+                    + ", committing matches to the database.",
+                    true,
+                    true
+            );
+            return true;
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Indicates whether the collection usage threshold of a heap memory pool
+     * set by this scheduler is exceeded.
+     *
+     * @return a boolean indicating whether a collection usage threshold is
+     * exceeded
+     */
+    private boolean isThresholdExceeded() {
+
+        for (MemoryPoolMXBean memoryPool : previousThresholds.keySet()) {
+
+            if (memoryPool.isCollectionUsageThresholdExceeded()) {
+
+                return true;
+
+            }
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Commits the database and resets the counters of the policy.
+     *
+     * @param identification the identification
+     *
+     * @throws java.lang.InterruptedException exception thrown if a thread gets
+     * interrupted
+     * @throws java.io.IOException exception thrown if an error occurred while
+     * writing to the database
+     */
+    public void commit(
+            Identification identification
+    ) throws InterruptedException, IOException {
+
+        identification.getObjectsDB().commit();
+
+        lastCommit = System.currentTimeMillis();
+        nModifiedMatches = 0;
+        thresholdExceeded = false;
+
+    }
+
+    /**
+     * Unregisters the memory listener and restores the collection usage
+     * thresholds of the memory pools.
+     */
+    public void close() {
+
+        if (memoryListener != null) {
+
+            try {
+
+                NotificationEmitter memoryEmitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+                memoryEmitter.removeNotificationListener(memoryListener);
+
+            } catch (ListenerNotFoundException e) {
+
+                // already removed
+
+            }
+
+            memoryListener = null;
+
+        }
+
+        for (Entry<MemoryPoolMXBean, Long> entry : previousThresholds.entrySet()) {
+
+            entry.getKey().setCollectionUsageThreshold(entry.getValue());
+
+        }
+
+        previousThresholds.clear();
+
+    }
+}
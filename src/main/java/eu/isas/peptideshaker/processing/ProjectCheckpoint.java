@@ -0,0 +1,426 @@
+package eu.isas.peptideshaker.processing;
+
+import com.compomics.util.experiment.biology.genes.GeneMaps;
+import com.compomics.util.experiment.identification.peptide_shaker.Metrics;
+import com.compomics.util.experiment.personalization.ExperimentObject;
+import eu.isas.peptideshaker.preferences.ProjectDetails;
+import eu.isas.peptideshaker.scoring.maps.InputMap;
+import eu.isas.peptideshaker.scoring.targetdecoy.TargetDecoyMap;
+import java.io.File;
+import java.util.HashMap;
+
+/**
+ * Checkpoint of the creation of a project. The checkpoint is saved in the
+ * database together with the objects kept in memory between stages when the
+ * database is committed after a stage, and a snapshot of the committed
+ * database is written next to it. The creation of a project interrupted at a
+ * given stage can be resumed from this snapshot after the last committed
+ * stage, the changes made to the database by the interrupted stage being
+ * discarded. The checkpoint and the snapshot are removed when the project is
+ * complete.
+ *
+ * @author Marc Vaudel
+ */
+public class ProjectCheckpoint extends ExperimentObject {
+
+    /**
+     * Serial version UID for post-serialization compatibility.
+     */
+    static final long serialVersionUID = 3921858170467520935L;
+    /**
+     * The key of the object when stored in settings table of a psdb file.
+     */
+    public static final long KEY = ExperimentObject.asLong("PeptideShaker_project_checkpoint");
+    /**
+     * The extension of the snapshot of the database saved with the checkpoint.
+     */
+    public static final String SNAPSHOT_EXTENSION = ".checkpoint";
+    /**
+     * The last completed stage, null if no stage was completed.
+     */
+    private Stage stage = null;
+    /**
+     * The input map.
+     */
+    private InputMap inputMap;
+    /**
+     * The PSM level map.
+     */
+    private TargetDecoyMap psmMap;
+    /**
+     * The peptide level map.
+     */
+    private TargetDecoyMap peptideMap;
+    /**
+     * The protein level map.
+     */
+    private TargetDecoyMap proteinMap;
+    /**
+     * The metrics.
+     */
+    private Metrics metrics;
+    /**
+     * The gene maps.
+     */
+    private GeneMaps geneMaps;
+    /**
+     * Map of proteins found several times with the number of times they
+     * appeared as first hit.
+     */
+    private HashMap<String, Integer> proteinCount;
+    /**
+     * The project details.
+     */
+    private ProjectDetails projectDetails;
+
+    /**
+     * The stages of the creation of a project, in order of execution.
+     */
+    public enum Stage {
+
+        /**
+         * The identification files were imported.
+         */
+        imported(true, true, false, false),
+        /**
+         * The PSMs were scored.
+         */
+        psmScoring(false, true, false, false),
+        /**
+         * The probabilities of the assumptions were estimated.
+         */
+        assumptionProbabilities(false, false, false, false),
+        /**
+         * The best match of every PSM was selected.
+         */
+        psmProcessing(false, true, false, false),
+        /**
+         * The PSM probabilities were estimated.
+         */
+        psmProbabilities(false, false, false, false),
+        /**
+         * The peptide inference issues were resolved.
+         */
+        peptideInference(false, true, false, false),
+        /**
+         * The peptides and proteins were built.
+         */
+        matchBuilding(true, true, true, true),
+        /**
+         * The peptide map was filled.
+         */
+        peptideMap(false, false, false, false),
+        /**
+         * The peptide probabilities were estimated.
+         */
+        peptideProbabilities(false, false, false, false),
+        /**
+         * The peptide probabilities were saved.
+         */
+        peptideProbabilitiesSaved(false, false, true, false),
+        /**
+         * The protein groups were simplified.
+         */
+        groupSimplification(true, false, false, true),
+        /**
+         * The shared peptides were mapped.
+         */
+        sharedPeptides(false, false, false, true),
+        /**
+         * The protein map was filled.
+         */
+        proteinMap(false, false, false, false),
+        /**
+         * The protein inference status was inferred.
+         */
+        piStatus(false, false, true, true),
+        /**
+         * The protein probabilities were estimated.
+         */
+        proteinProbabilities(false, false, false, false),
+        /**
+         * The protein probabilities were saved.
+         */
+        proteinProbabilitiesSaved(false, false, false, true),
+        /**
+         * The matches were validated.
+         */
+        validation(false, true, true, true),
+        /**
+         * The modifications of the peptides were scored.
+         */
+        peptideModifications(true, false, true, false),
+        /**
+         * The spectrum counting scaling factors were estimated.
+         */
+        scalingFactors(false, false, false, false);
+
+        /**
+         * Indicates whether the stage changes the keys of the matches of the
+         * identification.
+         */
+        private final boolean keysChanged;
+        /**
+         * Indicates whether the stage modifies the spectrum matches.
+         */
+        private final boolean psmsModified;
+        /**
+         * Indicates whether the stage modifies the peptide matches.
+         */
+        private final boolean peptidesModified;
+        /**
+         * Indicates whether the stage modifies the protein matches.
+         */
+        private final boolean proteinsModified;
+
+        /**
+         * Constructor.
+         *
+         * @param keysChanged indicates whether the stage changes the keys of
+         * the matches of the identification
+         * @param psmsModified indicates whether the stage modifies the
+         * spectrum matches
+         * @param peptidesModified indicates whether the stage modifies the
+         * peptide matches
+         * @param proteinsModified indicates whether the stage modifies the
+         * protein matches
+         */
+        private Stage(
+                boolean keysChanged,
+                boolean psmsModified,
+                boolean peptidesModified,
+                boolean proteinsModified
+        ) {
+
+            this.keysChanged = keysChanged;
+            this.psmsModified = psmsModified;
+            this.peptidesModified = peptidesModified;
+            this.proteinsModified = proteinsModified;
+
+        }
+
+        /**
+         * Indicates whether the stage changes the keys of the matches of the
+         * identification.
+         *
+         * @return a boolean indicating whether the stage changes the keys of
+         * the matches of the identification
+         */
+        public boolean isKeysChanged() {
+
+            return keysChanged;
+
+        }
+
+        /**
+         * Indicates whether the stage modifies the spectrum matches.
+         *
+         * @return a boolean indicating whether the stage modifies the
+         * spectrum matches
+         */
+        public boolean isPsmsModified() {
+
+            return psmsModified;
+
+        }
+
+        /**
+         * Indicates whether the stage modifies the peptide matches.
+         *
+         * @return a boolean indicating whether the stage modifies the peptide
+         * matches
+         */
+        public boolean isPeptidesModified() {
+
+            return peptidesModified;
+
+        }
+
+        /**
+         * Indicates whether the stage modifies the protein matches.
+         *
+         * @return a boolean indicating whether the stage modifies the protein
+         * matches
+         */
+        public boolean isProteinsModified() {
+
+            return proteinsModified;
+
+        }
+    }
+
+    /**
+     * Constructor.
+     */
+    public ProjectCheckpoint() {
+    }
+
+    /**
+     * Returns the last completed stage, null if no stage was completed.
+     *
+     * @return the last completed stage
+     */
+    public Stage getStage() {
+
+        return stage;
+
+    }
+
+    /**
+     * Indicates whether the given stage was completed.
+     *
+     * @param stage the stage
+     *
+     * @return a boolean indicating whether the given stage was completed
+     */
+    public boolean isCompleted(
+            Stage stage
+    ) {
+
+        return this.stage != null && this.stage.ordinal() >= stage.ordinal();
+
+    }
+
+    /**
+     * Sets the last completed stage and the objects kept in memory at this
+     * stage.
+     *
+     * @param stage the last completed stage
+     * @param inputMap the input map
+     * @param psmMap the PSM level map
+     * @param peptideMap the peptide level map
+     * @param proteinMap the protein level map
+     * @param metrics the metrics
+     * @param geneMaps the gene maps
+     * @param proteinCount the number of times the proteins appeared as first
+     * hit
+     * @param projectDetails the project details
+     */
+    public void setStage(
+            Stage stage,
+            InputMap inputMap,
+            TargetDecoyMap psmMap,
+            TargetDecoyMap peptideMap,
+            TargetDecoyMap proteinMap,
+            Metrics metrics,
+            GeneMaps geneMaps,
+            HashMap<String, Integer> proteinCount,
+            ProjectDetails projectDetails
+    ) {
+
+        this.stage = stage;
+        this.inputMap = inputMap;
+        this.psmMap = psmMap;
+        this.peptideMap = peptideMap;
+        this.proteinMap = proteinMap;
+        this.metrics = metrics;
+        this.geneMaps = geneMaps;
+        this.proteinCount = proteinCount;
+        this.projectDetails = projectDetails;
+
+    }
+
+    /**
+     * Returns the input map.
+     *
+     * @return the input map
+     */
+    public InputMap getInputMap() {
+
+        return inputMap;
+
+    }
+
+    /**
+     * Returns the PSM level map.
+     *
+     * @return the PSM level map
+     */
+    public TargetDecoyMap getPsmMap() {
+
+        return psmMap;
+
+    }
+
+    /**
+     * Returns the peptide level map.
+     *
+     * @return the peptide level map
+     */
+    public TargetDecoyMap getPeptideMap() {
+
+        return peptideMap;
+
+    }
+
+    /**
+     * Returns the protein level map.
+     *
+     * @return the protein level map
+     */
+    public TargetDecoyMap getProteinMap() {
+
+        return proteinMap;
+
+    }
+
+    /**
+     * Returns the metrics.
+     *
+     * @return the metrics
+     */
+    public Metrics getMetrics() {
+
+        return metrics;
+
+    }
+
+    /**
+     * Returns the gene maps.
+     *
+     * @return the gene maps
+     */
+    public GeneMaps getGeneMaps() {
+
+        return geneMaps;
+
+    }
+
+    /**
+     * Returns the number of times the proteins appeared as first hit.
+     *
+     * @return the number of times the proteins appeared as first hit
+     */
+    public HashMap<String, Integer> getProteinCount() {
+
+        return proteinCount;
+
+    }
+
+    /**
+     * Returns the project details.
+     *
+     * @return the project details
+     */
+    public ProjectDetails getProjectDetails() {
+
+        return projectDetails;
+
+    }
+
+    /**
+     * Returns the file where the snapshot of the given database is saved with
+     * the checkpoint.
+     *
+     * @param dbFile the database file
+     *
+     * @return the file where the snapshot of the database is saved
+     */
+    public static File getSnapshotFile(
+            File dbFile
+    ) {
+
+        return new File(dbFile.getParentFile(), dbFile.getName() + SNAPSHOT_EXTENSION);
+
+    }
+}
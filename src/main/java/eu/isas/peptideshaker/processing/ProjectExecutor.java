@@ -0,0 +1,136 @@
+package eu.isas.peptideshaker.processing;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Project-scoped execution engine. Parallel streams started from a task
+ * executed by this engine run on its bounded pool instead of the JVM-wide
+ * common pool, so that the number of threads used to create a project does
+ * not exceed the number of threads set in the processing parameters. The
+ * engine also records the time spent in every stage of the project creation.
+ *
+ * @author Marc Vaudel
+ */
+public class ProjectExecutor {
+
+    /**
+     * The pool running the tasks.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * The duration of the stages in milliseconds, in order of execution.
+     */
+    private final LinkedHashMap<String, Long> stageDurations = new LinkedHashMap<>();
+    /**
+     * The name of the current stage, null if no stage is running.
+     */
+    private String currentStage = null;
+    /**
+     * The start time of the current stage in nanoseconds.
+     */
+    private long currentStageStart;
+
+    /**
+     * Constructor.
+     *
+     * @param nThreads the number of threads to use
+     */
+    public ProjectExecutor(
+            int nThreads
+    ) {
+
+        this.pool = new ForkJoinPool(nThreads);
+
+    }
+
+    /**
+     * Executes the given task on the pool of this engine and waits for its
+     * completion. Exceptions thrown by the task are thrown again in the
+     * calling thread.
+     *
+     * @param task the task to execute
+     *
+     * @throws InterruptedException exception thrown if the calling thread is
+     * interrupted while waiting
+     */
+    public void execute(
+            Runnable task
+    ) throws InterruptedException {
+
+        try {
+
+            pool.submit(task).get();
+
+        } catch (ExecutionException e) {
+
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+
+                throw (RuntimeException) cause;
+
+            } else if (cause instanceof Error) {
+
+                throw (Error) cause;
+
+            }
+
+            throw new RuntimeException(cause);
+
+        }
+    }
+
+    /**
+     * Ends the current stage, if any, and starts a new one.
+     *
+     * @param stageName the name of the new stage
+     */
+    public synchronized void startStage(
+            String stageName
+    ) {
+
+        endStage();
+
+        currentStage = stageName;
+        currentStageStart = System.nanoTime();
+
+    }
+
+    /**
+     * Ends the current stage, if any, and records its duration.
+     */
+    public synchronized void endStage() {
+
+        if (currentStage != null) {
+
+            long duration = (System.nanoTime() - currentStageStart) / 1000000;
+            stageDurations.merge(currentStage, duration, Long::sum);
+            currentStage = null;
+
+        }
+    }
+
+    /**
+     * Returns the duration of the completed stages in milliseconds, in order of
+     * execution.
+     *
+     * @return the duration of the completed stages in milliseconds
+     */
+    public synchronized LinkedHashMap<String, Long> getStageDurations() {
+
+        return new LinkedHashMap<>(stageDurations);
+
+    }
+
+    /**
+     * Ends the current stage and shuts down the pool.
+     */
+    public void shutdown() {
+
+        endStage();
+        pool.shutdown();
+
+    }
+}
@@ -9,13 +9,14 @@ import com.compomics.util.experiment.io.biology.protein.SequenceProvider;
 import com.compomics.util.parameters.identification.IdentificationParameters;
 import com.compomics.util.parameters.identification.advanced.ProteinInferenceParameters;
 import com.compomics.util.parameters.identification.search.DigestionParameters;
-import com.compomics.util.threading.SimpleSemaphore;
 import com.compomics.util.waiting.WaitingHandler;
 import com.google.common.collect.Sets;
 import static eu.isas.peptideshaker.protein_inference.ProteinInference.KEYWORDS_UNCHARACTERIZED;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.stream.Collectors;
 
 /**
@@ -30,7 +31,7 @@ public class GroupSimplification {
     /**
      * Number of groups indexed by option.
      */
-    private final int[] nDeleted = new int[ProteinInference.GroupSimplificationOption.values().length];
+    private final AtomicIntegerArray nDeleted = new AtomicIntegerArray(ProteinInference.GroupSimplificationOption.values().length);
 
     /**
      * Remove groups that can be explained by a simpler group.
@@ -60,48 +61,49 @@ public class GroupSimplification {
 
         }
 
-        HashSet<Long> proteinGroupKeys = identification.getProteinIdentification();
-        HashSet<Long> toDelete = new HashSet<>();
-        HashMap<Long, long[]> processedKeys = new HashMap<>();
-        SimpleSemaphore mutex = new SimpleSemaphore(1);
-
-        proteinGroupKeys.stream()
-                .filter(
-                        key -> !processedKeys.containsKey(key)
-                )
-                .map(
-                        key -> identification.getProteinMatch(key)
-                )
-                .filter(
-                        proteinMatch -> proteinMatch.getNProteins() > 1
-                )
-                .forEach(
-                        proteinSharedGroup -> removeRedundantGroups(
-                                identification,
-                                identificationParameters,
-                                sequenceProvider,
-                                proteinDetailsProvider,
-                                proteinSharedGroup,
-                                processedKeys,
-                                toDelete,
-                                mutex,
-                                waitingHandler
+        ArrayList<long[]> components = new ProteinGroupComponents(identification).getComponents();
+
+        long[] toDelete = components.parallelStream()
+                .flatMapToLong(
+                        component -> Arrays.stream(
+                                removeRedundantGroups(
+                                        identification,
+                                        identificationParameters,
+                                        sequenceProvider,
+                                        proteinDetailsProvider,
+                                        component,
+                                        waitingHandler
+                                )
                         )
-                );
+                )
+                .sorted()
+                .toArray();
+
+        if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+
+            return;
 
-        int totalSimplified = Arrays.stream(nDeleted).sum();
+        }
+
+        int totalSimplified = 0;
+
+        for (int i = 0; i < nDeleted.length(); i++) {
+
+            totalSimplified += nDeleted.get(i);
+
+        }
 
         if (totalSimplified > 0) {
 
             if (waitingHandler != null) {
 
-                waitingHandler.appendReport(toDelete.size() + " unlikely protein mappings found:", true, true);
+                waitingHandler.appendReport(toDelete.length + " unlikely protein mappings found:", true, true);
 
                 String padding = "    ";
 
                 for (int i = 0; i < ProteinInference.GroupSimplificationOption.values().length; i++) {
 
-                    int iSimplified = nDeleted[i];
+                    int iSimplified = nDeleted.get(i);
 
                     if (iSimplified > 0) {
 
@@ -113,106 +115,123 @@ public class GroupSimplification {
                 }
 
                 waitingHandler.setSecondaryProgressCounterIndeterminate(false);
-                waitingHandler.setMaxSecondaryProgressCounter(toDelete.size());
+                waitingHandler.setMaxSecondaryProgressCounter(toDelete.length);
 
             }
 
-            toDelete.stream()
-                    .forEach(key -> {
+            // remove all the groups at once, after the concurrent processing and in key order
+            for (long key : toDelete) {
 
-                        identification.removeObject(key);
+                identification.removeObject(key);
 
-                        if (waitingHandler != null) {
+                if (waitingHandler != null) {
 
-                            if (waitingHandler.isRunCanceled()) {
+                    if (waitingHandler.isRunCanceled()) {
 
-                                return;
+                        return;
 
-                            }
+                    }
 
-                            waitingHandler.increaseSecondaryProgressCounter();
+                    waitingHandler.increaseSecondaryProgressCounter();
 
-                        }
-                    });
+                }
+            }
         }
     }
 
     /**
-     * Removes the redundant groups for the given protein shared group.
+     * Removes the redundant groups of a connected component of the protein
+     * groups. Components are independent, this method can therefore process
+     * different components concurrently without synchronization.
      *
      * @param identification The identification object containing the
      * identification matches.
      * @param identificationParameters The identification parameters.
      * @param sequenceProvider The protein sequence provider.
      * @param proteinDetailsProvider The protein details provider.
-     * @param proteinSharedGroup The protein shared group investigated.
-     * @param processedKeys Map of the already processed keys.
-     * @param toDelete Set of the keys to delete.
-     * @param mutex Mutex to synchronize the different threads.
+     * @param component The keys of the protein groups of the component.
      * @param waitingHandler Waiting handler to show progress and interrupt
      * processes.
+     *
+     * @return The keys of the groups to delete.
      */
-    public void removeRedundantGroups(
+    private long[] removeRedundantGroups(
             Identification identification,
             IdentificationParameters identificationParameters,
             SequenceProvider sequenceProvider,
             ProteinDetailsProvider proteinDetailsProvider,
-            ProteinMatch proteinSharedGroup,
-            HashMap<Long, long[]> processedKeys,
-            HashSet<Long> toDelete,
-            SimpleSemaphore mutex,
+            long[] component,
             WaitingHandler waitingHandler
     ) {
 
-        if (waitingHandler.isRunCanceled()) {
+        HashSet<Long> toDelete = new HashSet<>(0);
 
-            return;
+        if (component.length > 1) {
 
-        }
+            HashMap<Long, long[]> processedKeys = new HashMap<>(component.length);
 
-        long sharedKey = proteinSharedGroup.getKey();
+            for (long sharedKey : component) {
 
-        mutex.acquire();
+                if (waitingHandler != null && waitingHandler.isRunCanceled()) {
 
-        if (!processedKeys.containsKey(sharedKey)) {
+                    break;
 
-            ProteinMatch[] reducedGroups = getSubgroup(
-                    identification,
-                    proteinSharedGroup,
-                    processedKeys,
-                    toDelete,
-                    sequenceProvider,
-                    proteinDetailsProvider,
-                    identificationParameters
-            );
+                }
 
-            if (reducedGroups != null) {
+                if (!processedKeys.containsKey(sharedKey)) {
 
-                long[] reducedGroupKeys = new long[reducedGroups.length];
-                processedKeys.put(sharedKey, reducedGroupKeys);
+                    ProteinMatch proteinSharedGroup = identification.getProteinMatch(sharedKey);
 
-                for (int i = 0; i < reducedGroups.length; i++) {
+                    if (proteinSharedGroup.getNProteins() > 1) {
+
+                        ProteinMatch[] reducedGroups = getSubgroup(
+                                identification,
+                                proteinSharedGroup,
+                                processedKeys,
+                                toDelete,
+                                sequenceProvider,
+                                proteinDetailsProvider,
+                                identificationParameters
+                        );
 
-                    ProteinMatch reducedGroup = reducedGroups[i];
-                    long reducedGroupKey = reducedGroup.getKey();
-                    reducedGroupKeys[i] = reducedGroupKey;
+                        if (reducedGroups != null) {
 
+                            long[] reducedGroupKeys = new long[reducedGroups.length];
+                            processedKeys.put(sharedKey, reducedGroupKeys);
+
+                            for (int i = 0; i < reducedGroups.length; i++) {
+
+                                reducedGroupKeys[i] = reducedGroups[i].getKey();
+
+                            }
+
+                            toDelete.add(sharedKey);
+
+                        } else {
+
+                            long[] reducedGroupKeys = new long[1];
+                            reducedGroupKeys[0] = sharedKey;
+                            processedKeys.put(sharedKey, reducedGroupKeys);
+
+                        }
+                    }
                 }
+            }
+        }
 
-                toDelete.add(sharedKey);
+        if (waitingHandler != null) {
 
-            } else {
+            for (int i = 0; i < component.length; i++) {
 
-                long[] reducedGroupKeys = new long[1];
-                reducedGroupKeys[0] = sharedKey;
-                processedKeys.put(sharedKey, reducedGroupKeys);
+                waitingHandler.increaseSecondaryProgressCounter();
 
             }
         }
 
-        mutex.release();
+        return toDelete.stream()
+                .mapToLong(a -> a)
+                .toArray();
 
-        waitingHandler.increaseSecondaryProgressCounter();
     }
 
     /**
@@ -368,7 +387,7 @@ public class GroupSimplification {
             }
         }
 
-        nDeleted[bestSimplification]++;
+        nDeleted.incrementAndGet(bestSimplification);
         toDelete.add(sharedKey);
 
         return subgroups.values().toArray(
@@ -0,0 +1,258 @@
+package eu.isas.peptideshaker.protein_inference;
+
+import com.compomics.util.experiment.identification.Identification;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Partition of the protein groups into the connected components of the
+ * protein-peptide graph. Two groups are in the same component if they share a
+ * protein accession, directly or through other groups, or if they were joined
+ * explicitly, for instance because they are mapped by the same peptide. Groups
+ * of different components never interact during protein inference and can be
+ * processed concurrently. The partition itself is not thread safe and should
+ * be completed before the components are processed.
+ *
+ * @author Marc Vaudel
+ */
+public class ProteinGroupComponents {
+
+    /**
+     * The keys of the protein groups in the order of the identification.
+     */
+    private final long[] groupKeys;
+    /**
+     * The index of the protein groups in the arrays indexed by key.
+     */
+    private final HashMap<Long, Integer> groupIndexes;
+    /**
+     * The parent of every group in the union-find forest.
+     */
+    private final int[] parent;
+    /**
+     * The protein map of the identification.
+     */
+    private final HashMap<String, HashSet<Long>> proteinMap;
+
+    /**
+     * Constructor. Joins the protein groups sharing an accession.
+     *
+     * @param identification the identification containing the protein groups
+     */
+    public ProteinGroupComponents(
+            Identification identification
+    ) {
+
+        HashSet<Long> proteinGroupKeys = identification.getProteinIdentification();
+
+        groupKeys = new long[proteinGroupKeys.size()];
+        groupIndexes = new HashMap<>(proteinGroupKeys.size());
+        parent = new int[proteinGroupKeys.size()];
+
+        int i = 0;
+
+        for (long groupKey : proteinGroupKeys) {
+
+            groupKeys[i] = groupKey;
+            groupIndexes.put(groupKey, i);
+            parent[i] = i;
+            i++;
+
+        }
+
+        proteinMap = identification.getProteinMap();
+
+        for (HashSet<Long> accessionGroups : proteinMap.values()) {
+
+            join(accessionGroups);
+
+        }
+    }
+
+    /**
+     * Joins the components of the given protein groups. Groups unknown to the
+     * partition are ignored.
+     *
+     * @param proteinGroupKeys the keys of the protein groups to join
+     */
+    public void join(
+            Collection<Long> proteinGroupKeys
+    ) {
+
+        int root = -1;
+
+        for (long groupKey : proteinGroupKeys) {
+
+            Integer index = groupIndexes.get(groupKey);
+
+            if (index != null) {
+
+                int groupRoot = find(index);
+
+                if (root == -1) {
+
+                    root = groupRoot;
+
+                } else if (groupRoot != root) {
+
+                    parent[groupRoot] = root;
+
+                }
+            }
+        }
+    }
+
+    /**
+     * Joins the components of the protein groups containing the given
+     * accessions.
+     *
+     * @param accessions the protein accessions
+     */
+    public void joinAccessions(
+            Collection<String> accessions
+    ) {
+
+        ArrayList<Long> proteinGroupKeys = new ArrayList<>();
+
+        for (String accession : accessions) {
+
+            HashSet<Long> accessionGroups = proteinMap.get(accession);
+
+            if (accessionGroups != null) {
+
+                proteinGroupKeys.addAll(accessionGroups);
+
+            }
+        }
+
+        join(proteinGroupKeys);
+
+    }
+
+    /**
+     * Returns the index of the component of the given protein group, -1 if the
+     * group is unknown.
+     *
+     * @param proteinGroupKey the key of the protein group
+     *
+     * @return the index of the component of the protein group
+     */
+    public int getComponent(
+            long proteinGroupKey
+    ) {
+
+        Integer index = groupIndexes.get(proteinGroupKey);
+
+        return index == null ? -1 : find(index);
+
+    }
+
+    /**
+     * Returns the index of the component of the protein groups containing the
+     * given accession, -1 if no group contains the accession.
+     *
+     * @param accession the protein accession
+     *
+     * @return the index of the component of the protein groups containing the
+     * accession
+     */
+    public int getAccessionComponent(
+            String accession
+    ) {
+
+        HashSet<Long> accessionGroups = proteinMap.get(accession);
+
+        if (accessionGroups != null) {
+
+            for (long groupKey : accessionGroups) {
+
+                int component = getComponent(groupKey);
+
+                if (component != -1) {
+
+                    return component;
+
+                }
+            }
+        }
+
+        return -1;
+
+    }
+
+    /**
+     * Returns the keys of the protein groups of every component. Components
+     * are sorted by their first group, and groups keep the order of the
+     * identification within a component.
+     *
+     * @return the keys of the protein groups of every component
+     */
+    public ArrayList<long[]> getComponents() {
+
+        int[] componentIndexes = new int[groupKeys.length];
+        ArrayList<Integer> componentSizes = new ArrayList<>();
+        HashMap<Integer, Integer> rootToComponent = new HashMap<>();
+
+        for (int i = 0; i < groupKeys.length; i++) {
+
+            int root = find(i);
+            Integer componentIndex = rootToComponent.get(root);
+
+            if (componentIndex == null) {
+
+                componentIndex = componentSizes.size();
+                rootToComponent.put(root, componentIndex);
+                componentSizes.add(0);
+
+            }
+
+            componentIndexes[i] = componentIndex;
+            componentSizes.set(componentIndex, componentSizes.get(componentIndex) + 1);
+
+        }
+
+        ArrayList<long[]> components = new ArrayList<>(componentSizes.size());
+
+        for (int size : componentSizes) {
+
+            components.add(new long[size]);
+
+        }
+
+        int[] filling = new int[componentSizes.size()];
+
+        for (int i = 0; i < groupKeys.length; i++) {
+
+            int componentIndex = componentIndexes[i];
+            components.get(componentIndex)[filling[componentIndex]++] = groupKeys[i];
+
+        }
+
+        return components;
+
+    }
+
+    /**
+     * Returns the root of the given group and compresses the path on the way.
+     *
+     * @param index the index of the group
+     *
+     * @return the index of the root
+     */
+    private int find(
+            int index
+    ) {
+
+        while (parent[index] != index) {
+
+            parent[index] = parent[parent[index]];
+            index = parent[index];
+
+        }
+
+        return index;
+
+    }
+}
@@ -1,10 +1,8 @@
 package eu.isas.peptideshaker.protein_inference;
 
-import com.compomics.util.experiment.biology.proteins.Peptide;
 import com.compomics.util.experiment.identification.Identification;
 import com.compomics.util.experiment.identification.matches.PeptideMatch;
 import com.compomics.util.experiment.identification.matches.ProteinMatch;
-import com.compomics.util.experiment.identification.matches_iterators.PeptideMatchesIterator;
 import com.compomics.util.experiment.identification.utils.PeptideUtils;
 import com.compomics.util.experiment.io.biology.protein.ProteinDetailsProvider;
 import com.compomics.util.experiment.io.biology.protein.SequenceProvider;
@@ -15,8 +13,11 @@ import com.google.common.collect.Sets;
 import com.compomics.util.experiment.identification.peptide_shaker.PSParameter;
 import eu.isas.peptideshaker.scoring.targetdecoy.TargetDecoyMap;
 import com.compomics.util.experiment.identification.peptide_shaker.Metrics;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -596,7 +597,11 @@ public class ProteinInference {
     }
 
     /**
-     * Distribute the shared peptides among the protein groups.
+     * Maps the peptides shared between protein groups to the groups containing
+     * all the proteins they map to. The shared peptides are gathered
+     * concurrently, and then distributed concurrently per connected component
+     * of the protein groups so that no protein group is modified by two
+     * threads.
      *
      * @param identification the identification class containing all
      * identification matches
@@ -607,60 +612,176 @@ public class ProteinInference {
             WaitingHandler waitingHandler
     ) {
 
-        waitingHandler.setWaitingText("Inferring PI Status and Sorting Proteins. Please Wait...");
+        waitingHandler.setWaitingText("Mapping Shared Peptides. Please Wait...");
 
+        waitingHandler.setSecondaryProgressCounterIndeterminate(false);
         waitingHandler.setMaxSecondaryProgressCounter(
-                identification.getProteinIdentification().size()
+                identification.getPeptideIdentification().size()
         );
 
-        PeptideMatchesIterator peptideMatchesIterator = identification.getPeptideMatchesIterator(waitingHandler);
-        PeptideMatch peptideMatch;
+        ArrayList<SharedPeptide> sharedPeptides = identification.getPeptideIdentification()
+                .parallelStream()
+                .map(
+                        key -> identification.getPeptideMatch(key)
+                )
+                .peek(
+                        peptideMatch -> waitingHandler.increaseSecondaryProgressCounter()
+                )
+                .filter(
+                        peptideMatch -> peptideMatch.getPeptide().getProteinMapping().size() > 1
+                )
+                .map(
+                        peptideMatch -> new SharedPeptide(
+                                peptideMatch.getKey(),
+                                peptideMatch.getPeptide().getProteinMapping().keySet()
+                        )
+                )
+                .collect(
+                        Collectors.toCollection(ArrayList::new)
+                );
 
-        while ((peptideMatch = peptideMatchesIterator.next()) != null) {
+        if (waitingHandler.isRunCanceled()) {
 
-            Peptide peptide = peptideMatch.getPeptide();
+            return;
 
-            if (peptide.getProteinMapping().size() > 1) {
+        }
 
-                long peptideMatchKey = peptideMatch.getKey();
+        waitingHandler.setSecondaryProgressCounterIndeterminate(true);
 
-                for (String protein : peptide.getProteinMapping().keySet()) {
+        // partition the shared peptides so that every protein group is modified by one thread only
+        ProteinGroupComponents proteinGroupComponents = new ProteinGroupComponents(identification);
 
-                    HashSet<Long> proteinKeys = identification.getProteinMap().get(protein);
+        for (SharedPeptide sharedPeptide : sharedPeptides) {
 
-                    if (proteinKeys != null) {
+            proteinGroupComponents.joinAccessions(sharedPeptide.accessions);
 
-                        for (long proteinKey : proteinKeys) {
+        }
 
-                            ProteinMatch proteinMatch = identification.getProteinMatch(proteinKey);
+        HashMap<Integer, ArrayList<SharedPeptide>> sharedPeptidesPerComponent = new HashMap<>();
+
+        for (SharedPeptide sharedPeptide : sharedPeptides) {
+
+            int component = -1;
+
+            for (String accession : sharedPeptide.accessions) {
+
+                component = proteinGroupComponents.getAccessionComponent(accession);
+
+                if (component != -1) {
+
+                    break;
 
-                            if (Arrays.stream(proteinMatch.getAccessions())
-                                    .allMatch(
-                                            accession -> peptide.getProteinMapping().containsKey(accession)
-                                    )
-                                    && Arrays.stream(proteinMatch.getPeptideMatchesKeys())
-                                            .allMatch(
-                                                    key -> key != peptideMatchKey
-                                            )) {
-
-                                proteinMatch.addPeptideMatchKey(peptideMatchKey);
-                                identification.updateObject(proteinMatch.getKey(), proteinMatch);
-                            }
-                        }
-                    }
                 }
             }
 
-            waitingHandler.increaseSecondaryProgressCounter();
+            if (component != -1) {
+
+                ArrayList<SharedPeptide> componentPeptides = sharedPeptidesPerComponent.get(component);
+
+                if (componentPeptides == null) {
+
+                    componentPeptides = new ArrayList<>(1);
+                    sharedPeptidesPerComponent.put(component, componentPeptides);
 
-            if (waitingHandler.isRunCanceled()) {
+                }
 
-                return;
+                componentPeptides.add(sharedPeptide);
 
             }
         }
 
-        waitingHandler.setSecondaryProgressCounterIndeterminate(true);
+        sharedPeptidesPerComponent.values()
+                .parallelStream()
+                .forEach(
+                        componentPeptides -> {
+
+                            for (SharedPeptide sharedPeptide : componentPeptides) {
+
+                                if (waitingHandler.isRunCanceled()) {
+
+                                    return;
+
+                                }
+
+                                distributeSharedPeptide(
+                                        identification,
+                                        sharedPeptide
+                                );
+                            }
+                        }
+                );
+    }
+
+    /**
+     * Adds a shared peptide to the protein groups made only of proteins it maps
+     * to.
+     *
+     * @param identification the identification class containing all
+     * identification matches
+     * @param sharedPeptide the shared peptide
+     */
+    private void distributeSharedPeptide(
+            Identification identification,
+            SharedPeptide sharedPeptide
+    ) {
 
+        long peptideMatchKey = sharedPeptide.key;
+
+        for (String protein : sharedPeptide.accessions) {
+
+            HashSet<Long> proteinKeys = identification.getProteinMap().get(protein);
+
+            if (proteinKeys != null) {
+
+                for (long proteinKey : proteinKeys) {
+
+                    ProteinMatch proteinMatch = identification.getProteinMatch(proteinKey);
+
+                    if (Arrays.stream(proteinMatch.getAccessions())
+                            .allMatch(
+                                    accession -> sharedPeptide.accessions.contains(accession)
+                            )
+                            && Arrays.stream(proteinMatch.getPeptideMatchesKeys())
+                                    .allMatch(
+                                            key -> key != peptideMatchKey
+                                    )) {
+
+                        proteinMatch.addPeptideMatchKey(peptideMatchKey);
+                        identification.updateObject(proteinMatch.getKey(), proteinMatch);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A peptide shared between proteins.
+     */
+    private static class SharedPeptide {
+
+        /**
+         * The key of the peptide match.
+         */
+        private final long key;
+        /**
+         * The accessions of the proteins the peptide maps to.
+         */
+        private final Set<String> accessions;
+
+        /**
+         * Constructor.
+         *
+         * @param key the key of the peptide match
+         * @param accessions the accessions of the proteins the peptide maps to
+         */
+        private SharedPeptide(
+                long key,
+                Set<String> accessions
+        ) {
+
+            this.key = key;
+            this.accessions = accessions;
+
+        }
     }
 }
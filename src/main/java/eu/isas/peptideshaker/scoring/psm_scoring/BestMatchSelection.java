@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -85,7 +86,7 @@ public class BestMatchSelection {
      * @param peptideSpectrumAnnotator The peptide spectrum annotator.
      */
     public BestMatchSelection(
-            HashMap<String, Integer> proteinCount,
+            Map<String, Integer> proteinCount,
             SequenceProvider sequenceProvider,
             SpectrumProvider spectrumProvider,
             IdentificationParameters identificationParameters,
@@ -487,33 +488,20 @@ public class BestMatchSelection {
             boolean silentFail
     ) {
 
-        PeptideAssumption bestPeptideAssumption = assumptions.get(0);
-
-        for (int i = 1; i < assumptions.size(); i++) {
-
-            PeptideAssumption peptideAssumption = assumptions.get(i);
-
-            try {
-                bestPeptideAssumption = tieBreaker.getBestPeptideAssumption(
-                        spectrumFile,
-                        spectrumTitle,
-                        bestPeptideAssumption,
-                        peptideAssumption,
-                        silentFail
-                );
-            } catch (Exception e) {
-                bestPeptideAssumption = tieBreaker.getBestPeptideAssumption(
-                        spectrumFile,
-                        spectrumTitle,
-                        bestPeptideAssumption,
-                        peptideAssumption,
-                        silentFail
-                );
-            }
-
+        try {
+            return tieBreaker.getBestPeptideAssumption(
+                    spectrumFile,
+                    spectrumTitle,
+                    assumptions,
+                    silentFail
+            );
+        } catch (Exception e) {
+            return tieBreaker.getBestPeptideAssumption(
+                    spectrumFile,
+                    spectrumTitle,
+                    assumptions,
+                    silentFail
+            );
         }
-
-        return bestPeptideAssumption;
-
     }
 }
@@ -4,7 +4,6 @@ import com.compomics.util.exceptions.ExceptionHandler;
 import com.compomics.util.experiment.biology.proteins.Peptide;
 import com.compomics.util.experiment.identification.Identification;
 import com.compomics.util.experiment.identification.spectrum_assumptions.PeptideAssumption;
-import com.compomics.util.experiment.identification.SpectrumIdentificationAssumption;
 import com.compomics.util.experiment.identification.matches.SpectrumMatch;
 import com.compomics.util.experiment.identification.matches_iterators.SpectrumMatchesIterator;
 import com.compomics.util.experiment.identification.psm_scoring.PsmScore;
@@ -244,10 +243,15 @@ public class PsmScorer {
         AnnotationParameters annotationPreferences = identificationParameters.getAnnotationParameters();
 
         PsmScoringParameters psmScoringPreferences = identificationParameters.getPsmScoringParameters();
+        ModificationParameters modificationParameters = identificationParameters.getSearchParameters().getModificationParameters();
+        SequenceMatchingParameters modificationSequenceMatchingParameters = identificationParameters.getModificationLocalizationParameters().getSequenceMatchingParameters();
 
         String spectrumFile = spectrumMatch.getSpectrumFile();
         String spectrumTitle = spectrumMatch.getSpectrumTitle();
 
+        // the spectrum is loaded once per PSM and only if a score needs it
+        Spectrum spectrum = null;
+
         HashMap<Integer, TreeMap<Double, ArrayList<PeptideAssumption>>> assumptions = spectrumMatch.getPeptideAssumptionsMap();
 
         ArrayList<Integer> missingEvalue = new ArrayList<>(0);
@@ -287,32 +291,42 @@ public class PsmScorer {
                                 sequenceProvider
                         );
 
-                        Spectrum spectrum = spectrumProvider.getSpectrum(
-                                spectrumFile,
-                                spectrumTitle
-                        );
+                        // the annotation parameters are set once per assumption and reused for every score
+                        SpecificAnnotationParameters specificAnnotationPreferences = null;
 
-                        for (Integer scoreIndex : scoresForAdvocate) {
+                        for (int scoreIndex : scoresForAdvocate) {
 
                             double score;
 
-                            if (scoreIndex.equals(PsmScore.native_score.index)) {
+                            if (scoreIndex == PsmScore.native_score.index) {
 
                                 score = peptideAssumption.getScore();
 
                             } else {
 
-                                ModificationParameters modificationParameters = identificationParameters.getSearchParameters().getModificationParameters();
-                                SequenceMatchingParameters modificationSequenceMatchingParameters = identificationParameters.getModificationLocalizationParameters().getSequenceMatchingParameters();
-                                SpecificAnnotationParameters specificAnnotationPreferences = annotationPreferences.getSpecificAnnotationParameters(
-                                        spectrumFile,
-                                        spectrumTitle,
-                                        peptideAssumption,
-                                        modificationParameters,
-                                        sequenceProvider,
-                                        modificationSequenceMatchingParameters,
-                                        peptideSpectrumAnnotator
-                                );
+                                if (spectrum == null) {
+
+                                    spectrum = spectrumProvider.getSpectrum(
+                                            spectrumFile,
+                                            spectrumTitle
+                                    );
+
+                                }
+
+                                if (specificAnnotationPreferences == null) {
+
+                                    specificAnnotationPreferences = annotationPreferences.getSpecificAnnotationParameters(
+                                            spectrumFile,
+                                            spectrumTitle,
+                                            peptideAssumption,
+                                            modificationParameters,
+                                            sequenceProvider,
+                                            modificationSequenceMatchingParameters,
+                                            peptideSpectrumAnnotator
+                                    );
+
+                                }
+
                                 score = psmScoresEstimator.getDecreasingScore(
                                         peptide,
                                         peptideAssumption.getIdentificationCharge(),
@@ -334,7 +348,7 @@ public class PsmScorer {
                                     score
                             );
 
-                            if (scoreIndex.equals(PsmScore.hyperScore.index)) {
+                            if (scoreIndex == PsmScore.hyperScore.index) {
 
                                 hyperScores.add(-score);
                                 hyperScoreParameters.add(assumptionParameter);
@@ -476,110 +490,141 @@ public class PsmScorer {
      * @param processingPreferences the processing preferences
      * @param identificationParameters the identification parameters
      * @param waitingHandler the handler displaying feedback to the user
+     * @param exceptionHandler a handler for exceptions
+     *
+     * @throws java.lang.InterruptedException exception thrown if a thread is
+     * interrupted
+     * @throws java.util.concurrent.TimeoutException exception thrown if the
+     * process times out
      */
     public void scorePsms(
             Identification identification,
             InputMap inputMap,
             ProcessingParameters processingPreferences,
             IdentificationParameters identificationParameters,
-            WaitingHandler waitingHandler
-    ) {
+            WaitingHandler waitingHandler,
+            ExceptionHandler exceptionHandler
+    ) throws InterruptedException, TimeoutException {
 
         waitingHandler.setSecondaryProgressCounterIndeterminate(false);
         waitingHandler.setMaxSecondaryProgressCounter(identification.getSpectrumIdentificationSize());
-        PsmScoringParameters psmScoringPreferences = identificationParameters.getPsmScoringParameters();
-
-        PSParameter psParameter = new PSParameter();
 
+        ExecutorService pool = Executors.newFixedThreadPool(processingPreferences.getnThreads());
         SpectrumMatchesIterator psmIterator = identification.getSpectrumMatchesIterator(waitingHandler);
-        SpectrumMatch spectrumMatch;
 
-        while ((spectrumMatch = psmIterator.next()) != null) {
+        for (int i = 1; i <= processingPreferences.getnThreads() && !waitingHandler.isRunCanceled(); i++) {
 
-            String spectrumFile = spectrumMatch.getSpectrumFile();
+            PsmFinalScoreRunnable runnable = new PsmFinalScoreRunnable(
+                    psmIterator,
+                    identification,
+                    inputMap,
+                    identificationParameters,
+                    waitingHandler,
+                    exceptionHandler
+            );
+            pool.submit(runnable);
 
-            HashMap<Integer, TreeMap<Double, ArrayList<PeptideAssumption>>> assumptions = spectrumMatch.getPeptideAssumptionsMap();
+        }
 
-            for (Entry<Integer, TreeMap<Double, ArrayList<PeptideAssumption>>> entry1 : assumptions.entrySet()) {
+        if (waitingHandler.isRunCanceled()) {
 
-                int advocateIndex = entry1.getKey();
+            pool.shutdownNow();
+            return;
 
-                if (psmScoringPreferences.isScoringNeeded(advocateIndex)) {
+        }
 
-                    HashSet<Integer> scoresForAdvocate = psmScoringPreferences.getScoreForAlgorithm(advocateIndex);
+        pool.shutdown();
 
-                    if (!scoresForAdvocate.isEmpty()) {
+        if (!pool.awaitTermination(identification.getSpectrumIdentificationSize(), TimeUnit.MINUTES)) {
 
-                        TreeMap<Double, ArrayList<PeptideAssumption>> advocateAssumptions = entry1.getValue();
+            throw new TimeoutException("PSM scoring timed out. Please contact the developers.");
 
-                        for (double eValue : advocateAssumptions.keySet()) {
+        }
 
-                            for (SpectrumIdentificationAssumption assumption : advocateAssumptions.get(eValue)) {
+        waitingHandler.setSecondaryProgressCounterIndeterminate(true);
 
-                                if (assumption instanceof PeptideAssumption) {
+    }
 
-                                    psParameter = (PSParameter) assumption.getUrParam(psParameter);
+    /**
+     * Attaches a score to the peptide assumptions of a spectrum match and adds
+     * the scores to the input map.
+     *
+     * @param spectrumMatch the spectrum match
+     * @param inputMap the input map scores
+     * @param psmScoringPreferences the PSM scoring parameters
+     */
+    private void scorePsm(
+            SpectrumMatch spectrumMatch,
+            InputMap inputMap,
+            PsmScoringParameters psmScoringPreferences
+    ) {
 
-                                    double score = 1.0;
+        String spectrumFile = spectrumMatch.getSpectrumFile();
 
-                                    if (scoresForAdvocate.size() == 1 || !fastaParameters.isTargetDecoy()) {
+        HashMap<Integer, TreeMap<Double, ArrayList<PeptideAssumption>>> assumptions = spectrumMatch.getPeptideAssumptionsMap();
 
-                                        score = psParameter.getIntermediateScore(scoresForAdvocate.iterator().next());
+        for (Entry<Integer, TreeMap<Double, ArrayList<PeptideAssumption>>> entry1 : assumptions.entrySet()) {
 
-                                    } else {
+            int advocateIndex = entry1.getKey();
 
-                                        for (int scoreIndex : scoresForAdvocate) {
+            if (psmScoringPreferences.isScoringNeeded(advocateIndex)) {
 
-                                            TargetDecoyMap targetDecoyMap = inputMap.getIntermediateScoreMap(
-                                                    spectrumFile,
-                                                    advocateIndex,
-                                                    scoreIndex
-                                            );
-                                            Double intermediateScore = psParameter.getIntermediateScore(scoreIndex);
+                HashSet<Integer> scoresForAdvocate = psmScoringPreferences.getScoreForAlgorithm(advocateIndex);
 
-                                            if (intermediateScore != null) {
+                if (!scoresForAdvocate.isEmpty()) {
 
-                                                double p = targetDecoyMap.getProbability(intermediateScore);
-                                                score *= (1.0 - p);
+                    TreeMap<Double, ArrayList<PeptideAssumption>> advocateAssumptions = entry1.getValue();
 
-                                            }
-                                        }
+                    for (ArrayList<PeptideAssumption> eValueAssumptions : advocateAssumptions.values()) {
 
-                                        score = 1 - score;
+                        for (PeptideAssumption peptideAssumption : eValueAssumptions) {
 
-                                    }
+                            PSParameter psParameter = (PSParameter) peptideAssumption.getUrParam(PSParameter.dummy);
 
-                                    assumption.setScore(score);
+                            double score = 1.0;
 
-                                    PeptideAssumption peptideAssumption = (PeptideAssumption) assumption;
-                                    Peptide peptide = peptideAssumption.getPeptide();
-                                    boolean decoy = PeptideUtils.isDecoy(peptide, sequenceProvider);
-                                    inputMap.addEntry(
-                                            advocateIndex,
+                            if (scoresForAdvocate.size() == 1 || !fastaParameters.isTargetDecoy()) {
+
+                                score = psParameter.getIntermediateScore(scoresForAdvocate.iterator().next());
+
+                            } else {
+
+                                for (int scoreIndex : scoresForAdvocate) {
+
+                                    TargetDecoyMap targetDecoyMap = inputMap.getIntermediateScoreMap(
                                             spectrumFile,
-                                            assumption.getScore(),
-                                            decoy
+                                            advocateIndex,
+                                            scoreIndex
                                     );
+                                    Double intermediateScore = psParameter.getIntermediateScore(scoreIndex);
+
+                                    if (intermediateScore != null) {
+
+                                        double p = targetDecoyMap.getProbability(intermediateScore);
+                                        score *= (1.0 - p);
+
+                                    }
                                 }
+
+                                score = 1 - score;
+
                             }
+
+                            peptideAssumption.setScore(score);
+
+                            Peptide peptide = peptideAssumption.getPeptide();
+                            boolean decoy = PeptideUtils.isDecoy(peptide, sequenceProvider);
+                            inputMap.addEntry(
+                                    advocateIndex,
+                                    spectrumFile,
+                                    peptideAssumption.getScore(),
+                                    decoy
+                            );
                         }
                     }
                 }
             }
-
-            if (waitingHandler.isRunCanceled()) {
-
-                return;
-
-            }
-
-            waitingHandler.increaseSecondaryProgressCounter();
-
-            identification.updateObject(spectrumMatch.getKey(), spectrumMatch);
         }
-        
-        waitingHandler.setSecondaryProgressCounterIndeterminate(true);
-
     }
 
     /**
@@ -723,6 +768,97 @@ public class PsmScorer {
 
     }
 
+    /**
+     * Runnable attaching the final score to PSMs.
+     *
+     * @author Marc Vaudel
+     */
+    private class PsmFinalScoreRunnable implements Runnable {
+
+        /**
+         * An iterator for the PSMs.
+         */
+        private final SpectrumMatchesIterator psmIterator;
+        /**
+         * The identification.
+         */
+        private final Identification identification;
+        /**
+         * The input map.
+         */
+        private final InputMap inputMap;
+        /**
+         * The identification parameters.
+         */
+        private final IdentificationParameters identificationParameters;
+        /**
+         * The waiting handler.
+         */
+        private final WaitingHandler waitingHandler;
+        /**
+         * Handler for the exceptions.
+         */
+        private final ExceptionHandler exceptionHandler;
+
+        /**
+         * Constructor.
+         *
+         * @param psmIterator an iterator of the PSMs to iterate
+         * @param identification the identification containing all matches
+         * @param inputMap the input map used to store the scores
+         * @param identificationParameters the identification parameters
+         * @param waitingHandler a waiting handler to display progress and allow
+         * canceling the process
+         * @param exceptionHandler handler for exceptions
+         */
+        public PsmFinalScoreRunnable(
+                SpectrumMatchesIterator psmIterator,
+                Identification identification,
+                InputMap inputMap,
+                IdentificationParameters identificationParameters,
+                WaitingHandler waitingHandler,
+                ExceptionHandler exceptionHandler
+        ) {
+
+            this.psmIterator = psmIterator;
+            this.identification = identification;
+            this.inputMap = inputMap;
+            this.identificationParameters = identificationParameters;
+            this.waitingHandler = waitingHandler;
+            this.exceptionHandler = exceptionHandler;
+
+        }
+
+        @Override
+        public void run() {
+
+            try {
+
+                PsmScoringParameters psmScoringPreferences = identificationParameters.getPsmScoringParameters();
+                SpectrumMatch spectrumMatch;
+
+                while ((spectrumMatch = psmIterator.next()) != null && !waitingHandler.isRunCanceled()) {
+
+                    scorePsm(
+                            spectrumMatch,
+                            inputMap,
+                            psmScoringPreferences
+                    );
+
+                    identification.updateObject(spectrumMatch.getKey(), spectrumMatch);
+                    waitingHandler.increaseSecondaryProgressCounter();
+
+                }
+
+            } catch (Exception e) {
+
+                exceptionHandler.catchException(e);
+                waitingHandler.setRunCanceled();
+
+            }
+        }
+    }
+
     /**
      * Runnable estimating the missing e-values.
      *
@@ -17,7 +17,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * This class breaks ties between equally scoring peptides.
@@ -29,7 +28,7 @@ public class TieBreaker {
     /**
      * Map of the occurrence of the protein accessions.
      */
-    private final HashMap<String, Integer> proteinCount;
+    private final Map<String, Integer> proteinCount;
     /**
      * The search parameters.
      */
@@ -73,7 +72,7 @@ public class TieBreaker {
      * @param spectrumProvider The spectrum provider.
      */
     public TieBreaker(
-            HashMap<String, Integer> proteinCount,
+            Map<String, Integer> proteinCount,
             IdentificationParameters identificationParameters,
             PeptideSpectrumAnnotator peptideSpectrumAnnotator,
             SequenceProvider sequenceProvider,
@@ -112,177 +111,193 @@ public class TieBreaker {
             boolean silentFail
     ) {
 
-        long matchingKey1 = peptideAssumption1.getPeptide().getMatchingKey(sequenceMatchingParameters);
-        long matchingKey2 = peptideAssumption2.getPeptide().getMatchingKey(sequenceMatchingParameters);
+        TieBreakContext context = new TieBreakContext(spectrumFile, spectrumTitle);
+
+        return getBestCandidate(
+                context,
+                new Candidate(peptideAssumption1),
+                new Candidate(peptideAssumption2),
+                silentFail
+        ).peptideAssumption;
+
+    }
+
+    /**
+     * Returns the best assumption among the given equally scoring
+     * possibilities for the given spectrum. The features of every candidate
+     * are computed at most once, and the candidates are ranked in a single
+     * pass, the best candidate being compared to the next one in the order
+     * of the list.
+     *
+     * @param spectrumFile The spectrum file name.
+     * @param spectrumTitle The spectrum title.
+     * @param peptideAssumptions The possible peptides.
+     * @param silentFail If false an exception will be thrown if tie could not
+     * be broken.
+     *
+     * @return The best assumption among the given possibilities for the given
+     * spectrum.
+     */
+    public PeptideAssumption getBestPeptideAssumption(
+            String spectrumFile,
+            String spectrumTitle,
+            ArrayList<PeptideAssumption> peptideAssumptions,
+            boolean silentFail
+    ) {
+
+        TieBreakContext context = new TieBreakContext(spectrumFile, spectrumTitle);
+
+        Candidate bestCandidate = new Candidate(peptideAssumptions.get(0));
+
+        for (int i = 1; i < peptideAssumptions.size(); i++) {
+
+            bestCandidate = getBestCandidate(
+                    context,
+                    bestCandidate,
+                    new Candidate(peptideAssumptions.get(i)),
+                    silentFail
+            );
+
+        }
+
+        return bestCandidate.peptideAssumption;
+
+    }
+
+    /**
+     * Returns the best candidate between the two given candidates.
+     *
+     * @param context The context of the spectrum.
+     * @param candidate1 The first candidate.
+     * @param candidate2 The second candidate.
+     * @param silentFail If false an exception will be thrown if tie could not
+     * be broken.
+     *
+     * @return The best candidate between the two given candidates.
+     */
+    private Candidate getBestCandidate(
+            TieBreakContext context,
+            Candidate candidate1,
+            Candidate candidate2,
+            boolean silentFail
+    ) {
+
+        long matchingKey1 = candidate1.getMatchingKey();
+        long matchingKey2 = candidate2.getMatchingKey();
 
         if (matchingKey1 == matchingKey2) {
 
             if (silentFail) {
 
-                return peptideAssumption1;
+                return candidate1;
 
             } else {
 
                 throw new IllegalArgumentException(
                         "Tie during best match selection in spectrum "
-                        + spectrumTitle
+                        + context.spectrumTitle
                         + " of file "
-                        + spectrumFile
+                        + context.spectrumFile
                         + "("
-                        + peptideAssumption1.getPeptide().getSequence()
+                        + candidate1.peptideAssumption.getPeptide().getSequence()
                         + ") provided twice."
                 );
 
             }
         }
 
-        int variantCount1 = variantsCount(peptideAssumption1);
-        int variantCount2 = variantsCount(peptideAssumption2);
+        int variantCount1 = candidate1.getVariantsCount();
+        int variantCount2 = candidate2.getVariantsCount();
 
         if (variantCount1 < variantCount2) {
 
-            return peptideAssumption1;
+            return candidate1;
 
         } else if (variantCount1 > variantCount2) {
 
-            return peptideAssumption2;
+            return candidate2;
 
         }
 
-        int modCount1 = peptideAssumption1.getPeptide().getNVariableModifications();
-        int modCount2 = peptideAssumption2.getPeptide().getNVariableModifications();
+        int modCount1 = candidate1.peptideAssumption.getPeptide().getNVariableModifications();
+        int modCount2 = candidate2.peptideAssumption.getPeptide().getNVariableModifications();
 
         if (modCount1 < modCount2) {
 
-            return peptideAssumption1;
+            return candidate1;
 
         } else if (modCount1 > modCount2) {
 
-            return peptideAssumption2;
+            return candidate2;
 
         }
 
-        int proteinMaxOccurrence1 = proteinCount(peptideAssumption1);
-        int proteinMaxOccurrence2 = proteinCount(peptideAssumption2);
+        int proteinMaxOccurrence1 = candidate1.getProteinCount();
+        int proteinMaxOccurrence2 = candidate2.getProteinCount();
 
         if (proteinMaxOccurrence1 > proteinMaxOccurrence2) {
 
-            return peptideAssumption1;
+            return candidate1;
 
         } else if (proteinMaxOccurrence1 < proteinMaxOccurrence2) {
 
-            return peptideAssumption2;
+            return candidate2;
 
         }
 
-        Spectrum spectrum = spectrumProvider.getSpectrum(
-                spectrumFile,
-                spectrumTitle
-        );
-
-        int nCoveredAminoAcids1 = nCoveredAminoAcids(
-                spectrumFile,
-                spectrumTitle,
-                peptideAssumption1,
-                spectrum,
-                true
-        );
-        
-        int nCoveredAminoAcids2 = nCoveredAminoAcids(
-                spectrumFile,
-                spectrumTitle,
-                peptideAssumption2,
-                spectrum,
-                true
-        );
+        int nCoveredAminoAcids1 = candidate1.getnCoveredAminoAcidsIntensityLimit(context);
+        int nCoveredAminoAcids2 = candidate2.getnCoveredAminoAcidsIntensityLimit(context);
 
         if (nCoveredAminoAcids1 > nCoveredAminoAcids2) {
 
-            return peptideAssumption1;
+            return candidate1;
 
         } else if (nCoveredAminoAcids1 < nCoveredAminoAcids2) {
 
-            return peptideAssumption2;
+            return candidate2;
 
         }
 
-        double massError1 = Math.abs(
-                peptideAssumption1.getDeltaMz(
-                        spectrum.getPrecursor().mz,
-                        searchParameters.isPrecursorAccuracyTypePpm(),
-                        searchParameters.getMinIsotopicCorrection(),
-                        searchParameters.getMaxIsotopicCorrection()
-                )
-        );
-
-        double massError2 = Math.abs(
-                peptideAssumption2.getDeltaMz(
-                        spectrum.getPrecursor().mz,
-                        searchParameters.isPrecursorAccuracyTypePpm(),
-                        searchParameters.getMinIsotopicCorrection(),
-                        searchParameters.getMaxIsotopicCorrection()
-                )
-        );
+        double massError1 = candidate1.getMassError(context);
+        double massError2 = candidate2.getMassError(context);
 
         if (massError1 < massError2) {
 
-            return peptideAssumption1;
+            return candidate1;
 
         } else if (massError1 > massError2) {
 
-            return peptideAssumption2;
+            return candidate2;
 
         }
 
-        nCoveredAminoAcids1 = nCoveredAminoAcids(
-                spectrumFile,
-                spectrumTitle,
-                peptideAssumption1,
-                spectrum,
-                false
-        );
-        nCoveredAminoAcids2 = nCoveredAminoAcids(
-                spectrumFile,
-                spectrumTitle,
-                peptideAssumption2,
-                spectrum,
-                false
-        );
+        nCoveredAminoAcids1 = candidate1.getnCoveredAminoAcids(context);
+        nCoveredAminoAcids2 = candidate2.getnCoveredAminoAcids(context);
 
         if (nCoveredAminoAcids1 > nCoveredAminoAcids2) {
 
-            return peptideAssumption1;
+            return candidate1;
 
         } else if (nCoveredAminoAcids1 < nCoveredAminoAcids2) {
 
-            return peptideAssumption2;
+            return candidate2;
 
         }
 
-        double annotatedIntensity1 = shareOfIntensityAnnotated(
-                spectrumFile,
-                spectrumTitle,
-                peptideAssumption1,
-                spectrum
-        );
-        double annotatedIntensity2 = shareOfIntensityAnnotated(
-                spectrumFile,
-                spectrumTitle,
-                peptideAssumption2,
-                spectrum
-        );
+        double annotatedIntensity1 = candidate1.getShareOfIntensityAnnotated(context);
+        double annotatedIntensity2 = candidate2.getShareOfIntensityAnnotated(context);
 
         if (annotatedIntensity1 > annotatedIntensity2) {
 
-            return peptideAssumption1;
+            return candidate1;
 
         } else if (annotatedIntensity1 < annotatedIntensity2) {
 
-            return peptideAssumption2;
+            return candidate2;
 
         }
 
-        return matchingKey1 < matchingKey2 ? peptideAssumption1 : peptideAssumption2;
+        return matchingKey1 < matchingKey2 ? candidate1 : candidate2;
 
     }
 
@@ -430,24 +445,337 @@ public class TieBreaker {
                 false
         );
 
-        double annotatedIntensity = Arrays.stream(ionMatches)
-                .collect(
-                        Collectors.toMap(
-                                ionMatch -> ionMatch.peakMz,
-                                ionMatch -> ionMatch.peakIntensity,
-                                (a, b) -> a,
-                                HashMap::new
-                        )
-                )
-                .values()
-                .stream()
-                .mapToDouble(
-                        a -> a
-                )
-                .sum();
+        double annotatedIntensity = getAnnotatedIntensity(ionMatches);
 
         return annotatedIntensity / spectrum.getTotalIntensity();
 
     }
 
+    /**
+     * Returns the intensity annotated by the given ion matches, the intensity
+     * of every annotated peak being counted once. The peaks are summed by
+     * increasing m/z. This order is deterministic, while the former sum over
+     * a HashMap followed the iteration order of the map. The two sums can
+     * therefore differ by rounding, in the order of the number of annotated
+     * peaks times the relative precision of a double. Candidates can only be
+     * ranked differently than before when their annotated intensities are
+     * within this rounding error of each other.
+     *
+     * @param ionMatches The ion matches.
+     *
+     * @return The intensity annotated by the given ion matches.
+     */
+    public static double getAnnotatedIntensity(
+            IonMatch[] ionMatches
+    ) {
+
+        IonMatch[] sortedIonMatches = Arrays.copyOf(ionMatches, ionMatches.length);
+        Arrays.sort(
+                sortedIonMatches,
+                (ionMatch1, ionMatch2) -> Double.compare(ionMatch1.peakMz, ionMatch2.peakMz)
+        );
+
+        double annotatedIntensity = 0.0;
+
+        for (int i = 0; i < sortedIonMatches.length; i++) {
+
+            if (i == 0 || sortedIonMatches[i].peakMz != sortedIonMatches[i - 1].peakMz) {
+
+                annotatedIntensity += sortedIonMatches[i].peakIntensity;
+
+            }
+        }
+
+        return annotatedIntensity;
+
+    }
+
+    /**
+     * The spectrum of the candidates being compared, loaded once for all
+     * comparisons.
+     */
+    private class TieBreakContext {
+
+        /**
+         * The spectrum file name.
+         */
+        private final String spectrumFile;
+        /**
+         * The spectrum title.
+         */
+        private final String spectrumTitle;
+        /**
+         * The spectrum, null until needed.
+         */
+        private Spectrum spectrum = null;
+
+        /**
+         * Constructor.
+         *
+         * @param spectrumFile The spectrum file name.
+         * @param spectrumTitle The spectrum title.
+         */
+        private TieBreakContext(
+                String spectrumFile,
+                String spectrumTitle
+        ) {
+
+            this.spectrumFile = spectrumFile;
+            this.spectrumTitle = spectrumTitle;
+
+        }
+
+        /**
+         * Returns the spectrum, loading it from the spectrum provider on first
+         * use.
+         *
+         * @return The spectrum.
+         */
+        private Spectrum getSpectrum() {
+
+            if (spectrum == null) {
+
+                spectrum = spectrumProvider.getSpectrum(
+                        spectrumFile,
+                        spectrumTitle
+                );
+
+            }
+
+            return spectrum;
+
+        }
+    }
+
+    /**
+     * A candidate peptide assumption and its tie-break features, computed
+     * when first needed.
+     */
+    private class Candidate {
+
+        /**
+         * The peptide assumption.
+         */
+        private final PeptideAssumption peptideAssumption;
+        /**
+         * Indicates whether the matching key was computed.
+         */
+        private boolean hasMatchingKey = false;
+        /**
+         * The matching key of the peptide.
+         */
+        private long matchingKey;
+        /**
+         * The minimal number of variants, -1 until computed.
+         */
+        private int variantsCount = -1;
+        /**
+         * The maximal number of peptides of a protein, -1 until computed.
+         */
+        private int proteinCount = -1;
+        /**
+         * The number of amino acids covered by intense fragment ions, -1
+         * until computed.
+         */
+        private int nCoveredAminoAcidsIntensityLimit = -1;
+        /**
+         * The number of amino acids covered by fragment ions, -1 until
+         * computed.
+         */
+        private int nCoveredAminoAcids = -1;
+        /**
+         * Indicates whether the mass error was computed.
+         */
+        private boolean hasMassError = false;
+        /**
+         * The absolute precursor m/z error.
+         */
+        private double massError;
+        /**
+         * Indicates whether the share of intensity annotated was computed.
+         */
+        private boolean hasShareOfIntensityAnnotated = false;
+        /**
+         * The share of spectrum intensity annotated.
+         */
+        private double shareOfIntensityAnnotated;
+
+        /**
+         * Constructor.
+         *
+         * @param peptideAssumption The peptide assumption.
+         */
+        private Candidate(
+                PeptideAssumption peptideAssumption
+        ) {
+
+            this.peptideAssumption = peptideAssumption;
+
+        }
+
+        /**
+         * Returns the matching key of the peptide.
+         *
+         * @return The matching key of the peptide.
+         */
+        private long getMatchingKey() {
+
+            if (!hasMatchingKey) {
+
+                matchingKey = peptideAssumption.getPeptide().getMatchingKey(sequenceMatchingParameters);
+                hasMatchingKey = true;
+
+            }
+
+            return matchingKey;
+
+        }
+
+        /**
+         * Returns the minimal number of variants found for the peptide.
+         *
+         * @return The minimal number of variants found for the peptide.
+         */
+        private int getVariantsCount() {
+
+            if (variantsCount == -1) {
+
+                variantsCount = variantsCount(peptideAssumption);
+
+            }
+
+            return variantsCount;
+
+        }
+
+        /**
+         * Returns the maximal number of peptides found for a protein the
+         * peptide can map to.
+         *
+         * @return The maximal number of peptides found for a protein the
+         * peptide can map to.
+         */
+        private int getProteinCount() {
+
+            if (proteinCount == -1) {
+
+                proteinCount = proteinCount(peptideAssumption);
+
+            }
+
+            return proteinCount;
+
+        }
+
+        /**
+         * Returns the number of amino acids covered by the fragment ions,
+         * lower intensities being filtered out.
+         *
+         * @param context The context of the spectrum.
+         *
+         * @return The number of amino acids covered by the fragment ions.
+         */
+        private int getnCoveredAminoAcidsIntensityLimit(
+                TieBreakContext context
+        ) {
+
+            if (nCoveredAminoAcidsIntensityLimit == -1) {
+
+                nCoveredAminoAcidsIntensityLimit = nCoveredAminoAcids(
+                        context.spectrumFile,
+                        context.spectrumTitle,
+                        peptideAssumption,
+                        context.getSpectrum(),
+                        true
+                );
+
+            }
+
+            return nCoveredAminoAcidsIntensityLimit;
+
+        }
+
+        /**
+         * Returns the number of amino acids covered by the fragment ions.
+         *
+         * @param context The context of the spectrum.
+         *
+         * @return The number of amino acids covered by the fragment ions.
+         */
+        private int getnCoveredAminoAcids(
+                TieBreakContext context
+        ) {
+
+            if (nCoveredAminoAcids == -1) {
+
+                nCoveredAminoAcids = nCoveredAminoAcids(
+                        context.spectrumFile,
+                        context.spectrumTitle,
+                        peptideAssumption,
+                        context.getSpectrum(),
+                        false
+                );
+
+            }
+
+            return nCoveredAminoAcids;
+
+        }
+
+        /**
+         * Returns the absolute precursor m/z error.
+         *
+         * @param context The context of the spectrum.
+         *
+         * @return The absolute precursor m/z error.
+         */
+        private double getMassError(
+                TieBreakContext context
+        ) {
+
+            if (!hasMassError) {
+
+                massError = Math.abs(
+                        peptideAssumption.getDeltaMz(
+                                context.getSpectrum().getPrecursor().mz,
+                                searchParameters.isPrecursorAccuracyTypePpm(),
+                                searchParameters.getMinIsotopicCorrection(),
+                                searchParameters.getMaxIsotopicCorrection()
+                        )
+                );
+                hasMassError = true;
+
+            }
+
+            return massError;
+
+        }
+
+        /**
+         * Returns the share of spectrum intensity annotated.
+         *
+         * @param context The context of the spectrum.
+         *
+         * @return The share of spectrum intensity annotated.
+         */
+        private double getShareOfIntensityAnnotated(
+                TieBreakContext context
+        ) {
+
+            if (!hasShareOfIntensityAnnotated) {
+
+                shareOfIntensityAnnotated = shareOfIntensityAnnotated(
+                        context.spectrumFile,
+                        context.spectrumTitle,
+                        peptideAssumption,
+                        context.getSpectrum()
+                );
+                hasShareOfIntensityAnnotated = true;
+
+            }
+
+            return shareOfIntensityAnnotated;
+
+        }
+    }
 }
@@ -2,13 +2,20 @@ package eu.isas.peptideshaker.scoring.targetdecoy;
 
 import com.compomics.util.experiment.personalization.ExperimentObject;
 import com.compomics.util.waiting.WaitingHandler;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
- * This map contains the information of a target/decoy strategy.
+ * This map contains the information of a target/decoy strategy. Points are
+ * stored in sorted primitive arrays grouped in an immutable snapshot. Hits are
+ * accumulated by each thread in its own buffer and merged into a new snapshot
+ * before the map is read, the map can therefore be filled concurrently without
+ * locking and read without seeing partially merged points.
  *
  * @author Marc Vaudel
  */
@@ -19,13 +26,50 @@ public class TargetDecoyMap extends ExperimentObject {
      */
     static final long serialVersionUID = 7333389442377322662L;
     /**
-     * The hit map containing the indexed target/decoy points.
+     * The hit map containing the indexed target/decoy points. Only used to
+     * load maps saved by previous versions, null otherwise.
      */
-    private HashMap<Double, TargetDecoyPoint> hitMap = new HashMap<>();
+    private HashMap<Double, TargetDecoyPoint> hitMap = null;
     /**
-     * The scores imported in the map.
+     * The sorted distinct scores of the points. Only used for serialization,
+     * null otherwise.
      */
-    private ArrayList<Double> scores;
+    private double[] pointScores = null;
+    /**
+     * The number of target hits of the points. Only used for serialization,
+     * null otherwise.
+     */
+    private int[] pointNTarget = null;
+    /**
+     * The number of decoy hits of the points. Only used for serialization,
+     * null otherwise.
+     */
+    private int[] pointNDecoy = null;
+    /**
+     * The posterior error probabilities of the points. Only used for
+     * serialization, null otherwise.
+     */
+    private double[] pointP = null;
+    /**
+     * The current snapshot of the points.
+     */
+    private transient volatile Points points = Points.EMPTY;
+    /**
+     * The hits accumulated by each thread and not yet merged into the points.
+     */
+    private transient ThreadLocal<HitBuffer> localBuffer;
+    /**
+     * All the buffers of hits created for this map.
+     */
+    private transient ConcurrentLinkedQueue<HitBuffer> buffers;
+    /**
+     * Indicates whether hits are waiting to be merged into the points.
+     */
+    private transient volatile boolean pendingHits = false;
+    /**
+     * Indicates whether empty points were removed since the last clean up.
+     */
+    private transient boolean emptyPointsRemoved = false;
     /**
      * The number of decoy matches to include in the first bin to set the bin
      * size nmax. Two means that two consecutive decoys will be used.
@@ -79,40 +123,32 @@ public class TargetDecoyMap extends ExperimentObject {
      */
     public double getProbability(double score) {
 
-        TargetDecoyPoint point = hitMap.get(score);
+        Points snapshot = getPoints();
+        double[] scores = snapshot.scores;
+        double[] p = snapshot.p;
 
-        if (point != null) {
+        int index = Arrays.binarySearch(scores, score);
 
-            return point.p;
+        if (index >= 0) {
 
-        } else if (score >= scores.get(scores.size() - 1)) {
+            return p[index];
 
-            return hitMap.get(scores.get(scores.size() - 1)).p;
-
-        } else {
-
-            int indexDown = 0;
-            int indexUp = scores.size() - 1;
-            int indexTemp;
-
-            while (indexUp - indexDown > 1) {
+        }
 
-                indexTemp = (indexUp - indexDown) / 2 + indexDown;
+        int indexUp = -index - 1;
 
-                if (scores.get(indexTemp) > score) {
+        if (indexUp >= scores.length) {
 
-                    indexUp = indexTemp;
+            return p[scores.length - 1];
 
-                } else {
+        } else if (indexUp == 0) {
 
-                    indexDown = indexTemp;
+            return scores.length > 1 ? (p[0] + p[1]) / 2 : p[0];
 
-                }
-            }
+        }
 
-            return (hitMap.get(scores.get(indexUp)).p + hitMap.get(scores.get(indexDown)).p) / 2;
+        return (p[indexUp] + p[indexUp - 1]) / 2;
 
-        }
     }
 
     /**
@@ -123,7 +159,10 @@ public class TargetDecoyMap extends ExperimentObject {
      */
     public int getNTarget(double score) {
 
-        return hitMap.get(score).nTarget;
+        Points snapshot = getPoints();
+
+        return snapshot.nTarget[Arrays.binarySearch(snapshot.scores, score)];
+
     }
 
     /**
@@ -133,7 +172,11 @@ public class TargetDecoyMap extends ExperimentObject {
      * @return the number of decoy hits found at the given score
      */
     public int getNDecoy(double score) {
-        return hitMap.get(score).nDecoy;
+
+        Points snapshot = getPoints();
+
+        return snapshot.nDecoy[Arrays.binarySearch(snapshot.scores, score)];
+
     }
 
     /**
@@ -144,99 +187,280 @@ public class TargetDecoyMap extends ExperimentObject {
      */
     public void put(double score, boolean isDecoy) {
 
-        TargetDecoyPoint targetDecoyPoint = hitMap.get(score);
+        if (isDecoy) {
+
+            addHit(score, 0, 1);
 
-        if (targetDecoyPoint == null) {
+        } else {
 
-            targetDecoyPoint = createTargetDecoyPoint(score);
+            addHit(score, 1, 0);
 
         }
+    }
+
+    /**
+     * Removes a point in the target/decoy map at the given score. Note: it is
+     * necessary to run cleanUp() afterwards to clean up the map.
+     *
+     * @param score the given score
+     * @param isDecoy boolean indicating whether the hit is decoy
+     */
+    public void remove(double score, boolean isDecoy) {
 
         if (isDecoy) {
 
-            targetDecoyPoint.increaseDecoy();
+            addHit(score, 0, -1);
 
         } else {
 
-            targetDecoyPoint.increaseTarget();
+            addHit(score, -1, 0);
+
+        }
+    }
+
+    /**
+     * Removes empty points and clears dependent metrics if needed.
+     */
+    public synchronized void cleanUp() {
+
+        getPoints();
+
+        if (emptyPointsRemoved) {
+
+            nmax = null;
+            windowSize = null;
+            emptyPointsRemoved = false;
 
         }
     }
 
     /**
-     * Creates the target decoy point of the map at the given score if no other
-     * thread has done it before.
+     * Adds a hit to the buffer of the current thread. The pending flag is set
+     * after the hit is added so that a concurrent merge cannot miss it.
      *
-     * @param score the score of interest
+     * @param score the score of the hit
+     * @param targetChange the change in number of target hits
+     * @param decoyChange the change in number of decoy hits
+     */
+    private void addHit(
+            double score,
+            int targetChange,
+            int decoyChange
+    ) {
+
+        getLocalBuffer().add(score, targetChange, decoyChange);
+        pendingHits = true;
+
+    }
+
+    /**
+     * Returns the buffer of hits of the current thread, creates it if needed.
      *
-     * @return the target decoy point of the map at the given score
+     * @return the buffer of hits of the current thread
      */
-    public synchronized TargetDecoyPoint createTargetDecoyPoint(double score) {
+    private HitBuffer getLocalBuffer() {
+
+        if (localBuffer == null) {
+
+            initBuffers();
 
-        TargetDecoyPoint targetDecoyPoint = hitMap.get(score);
+        }
+
+        HitBuffer hitBuffer = localBuffer.get();
 
-        if (targetDecoyPoint == null) {
+        if (hitBuffer == null) {
 
-            targetDecoyPoint = new TargetDecoyPoint();
-            hitMap.put(score, targetDecoyPoint);
+            hitBuffer = new HitBuffer();
+            localBuffer.set(hitBuffer);
+            buffers.add(hitBuffer);
 
         }
 
-        return targetDecoyPoint;
+        return hitBuffer;
 
     }
 
     /**
-     * Removes a point in the target/decoy map at the given score. Note: it is
-     * necessary to run cleanUp() afterwards to clean up the map.
+     * Initializes the buffers of hits if not done already.
+     */
+    private synchronized void initBuffers() {
+
+        if (localBuffer == null) {
+
+            buffers = new ConcurrentLinkedQueue<>();
+            localBuffer = new ThreadLocal<>();
+
+        }
+    }
+
+    /**
+     * Merges the pending hits and returns the current snapshot of the points.
      *
-     * @param score the given score
-     * @param isDecoy boolean indicating whether the hit is decoy
+     * @return the current snapshot of the points
      */
-    public void remove(double score, boolean isDecoy) {
+    private Points getPoints() {
 
-        TargetDecoyPoint targetDecoyPoint = hitMap.get(score);
+        if (pendingHits) {
 
-        if (!isDecoy) {
+            mergeHitsSynchronized();
 
-            targetDecoyPoint.decreaseTarget();
+        }
 
-        } else {
+        return points;
+
+    }
+
+    /**
+     * Merges the hits accumulated by the different threads into a new snapshot
+     * of the points. The pending flag is cleared only once the new snapshot is
+     * published, so that readers wait for the merge instead of reading the
+     * previous snapshot, and is set again if hits were added during the merge.
+     */
+    private synchronized void mergeHitsSynchronized() {
+
+        if (pendingHits) {
+
+            HitBuffer[] drained = buffers.stream()
+                    .map(
+                            HitBuffer::drain
+                    )
+                    .filter(
+                            hitBuffer -> hitBuffer.size > 0
+                    )
+                    .toArray(HitBuffer[]::new);
+
+            if (drained.length > 0) {
+
+                points = merge(points, drained);
 
-            targetDecoyPoint.decreaseDecoy();
+            }
+
+            pendingHits = false;
+
+            for (HitBuffer hitBuffer : buffers) {
+
+                if (hitBuffer.getSize() > 0) {
 
+                    pendingHits = true;
+                    break;
+
+                }
+            }
         }
     }
 
     /**
-     * Removes empty points and clears dependent metrics if needed.
+     * Merges the given hits into a new snapshot of the points. Points without
+     * target nor decoy hits are removed.
+     *
+     * @param current the current snapshot of the points
+     * @param hitBuffers the hits to merge
+     *
+     * @return the new snapshot of the points
      */
-    public synchronized void cleanUp() {
+    private Points merge(
+            Points current,
+            HitBuffer[] hitBuffers
+    ) {
+
+        double[] currentScores = current.scores;
+        int[] currentNTarget = current.nTarget;
+        int[] currentNDecoy = current.nDecoy;
+        double[] currentP = current.p;
+
+        int nHits = currentScores.length;
+
+        for (HitBuffer hitBuffer : hitBuffers) {
+
+            nHits += hitBuffer.size;
 
-        boolean removed = false;
+        }
+
+        double[] allScores = Arrays.copyOf(currentScores, nHits);
+        int offset = currentScores.length;
+
+        for (HitBuffer hitBuffer : hitBuffers) {
+
+            System.arraycopy(hitBuffer.scores, 0, allScores, offset, hitBuffer.size);
+            offset += hitBuffer.size;
 
-        HashSet<Double> currentScores = new HashSet<>(hitMap.keySet());
+        }
+
+        Arrays.sort(allScores);
 
-        for (double score : currentScores) {
+        int nDistinct = 0;
 
-            TargetDecoyPoint targetDecoyPoint = hitMap.get(score);
+        for (int i = 0; i < nHits; i++) {
 
-            if (targetDecoyPoint.nTarget == 0
-                    && targetDecoyPoint.nDecoy == 0) {
+            if (i == 0 || Double.compare(allScores[i], allScores[nDistinct - 1]) != 0) {
 
-                hitMap.remove(score);
-                removed = true;
+                allScores[nDistinct++] = allScores[i];
 
             }
         }
 
-        if (removed) {
+        double[] newScores = Arrays.copyOf(allScores, nDistinct);
+        int[] newNTarget = new int[nDistinct];
+        int[] newNDecoy = new int[nDistinct];
+        double[] newP = new double[nDistinct];
 
-            scores = null;
-            nmax = null;
-            windowSize = null;
+        for (int i = 0; i < currentScores.length; i++) {
+
+            int index = Arrays.binarySearch(newScores, currentScores[i]);
+            newNTarget[index] += currentNTarget[i];
+            newNDecoy[index] += currentNDecoy[i];
+            newP[index] = currentP[i];
 
         }
+
+        for (HitBuffer hitBuffer : hitBuffers) {
+
+            for (int i = 0; i < hitBuffer.size; i++) {
+
+                int index = Arrays.binarySearch(newScores, hitBuffer.scores[i]);
+                newNTarget[index] += hitBuffer.nTarget[i];
+                newNDecoy[index] += hitBuffer.nDecoy[i];
+
+                if (hitBuffer.p != null) {
+
+                    newP[index] = hitBuffer.p[i];
+
+                }
+            }
+        }
+
+        int nPoints = 0;
+
+        for (int i = 0; i < nDistinct; i++) {
+
+            if (newNTarget[i] != 0 || newNDecoy[i] != 0) {
+
+                newScores[nPoints] = newScores[i];
+                newNTarget[nPoints] = newNTarget[i];
+                newNDecoy[nPoints] = newNDecoy[i];
+                newP[nPoints] = newP[i];
+                nPoints++;
+
+            }
+        }
+
+        if (nPoints < nDistinct) {
+
+            emptyPointsRemoved = true;
+            newScores = Arrays.copyOf(newScores, nPoints);
+            newNTarget = Arrays.copyOf(newNTarget, nPoints);
+            newNDecoy = Arrays.copyOf(newNDecoy, nPoints);
+            newP = Arrays.copyOf(newP, nPoints);
+
+        }
+
+        return new Points(
+                newScores,
+                newNTarget,
+                newNDecoy,
+                newP
+        );
+
     }
 
     /**
@@ -245,11 +469,10 @@ public class TargetDecoyMap extends ExperimentObject {
      */
     private void estimateNs() {
 
-        if (scores == null) {
-
-            estimateScores();
-
-        }
+        Points snapshot = getPoints();
+        double[] scores = snapshot.scores;
+        int[] targets = snapshot.nTarget;
+        int[] decoys = snapshot.nDecoy;
 
         boolean onlyTarget = true;
         nmax = 0;
@@ -258,29 +481,31 @@ public class TargetDecoyMap extends ExperimentObject {
         nTargetOnly = 0;
         int targetCount = 0, decoyCount = 0;
 
-        for (double score : scores) {
+        for (int i = 0; i < scores.length; i++) {
 
-            TargetDecoyPoint point = hitMap.get(score);
+            double score = scores[i];
+            int nTarget = targets[i];
+            int nDecoy = decoys[i];
 
             if (onlyTarget) {
 
-                if (point.nDecoy > 0) {
+                if (nDecoy > 0) {
 
-                    nTargetOnly += point.nTarget / 2 + point.nTarget % 2;
-                    targetCpt += point.nTarget / 2;
+                    nTargetOnly += nTarget / 2 + nTarget % 2;
+                    targetCpt += nTarget / 2;
                     onlyTarget = false;
-                    decoyCpt += point.nDecoy;
+                    decoyCpt += nDecoy;
 
                 } else {
 
-                    nTargetOnly += point.nTarget;
+                    nTargetOnly += nTarget;
 
                 }
 
-            } else if (point.nDecoy > 0) {
+            } else if (nDecoy > 0) {
 
-                targetCpt += point.nTarget / 2 + point.nTarget % 2;
-                decoyCpt += point.nDecoy;
+                targetCpt += nTarget / 2 + nTarget % 2;
+                decoyCpt += nDecoy;
 
                 if (targetCpt > nmax
                         && score < 1.0
@@ -290,17 +515,17 @@ public class TargetDecoyMap extends ExperimentObject {
 
                 }
 
-                targetCpt = point.nTarget / 2;
-                decoyCpt = point.nDecoy;
+                targetCpt = nTarget / 2;
+                decoyCpt = nDecoy;
 
             } else {
 
-                targetCpt += point.nTarget;
+                targetCpt += nTarget;
 
             }
 
-            targetCount += point.nTarget;
-            decoyCount += point.nDecoy;
+            targetCount += nTarget;
+            decoyCount += nDecoy;
 
             if (targetCount > 0) {
 
@@ -316,17 +541,14 @@ public class TargetDecoyMap extends ExperimentObject {
     }
 
     /**
-     * Estimates the posterior error probabilities in this map.
+     * Estimates the posterior error probabilities in this map. The
+     * probabilities are published as a new snapshot once all are estimated.
      *
      * @param waitingHandler the handler displaying feedback to the user
      */
     public void estimateProbabilities(WaitingHandler waitingHandler) {
 
-        if (scores == null) {
-
-            estimateScores();
-
-        }
+        Points snapshot = getPoints();
 
         if (nmax == null) {
 
@@ -339,25 +561,26 @@ public class TargetDecoyMap extends ExperimentObject {
 
         }
 
+        double[] scores = snapshot.scores;
+        int[] targets = snapshot.nTarget;
+        int[] decoys = snapshot.nDecoy;
+        double[] p = new double[scores.length];
+
         // estimate p
-        double currentScore = scores.get(0);
-        TargetDecoyPoint tempPoint, previousPoint = hitMap.get(currentScore);
+        int previousNTarget = targets[0];
         double nLimit = 0.5 * windowSize;
-        double nTargetUp = 1.5 * previousPoint.nTarget;
-        double nTargetDown = -0.5 * previousPoint.nTarget;
-        double nDecoy = previousPoint.nDecoy;
+        double nTargetUp = 1.5 * previousNTarget;
+        double nTargetDown = -0.5 * previousNTarget;
+        double nDecoy = decoys[0];
         int iDown = 0;
         int iUp = 1;
         boolean oneReached = false;
 
-        for (int i = 0; i < scores.size(); i++) {
-
-            currentScore = scores.get(i);
-            TargetDecoyPoint point = hitMap.get(currentScore);
+        for (int i = 0; i < scores.length; i++) {
 
             if (!oneReached) {
 
-                double change = 0.5 * (previousPoint.nTarget + point.nTarget);
+                double change = 0.5 * (previousNTarget + targets[i]);
                 nTargetDown += change;
                 nTargetUp -= change;
 
@@ -365,12 +588,11 @@ public class TargetDecoyMap extends ExperimentObject {
 
                     if (iDown < i) {
 
-                        tempPoint = hitMap.get(scores.get(iDown));
-                        double nTargetDownTemp = nTargetDown - tempPoint.nTarget;
+                        double nTargetDownTemp = nTargetDown - targets[iDown];
 
                         if (nTargetDownTemp >= nLimit) {
 
-                            nDecoy -= tempPoint.nDecoy;
+                            nDecoy -= decoys[iDown];
                             nTargetDown = nTargetDownTemp;
                             iDown++;
 
@@ -387,19 +609,18 @@ public class TargetDecoyMap extends ExperimentObject {
                     }
                 }
 
-                while (nTargetUp < nLimit && iUp < scores.size()) {
+                while (nTargetUp < nLimit && iUp < scores.length) {
 
-                    tempPoint = hitMap.get(scores.get(iUp));
-                    nTargetUp += tempPoint.nTarget;
-                    nDecoy += tempPoint.nDecoy;
+                    nTargetUp += targets[iUp];
+                    nDecoy += decoys[iUp];
                     iUp++;
 
                 }
 
                 double nTarget = nTargetDown + nTargetUp;
-                point.p = Math.max(Math.min(nDecoy / nTarget, 1), 0);
+                p[i] = Math.max(Math.min(nDecoy / nTarget, 1), 0);
 
-                if (point.p >= 0.98) {
+                if (p[i] >= 0.98) {
 
                     oneReached = true;
 
@@ -407,11 +628,11 @@ public class TargetDecoyMap extends ExperimentObject {
 
             } else {
 
-                point.p = 1;
+                p[i] = 1;
 
             }
 
-            previousPoint = point;
+            previousNTarget = targets[i];
 
             waitingHandler.increaseSecondaryProgressCounter();
 
@@ -421,6 +642,55 @@ public class TargetDecoyMap extends ExperimentObject {
 
             }
         }
+
+        publishProbabilities(snapshot, p);
+
+    }
+
+    /**
+     * Publishes a new snapshot of the points with the given probabilities.
+     *
+     * @param snapshot the snapshot the probabilities were estimated on
+     * @param p the posterior error probabilities of the points of the snapshot
+     */
+    private synchronized void publishProbabilities(
+            Points snapshot,
+            double[] p
+    ) {
+
+        if (points == snapshot) {
+
+            points = new Points(
+                    snapshot.scores,
+                    snapshot.nTarget,
+                    snapshot.nDecoy,
+                    p
+            );
+
+        } else {
+
+            // Hits were merged in the meantime, keep their points and update the probabilities of the others.
+            Points current = points;
+            double[] newP = Arrays.copyOf(current.p, current.p.length);
+
+            for (int i = 0; i < current.scores.length; i++) {
+
+                int index = Arrays.binarySearch(snapshot.scores, current.scores[i]);
+
+                if (index >= 0) {
+
+                    newP[i] = p[index];
+
+                }
+            }
+
+            points = new Points(
+                    current.scores,
+                    current.nTarget,
+                    current.nDecoy,
+                    newP
+            );
+        }
     }
 
     /**
@@ -483,29 +753,14 @@ public class TargetDecoyMap extends ExperimentObject {
     }
 
     /**
-     * Sorts the scores implemented in this map.
-     */
-    private void estimateScores() {
-
-        scores = new ArrayList<>(hitMap.keySet());
-        Collections.sort(scores);
-
-    }
-
-    /**
-     * Returns the sorted scores implemented in this map.
+     * Returns the sorted scores implemented in this map. The array is shared
+     * with the map and should not be modified.
      *
      * @return the sorted scores implemented in this map.
      */
-    public ArrayList<Double> getScores() {
+    public double[] getScores() {
 
-        if (scores == null) {
-
-            estimateScores();
-
-        }
-
-        return scores;
+        return getPoints().scores;
 
     }
 
@@ -516,22 +771,17 @@ public class TargetDecoyMap extends ExperimentObject {
      */
     public void addAll(TargetDecoyMap anOtherMap) {
 
-        for (double score : anOtherMap.getScores()) {
+        Points otherPoints = anOtherMap.getPoints();
+        double[] otherScores = otherPoints.scores;
+        int[] otherNTarget = otherPoints.nTarget;
+        int[] otherNDecoy = otherPoints.nDecoy;
 
-            for (int i = 0; i < anOtherMap.getNDecoy(score); i++) {
+        for (int i = 0; i < otherScores.length; i++) {
 
-                put(score, true);
-
-            }
+            addHit(otherScores[i], otherNTarget[i], otherNDecoy[i]);
 
-            for (int i = 0; i < anOtherMap.getNTarget(score); i++) {
-
-                put(score, false);
-
-            }
         }
 
-        scores = null;
         nmax = null;
         windowSize = null;
 
@@ -580,7 +830,14 @@ public class TargetDecoyMap extends ExperimentObject {
      */
     public TargetDecoySeries getTargetDecoySeries() {
 
-        return new TargetDecoySeries(hitMap);
+        Points snapshot = getPoints();
+
+        return new TargetDecoySeries(
+                snapshot.scores,
+                snapshot.nTarget,
+                snapshot.nDecoy,
+                snapshot.p
+        );
 
     }
 
@@ -619,7 +876,237 @@ public class TargetDecoyMap extends ExperimentObject {
      */
     public int getMapSize() {
 
-        return hitMap.size();
+        return getPoints().scores.length;
+
+    }
+
+    /**
+     * Merges pending hits and writes the current snapshot of the points.
+     *
+     * @param out the output stream
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the object
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+
+        Points snapshot = getPoints();
+
+        pointScores = snapshot.scores;
+        pointNTarget = snapshot.nTarget;
+        pointNDecoy = snapshot.nDecoy;
+        pointP = snapshot.p;
+
+        try {
+
+            out.defaultWriteObject();
+
+        } finally {
+
+            pointScores = null;
+            pointNTarget = null;
+            pointNDecoy = null;
+            pointP = null;
+
+        }
+    }
+
+    /**
+     * Builds the snapshot of the points after deserialization, including the
+     * points of maps saved by previous versions.
+     *
+     * @param in the input stream
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * the object
+     * @throws ClassNotFoundException exception thrown if a class of the object
+     * cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+
+        in.defaultReadObject();
+
+        Points snapshot = pointScores == null ? Points.EMPTY
+                : new Points(
+                        pointScores,
+                        pointNTarget,
+                        pointNDecoy,
+                        pointP
+                );
+
+        pointScores = null;
+        pointNTarget = null;
+        pointNDecoy = null;
+        pointP = null;
+
+        if (hitMap != null) {
+
+            HitBuffer legacyPoints = new HitBuffer();
+            legacyPoints.p = new double[hitMap.size()];
+
+            for (Entry<Double, TargetDecoyPoint> entry : hitMap.entrySet()) {
+
+                TargetDecoyPoint point = entry.getValue();
+                legacyPoints.p[legacyPoints.size] = point.p;
+                legacyPoints.add(entry.getKey(), point.nTarget, point.nDecoy);
+
+            }
+
+            hitMap = null;
+            snapshot = merge(snapshot, new HitBuffer[]{legacyPoints});
+
+        }
+
+        points = snapshot;
+
+    }
+
+    /**
+     * Immutable snapshot of the points of the map. The arrays are never
+     * modified once the snapshot is published.
+     */
+    private static class Points {
+
+        /**
+         * The snapshot of a map without points.
+         */
+        private static final Points EMPTY = new Points(
+                new double[0],
+                new int[0],
+                new int[0],
+                new double[0]
+        );
+        /**
+         * The sorted distinct scores of the points.
+         */
+        private final double[] scores;
+        /**
+         * The number of target hits of the points.
+         */
+        private final int[] nTarget;
+        /**
+         * The number of decoy hits of the points.
+         */
+        private final int[] nDecoy;
+        /**
+         * The posterior error probabilities of the points.
+         */
+        private final double[] p;
+
+        /**
+         * Constructor.
+         *
+         * @param scores the sorted distinct scores of the points
+         * @param nTarget the number of target hits of the points
+         * @param nDecoy the number of decoy hits of the points
+         * @param p the posterior error probabilities of the points
+         */
+        private Points(
+                double[] scores,
+                int[] nTarget,
+                int[] nDecoy,
+                double[] p
+        ) {
+
+            this.scores = scores;
+            this.nTarget = nTarget;
+            this.nDecoy = nDecoy;
+            this.p = p;
+
+        }
+    }
+
+    /**
+     * Buffer of hits accumulated by a thread.
+     */
+    private static class HitBuffer {
+
+        /**
+         * The initial capacity of the buffer.
+         */
+        private static final int INITIAL_CAPACITY = 1024;
+        /**
+         * The scores of the hits.
+         */
+        private double[] scores = new double[INITIAL_CAPACITY];
+        /**
+         * The change in number of target hits.
+         */
+        private int[] nTarget = new int[INITIAL_CAPACITY];
+        /**
+         * The change in number of decoy hits.
+         */
+        private int[] nDecoy = new int[INITIAL_CAPACITY];
+        /**
+         * The posterior error probabilities of the hits, null if not set.
+         */
+        private double[] p = null;
+        /**
+         * The number of hits in the buffer.
+         */
+        private int size = 0;
+
+        /**
+         * Adds a hit to the buffer.
+         *
+         * @param score the score of the hit
+         * @param targetChange the change in number of target hits
+         * @param decoyChange the change in number of decoy hits
+         */
+        private synchronized void add(
+                double score,
+                int targetChange,
+                int decoyChange
+        ) {
+
+            if (size == scores.length) {
+
+                int newCapacity = 2 * size;
+                scores = Arrays.copyOf(scores, newCapacity);
+                nTarget = Arrays.copyOf(nTarget, newCapacity);
+                nDecoy = Arrays.copyOf(nDecoy, newCapacity);
+
+            }
+
+            scores[size] = score;
+            nTarget[size] = targetChange;
+            nDecoy[size] = decoyChange;
+            size++;
+
+        }
+
+        /**
+         * Returns the number of hits in the buffer.
+         *
+         * @return the number of hits in the buffer
+         */
+        private synchronized int getSize() {
+
+            return size;
 
+        }
+
+        /**
+         * Returns the content of this buffer in a new buffer and empties this
+         * buffer.
+         *
+         * @return the content of this buffer
+         */
+        private synchronized HitBuffer drain() {
+
+            HitBuffer content = new HitBuffer();
+            content.scores = scores;
+            content.nTarget = nTarget;
+            content.nDecoy = nDecoy;
+            content.size = size;
+
+            scores = new double[INITIAL_CAPACITY];
+            nTarget = new int[INITIAL_CAPACITY];
+            nDecoy = new int[INITIAL_CAPACITY];
+            size = 0;
+
+            return content;
+
+        }
     }
 }
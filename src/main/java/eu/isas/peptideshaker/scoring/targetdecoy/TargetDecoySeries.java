@@ -2,7 +2,6 @@ package eu.isas.peptideshaker.scoring.targetdecoy;
 
 import com.compomics.util.experiment.identification.peptide_shaker.PSParameter;
 import java.util.Arrays;
-import java.util.HashMap;
 
 /**
  * This class will contain the PEP, FDR and FNR values of a target decoy map
@@ -76,36 +75,39 @@ public class TargetDecoySeries {
     /**
      * Constructor.
      *
-     * @param hitMap a map as present in target decoy maps
+     * @param hitScores the sorted scores of the points of the target decoy map
+     * @param hitNTarget the number of target hits of the points
+     * @param hitNDecoy the number of decoy hits of the points
+     * @param hitP the posterior error probabilities of the points
      */
-    public TargetDecoySeries(HashMap<Double, TargetDecoyPoint> hitMap) {
-
-        scores = new double[hitMap.size()];
+    public TargetDecoySeries(
+            double[] hitScores,
+            int[] hitNTarget,
+            int[] hitNDecoy,
+            double[] hitP
+    ) {
+
+        scores = Arrays.copyOf(hitScores, hitScores.length);
         scoresLog = new double[scores.length];
         probaNTotal = 0;
-        int counter = 0;
-        TargetDecoyPoint currentPoint;
         double minScore = 0, maxScore = 100;
 
-        for (double score : hitMap.keySet()) {
-            
-            currentPoint = hitMap.get(score);
-            double scoreLog = PSParameter.transformScore(score);
-            scores[counter] = score;
-            scoresLog[counter] = scoreLog;
-            probaNTotal += (1 - currentPoint.p) * currentPoint.nTarget;
-            counter++;
-            
+        for (int i = 0; i < scores.length; i++) {
+
+            double scoreLog = PSParameter.transformScore(scores[i]);
+            scoresLog[i] = scoreLog;
+            probaNTotal += (1 - hitP[i]) * hitNTarget[i];
+
             if (scoreLog < minScore) {
-            
+
                 minScore = scoreLog;
-            
+
             }
-            
+
             if (scoreLog > maxScore) {
-            
+
                 maxScore = scoreLog;
-            
+
             }
         }
 
@@ -113,7 +115,6 @@ public class TargetDecoySeries {
         int histogramScoreMax = (int) maxScore;
         initiateTDHistogram(histogramScoreMin, histogramScoreMax);
 
-        Arrays.sort(scores);
         Arrays.sort(scoresLog);
 
         confidence = new double[scores.length];
@@ -131,16 +132,13 @@ public class TargetDecoySeries {
         double fnrTemp;
 
         for (int i = 0; i < scores.length; i++) {
-            
-            double score = scores[i];
-            
-            currentPoint = hitMap.get(score);
-            nTemp += currentPoint.nTarget;
-            fpTemp += currentPoint.nDecoy;
-            probaTP += currentPoint.nTarget * (1 - currentPoint.p);
+
+            nTemp += hitNTarget[i];
+            fpTemp += hitNDecoy[i];
+            probaTP += hitNTarget[i] * (1 - hitP[i]);
             fnrTemp = 100.0 * (probaNTotal - probaTP) / probaNTotal;
-            pep[i] = 100.0 * currentPoint.p;
-            double confidenceAtI = 100 * (1 - currentPoint.p);
+            pep[i] = 100.0 * hitP[i];
+            double confidenceAtI = 100 * (1 - hitP[i]);
             confidence[i] = confidenceAtI;
             int iInvert = scores.length - i - 1;
             confidenceLog[iInvert] = confidenceAtI;
@@ -148,13 +146,13 @@ public class TargetDecoySeries {
             fp[i] = fpTemp;
             fdr[i] = 100.0 * fpTemp / nTemp;
             fnr[i] = fnrTemp;
-            decoy[i] = currentPoint.nTarget == 0;
+            decoy[i] = hitNTarget[i] == 0;
 
             double scoreLog = scoresLog[iInvert];
             int bin = ((int) (Math.round((scoreLog - histogramScoreMin) / binSize)));
-            nDecoy[bin] += currentPoint.nDecoy;
-            nTarget[bin] += currentPoint.nTarget;
-            
+            nDecoy[bin] += hitNDecoy[i];
+            nTarget[bin] += hitNTarget[i];
+
         }
     }
 
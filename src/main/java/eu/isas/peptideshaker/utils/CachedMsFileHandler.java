@@ -0,0 +1,391 @@
+package eu.isas.peptideshaker.utils;
+
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import com.compomics.util.experiment.io.mass_spectrometry.MsFileHandler;
+import com.compomics.util.experiment.mass_spectrometry.spectra.Spectrum;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mass spectrometry file handler keeping the spectra most recently used in a
+ * size-bounded cache, so that the different stages of the processing of a
+ * project do not decode the same spectrum from the file several times. The
+ * cache is split in segments locked independently, each segment using a
+ * segmented LRU eviction: spectra enter a probationary space and are promoted
+ * to a protected space when used again, so that spectra used once do not
+ * evict the ones used repeatedly. The cache is meant for the creation of a
+ * project, once the project is created it should be disabled using
+ * {@link #setCacheEnabled(boolean)} to release the memory.
+ *
+ * @author Marc Vaudel
+ */
+public class CachedMsFileHandler extends MsFileHandler {
+
+    /**
+     * The default share of the maximal heap size used by the cache.
+     */
+    public static final double DEFAULT_HEAP_SHARE = 0.1;
+    /**
+     * The share of the size of a segment reserved for the protected space.
+     */
+    public static final double PROTECTED_SHARE = 0.8;
+    /**
+     * The number of segments.
+     */
+    private static final int N_SEGMENTS = 16;
+    /**
+     * The estimated size in bytes of a spectrum without its peaks.
+     */
+    private static final long SPECTRUM_OVERHEAD = 256;
+    /**
+     * The segments of the cache.
+     */
+    private final Segment[] segments = new Segment[N_SEGMENTS];
+    /**
+     * The number of spectra found in the cache.
+     */
+    private final AtomicLong nHits = new AtomicLong();
+    /**
+     * The number of spectra loaded from the files.
+     */
+    private final AtomicLong nMisses = new AtomicLong();
+    /**
+     * The number of spectra evicted from the cache.
+     */
+    private final AtomicLong nEvictions = new AtomicLong();
+    /**
+     * Boolean indicating whether spectra are cached.
+     */
+    private volatile boolean cacheEnabled = true;
+
+    /**
+     * Constructor using the default share of the heap for the cache.
+     */
+    public CachedMsFileHandler() {
+
+        this((long) (DEFAULT_HEAP_SHARE * Runtime.getRuntime().maxMemory()));
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sizeBudget the maximal size in bytes of the spectra in the cache
+     */
+    public CachedMsFileHandler(
+            long sizeBudget
+    ) {
+
+        long segmentBudget = Math.max(sizeBudget / N_SEGMENTS, 1);
+
+        for (int i = 0; i < N_SEGMENTS; i++) {
+
+            segments[i] = new Segment(segmentBudget);
+
+        }
+    }
+
+    @Override
+    public Spectrum getSpectrum(
+            String fileNameWithoutExtension,
+            String spectrumTitle
+    ) {
+
+        if (!cacheEnabled) {
+
+            return super.getSpectrum(fileNameWithoutExtension, spectrumTitle);
+
+        }
+
+        long key = SpectrumMatch.getKey(fileNameWithoutExtension, spectrumTitle);
+        Segment segment = segments[(int) ((key ^ (key >>> 32)) & (N_SEGMENTS - 1))];
+
+        Spectrum spectrum = segment.get(key);
+
+        if (spectrum != null) {
+
+            nHits.incrementAndGet();
+            return spectrum;
+
+        }
+
+        nMisses.incrementAndGet();
+
+        spectrum = super.getSpectrum(fileNameWithoutExtension, spectrumTitle);
+
+        if (spectrum != null && cacheEnabled) {
+
+            nEvictions.addAndGet(segment.put(key, spectrum));
+
+        }
+
+        return spectrum;
+
+    }
+
+    /**
+     * Empties the cache.
+     */
+    public void clearCache() {
+
+        for (Segment segment : segments) {
+
+            segment.clear();
+
+        }
+    }
+
+    /**
+     * Sets whether spectra are cached. Disabling the cache empties it.
+     *
+     * @param cacheEnabled boolean indicating whether spectra are cached
+     */
+    public void setCacheEnabled(
+            boolean cacheEnabled
+    ) {
+
+        this.cacheEnabled = cacheEnabled;
+
+        if (!cacheEnabled) {
+
+            clearCache();
+
+        }
+    }
+
+    /**
+     * Returns a boolean indicating whether spectra are cached.
+     *
+     * @return a boolean indicating whether spectra are cached
+     */
+    public boolean isCacheEnabled() {
+
+        return cacheEnabled;
+
+    }
+
+    /**
+     * Returns the number of spectra found in the cache.
+     *
+     * @return the number of spectra found in the cache
+     */
+    public long getnHits() {
+
+        return nHits.get();
+
+    }
+
+    /**
+     * Returns the number of spectra loaded from the files.
+     *
+     * @return the number of spectra loaded from the files
+     */
+    public long getnMisses() {
+
+        return nMisses.get();
+
+    }
+
+    /**
+     * Returns the number of spectra evicted from the cache.
+     *
+     * @return the number of spectra evicted from the cache
+     */
+    public long getnEvictions() {
+
+        return nEvictions.get();
+
+    }
+
+    /**
+     * Returns the share of the spectra found in the cache, NaN if no spectrum
+     * was requested.
+     *
+     * @return the share of the spectra found in the cache
+     */
+    public double getHitRate() {
+
+        long hits = nHits.get();
+        long total = hits + nMisses.get();
+
+        return total == 0 ? Double.NaN : ((double) hits) / total;
+
+    }
+
+    /**
+     * Returns the estimated size in bytes of the given spectrum.
+     *
+     * @param spectrum the spectrum
+     *
+     * @return the estimated size in bytes of the spectrum
+     */
+    private static long getSize(
+            Spectrum spectrum
+    ) {
+
+        long nPeaks = spectrum.mz == null ? 0 : spectrum.mz.length;
+
+        return SPECTRUM_OVERHEAD + 2 * Double.BYTES * nPeaks;
+
+    }
+
+    /**
+     * Segment of the cache with segmented LRU eviction.
+     */
+    private static class Segment {
+
+        /**
+         * The spectra used once, in the order of use.
+         */
+        private final LinkedHashMap<Long, Spectrum> probationary = new LinkedHashMap<>(16, 0.75f, true);
+        /**
+         * The spectra used more than once, in the order of use.
+         */
+        private final LinkedHashMap<Long, Spectrum> protectedSpace = new LinkedHashMap<>(16, 0.75f, true);
+        /**
+         * The maximal size in bytes of the spectra in the segment.
+         */
+        private final long sizeBudget;
+        /**
+         * The maximal size in bytes of the spectra in the protected space.
+         */
+        private final long protectedBudget;
+        /**
+         * The size in bytes of the spectra in the probationary space.
+         */
+        private long probationarySize = 0;
+        /**
+         * The size in bytes of the spectra in the protected space.
+         */
+        private long protectedSize = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param sizeBudget the maximal size in bytes of the spectra in the
+         * segment
+         */
+        public Segment(
+                long sizeBudget
+        ) {
+
+            this.sizeBudget = sizeBudget;
+            this.protectedBudget = (long) (PROTECTED_SHARE * sizeBudget);
+
+        }
+
+        /**
+         * Returns the spectrum of the given key, null if not in the segment.
+         * Spectra of the probationary space are promoted to the protected
+         * space, spectra leaving the protected space are moved back to the
+         * probationary space.
+         *
+         * @param key the key of the spectrum
+         *
+         * @return the spectrum of the given key
+         */
+        public synchronized Spectrum get(
+                long key
+        ) {
+
+            Spectrum spectrum = protectedSpace.get(key);
+
+            if (spectrum != null) {
+
+                return spectrum;
+
+            }
+
+            spectrum = probationary.remove(key);
+
+            if (spectrum != null) {
+
+                long size = getSize(spectrum);
+                probationarySize -= size;
+                protectedSpace.put(key, spectrum);
+                protectedSize += size;
+
+                Iterator<Entry<Long, Spectrum>> iterator = protectedSpace.entrySet().iterator();
+
+                while (protectedSize > protectedBudget && protectedSpace.size() > 1) {
+
+                    Entry<Long, Spectrum> entry = iterator.next();
+                    long demotedSize = getSize(entry.getValue());
+                    iterator.remove();
+                    protectedSize -= demotedSize;
+                    probationary.put(entry.getKey(), entry.getValue());
+                    probationarySize += demotedSize;
+
+                }
+            }
+
+            return spectrum;
+
+        }
+
+        /**
+         * Adds a spectrum to the probationary space and evicts the least
+         * recently used spectra until the segment fits in its budget.
+         *
+         * @param key the key of the spectrum
+         * @param spectrum the spectrum
+         *
+         * @return the number of spectra evicted
+         */
+        public synchronized int put(
+                long key,
+                Spectrum spectrum
+        ) {
+
+            if (protectedSpace.containsKey(key) || probationary.containsKey(key)) {
+
+                return 0;
+
+            }
+
+            probationary.put(key, spectrum);
+            probationarySize += getSize(spectrum);
+
+            int nEvicted = 0;
+
+            Iterator<Entry<Long, Spectrum>> iterator = probationary.entrySet().iterator();
+
+            while (probationarySize + protectedSize > sizeBudget && iterator.hasNext()) {
+
+                Entry<Long, Spectrum> entry = iterator.next();
+                probationarySize -= getSize(entry.getValue());
+                iterator.remove();
+                nEvicted++;
+
+            }
+
+            iterator = protectedSpace.entrySet().iterator();
+
+            while (probationarySize + protectedSize > sizeBudget && iterator.hasNext()) {
+
+                Entry<Long, Spectrum> entry = iterator.next();
+                protectedSize -= getSize(entry.getValue());
+                iterator.remove();
+                nEvicted++;
+
+            }
+
+            return nEvicted;
+
+        }
+
+        /**
+         * Empties the segment.
+         */
+        public synchronized void clear() {
+
+            probationary.clear();
+            protectedSpace.clear();
+            probationarySize = 0;
+            protectedSize = 0;
+
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package eu.isas.peptideshaker.utils;
+
+import com.compomics.util.experiment.identification.protein_inference.fm_index.FMIndex;
+import com.compomics.util.experiment.io.biology.protein.FastaParameters;
+import com.compomics.util.parameters.identification.advanced.PeptideVariantsParameters;
+import com.compomics.util.parameters.identification.search.SearchParameters;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * FM index stored in a file next to a psdb file, so that the index does not
+ * need to be rebuilt from the FASTA file when the project is opened. The file
+ * starts with a version and a key computed from the content of the FASTA file
+ * and the parameters used to build the index, the index is only used if both
+ * match. Only the classes of the index are accepted when reading the file.
+ *
+ * @author Marc Vaudel
+ */
+public class FmIndexSidecar {
+
+    /**
+     * The extension of the sidecar file, appended to the name of the psdb
+     * file.
+     */
+    public static final String EXTENSION = ".fmi";
+    /**
+     * The version of the file format. Files of other versions are ignored.
+     */
+    public static final int VERSION = 2;
+    /**
+     * The magic number starting the file.
+     */
+    private static final int MAGIC_NUMBER = 0x50534649;
+    /**
+     * The size of the buffers used to read and write the file.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+    /**
+     * The prefixes of the names of the classes accepted when reading an
+     * index.
+     */
+    private static final String[] ALLOWED_CLASS_PREFIXES = new String[]{
+        "com.compomics.util.",
+        "java.lang.",
+        "java.util."
+    };
+
+    /**
+     * Empty default constructor.
+     */
+    private FmIndexSidecar() {
+    }
+
+    /**
+     * Returns the sidecar file of the given psdb file.
+     *
+     * @param psdbFile the psdb file
+     *
+     * @return the sidecar file of the given psdb file
+     */
+    public static File getSidecarFile(
+            File psdbFile
+    ) {
+
+        return new File(psdbFile.getParentFile(), psdbFile.getName() + EXTENSION);
+
+    }
+
+    /**
+     * Returns the key of an FM index built from the given FASTA file and
+     * parameters. The key is computed from the content of the FASTA file and
+     * from the values of the parameters used to build the index.
+     *
+     * @param fastaFile the FASTA file
+     * @param fastaParameters the FASTA parameters
+     * @param peptideVariantsParameters the peptide variants parameters
+     * @param searchParameters the search parameters
+     *
+     * @return the key of the FM index
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * the FASTA file
+     */
+    public static String getKey(
+            File fastaFile,
+            FastaParameters fastaParameters,
+            PeptideVariantsParameters peptideVariantsParameters,
+            SearchParameters searchParameters
+    ) throws IOException {
+
+        MessageDigest messageDigest;
+
+        try {
+
+            messageDigest = MessageDigest.getInstance("SHA-256");
+
+        } catch (NoSuchAlgorithmException e) {
+
+            throw new IOException("Impossible to compute the checksum of " + fastaFile + ".", e);
+
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (InputStream inputStream = new FileInputStream(fastaFile)) {
+
+            int read;
+
+            while ((read = inputStream.read(buffer)) != -1) {
+
+                messageDigest.update(buffer, 0, read);
+
+            }
+        }
+
+        String parameters = getParametersDescription(
+                fastaParameters,
+                peptideVariantsParameters,
+                searchParameters
+        );
+        messageDigest.update(parameters.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder key = new StringBuilder();
+
+        for (byte b : messageDigest.digest()) {
+
+            key.append(String.format("%02x", b));
+
+        }
+
+        return key.toString();
+
+    }
+
+    /**
+     * Returns the key of the FM index stored in the given file, null if the
+     * file does not exist or is not a sidecar file of the current version.
+     *
+     * @param sidecarFile the sidecar file
+     *
+     * @return the key of the FM index stored in the file
+     */
+    public static String readKey(
+            File sidecarFile
+    ) {
+
+        if (!sidecarFile.exists()) {
+
+            return null;
+
+        }
+
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecarFile)))) {
+
+            return readHeader(inputStream);
+
+        } catch (IOException e) {
+
+            return null;
+
+        }
+    }
+
+    /**
+     * Reads the FM index stored in the given file. Null if the file does not
+     * exist, if it was written with another version, if it does not match the
+     * given key, or if it cannot be read.
+     *
+     * @param sidecarFile the sidecar file
+     * @param key the key of the FM index
+     *
+     * @return the FM index stored in the file
+     */
+    public static FMIndex read(
+            File sidecarFile,
+            String key
+    ) {
+
+        if (!sidecarFile.exists()) {
+
+            return null;
+
+        }
+
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecarFile), BUFFER_SIZE))) {
+
+            if (!key.equals(readHeader(inputStream))) {
+
+                return null;
+
+            }
+
+            ObjectInputStream objectInputStream = new FilteredObjectInputStream(inputStream);
+
+            return (FMIndex) objectInputStream.readObject();
+
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+
+            return null;
+
+        }
+    }
+
+    /**
+     * Writes the given FM index in the given file. The index is written in a
+     * temporary file which then replaces the sidecar file, so that an
+     * interrupted writing does not leave a corrupted file.
+     *
+     * @param sidecarFile the sidecar file
+     * @param key the key of the FM index
+     * @param fmIndex the FM index
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the file
+     */
+    public static void write(
+            File sidecarFile,
+            String key,
+            FMIndex fmIndex
+    ) throws IOException {
+
+        File tempFile = new File(sidecarFile.getParentFile(), sidecarFile.getName() + ".tmp");
+
+        try {
+
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE))) {
+
+                outputStream.writeInt(MAGIC_NUMBER);
+                outputStream.writeInt(VERSION);
+                outputStream.writeUTF(key);
+
+                ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream);
+                objectOutputStream.writeObject(fmIndex);
+                objectOutputStream.flush();
+
+            }
+
+            Files.move(tempFile.toPath(), sidecarFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        } finally {
+
+            Files.deleteIfExists(tempFile.toPath());
+
+        }
+    }
+
+    /**
+     * Reads the header of a sidecar file and returns the key of the FM index.
+     * Null if the file is not a sidecar file of the current version.
+     *
+     * @param inputStream the input stream
+     *
+     * @return the key of the FM index
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * the file
+     */
+    private static String readHeader(
+            DataInputStream inputStream
+    ) throws IOException {
+
+        if (inputStream.readInt() != MAGIC_NUMBER || inputStream.readInt() != VERSION) {
+
+            return null;
+
+        }
+
+        return inputStream.readUTF();
+
+    }
+
+    /**
+     * Returns a description of the values of the parameters used to build an
+     * FM index.
+     *
+     * @param fastaParameters the FASTA parameters
+     * @param peptideVariantsParameters the peptide variants parameters
+     * @param searchParameters the search parameters
+     *
+     * @return a description of the values of the parameters
+     */
+    private static String getParametersDescription(
+            FastaParameters fastaParameters,
+            PeptideVariantsParameters peptideVariantsParameters,
+            SearchParameters searchParameters
+    ) {
+
+        StringBuilder description = new StringBuilder();
+
+        description.append("targetDecoy=").append(fastaParameters.isTargetDecoy()).append(';')
+                .append("decoyFlag=").append(fastaParameters.getDecoyFlag()).append(';')
+                .append("decoySuffix=").append(fastaParameters.isDecoySuffix()).append(';')
+                .append("variantType=").append(peptideVariantsParameters.getVariantType()).append(';')
+                .append("nVariants=").append(peptideVariantsParameters.getnVariants()).append(';')
+                .append("nAaDeletions=").append(peptideVariantsParameters.getnAaDeletions()).append(';')
+                .append("nAaInsertions=").append(peptideVariantsParameters.getnAaInsertions()).append(';')
+                .append("nAaSubstitutions=").append(peptideVariantsParameters.getnAaSubstitutions()).append(';')
+                .append("nAaSwap=").append(peptideVariantsParameters.getnAaSwap()).append(';')
+                .append("precursorAccuracy=").append(searchParameters.getPrecursorAccuracy()).append(';')
+                .append("precursorAccuracyType=").append(searchParameters.getPrecursorAccuracyType()).append(';')
+                .append("fragmentIonAccuracy=").append(searchParameters.getFragmentIonAccuracy()).append(';')
+                .append("fragmentAccuracyType=").append(searchParameters.getFragmentAccuracyType()).append(';')
+                .append("minIsotopicCorrection=").append(searchParameters.getMinIsotopicCorrection()).append(';')
+                .append("maxIsotopicCorrection=").append(searchParameters.getMaxIsotopicCorrection()).append(';')
+                .append("fixedModifications=").append(getSortedNames(searchParameters.getModificationParameters().getFixedModifications())).append(';')
+                .append("variableModifications=").append(getSortedNames(searchParameters.getModificationParameters().getVariableModifications())).append(';');
+
+        return description.toString();
+
+    }
+
+    /**
+     * Returns the given names sorted and separated by commas.
+     *
+     * @param names the names
+     *
+     * @return the sorted names
+     */
+    private static String getSortedNames(
+            ArrayList<String> names
+    ) {
+
+        ArrayList<String> sortedNames = new ArrayList<>(names);
+        Collections.sort(sortedNames);
+
+        return String.join(",", sortedNames);
+
+    }
+
+    /**
+     * Object input stream only resolving the classes of an FM index, so that
+     * a tampered sidecar file cannot instantiate arbitrary classes.
+     */
+    private static class FilteredObjectInputStream extends ObjectInputStream {
+
+        /**
+         * Constructor.
+         *
+         * @param inputStream the input stream to read from
+         *
+         * @throws IOException exception thrown if an error occurred while
+         * reading the stream header
+         */
+        private FilteredObjectInputStream(
+                InputStream inputStream
+        ) throws IOException {
+
+            super(inputStream);
+
+        }
+
+        @Override
+        protected Class<?> resolveClass(
+                ObjectStreamClass objectStreamClass
+        ) throws IOException, ClassNotFoundException {
+
+            String className = objectStreamClass.getName();
+
+            if (!isAllowed(className)) {
+
+                throw new InvalidClassException(className, "Class not allowed in an FM index file.");
+
+            }
+
+            return super.resolveClass(objectStreamClass);
+
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(
+                String[] interfaces
+        ) throws IOException, ClassNotFoundException {
+
+            throw new InvalidClassException("Proxy classes are not allowed in an FM index file.");
+
+        }
+
+        /**
+         * Indicates whether the class of the given name is allowed in an FM
+         * index file. Arrays are allowed if their component type is.
+         *
+         * @param className the name of the class
+         *
+         * @return a boolean indicating whether the class is allowed
+         */
+        private static boolean isAllowed(
+                String className
+        ) {
+
+            int dimension = 0;
+
+            while (dimension < className.length() && className.charAt(dimension) == '[') {
+
+                dimension++;
+
+            }
+
+            if (dimension > 0) {
+
+                if (className.length() == dimension + 1) {
+
+                    // array of primitives
+                    return true;
+
+                }
+
+                if (className.charAt(dimension) != 'L' || !className.endsWith(";")) {
+
+                    return false;
+
+                }
+
+                className = className.substring(dimension + 1, className.length() - 1);
+
+            }
+
+            for (String prefix : ALLOWED_CLASS_PREFIXES) {
+
+                if (className.startsWith(prefix)) {
+
+                    return true;
+
+                }
+            }
+
+            return false;
+
+        }
+    }
+}
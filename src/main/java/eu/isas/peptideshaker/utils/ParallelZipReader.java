@@ -0,0 +1,302 @@
+package eu.isas.peptideshaker.utils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the files of a zip file written by the {@link ParallelZipWriter} from
+ * any position, using the index of the blocks saved in the central directory.
+ * Reading starts at the last indexed block before the requested position, so
+ * that only the content between this block and the position is inflated and
+ * skipped.
+ *
+ * @author Marc Vaudel
+ */
+public class ParallelZipReader implements Closeable {
+
+    /**
+     * The zip file.
+     */
+    private final File file;
+    /**
+     * The zip file opened with the zip classes of the JDK, used to read the
+     * central directory.
+     */
+    private final ZipFile zipFile;
+
+    /**
+     * The index of the blocks of a file.
+     */
+    public static class BlockIndex {
+
+        /**
+         * The offset of the compressed content in the zip file.
+         */
+        private final long dataOffset;
+        /**
+         * The number of uncompressed bytes between two indexed blocks.
+         */
+        private final long stride;
+        /**
+         * The offset of the indexed blocks but the first in the compressed
+         * content.
+         */
+        private final long[] blockOffsets;
+
+        /**
+         * Constructor.
+         *
+         * @param dataOffset the offset of the compressed content in the zip
+         * file
+         * @param stride the number of uncompressed bytes between two indexed
+         * blocks
+         * @param blockOffsets the offset of the indexed blocks but the first in
+         * the compressed content
+         */
+        private BlockIndex(
+                long dataOffset,
+                long stride,
+                long[] blockOffsets
+        ) {
+
+            this.dataOffset = dataOffset;
+            this.stride = stride;
+            this.blockOffsets = blockOffsets;
+
+        }
+
+        /**
+         * Returns the number of indexed blocks.
+         *
+         * @return the number of indexed blocks
+         */
+        public int getnBlocks() {
+
+            return blockOffsets.length + 1;
+
+        }
+
+        /**
+         * Returns the number of the indexed block containing the given
+         * position in the uncompressed content.
+         *
+         * @param position the position in the uncompressed content
+         *
+         * @return the number of the indexed block
+         */
+        public int getBlock(
+                long position
+        ) {
+
+            return (int) Math.min(position / stride, blockOffsets.length);
+
+        }
+
+        /**
+         * Returns the position of the given indexed block in the uncompressed
+         * content.
+         *
+         * @param block the number of the indexed block
+         *
+         * @return the position of the block in the uncompressed content
+         */
+        public long getUncompressedOffset(
+                int block
+        ) {
+
+            return block * stride;
+
+        }
+
+        /**
+         * Returns the offset of the given indexed block in the zip file.
+         *
+         * @param block the number of the indexed block
+         *
+         * @return the offset of the block in the zip file
+         */
+        public long getFileOffset(
+                int block
+        ) {
+
+            return block == 0 ? dataOffset : dataOffset + blockOffsets[block - 1];
+
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file the zip file
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * the central directory
+     */
+    public ParallelZipReader(
+            File file
+    ) throws IOException {
+
+        this.file = file;
+        this.zipFile = new ZipFile(file);
+
+    }
+
+    /**
+     * Returns the index of the blocks of the given file.
+     *
+     * @param entryName the name of the file in the zip file
+     *
+     * @return the index of the blocks of the file
+     *
+     * @throws IOException exception thrown if the file is not found or has no
+     * index
+     */
+    public BlockIndex getBlockIndex(
+            String entryName
+    ) throws IOException {
+
+        ZipEntry entry = zipFile.getEntry(entryName);
+
+        if (entry == null) {
+
+            throw new IOException(entryName + " not found in " + file.getAbsolutePath() + ".");
+
+        }
+
+        byte[] extra = entry.getExtra();
+
+        if (extra != null) {
+
+            ByteBuffer buffer = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+
+            while (buffer.remaining() >= 4) {
+
+                int id = buffer.getShort() & 0xFFFF;
+                int length = buffer.getShort() & 0xFFFF;
+
+                if (length > buffer.remaining()) {
+
+                    break;
+
+                }
+
+                if (id == ParallelZipWriter.BLOCK_INDEX_HEADER_ID
+                        && length >= 16
+                        && length % 8 == 0) {
+
+                    long dataOffset = buffer.getLong();
+                    long stride = buffer.getLong();
+                    long[] blockOffsets = new long[(length - 16) / 8];
+
+                    for (int i = 0; i < blockOffsets.length; i++) {
+
+                        blockOffsets[i] = buffer.getLong();
+
+                    }
+
+                    return new BlockIndex(dataOffset, stride, blockOffsets);
+
+                }
+
+                buffer.position(buffer.position() + length);
+
+            }
+        }
+
+        throw new IOException("No block index found for " + entryName + " in " + file.getAbsolutePath() + ".");
+
+    }
+
+    /**
+     * Returns a stream on the uncompressed content of the given file starting
+     * at the given position. The stream must be closed after use.
+     *
+     * @param entryName the name of the file in the zip file
+     * @param position the position in the uncompressed content
+     *
+     * @return a stream on the uncompressed content of the file
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * the zip file
+     */
+    public InputStream getInputStream(
+            String entryName,
+            long position
+    ) throws IOException {
+
+        BlockIndex blockIndex = getBlockIndex(entryName);
+        int block = blockIndex.getBlock(position);
+
+        FileInputStream fileInputStream = new FileInputStream(file);
+
+        try {
+
+            fileInputStream.getChannel().position(blockIndex.getFileOffset(block));
+
+            Inflater inflater = new Inflater(true);
+            InputStream inputStream = new InflaterInputStream(new BufferedInputStream(fileInputStream), inflater) {
+
+                @Override
+                public void close() throws IOException {
+
+                    try {
+
+                        super.close();
+
+                    } finally {
+
+                        inflater.end();
+
+                    }
+                }
+            };
+
+            long toSkip = position - blockIndex.getUncompressedOffset(block);
+
+            while (toSkip > 0) {
+
+                long skipped = inputStream.skip(toSkip);
+
+                if (skipped <= 0) {
+
+                    break;
+
+                }
+
+                toSkip -= skipped;
+
+            }
+
+            return inputStream;
+
+        } catch (IOException | RuntimeException e) {
+
+            fileInputStream.close();
+            throw e;
+
+        }
+    }
+
+    /**
+     * Closes the zip file.
+     *
+     * @throws IOException exception thrown if an error occurred while closing
+     * the file
+     */
+    @Override
+    public void close() throws IOException {
+
+        zipFile.close();
+
+    }
+}
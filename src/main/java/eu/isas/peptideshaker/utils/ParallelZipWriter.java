@@ -0,0 +1,948 @@
+package eu.isas.peptideshaker.utils;
+
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes zip files where the content of every file is deflated in blocks
+ * compressed in parallel. Every block is compressed by a new deflater and
+ * ends with a full flush, so that the blocks are byte aligned and can be
+ * inflated independently, while their concatenation is a standard deflate
+ * stream readable by any zip tool. Entries larger than 4 GB are written using
+ * the Zip64 extensions.
+ *
+ * The central directory record of every file contains an index of the blocks
+ * in an extra field of id {@link #BLOCK_INDEX_HEADER_ID}: the offset of the
+ * compressed content in the zip file, the number of uncompressed bytes between
+ * two indexed blocks, and the offset of every indexed block but the first in
+ * the compressed content, all as longs. The content of a file can be read from
+ * any indexed block by inflating the compressed data with a raw inflater
+ * starting at the offset of the block, see {@link ParallelZipReader}.
+ *
+ * The zip file is written to a temporary file in the same folder, which is
+ * moved into place by {@link #finish()}. If the writer is closed without
+ * being finished, e.g. upon cancellation or error, the temporary file is
+ * deleted.
+ *
+ * @author Marc Vaudel
+ */
+public class ParallelZipWriter implements Closeable {
+
+    /**
+     * The default size of the blocks in bytes.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    /**
+     * The extension of the temporary file.
+     */
+    public static final String TEMP_EXTENSION = ".tmp";
+    /**
+     * The id of the extra field containing the index of the blocks.
+     */
+    public static final int BLOCK_INDEX_HEADER_ID = 0x5053;
+    /**
+     * The maximal number of blocks in the index of a file. If a file contains
+     * more blocks, only every n-th block is indexed so that the extra field
+     * does not exceed its maximal size.
+     */
+    public static final int MAX_INDEXED_BLOCKS = 8000;
+    /**
+     * The size above which entries are written using the Zip64 extensions.
+     * Lower than the 32 bits limit to leave room for the deflate overhead on
+     * incompressible data.
+     */
+    private static final long ZIP64_THRESHOLD = 0xF0000000L;
+    /**
+     * The maximal value of the 32 bits fields.
+     */
+    private static final long ZIP32_MAX = 0xFFFFFFFFL;
+    /**
+     * The maximal number of entries without the Zip64 extensions.
+     */
+    private static final int ZIP32_MAX_ENTRIES = 0xFFFF;
+    /**
+     * The flag indicating that file names are encoded in UTF-8.
+     */
+    private static final int UTF8_FLAG = 1 << 11;
+    /**
+     * The zip file to write.
+     */
+    private final File zipFile;
+    /**
+     * The temporary file written.
+     */
+    private final File tempFile;
+    /**
+     * Boolean indicating whether the run was canceled while adding a file.
+     */
+    private boolean canceled = false;
+    /**
+     * Boolean indicating whether the central directory was written.
+     */
+    private boolean completed = false;
+    /**
+     * Boolean indicating whether the writer is closed.
+     */
+    private boolean closed = false;
+    /**
+     * The stream writing the file.
+     */
+    private final OutputStream outputStream;
+    /**
+     * The channel of the file, used to complete the local headers.
+     */
+    private final FileChannel fileChannel;
+    /**
+     * The size of the blocks in bytes.
+     */
+    private final int blockSize;
+    /**
+     * The compression level.
+     */
+    private final int compressionLevel;
+    /**
+     * The number of blocks compressed at the same time.
+     */
+    private final int nBlocksInProgress;
+    /**
+     * The pool compressing the blocks.
+     */
+    private final ExecutorService pool;
+    /**
+     * The entries written.
+     */
+    private final ArrayList<Entry> entries = new ArrayList<>();
+    /**
+     * The number of bytes written to the file.
+     */
+    private long position = 0;
+    /**
+     * The number of uncompressed bytes added to the file.
+     */
+    private long uncompressedBytes = 0;
+
+    /**
+     * An entry of the zip file.
+     */
+    private static class Entry {
+
+        /**
+         * The name of the entry.
+         */
+        private byte[] name;
+        /**
+         * The compression method.
+         */
+        private int method;
+        /**
+         * The modification time in DOS format.
+         */
+        private long dosTime;
+        /**
+         * The checksum of the uncompressed content.
+         */
+        private long crc;
+        /**
+         * The size of the compressed content.
+         */
+        private long compressedSize;
+        /**
+         * The size of the uncompressed content.
+         */
+        private long uncompressedSize;
+        /**
+         * The offset of the local header in the file.
+         */
+        private long headerOffset;
+        /**
+         * Boolean indicating whether the local header uses the Zip64
+         * extensions.
+         */
+        private boolean zip64;
+        /**
+         * Boolean indicating whether the entry is a folder.
+         */
+        private boolean folder;
+        /**
+         * The offset of the compressed content in the file.
+         */
+        private long dataOffset;
+        /**
+         * The number of uncompressed bytes between two indexed blocks.
+         */
+        private long indexStride;
+        /**
+         * The offset of the indexed blocks but the first in the compressed
+         * content.
+         */
+        private final ArrayList<Long> blockOffsets = new ArrayList<>();
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param zipFile the zip file to write
+     * @param nThreads the number of threads to use
+     *
+     * @throws IOException exception thrown if an error occurred while opening
+     * the file
+     */
+    public ParallelZipWriter(
+            File zipFile,
+            int nThreads
+    ) throws IOException {
+
+        this(
+                zipFile,
+                nThreads,
+                DEFAULT_BLOCK_SIZE,
+                Deflater.DEFAULT_COMPRESSION
+        );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param zipFile the zip file to write
+     * @param nThreads the number of threads to use
+     * @param blockSize the size of the blocks in bytes
+     * @param compressionLevel the compression level
+     *
+     * @throws IOException exception thrown if an error occurred while opening
+     * the file
+     */
+    public ParallelZipWriter(
+            File zipFile,
+            int nThreads,
+            int blockSize,
+            int compressionLevel
+    ) throws IOException {
+
+        this.zipFile = zipFile;
+        this.tempFile = getTempFile(zipFile);
+
+        FileOutputStream fileOutputStream = new FileOutputStream(tempFile);
+
+        this.fileChannel = fileOutputStream.getChannel();
+        this.outputStream = new BufferedOutputStream(Channels.newOutputStream(fileChannel), DEFAULT_BLOCK_SIZE);
+        this.blockSize = blockSize;
+        this.compressionLevel = compressionLevel;
+        this.nBlocksInProgress = 2 * nThreads;
+        this.pool = Executors.newFixedThreadPool(nThreads);
+
+    }
+
+    /**
+     * Adds a folder to the zip file.
+     *
+     * @param folderName the name of the folder
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the file
+     */
+    public void addFolder(
+            String folderName
+    ) throws IOException {
+
+        Entry entry = new Entry();
+        entry.name = (folderName.endsWith("/") ? folderName : folderName + "/").getBytes(StandardCharsets.UTF_8);
+        entry.method = 0;
+        entry.dosTime = getDosTime(System.currentTimeMillis());
+        entry.folder = true;
+
+        writeLocalHeader(entry);
+        entries.add(entry);
+
+    }
+
+    /**
+     * Adds a file at the root of the zip file.
+     *
+     * @param file the file to add
+     * @param waitingHandler a waiting handler to display progress to the user
+     * and cancel the process (can be null)
+     * @param totalUncompressedSize the total size of the files to add, used to
+     * display progress
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * or writing a file
+     */
+    public void addFile(
+            File file,
+            WaitingHandler waitingHandler,
+            long totalUncompressedSize
+    ) throws IOException {
+
+        addFile(
+                null,
+                file,
+                waitingHandler,
+                totalUncompressedSize
+        );
+    }
+
+    /**
+     * Adds a file to the given folder of the zip file.
+     *
+     * @param folderName the name of the folder, null for the root of the zip
+     * file
+     * @param file the file to add
+     * @param waitingHandler a waiting handler to display progress to the user
+     * and cancel the process (can be null)
+     * @param totalUncompressedSize the total size of the files to add, used to
+     * display progress
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * or writing a file
+     */
+    public void addFile(
+            String folderName,
+            File file,
+            WaitingHandler waitingHandler,
+            long totalUncompressedSize
+    ) throws IOException {
+
+        String entryName = folderName == null ? file.getName()
+                : folderName.endsWith("/") ? folderName + file.getName()
+                : folderName + "/" + file.getName();
+
+        long fileSize = file.length();
+
+        Entry entry = new Entry();
+        entry.name = entryName.getBytes(StandardCharsets.UTF_8);
+        entry.method = Deflater.DEFLATED;
+        entry.dosTime = getDosTime(file.lastModified());
+        entry.zip64 = fileSize >= ZIP64_THRESHOLD;
+
+        long nBlocks = Math.max(1, (fileSize + blockSize - 1) / blockSize);
+        long blocksPerIndex = (nBlocks + MAX_INDEXED_BLOCKS - 1) / MAX_INDEXED_BLOCKS;
+        entry.indexStride = blocksPerIndex * blockSize;
+
+        writeLocalHeader(entry);
+
+        long dataStart = position;
+        entry.dataOffset = dataStart;
+        long blockIndex = 0;
+        CRC32 crc = new CRC32();
+        ArrayDeque<Future<byte[]>> blocksInProgress = new ArrayDeque<>(nBlocksInProgress);
+
+        try (InputStream inputStream = new FileInputStream(file)) {
+
+            byte[] block = readBlock(inputStream);
+
+            while (true) {
+
+                if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+
+                    blocksInProgress.forEach(future -> future.cancel(true));
+                    canceled = true;
+                    return;
+
+                }
+
+                byte[] nextBlock = block.length == blockSize ? readBlock(inputStream) : new byte[0];
+                boolean last = nextBlock.length == 0;
+
+                crc.update(block);
+                entry.uncompressedSize += block.length;
+
+                final byte[] blockContent = block;
+                blocksInProgress.add(pool.submit(() -> deflateBlock(blockContent, last)));
+
+                while (!blocksInProgress.isEmpty() && (blocksInProgress.size() >= nBlocksInProgress || last)) {
+
+                    blockIndex = writeBlock(entry, blocksInProgress.poll(), blockIndex);
+
+                }
+
+                uncompressedBytes += block.length;
+
+                if (waitingHandler != null && totalUncompressedSize > 0) {
+
+                    waitingHandler.setSecondaryProgressCounter((int) (100 * uncompressedBytes / totalUncompressedSize));
+
+                }
+
+                if (last) {
+
+                    break;
+
+                }
+
+                block = nextBlock;
+
+            }
+        }
+
+        entry.crc = crc.getValue();
+        entry.compressedSize = position - dataStart;
+
+        if (!entry.zip64 && (entry.compressedSize > ZIP32_MAX || entry.uncompressedSize > ZIP32_MAX)) {
+
+            throw new IOException("The size of " + file.getAbsolutePath() + " changed while zipping.");
+
+        }
+
+        completeLocalHeader(entry);
+        entries.add(entry);
+
+    }
+
+    /**
+     * Writes the central directory, closes the file, and moves it into place.
+     * If the run was canceled while adding a file, the file is deleted and
+     * nothing is written.
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * or moving the file
+     */
+    public void finish() throws IOException {
+
+        if (closed) {
+
+            throw new IOException("The zip file is already closed.");
+
+        }
+
+        if (!canceled) {
+
+            writeCentralDirectory();
+            completed = true;
+
+        }
+
+        close();
+
+        if (completed) {
+
+            try {
+
+                Files.move(tempFile.toPath(), zipFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            } finally {
+
+                tempFile.delete();
+
+            }
+        }
+    }
+
+    /**
+     * Closes the writer. If the writer was not finished, or if an error
+     * occurred while closing, the temporary file is deleted.
+     *
+     * @throws IOException exception thrown if an error occurred while closing
+     * the file
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (closed) {
+
+            return;
+
+        }
+
+        closed = true;
+
+        pool.shutdownNow();
+
+        try {
+
+            outputStream.close();
+
+        } catch (IOException e) {
+
+            completed = false;
+            throw e;
+
+        } finally {
+
+            if (!completed) {
+
+                tempFile.delete();
+
+            }
+        }
+
+        try {
+
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+        }
+    }
+
+    /**
+     * Returns the temporary file used while writing the given zip file.
+     *
+     * @param zipFile the zip file
+     *
+     * @return the temporary file
+     */
+    public static File getTempFile(
+            File zipFile
+    ) {
+
+        return new File(zipFile.getParentFile(), zipFile.getName() + TEMP_EXTENSION);
+
+    }
+
+    /**
+     * Writes the central directory and the end of central directory records.
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the file
+     */
+    private void writeCentralDirectory() throws IOException {
+
+        long centralDirectoryOffset = position;
+
+        for (Entry entry : entries) {
+
+            writeCentralDirectoryHeader(entry);
+
+        }
+
+        long centralDirectorySize = position - centralDirectoryOffset;
+
+        boolean zip64 = entries.size() >= ZIP32_MAX_ENTRIES
+                || centralDirectoryOffset >= ZIP32_MAX
+                || centralDirectorySize >= ZIP32_MAX;
+
+        if (zip64) {
+
+            long zip64EndOffset = position;
+
+            ByteBuffer buffer = newBuffer(56);
+            buffer.putInt(0x06064b50);
+            buffer.putLong(44);
+            buffer.putShort((short) 45);
+            buffer.putShort((short) 45);
+            buffer.putInt(0);
+            buffer.putInt(0);
+            buffer.putLong(entries.size());
+            buffer.putLong(entries.size());
+            buffer.putLong(centralDirectorySize);
+            buffer.putLong(centralDirectoryOffset);
+            write(buffer);
+
+            buffer = newBuffer(20);
+            buffer.putInt(0x07064b50);
+            buffer.putInt(0);
+            buffer.putLong(zip64EndOffset);
+            buffer.putInt(1);
+            write(buffer);
+
+        }
+
+        ByteBuffer buffer = newBuffer(22);
+        buffer.putInt(0x06054b50);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) Math.min(entries.size(), ZIP32_MAX_ENTRIES));
+        buffer.putShort((short) Math.min(entries.size(), ZIP32_MAX_ENTRIES));
+        buffer.putInt((int) Math.min(centralDirectorySize, ZIP32_MAX));
+        buffer.putInt((int) Math.min(centralDirectoryOffset, ZIP32_MAX));
+        buffer.putShort((short) 0);
+        write(buffer);
+
+    }
+
+    /**
+     * Deflates a block. The deflater ends the block with a full flush, or
+     * finishes the stream if the block is the last one.
+     *
+     * @param block the block to deflate
+     * @param last boolean indicating whether the block is the last of the file
+     *
+     * @return the deflated block
+     */
+    private byte[] deflateBlock(
+            byte[] block,
+            boolean last
+    ) {
+
+        Deflater deflater = new Deflater(compressionLevel, true);
+
+        try {
+
+            deflater.setInput(block);
+
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream(block.length / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+
+            if (last) {
+
+                deflater.finish();
+
+                while (!deflater.finished()) {
+
+                    int length = deflater.deflate(buffer);
+                    deflated.write(buffer, 0, length);
+
+                }
+
+            } else {
+
+                int length;
+
+                do {
+
+                    length = deflater.deflate(buffer, 0, buffer.length, Deflater.FULL_FLUSH);
+                    deflated.write(buffer, 0, length);
+
+                } while (length == buffer.length);
+
+            }
+
+            return deflated.toByteArray();
+
+        } finally {
+
+            deflater.end();
+
+        }
+    }
+
+    /**
+     * Waits for the compression of a block, writes it, and adds it to the
+     * index of the entry if needed.
+     *
+     * @param entry the entry
+     * @param future the future of the compressed block
+     * @param blockIndex the index of the block in the file
+     *
+     * @return the index of the next block
+     *
+     * @throws IOException exception thrown if an error occurred while
+     * compressing or writing the block
+     */
+    private long writeBlock(
+            Entry entry,
+            Future<byte[]> future,
+            long blockIndex
+    ) throws IOException {
+
+        byte[] deflated;
+
+        try {
+
+            deflated = future.get();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while zipping.", e);
+
+        } catch (ExecutionException e) {
+
+            throw new IOException("An error occurred while compressing.", e.getCause());
+
+        }
+
+        if (blockIndex > 0 && (blockIndex * blockSize) % entry.indexStride == 0) {
+
+            entry.blockOffsets.add(position - entry.dataOffset);
+
+        }
+
+        outputStream.write(deflated);
+        position += deflated.length;
+
+        return blockIndex + 1;
+
+    }
+
+    /**
+     * Reads a block from the given stream. The block is shorter than the
+     * block size only at the end of the stream.
+     *
+     * @param inputStream the input stream
+     *
+     * @return the block
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * the stream
+     */
+    private byte[] readBlock(
+            InputStream inputStream
+    ) throws IOException {
+
+        byte[] block = new byte[blockSize];
+        int length = 0;
+
+        while (length < blockSize) {
+
+            int read = inputStream.read(block, length, blockSize - length);
+
+            if (read == -1) {
+
+                break;
+
+            }
+
+            length += read;
+
+        }
+
+        if (length < blockSize) {
+
+            byte[] shortBlock = new byte[length];
+            System.arraycopy(block, 0, shortBlock, 0, length);
+            return shortBlock;
+
+        }
+
+        return block;
+
+    }
+
+    /**
+     * Writes the local header of the given entry. The checksum and sizes of
+     * files are written after the content using
+     * {@link #completeLocalHeader(Entry)}.
+     *
+     * @param entry the entry
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the file
+     */
+    private void writeLocalHeader(
+            Entry entry
+    ) throws IOException {
+
+        entry.headerOffset = position;
+
+        int extraLength = entry.zip64 ? 20 : 0;
+
+        ByteBuffer buffer = newBuffer(30 + entry.name.length + extraLength);
+        buffer.putInt(0x04034b50);
+        buffer.putShort((short) (entry.zip64 ? 45 : 20));
+        buffer.putShort((short) UTF8_FLAG);
+        buffer.putShort((short) entry.method);
+        buffer.putInt((int) entry.dosTime);
+        buffer.putInt(0);
+        buffer.putInt(entry.zip64 ? (int) ZIP32_MAX : 0);
+        buffer.putInt(entry.zip64 ? (int) ZIP32_MAX : 0);
+        buffer.putShort((short) entry.name.length);
+        buffer.putShort((short) extraLength);
+        buffer.put(entry.name);
+
+        if (entry.zip64) {
+
+            buffer.putShort((short) 0x0001);
+            buffer.putShort((short) 16);
+            buffer.putLong(0);
+            buffer.putLong(0);
+
+        }
+
+        write(buffer);
+
+    }
+
+    /**
+     * Writes the checksum and sizes of the given entry in its local header.
+     *
+     * @param entry the entry
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the file
+     */
+    private void completeLocalHeader(
+            Entry entry
+    ) throws IOException {
+
+        outputStream.flush();
+
+        ByteBuffer buffer = newBuffer(4);
+        buffer.putInt((int) entry.crc);
+        buffer.flip();
+        fileChannel.write(buffer, entry.headerOffset + 14);
+
+        if (entry.zip64) {
+
+            buffer = newBuffer(16);
+            buffer.putLong(entry.uncompressedSize);
+            buffer.putLong(entry.compressedSize);
+            buffer.flip();
+            fileChannel.write(buffer, entry.headerOffset + 30 + entry.name.length + 4);
+
+        } else {
+
+            buffer = newBuffer(8);
+            buffer.putInt((int) entry.compressedSize);
+            buffer.putInt((int) entry.uncompressedSize);
+            buffer.flip();
+            fileChannel.write(buffer, entry.headerOffset + 18);
+
+        }
+    }
+
+    /**
+     * Writes the central directory header of the given entry.
+     *
+     * @param entry the entry
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the file
+     */
+    private void writeCentralDirectoryHeader(
+            Entry entry
+    ) throws IOException {
+
+        boolean offset64 = entry.headerOffset >= ZIP32_MAX;
+        int zip64Length = (entry.zip64 ? 16 : 0) + (offset64 ? 8 : 0);
+        int zip64ExtraLength = zip64Length > 0 ? 4 + zip64Length : 0;
+
+        int indexExtraLength = entry.folder ? 0 : 4 + 16 + 8 * entry.blockOffsets.size();
+
+        ByteBuffer buffer = newBuffer(46 + entry.name.length + zip64ExtraLength + indexExtraLength);
+        buffer.putInt(0x02014b50);
+        buffer.putShort((short) 45);
+        buffer.putShort((short) (entry.zip64 || offset64 ? 45 : 20));
+        buffer.putShort((short) UTF8_FLAG);
+        buffer.putShort((short) entry.method);
+        buffer.putInt((int) entry.dosTime);
+        buffer.putInt((int) entry.crc);
+        buffer.putInt(entry.zip64 ? (int) ZIP32_MAX : (int) entry.compressedSize);
+        buffer.putInt(entry.zip64 ? (int) ZIP32_MAX : (int) entry.uncompressedSize);
+        buffer.putShort((short) entry.name.length);
+        buffer.putShort((short) (zip64ExtraLength + indexExtraLength));
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putInt(entry.folder ? 0x10 : 0);
+        buffer.putInt(offset64 ? (int) ZIP32_MAX : (int) entry.headerOffset);
+        buffer.put(entry.name);
+
+        if (zip64Length > 0) {
+
+            buffer.putShort((short) 0x0001);
+            buffer.putShort((short) zip64Length);
+
+            if (entry.zip64) {
+
+                buffer.putLong(entry.uncompressedSize);
+                buffer.putLong(entry.compressedSize);
+
+            }
+
+            if (offset64) {
+
+                buffer.putLong(entry.headerOffset);
+
+            }
+        }
+
+        if (!entry.folder) {
+
+            buffer.putShort((short) BLOCK_INDEX_HEADER_ID);
+            buffer.putShort((short) (indexExtraLength - 4));
+            buffer.putLong(entry.dataOffset);
+            buffer.putLong(entry.indexStride);
+
+            for (long blockOffset : entry.blockOffsets) {
+
+                buffer.putLong(blockOffset);
+
+            }
+        }
+
+        write(buffer);
+
+    }
+
+    /**
+     * Writes the content of the given buffer to the file.
+     *
+     * @param buffer the buffer
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the file
+     */
+    private void write(
+            ByteBuffer buffer
+    ) throws IOException {
+
+        outputStream.write(buffer.array(), 0, buffer.position());
+        position += buffer.position();
+
+    }
+
+    /**
+     * Returns a new little endian buffer of the given capacity.
+     *
+     * @param capacity the capacity of the buffer
+     *
+     * @return a new buffer
+     */
+    private static ByteBuffer newBuffer(
+            int capacity
+    ) {
+
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+
+    }
+
+    /**
+     * Converts the given time to the DOS format used in zip files.
+     *
+     * @param time the time in milliseconds since the epoch
+     *
+     * @return the time in DOS format
+     */
+    private static long getDosTime(
+            long time
+    ) {
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+
+        int year = calendar.get(Calendar.YEAR);
+
+        if (year < 1980) {
+
+            return (1 << 21) | (1 << 16);
+
+        }
+
+        return ((long) (year - 1980) << 25)
+                | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+
+    }
+}
@@ -0,0 +1,1160 @@
+package eu.isas.peptideshaker.utils;
+
+import com.compomics.util.experiment.biology.enzymes.Enzyme;
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import com.compomics.util.experiment.identification.spectrum_annotation.AnnotationParameters;
+import com.compomics.util.experiment.identification.spectrum_assumptions.PeptideAssumption;
+import com.compomics.util.parameters.identification.advanced.ModificationLocalizationParameters;
+import com.compomics.util.parameters.identification.advanced.SequenceMatchingParameters;
+import com.compomics.util.parameters.identification.search.ModificationParameters;
+import com.compomics.util.parameters.identification.search.SearchParameters;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Store of the Percolator features that do not depend on retention time or
+ * fragmentation predictions, saved in a file so that they can be reused by
+ * later exports of the same project with other predictions. The features are
+ * kept in columns indexed by a key computed from the spectrum match and the
+ * peptide assumption. The file starts with a version and a key computed from
+ * the project, the FASTA file, and the parameters used to compute the
+ * features, the features are only reused if both match.
+ *
+ * The features loaded from the file are only read during an export, so that
+ * the threads of the export can query them without locking. The features
+ * computed during the export are collected by each thread in its own
+ * {@link Batch}, and the batches are merged into the store when it is saved.
+ *
+ * @author Marc Vaudel
+ */
+public class PercolatorFeatureStore {
+
+    /**
+     * The version of the file format. Files of other versions are ignored.
+     */
+    public static final int VERSION = 2;
+    /**
+     * The magic number starting the file.
+     */
+    private static final int MAGIC_NUMBER = 0x50535046;
+    /**
+     * The size of the header in bytes: magic number, version, parameters key,
+     * and number of PSMs.
+     */
+    private static final int HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES;
+    /**
+     * The number of bytes per PSM in the file, without the sequence.
+     */
+    private static final int ROW_SIZE = 2 * Long.BYTES + 3 * Double.BYTES + 1 + Integer.BYTES;
+    /**
+     * The size of the buffers used to read and write the file.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+    /**
+     * Flag indicating a decoy peptide.
+     */
+    private static final byte DECOY = 1;
+    /**
+     * Flag indicating that the enzymaticity was computed.
+     */
+    private static final byte ENZYMATICITY = 1 << 1;
+    /**
+     * The offset of the enzymaticity flags.
+     */
+    private static final int ENZYMATICITY_SHIFT = 2;
+    /**
+     * The file where the features are saved.
+     */
+    private final File file;
+    /**
+     * The key of the project, FASTA file, and parameters used to compute the
+     * features.
+     */
+    private final long parametersKey;
+    /**
+     * The features of the store, only modified when saving.
+     */
+    private final Columns columns = new Columns();
+    /**
+     * The number of PSMs saved in the file.
+     */
+    private int nSaved = 0;
+    /**
+     * The batches of features computed since the store was loaded or saved.
+     */
+    private final ArrayList<Batch> batches = new ArrayList<>();
+
+    /**
+     * Constructor for an empty store.
+     *
+     * @param file the file where the features are saved
+     * @param parametersKey the key of the project, FASTA file, and parameters
+     * used to compute the features
+     */
+    private PercolatorFeatureStore(
+            File file,
+            long parametersKey
+    ) {
+
+        this.file = file;
+        this.parametersKey = parametersKey;
+
+    }
+
+    /**
+     * Returns the store saved in the given file. An empty store is returned if
+     * the file does not exist, was written with another version, for another
+     * project, FASTA file, or parameters, or cannot be read.
+     *
+     * @param file the file where the features are saved
+     * @param projectName the unique name of the project
+     * @param fastaFile the FASTA file of the project
+     * @param searchParameters the search parameters
+     * @param sequenceMatchingParameters the sequence matching parameters
+     * @param annotationParameters the annotation parameters
+     * @param modificationLocalizationParameters the modification localization
+     * parameters
+     * @param modificationParameters the modification parameters
+     *
+     * @return the store saved in the given file
+     */
+    public static PercolatorFeatureStore load(
+            File file,
+            String projectName,
+            File fastaFile,
+            SearchParameters searchParameters,
+            SequenceMatchingParameters sequenceMatchingParameters,
+            AnnotationParameters annotationParameters,
+            ModificationLocalizationParameters modificationLocalizationParameters,
+            ModificationParameters modificationParameters
+    ) {
+
+        long parametersKey = getParametersKey(
+                projectName,
+                fastaFile,
+                searchParameters,
+                sequenceMatchingParameters,
+                annotationParameters,
+                modificationLocalizationParameters,
+                modificationParameters
+        );
+
+        PercolatorFeatureStore store = new PercolatorFeatureStore(file, parametersKey);
+
+        if (file.exists()) {
+
+            try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+
+                if (inputStream.readInt() == MAGIC_NUMBER
+                        && inputStream.readInt() == VERSION
+                        && inputStream.readLong() == parametersKey) {
+
+                    store.columns.read(inputStream, file.length() - HEADER_SIZE);
+                    store.nSaved = store.columns.nRows;
+
+                }
+
+            } catch (IOException e) {
+
+                // the features will be computed again
+                store = new PercolatorFeatureStore(file, parametersKey);
+
+            }
+        }
+
+        return store;
+
+    }
+
+    /**
+     * Returns the key of the features of the given peptide assumption.
+     *
+     * @param spectrumMatch the spectrum match
+     * @param peptideAssumption the peptide assumption
+     *
+     * @return the key of the features
+     */
+    public static long getKey(
+            SpectrumMatch spectrumMatch,
+            PeptideAssumption peptideAssumption
+    ) {
+
+        return PercolatorUtils.getPsmKey(
+                String.join("_",
+                        Long.toString(spectrumMatch.getKey()),
+                        Long.toString(peptideAssumption.getPeptide().getKey()),
+                        Integer.toString(peptideAssumption.getIdentificationCharge())
+                )
+        );
+
+    }
+
+    /**
+     * Returns the features of the given key loaded from the file, null if not
+     * in the store. The features of the batches are not returned before the
+     * store is saved.
+     *
+     * @param key the key of the features
+     *
+     * @return the features of the given key
+     */
+    public PsmFeatures get(
+            long key
+    ) {
+
+        return columns.get(key);
+
+    }
+
+    /**
+     * Returns a new batch where a thread can collect the features it computes.
+     * The batch is merged into the store when the store is saved.
+     *
+     * @return a new batch
+     */
+    public synchronized Batch newBatch() {
+
+        Batch batch = new Batch();
+        batches.add(batch);
+
+        return batch;
+
+    }
+
+    /**
+     * Merges the batches into the store and saves it in its file if features
+     * were added. The store is written in a temporary file which then
+     * replaces the file, so that an interrupted writing does not leave a
+     * corrupted file. This method must be called once the threads using the
+     * store are done.
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the file
+     */
+    public synchronized void save() throws IOException {
+
+        for (Batch batch : batches) {
+
+            columns.addAll(batch.columns);
+
+        }
+
+        batches.clear();
+
+        if (columns.nRows == nSaved) {
+
+            return;
+
+        }
+
+        File tempFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+
+        try {
+
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE))) {
+
+                outputStream.writeInt(MAGIC_NUMBER);
+                outputStream.writeInt(VERSION);
+                outputStream.writeLong(parametersKey);
+                columns.write(outputStream);
+
+            }
+
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            nSaved = columns.nRows;
+
+        } finally {
+
+            Files.deleteIfExists(tempFile.toPath());
+
+        }
+    }
+
+    /**
+     * Returns the number of PSMs in the store, without the batches not saved
+     * yet.
+     *
+     * @return the number of PSMs in the store
+     */
+    public synchronized int getnPsms() {
+
+        return columns.nRows;
+
+    }
+
+    /**
+     * Returns a key computed from the project, the FASTA file, and the
+     * parameters used to compute the features. The key is computed from the
+     * values of the fields the features depend on, so that it is stable
+     * across versions of the parameter classes.
+     *
+     * @param projectName the unique name of the project
+     * @param fastaFile the FASTA file of the project
+     * @param searchParameters the search parameters
+     * @param sequenceMatchingParameters the sequence matching parameters
+     * @param annotationParameters the annotation parameters
+     * @param modificationLocalizationParameters the modification localization
+     * parameters
+     * @param modificationParameters the modification parameters
+     *
+     * @return the key of the parameters
+     */
+    private static long getParametersKey(
+            String projectName,
+            File fastaFile,
+            SearchParameters searchParameters,
+            SequenceMatchingParameters sequenceMatchingParameters,
+            AnnotationParameters annotationParameters,
+            ModificationLocalizationParameters modificationLocalizationParameters,
+            ModificationParameters modificationParameters
+    ) {
+
+        StringBuilder fields = new StringBuilder();
+
+        // Project and FASTA file, the decoy flag and the enzymaticity depend on the protein sequences
+        appendField(fields, "project", projectName);
+        appendField(fields, "fasta", fastaFile.getAbsolutePath());
+        appendField(fields, "fasta_length", fastaFile.length());
+        appendField(fields, "fasta_modified", fastaFile.lastModified());
+
+        // Precursor m/z
+        appendField(fields, "precursor_ppm", searchParameters.isPrecursorAccuracyTypePpm());
+        appendField(fields, "precursor_accuracy", searchParameters.getPrecursorAccuracy());
+        appendField(fields, "min_isotope", searchParameters.getMinIsotopicCorrection());
+        appendField(fields, "max_isotope", searchParameters.getMaxIsotopicCorrection());
+        appendField(fields, "min_charge", searchParameters.getMinChargeSearched());
+        appendField(fields, "max_charge", searchParameters.getMaxChargeSearched());
+
+        // Fragment ions
+        appendField(fields, "fragment_accuracy", searchParameters.getFragmentIonAccuracy());
+        appendField(fields, "fragment_accuracy_type", searchParameters.getFragmentAccuracyType());
+        appendSortedField(fields, "forward_ions", searchParameters.getForwardIons());
+        appendSortedField(fields, "rewind_ions", searchParameters.getRewindIons());
+
+        // Enzymes
+        ArrayList<String> enzymes = new ArrayList<>();
+
+        if (searchParameters.getDigestionParameters().hasEnzymes()) {
+
+            for (Enzyme enzyme : searchParameters.getDigestionParameters().getEnzymes()) {
+
+                enzymes.add(enzyme.getName());
+
+            }
+        }
+
+        appendSortedField(fields, "enzymes", enzymes);
+
+        // Modifications
+        appendSortedField(fields, "fixed_modifications", modificationParameters.getFixedModifications());
+        appendSortedField(fields, "variable_modifications", modificationParameters.getVariableModifications());
+        appendSortedField(fields, "refinement_fixed_modifications", modificationParameters.getRefinementFixedModifications());
+        appendSortedField(fields, "refinement_variable_modifications", modificationParameters.getRefinementVariableModifications());
+
+        // Sequence matching
+        appendField(fields, "sequence_matching_type", sequenceMatchingParameters.getSequenceMatchingType());
+        appendField(fields, "sequence_matching_limit_x", sequenceMatchingParameters.getLimitX());
+
+        SequenceMatchingParameters localizationSequenceMatchingParameters = modificationLocalizationParameters.getSequenceMatchingParameters();
+        appendField(fields, "localization_sequence_matching_type", localizationSequenceMatchingParameters.getSequenceMatchingType());
+        appendField(fields, "localization_sequence_matching_limit_x", localizationSequenceMatchingParameters.getLimitX());
+
+        // Annotation
+        appendField(fields, "annotation_accuracy", annotationParameters.getFragmentIonAccuracy());
+        appendField(fields, "annotation_intensity_limit", annotationParameters.getAnnotationIntensityLimit());
+        appendField(fields, "annotation_ties_resolution", annotationParameters.getTiesResolution());
+
+        ArrayList<String> ionTypes = new ArrayList<>();
+
+        for (Map.Entry<?, ? extends Collection<?>> entry : annotationParameters.getIonTypes().entrySet()) {
+
+            ArrayList<String> subTypes = toSortedStrings(entry.getValue());
+            ionTypes.add(entry.getKey() + ":" + String.join(",", subTypes));
+
+        }
+
+        appendSortedField(fields, "annotation_ion_types", ionTypes);
+
+        try {
+
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            byte[] digest = messageDigest.digest(fields.toString().getBytes(StandardCharsets.UTF_8));
+            long key = 0;
+
+            for (int i = 0; i < Long.BYTES; i++) {
+
+                key = (key << 8) | (digest[i] & 0xff);
+
+            }
+
+            return key;
+
+        } catch (NoSuchAlgorithmException e) {
+
+            throw new RuntimeException("Impossible to compute the key of the Percolator parameters.", e);
+
+        }
+    }
+
+    /**
+     * Appends a field to the description of the parameters.
+     *
+     * @param fields the description of the parameters
+     * @param name the name of the field
+     * @param value the value of the field
+     */
+    private static void appendField(
+            StringBuilder fields,
+            String name,
+            Object value
+    ) {
+
+        fields.append(name).append('=').append(value).append('\n');
+
+    }
+
+    /**
+     * Appends a field containing a collection to the description of the
+     * parameters. The values are sorted so that the order of the collection
+     * does not change the key.
+     *
+     * @param fields the description of the parameters
+     * @param name the name of the field
+     * @param values the values of the field, can be null
+     */
+    private static void appendSortedField(
+            StringBuilder fields,
+            String name,
+            Collection<?> values
+    ) {
+
+        appendField(fields, name, String.join(",", toSortedStrings(values)));
+
+    }
+
+    /**
+     * Returns the values of the given collection as sorted strings.
+     *
+     * @param values the values, can be null
+     *
+     * @return the values as sorted strings
+     */
+    private static ArrayList<String> toSortedStrings(
+            Collection<?> values
+    ) {
+
+        ArrayList<String> strings = new ArrayList<>();
+
+        if (values != null) {
+
+            for (Object value : values) {
+
+                strings.add(String.valueOf(value));
+
+            }
+        }
+
+        Collections.sort(strings);
+
+        return strings;
+
+    }
+
+    /**
+     * The features computed by a thread during an export. A batch is not
+     * thread safe and must only be used by the thread that created it.
+     */
+    public static class Batch {
+
+        /**
+         * The features of the batch.
+         */
+        private final Columns columns = new Columns();
+
+        /**
+         * Constructor.
+         */
+        private Batch() {
+
+        }
+
+        /**
+         * Adds the features of the given key to the batch.
+         *
+         * @param key the key of the features
+         * @param psmFeatures the features
+         */
+        public void put(
+                long key,
+                PsmFeatures psmFeatures
+        ) {
+
+            columns.put(key, psmFeatures);
+
+        }
+
+        /**
+         * Returns the number of PSMs in the batch.
+         *
+         * @return the number of PSMs in the batch
+         */
+        public int getnPsms() {
+
+            return columns.nRows;
+
+        }
+    }
+
+    /**
+     * The features of PSMs stored in columns and indexed by a hash table of
+     * their keys.
+     */
+    private static class Columns {
+
+        /**
+         * The number of PSMs.
+         */
+        private int nRows = 0;
+        /**
+         * The keys of the PSMs.
+         */
+        private long[] keys = new long[1024];
+        /**
+         * The ms2pip keys of the peptides.
+         */
+        private long[] ms2PipKeys = new long[1024];
+        /**
+         * The measured m/z.
+         */
+        private double[] measuredMzs = new double[1024];
+        /**
+         * The m/z errors.
+         */
+        private double[] deltaMzs = new double[1024];
+        /**
+         * The shares of intensity covered by fragment ions.
+         */
+        private double[] intensityCoverages = new double[1024];
+        /**
+         * The decoy and enzymaticity flags.
+         */
+        private byte[] flags = new byte[1024];
+        /**
+         * The end of the sequence of each PSM in the sequence bytes.
+         */
+        private int[] sequenceEnds = new int[1024];
+        /**
+         * The sequences with modifications as UTF-8 bytes.
+         */
+        private byte[] sequences = new byte[16 * 1024];
+        /**
+         * Hash table of the rows: row index + 1 in the slot of the key, 0 for
+         * empty slots.
+         */
+        private int[] index = new int[4096];
+
+        /**
+         * Returns the features of the given key, null if not in the columns.
+         *
+         * @param key the key of the features
+         *
+         * @return the features of the given key
+         */
+        private PsmFeatures get(
+                long key
+        ) {
+
+            int row = getRow(key);
+
+            if (row == -1) {
+
+                return null;
+
+            }
+
+            int sequenceStart = row == 0 ? 0 : sequenceEnds[row - 1];
+            String sequence = new String(sequences, sequenceStart, sequenceEnds[row] - sequenceStart, StandardCharsets.UTF_8);
+
+            byte rowFlags = flags[row];
+            boolean[] enzymaticity = null;
+
+            if ((rowFlags & ENZYMATICITY) != 0) {
+
+                enzymaticity = new boolean[4];
+
+                for (int i = 0; i < enzymaticity.length; i++) {
+
+                    enzymaticity[i] = (rowFlags & (1 << (ENZYMATICITY_SHIFT + i))) != 0;
+
+                }
+            }
+
+            return new PsmFeatures(
+                    ms2PipKeys[row],
+                    (rowFlags & DECOY) != 0,
+                    measuredMzs[row],
+                    deltaMzs[row],
+                    intensityCoverages[row],
+                    enzymaticity,
+                    sequence
+            );
+
+        }
+
+        /**
+         * Adds the features of the given key if not already in the columns.
+         *
+         * @param key the key of the features
+         * @param psmFeatures the features
+         */
+        private void put(
+                long key,
+                PsmFeatures psmFeatures
+        ) {
+
+            if (getRow(key) != -1) {
+
+                return;
+
+            }
+
+            byte rowFlags = psmFeatures.isDecoy() ? DECOY : 0;
+            boolean[] enzymaticity = psmFeatures.getEnzymaticity();
+
+            if (enzymaticity != null) {
+
+                rowFlags |= ENZYMATICITY;
+
+                for (int i = 0; i < enzymaticity.length; i++) {
+
+                    if (enzymaticity[i]) {
+
+                        rowFlags |= 1 << (ENZYMATICITY_SHIFT + i);
+
+                    }
+                }
+            }
+
+            byte[] sequence = psmFeatures.getSequenceWithModifications().getBytes(StandardCharsets.UTF_8);
+
+            addRow(
+                    key,
+                    psmFeatures.getMs2PipKey(),
+                    psmFeatures.getMeasuredMz(),
+                    psmFeatures.getDeltaMz(),
+                    psmFeatures.getIntensityCoverage(),
+                    rowFlags,
+                    sequence,
+                    0,
+                    sequence.length
+            );
+
+        }
+
+        /**
+         * Adds the rows of the given columns whose key is not already in
+         * these columns.
+         *
+         * @param other the other columns
+         */
+        private void addAll(
+                Columns other
+        ) {
+
+            for (int row = 0; row < other.nRows; row++) {
+
+                if (getRow(other.keys[row]) == -1) {
+
+                    int sequenceStart = row == 0 ? 0 : other.sequenceEnds[row - 1];
+
+                    addRow(
+                            other.keys[row],
+                            other.ms2PipKeys[row],
+                            other.measuredMzs[row],
+                            other.deltaMzs[row],
+                            other.intensityCoverages[row],
+                            other.flags[row],
+                            other.sequences,
+                            sequenceStart,
+                            other.sequenceEnds[row] - sequenceStart
+                    );
+
+                }
+            }
+        }
+
+        /**
+         * Writes the number of PSMs and the columns.
+         *
+         * @param outputStream the output stream
+         *
+         * @throws IOException exception thrown if an error occurred while
+         * writing
+         */
+        private void write(
+                DataOutputStream outputStream
+        ) throws IOException {
+
+            outputStream.writeInt(nRows);
+
+            for (int i = 0; i < nRows; i++) {
+
+                outputStream.writeLong(keys[i]);
+
+            }
+
+            for (int i = 0; i < nRows; i++) {
+
+                outputStream.writeLong(ms2PipKeys[i]);
+
+            }
+
+            for (int i = 0; i < nRows; i++) {
+
+                outputStream.writeDouble(measuredMzs[i]);
+
+            }
+
+            for (int i = 0; i < nRows; i++) {
+
+                outputStream.writeDouble(deltaMzs[i]);
+
+            }
+
+            for (int i = 0; i < nRows; i++) {
+
+                outputStream.writeDouble(intensityCoverages[i]);
+
+            }
+
+            outputStream.write(flags, 0, nRows);
+
+            for (int i = 0; i < nRows; i++) {
+
+                outputStream.writeInt(sequenceEnds[i]);
+
+            }
+
+            outputStream.write(sequences, 0, nRows == 0 ? 0 : sequenceEnds[nRows - 1]);
+
+        }
+
+        /**
+         * Reads the number of PSMs and the columns. The sizes read are checked
+         * against the length of the file, so that a corrupted file throws an
+         * exception instead of allocating arbitrary arrays.
+         *
+         * @param inputStream the input stream positioned after the parameters
+         * key
+         * @param length the number of bytes of the file after the number of
+         * PSMs
+         *
+         * @throws IOException exception thrown if an error occurred while
+         * reading or if the file is corrupted
+         */
+        private void read(
+                DataInputStream inputStream,
+                long length
+        ) throws IOException {
+
+            int n = inputStream.readInt();
+
+            if (n < 0 || (long) n * ROW_SIZE > length) {
+
+                throw new IOException("Corrupted Percolator features file, " + n + " PSMs found.");
+
+            }
+
+            long[] fileKeys = new long[n];
+            long[] fileMs2PipKeys = new long[n];
+            double[] fileMeasuredMzs = new double[n];
+            double[] fileDeltaMzs = new double[n];
+            double[] fileIntensityCoverages = new double[n];
+            byte[] fileFlags = new byte[n];
+            int[] fileSequenceEnds = new int[n];
+
+            for (int i = 0; i < n; i++) {
+
+                fileKeys[i] = inputStream.readLong();
+
+            }
+
+            for (int i = 0; i < n; i++) {
+
+                fileMs2PipKeys[i] = inputStream.readLong();
+
+            }
+
+            for (int i = 0; i < n; i++) {
+
+                fileMeasuredMzs[i] = inputStream.readDouble();
+
+            }
+
+            for (int i = 0; i < n; i++) {
+
+                fileDeltaMzs[i] = inputStream.readDouble();
+
+            }
+
+            for (int i = 0; i < n; i++) {
+
+                fileIntensityCoverages[i] = inputStream.readDouble();
+
+            }
+
+            inputStream.readFully(fileFlags);
+
+            for (int i = 0; i < n; i++) {
+
+                fileSequenceEnds[i] = inputStream.readInt();
+
+                if (fileSequenceEnds[i] < (i == 0 ? 0 : fileSequenceEnds[i - 1])) {
+
+                    throw new IOException("Corrupted Percolator features file, invalid sequence end at row " + i + ".");
+
+                }
+            }
+
+            int sequencesLength = n == 0 ? 0 : fileSequenceEnds[n - 1];
+
+            if (sequencesLength > length - (long) n * ROW_SIZE) {
+
+                throw new IOException("Corrupted Percolator features file, " + sequencesLength + " bytes of sequences found.");
+
+            }
+
+            byte[] fileSequences = new byte[sequencesLength];
+            inputStream.readFully(fileSequences);
+
+            for (int i = 0; i < n; i++) {
+
+                int sequenceStart = i == 0 ? 0 : fileSequenceEnds[i - 1];
+
+                addRow(
+                        fileKeys[i],
+                        fileMs2PipKeys[i],
+                        fileMeasuredMzs[i],
+                        fileDeltaMzs[i],
+                        fileIntensityCoverages[i],
+                        fileFlags[i],
+                        fileSequences,
+                        sequenceStart,
+                        fileSequenceEnds[i] - sequenceStart
+                );
+
+            }
+        }
+
+        /**
+         * Appends a row to the columns and indexes it.
+         *
+         * @param key the key of the PSM
+         * @param ms2PipKey the ms2pip key of the peptide
+         * @param measuredMz the measured m/z
+         * @param deltaMz the m/z error
+         * @param intensityCoverage the share of intensity covered by fragment
+         * ions
+         * @param rowFlags the decoy and enzymaticity flags
+         * @param sequenceBytes the bytes containing the sequence with
+         * modifications
+         * @param sequenceStart the start of the sequence in the bytes
+         * @param sequenceLength the length of the sequence in bytes
+         */
+        private void addRow(
+                long key,
+                long ms2PipKey,
+                double measuredMz,
+                double deltaMz,
+                double intensityCoverage,
+                byte rowFlags,
+                byte[] sequenceBytes,
+                int sequenceStart,
+                int sequenceLength
+        ) {
+
+            if (nRows == keys.length) {
+
+                int capacity = 2 * nRows;
+
+                keys = Arrays.copyOf(keys, capacity);
+                ms2PipKeys = Arrays.copyOf(ms2PipKeys, capacity);
+                measuredMzs = Arrays.copyOf(measuredMzs, capacity);
+                deltaMzs = Arrays.copyOf(deltaMzs, capacity);
+                intensityCoverages = Arrays.copyOf(intensityCoverages, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+                sequenceEnds = Arrays.copyOf(sequenceEnds, capacity);
+
+            }
+
+            int sequenceOffset = nRows == 0 ? 0 : sequenceEnds[nRows - 1];
+
+            if (sequenceOffset + sequenceLength > sequences.length) {
+
+                sequences = Arrays.copyOf(sequences, Math.max(2 * sequences.length, sequenceOffset + sequenceLength));
+
+            }
+
+            System.arraycopy(sequenceBytes, sequenceStart, sequences, sequenceOffset, sequenceLength);
+
+            keys[nRows] = key;
+            ms2PipKeys[nRows] = ms2PipKey;
+            measuredMzs[nRows] = measuredMz;
+            deltaMzs[nRows] = deltaMz;
+            intensityCoverages[nRows] = intensityCoverage;
+            flags[nRows] = rowFlags;
+            sequenceEnds[nRows] = sequenceOffset + sequenceLength;
+
+            nRows++;
+
+            if (2 * nRows > index.length) {
+
+                index = new int[2 * index.length];
+
+                for (int row = 0; row < nRows; row++) {
+
+                    index(row);
+
+                }
+
+            } else {
+
+                index(nRows - 1);
+
+            }
+        }
+
+        /**
+         * Adds the given row to the hash table.
+         *
+         * @param row the index of the row
+         */
+        private void index(
+                int row
+        ) {
+
+            int slot = getSlot(keys[row]);
+
+            while (index[slot] != 0) {
+
+                slot = (slot + 1) & (index.length - 1);
+
+            }
+
+            index[slot] = row + 1;
+
+        }
+
+        /**
+         * Returns the row of the given key, -1 if not in the columns.
+         *
+         * @param key the key of the PSM
+         *
+         * @return the row of the given key
+         */
+        private int getRow(
+                long key
+        ) {
+
+            int slot = getSlot(key);
+
+            while (index[slot] != 0) {
+
+                int row = index[slot] - 1;
+
+                if (keys[row] == key) {
+
+                    return row;
+
+                }
+
+                slot = (slot + 1) & (index.length - 1);
+
+            }
+
+            return -1;
+
+        }
+
+        /**
+         * Returns the first slot to probe for the given key.
+         *
+         * @param key the key of the PSM
+         *
+         * @return the first slot to probe
+         */
+        private int getSlot(
+                long key
+        ) {
+
+            long spread = key ^ (key >>> 33);
+            spread *= 0xff51afd7ed558ccdL;
+            spread ^= spread >>> 33;
+
+            return (int) (spread & (index.length - 1));
+
+        }
+    }
+
+    /**
+     * The Percolator features of a PSM that do not depend on predictions.
+     */
+    public static class PsmFeatures {
+
+        /**
+         * The ms2pip key of the peptide.
+         */
+        private final long ms2PipKey;
+        /**
+         * Indicates whether the peptide is a decoy.
+         */
+        private final boolean decoy;
+        /**
+         * The measured m/z.
+         */
+        private final double measuredMz;
+        /**
+         * The m/z error.
+         */
+        private final double deltaMz;
+        /**
+         * The share of intensity covered by fragment ions.
+         */
+        private final double intensityCoverage;
+        /**
+         * The enzymaticity, null if no enzyme was used.
+         */
+        private final boolean[] enzymaticity;
+        /**
+         * The sequence with modifications encoded for Percolator.
+         */
+        private final String sequenceWithModifications;
+
+        /**
+         * Constructor.
+         *
+         * @param ms2PipKey the ms2pip key of the peptide
+         * @param decoy indicates whether the peptide is a decoy
+         * @param measuredMz the measured m/z
+         * @param deltaMz the m/z error
+         * @param intensityCoverage the share of intensity covered by fragment
+         * ions
+         * @param enzymaticity the enzymaticity, null if no enzyme was used
+         * @param sequenceWithModifications the sequence with modifications
+         * encoded for Percolator
+         */
+        public PsmFeatures(
+                long ms2PipKey,
+                boolean decoy,
+                double measuredMz,
+                double deltaMz,
+                double intensityCoverage,
+                boolean[] enzymaticity,
+                String sequenceWithModifications
+        ) {
+
+            this.ms2PipKey = ms2PipKey;
+            this.decoy = decoy;
+            this.measuredMz = measuredMz;
+            this.deltaMz = deltaMz;
+            this.intensityCoverage = intensityCoverage;
+            this.enzymaticity = enzymaticity;
+            this.sequenceWithModifications = sequenceWithModifications;
+
+        }
+
+        /**
+         * Returns the ms2pip key of the peptide.
+         *
+         * @return the ms2pip key of the peptide
+         */
+        public long getMs2PipKey() {
+
+            return ms2PipKey;
+
+        }
+
+        /**
+         * Indicates whether the peptide is a decoy.
+         *
+         * @return a boolean indicating whether the peptide is a decoy
+         */
+        public boolean isDecoy() {
+
+            return decoy;
+
+        }
+
+        /**
+         * Returns the measured m/z.
+         *
+         * @return the measured m/z
+         */
+        public double getMeasuredMz() {
+
+            return measuredMz;
+
+        }
+
+        /**
+         * Returns the m/z error.
+         *
+         * @return the m/z error
+         */
+        public double getDeltaMz() {
+
+            return deltaMz;
+
+        }
+
+        /**
+         * Returns the share of intensity covered by fragment ions.
+         *
+         * @return the share of intensity covered by fragment ions
+         */
+        public double getIntensityCoverage() {
+
+            return intensityCoverage;
+
+        }
+
+        /**
+         * Returns the enzymaticity, null if no enzyme was used.
+         *
+         * @return the enzymaticity
+         */
+        public boolean[] getEnzymaticity() {
+
+            return enzymaticity;
+
+        }
+
+        /**
+         * Returns the sequence with modifications encoded for Percolator.
+         *
+         * @return the sequence with modifications encoded for Percolator
+         */
+        public String getSequenceWithModifications() {
+
+            return sequenceWithModifications;
+
+        }
+    }
+}
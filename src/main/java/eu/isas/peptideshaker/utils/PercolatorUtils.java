@@ -24,6 +24,7 @@ import com.compomics.util.parameters.identification.advanced.SequenceMatchingPar
 import com.compomics.util.parameters.identification.search.ModificationParameters;
 import com.compomics.util.parameters.identification.search.SearchParameters;
 import com.compomics.util.pride.CvTerm;
+import eu.isas.peptideshaker.utils.PercolatorFeatureStore.PsmFeatures;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Map.Entry;
@@ -36,6 +37,20 @@ import java.util.Map.Entry;
  */
 public class PercolatorUtils {
 
+    /**
+     * The tolerance in ppm used to align predicted and measured peaks.
+     */
+    public static final double ALIGNMENT_PPM_TOLERANCE = 10.0;
+    /**
+     * The number of most intense peaks averaged to scale the intensities of
+     * spectra with less than two matched peaks.
+     */
+    public static final int N_TOP_PEAKS_SCALING = 9;
+    /**
+     * Scratch arrays of the spectra similarity metrics, one per thread.
+     */
+    private static final ThreadLocal<SimilarityBuffers> SIMILARITY_BUFFERS = ThreadLocal.withInitial(SimilarityBuffers::new);
+
     /**
      * Returns the header of the Percolator training file.
      *
@@ -187,6 +202,63 @@ public class PercolatorUtils {
             ModificationParameters modificationParameters
     ) {
 
+        PsmFeatures psmFeatures = getPsmFeatures(
+                spectrumMatch,
+                peptideAssumption,
+                searchParameters,
+                sequenceProvider,
+                sequenceMatchingParameters,
+                annotationParameters,
+                modificationLocalizationParameters,
+                modificationFactory,
+                spectrumProvider,
+                modificationParameters
+        );
+
+        return getPeptideData(
+                spectrumMatch,
+                peptideAssumption,
+                psmFeatures,
+                peptideRTs,
+                predictedSpectra,
+                searchParameters,
+                spectrumProvider
+        );
+
+    }
+
+    /**
+     * Computes the features of the given peptide assumption that do not depend
+     * on retention time or fragmentation predictions.
+     *
+     * @param spectrumMatch The spectrum match where the peptide was found.
+     * @param peptideAssumption The peptide assumption.
+     * @param searchParameters The parameters of the search.
+     * @param sequenceProvider The sequence provider.
+     * @param sequenceMatchingParameters The sequence matching parameters.
+     * @param annotationParameters The annotation parameters.
+     * @param modificationLocalizationParameters The modification localization
+     * parameters.
+     * @param modificationFactory The factory containing the modification
+     * details.
+     * @param spectrumProvider The spectrum provider.
+     * @param modificationParameters The modification parameters
+     *
+     * @return The features of the peptide assumption.
+     */
+    public static PsmFeatures getPsmFeatures(
+            SpectrumMatch spectrumMatch,
+            PeptideAssumption peptideAssumption,
+            SearchParameters searchParameters,
+            SequenceProvider sequenceProvider,
+            SequenceMatchingParameters sequenceMatchingParameters,
+            AnnotationParameters annotationParameters,
+            ModificationLocalizationParameters modificationLocalizationParameters,
+            ModificationFactory modificationFactory,
+            SpectrumProvider spectrumProvider,
+            ModificationParameters modificationParameters
+    ) {
+
         PercolatorFeaturesCache percolatorFeaturesCache = (PercolatorFeaturesCache) peptideAssumption.getUrParam(PercolatorFeaturesCache.dummy);
 
         if (percolatorFeaturesCache == null) {
@@ -195,14 +267,6 @@ public class PercolatorUtils {
 
         }
 
-        StringBuilder line = new StringBuilder();
-
-        // PSM id
-        long spectrumKey = spectrumMatch.getKey();
-        Peptide peptide = peptideAssumption.getPeptide();
-
-        //long peptideKey = peptide.getMatchingKey();
-        //line.append(spectrumKey).append("_").append(peptideKey);
         // Get peptide data
         String peptideData = Ms2PipUtils.getPeptideData(
                 peptideAssumption,
@@ -214,17 +278,9 @@ public class PercolatorUtils {
 
         // Get corresponding key
         long peptideMs2PipKey = Ms2PipUtils.getPeptideKey(peptideData);
-        String peptideID = Long.toString(peptideMs2PipKey);
-
-        String psmID = String.join("_", String.valueOf(spectrumKey), peptideID);
-        line.append(psmID);
 
         // Label
-        String decoyFlag = PeptideUtils.isDecoy(peptideAssumption.getPeptide(), sequenceProvider) ? "-1" : "1";
-        line.append("\t").append(decoyFlag);
-
-        // Spectrum number
-        line.append("\t").append(spectrumKey);
+        boolean decoy = PeptideUtils.isDecoy(peptideAssumption.getPeptide(), sequenceProvider);
 
         // m/z
         Object cacheValue = percolatorFeaturesCache.cache.get(PercolatorFeature.measuredAndDeltaMz);
@@ -242,19 +298,6 @@ public class PercolatorUtils {
 
         double[] measuredAndDeltaMz = (double[]) cacheValue;
 
-        double measuredMz = measuredAndDeltaMz[0];
-        double deltaMz = measuredAndDeltaMz[1];
-
-        line.append("\t").append(measuredMz)
-                .append("\t").append(deltaMz);
-
-        // pep
-        PSParameter psParameter = (PSParameter) peptideAssumption.getUrParam(PSParameter.dummy);
-        double pep = psParameter.getProbability();
-        line.append("\t").append(pep);
-        double deltaPep = psParameter.getDeltaPEP();
-        line.append("\t").append(deltaPep);
-
         // Ion fraction
         cacheValue = percolatorFeaturesCache.cache.get(PercolatorFeature.intensityCoverage);
 
@@ -274,28 +317,9 @@ public class PercolatorUtils {
 
         double intensityCoverage = (double) cacheValue;
 
-        line.append("\t").append(intensityCoverage);
-
-        // Peptide length
-        line.append("\t").append(peptide.getSequence().length());
-
-        // Charge
-        for (int charge = searchParameters.getMinChargeSearched(); charge <= searchParameters.getMaxChargeSearched(); charge++) {
-
-            char chargeOneHot = charge == peptideAssumption.getIdentificationCharge() ? '1' : '0';
-            line.append("\t").append(chargeOneHot);
-
-        }
-
-        // Isotope
-        for (int isotope = searchParameters.getMinIsotopicCorrection(); isotope <= searchParameters.getMaxChargeSearched(); isotope++) {
-
-            char isotopeOneHot = isotope == peptideAssumption.getIsotopeNumber(measuredMz, searchParameters.getMinIsotopicCorrection(), searchParameters.getMaxIsotopicCorrection()) ? '1' : '0';
-            line.append("\t").append(isotopeOneHot);
-
-        }
-
         // Enzymaticity
+        boolean[] enzymaticity = null;
+
         if (searchParameters.getDigestionParameters().hasEnzymes()) {
 
             cacheValue = percolatorFeaturesCache.cache.get(PercolatorFeature.enzymaticity);
@@ -310,53 +334,112 @@ public class PercolatorUtils {
 
             }
 
-            boolean[] enzymaticity = (boolean[]) cacheValue;
+            enzymaticity = (boolean[]) cacheValue;
 
-            line.append("\t");
+        }
 
-            if (enzymaticity[0]) {
+        //Peptide sequence
+        String peptideSequence = getSequenceWithModifications(peptideAssumption.getPeptide(), modificationParameters, sequenceProvider, sequenceMatchingParameters, modificationFactory);
 
-                line.append("1");
+        return new PsmFeatures(
+                peptideMs2PipKey,
+                decoy,
+                measuredAndDeltaMz[0],
+                measuredAndDeltaMz[1],
+                intensityCoverage,
+                enzymaticity,
+                peptideSequence
+        );
 
-            } else {
+    }
 
-                line.append("0");
+    /**
+     * Gets the peptide data to provide to percolator using features already
+     * computed for this peptide assumption.
+     *
+     * @param spectrumMatch The spectrum match where the peptide was found.
+     * @param peptideAssumption The peptide assumption.
+     * @param psmFeatures The features of the peptide assumption that do not
+     * depend on predictions.
+     * @param peptideRTs The retention time predictions for this peptide.
+     * @param predictedSpectra The predicted mass spectra for this peptide.
+     * @param searchParameters The parameters of the search.
+     * @param spectrumProvider The spectrum provider.
+     *
+     * @return The peptide data as string.
+     */
+    public static String getPeptideData(
+            SpectrumMatch spectrumMatch,
+            PeptideAssumption peptideAssumption,
+            PsmFeatures psmFeatures,
+            ArrayList<Double> peptideRTs,
+            ArrayList<Spectrum> predictedSpectra,
+            SearchParameters searchParameters,
+            SpectrumProvider spectrumProvider
+    ) {
 
-            }
+        StringBuilder line = new StringBuilder();
 
-            line.append("\t");
+        // PSM id
+        long spectrumKey = spectrumMatch.getKey();
+        Peptide peptide = peptideAssumption.getPeptide();
 
-            if (enzymaticity[1]) {
+        String peptideID = Long.toString(psmFeatures.getMs2PipKey());
 
-                line.append("1");
+        String psmID = String.join("_", String.valueOf(spectrumKey), peptideID);
+        line.append(psmID);
 
-            } else {
+        // Label
+        String decoyFlag = psmFeatures.isDecoy() ? "-1" : "1";
+        line.append("\t").append(decoyFlag);
 
-                line.append("0");
+        // Spectrum number
+        line.append("\t").append(spectrumKey);
 
-            }
+        // m/z
+        double measuredMz = psmFeatures.getMeasuredMz();
+        double deltaMz = psmFeatures.getDeltaMz();
 
-            line.append("\t");
+        line.append("\t").append(measuredMz)
+                .append("\t").append(deltaMz);
+
+        // pep
+        PSParameter psParameter = (PSParameter) peptideAssumption.getUrParam(PSParameter.dummy);
+        double pep = psParameter.getProbability();
+        line.append("\t").append(pep);
+        double deltaPep = psParameter.getDeltaPEP();
+        line.append("\t").append(deltaPep);
 
-            if (enzymaticity[2]) {
+        // Ion fraction
+        line.append("\t").append(psmFeatures.getIntensityCoverage());
 
-                line.append("1");
+        // Peptide length
+        line.append("\t").append(peptide.getSequence().length());
 
-            } else {
+        // Charge
+        for (int charge = searchParameters.getMinChargeSearched(); charge <= searchParameters.getMaxChargeSearched(); charge++) {
 
-                line.append("0");
+            char chargeOneHot = charge == peptideAssumption.getIdentificationCharge() ? '1' : '0';
+            line.append("\t").append(chargeOneHot);
 
-            }
+        }
 
-            line.append("\t");
+        // Isotope
+        for (int isotope = searchParameters.getMinIsotopicCorrection(); isotope <= searchParameters.getMaxChargeSearched(); isotope++) {
 
-            if (enzymaticity[3]) {
+            char isotopeOneHot = isotope == peptideAssumption.getIsotopeNumber(measuredMz, searchParameters.getMinIsotopicCorrection(), searchParameters.getMaxIsotopicCorrection()) ? '1' : '0';
+            line.append("\t").append(isotopeOneHot);
 
-                line.append("1");
+        }
 
-            } else {
+        // Enzymaticity
+        if (searchParameters.getDigestionParameters().hasEnzymes()) {
+
+            boolean[] enzymaticity = psmFeatures.getEnzymaticity();
 
-                line.append("0");
+            for (int i = 0; i < 4; i++) {
+
+                line.append("\t").append(enzymaticity[i] ? '1' : '0');
 
             }
         }
@@ -414,34 +497,23 @@ public class PercolatorUtils {
 
             Spectrum predictedSpectrum = predictedSpectra.get(0);
 
-            String ionSpectrum = "whole";
-
-            StringBuilder wholeSpectrumMetrics = calculateSpectraDistances(measuredSpectrum, predictedSpectrum, ionSpectrum);
-
-            line.append("\t").append(wholeSpectrumMetrics);
+            line.append("\t");
+            appendSpectraDistances(line, measuredSpectrum, predictedSpectrum, "whole");
 
             Spectrum predictedSpectrumBIon = predictedSpectra.get(1);
 
-            ionSpectrum = "B";
-
-            StringBuilder BIonSpectrumMetrics = calculateSpectraDistances(measuredSpectrum, predictedSpectrumBIon, ionSpectrum);
-
-            line.append("\t").append(BIonSpectrumMetrics);
+            line.append("\t");
+            appendSpectraDistances(line, measuredSpectrum, predictedSpectrumBIon, "B");
 
             Spectrum predictedSpectrumYIon = predictedSpectra.get(2);
 
-            ionSpectrum = "Y";
-
-            StringBuilder YIonSpectrumMetrics = calculateSpectraDistances(measuredSpectrum, predictedSpectrumYIon, ionSpectrum);
-
-            line.append("\t").append(YIonSpectrumMetrics);
+            line.append("\t");
+            appendSpectraDistances(line, measuredSpectrum, predictedSpectrumYIon, "Y");
 
         }
 
         //Peptide sequence
-        String peptideSequence = getSequenceWithModifications(peptideAssumption.getPeptide(), modificationParameters, sequenceProvider, sequenceMatchingParameters, modificationFactory);
-
-        line.append("\t").append("-.").append(peptideSequence).append(".-");
+        line.append("\t").append("-.").append(psmFeatures.getSequenceWithModifications()).append(".-");
 
         line.append("\t").append("-");
 
@@ -604,82 +676,149 @@ public class PercolatorUtils {
             Spectrum predictedSpectrum,
             String ionSpectrum
     ) {
+
         StringBuilder results = new StringBuilder();
 
-        ArrayList<ArrayList<Integer>> aligned_peaks = getAlignedPeaks(measuredSpectrum, predictedSpectrum);
+        appendSpectraDistances(
+                results,
+                measuredSpectrum,
+                predictedSpectrum,
+                ionSpectrum
+        );
 
-        ArrayList<ArrayList<Integer>> matchedPeaks = new ArrayList<>();
-        for (int i = 0; i < aligned_peaks.size(); i++) {
-            if (aligned_peaks.get(i).get(0) != -1) {
-                matchedPeaks.add(aligned_peaks.get(i));
-            }
-        }
+        return results;
+
+    }
+
+    /**
+     * Appends the spectra metrics to the given line. The metrics are computed
+     * on scratch arrays of the current thread, so that no array is allocated
+     * once the arrays fit the largest spectra.
+     *
+     * @param line The line where to append the metrics.
+     * @param measuredSpectrum The measured spectrum.
+     * @param predictedSpectrum The predicted spectrum.
+     * @param ionSpectrum String showing whether the spectrum consists of only B
+     * or Y ions.
+     */
+    public static void appendSpectraDistances(
+            StringBuilder line,
+            Spectrum measuredSpectrum,
+            Spectrum predictedSpectrum,
+            String ionSpectrum
+    ) {
+
+        SimilarityBuffers buffers = SIMILARITY_BUFFERS.get();
+
+        int[] alignedPeaks = buffers.getAlignedPeaks(predictedSpectrum.mz.length);
+        int nAligned = getAlignedPeaks(measuredSpectrum, predictedSpectrum, alignedPeaks);
+        int nMatched = getnMatchedPeaks(alignedPeaks, nAligned);
 
         if (ionSpectrum.equals("B") || ionSpectrum.equals("Y")) {
-            int terminusCoverage = findTerminiCoverage(aligned_peaks, ionSpectrum);
-            results.append(terminusCoverage).append("\t");
+            int terminusCoverage = findTerminiCoverage(alignedPeaks, nAligned, ionSpectrum);
+            line.append(terminusCoverage).append("\t");
         }
 
-        double matchedPeaksRatio = findMatchedPeaksRatio(predictedSpectrum, matchedPeaks.size());
-        results.append(matchedPeaksRatio);
+        double matchedPeaksRatio = findMatchedPeaksRatio(predictedSpectrum, nMatched);
+        line.append(matchedPeaksRatio);
+
+        double[] values = buffers.getValues(Math.max(nMatched, N_TOP_PEAKS_SCALING));
+        double measuredScalingFactor = getScalingFactor(measuredSpectrum.intensity, alignedPeaks, nAligned, nMatched, 0, values);
+        double predictedScalingFactor = getScalingFactor(predictedSpectrum.intensity, alignedPeaks, nAligned, nMatched, 1, values);
+
+        double spectraLogDistance = getSpectraLogDist(
+                measuredSpectrum.intensity,
+                measuredScalingFactor,
+                predictedSpectrum.intensity,
+                predictedScalingFactor,
+                alignedPeaks,
+                nAligned,
+                matchedPeaksRatio
+        );
+        line.append("\t").append(spectraLogDistance);
+
+        double spectraCosineSimilarity = getSpectraCosine(
+                measuredSpectrum.intensity,
+                measuredScalingFactor,
+                predictedSpectrum.intensity,
+                predictedScalingFactor,
+                alignedPeaks,
+                nAligned
+        );
+        line.append("\t").append(spectraCosineSimilarity);
+
+        double angularSimilarity = 1.0 - (Math.acos(spectraCosineSimilarity) / Math.PI);
 
-        ArrayList<Spectrum> spectraScaledIntensities = scaleIntensities(measuredSpectrum, predictedSpectrum, matchedPeaks);
+        line.append("\t").append(angularSimilarity);
 
-        double spectraLogDistance = getSpectraLogDist(spectraScaledIntensities.get(0), spectraScaledIntensities.get(1), aligned_peaks, matchedPeaksRatio);
-        results.append("\t").append(spectraLogDistance);
+        double crossEntropy = getCrossEntropy(
+                measuredSpectrum.intensity,
+                predictedSpectrum.intensity,
+                alignedPeaks,
+                nAligned,
+                matchedPeaksRatio
+        );
+        line.append("\t").append(crossEntropy);
 
-        double spectraCosineSimilarity = getSpectraCosine(spectraScaledIntensities.get(0), spectraScaledIntensities.get(1), aligned_peaks);
-        results.append("\t").append(spectraCosineSimilarity);
+    }
 
-        double angularSimilarity = 1.0 - (Math.acos(spectraCosineSimilarity) / Math.PI);
+    /**
+     * Returns the number of predicted peaks matched to a measured peak.
+     *
+     * @param alignedPeaks The indices of aligned peaks.
+     * @param nAligned The number of aligned peaks.
+     *
+     * @return The number of matched peaks.
+     */
+    public static int getnMatchedPeaks(
+            int[] alignedPeaks,
+            int nAligned
+    ) {
 
-        results.append("\t").append(angularSimilarity);
+        int nMatched = 0;
 
-        ArrayList<Spectrum> normalizedIntensities = normalizeIntensities(measuredSpectrum, predictedSpectrum, aligned_peaks);
+        for (int i = 0; i < nAligned; i++) {
+            if (alignedPeaks[2 * i] != -1) {
+                nMatched++;
+            }
+        }
 
-        double crossEntropy = getCrossEntropy(normalizedIntensities.get(0), normalizedIntensities.get(1), matchedPeaksRatio);
-        results.append("\t").append(crossEntropy);
+        return nMatched;
 
-        return results;
     }
 
     /**
-     * Returns the ratio of matched predicted peaks.
+     * Returns the number of consecutive matched peaks from the N-terminus for
+     * B ions, from the C-terminus for Y ions.
      *
-     * @param aligned_peaks The indices of aligned peaks.
+     * @param alignedPeaks The indices of aligned peaks.
+     * @param nAligned The number of aligned peaks.
      * @param ion "B" or "Y" ion.
      *
-     * @return #mathced peaks / #predicted peaks
+     * @return The number of consecutive matched peaks.
      */
     public static int findTerminiCoverage(
-            ArrayList<ArrayList<Integer>> aligned_peaks,
+            int[] alignedPeaks,
+            int nAligned,
             String ion
     ) {
-        int coverage = 0;
-
-        if (aligned_peaks.isEmpty()) {
-            return coverage;
-        }
 
         if (ion.equals("B")) {
-            for (int i = 0; i < aligned_peaks.size(); i++) {
-                if (aligned_peaks.get(i).get(0) == -1) {
-                    coverage = i;
-                    return coverage;
+            for (int i = 0; i < nAligned; i++) {
+                if (alignedPeaks[2 * i] == -1) {
+                    return i;
                 }
             }
-            coverage = aligned_peaks.size();
         } else {
-            for (int i = aligned_peaks.size() - 1; i >= 0; i--) {
-                if (aligned_peaks.get(i).get(0) == -1) {
-                    coverage = aligned_peaks.size() - i - 1;
-                    return coverage;
+            for (int i = nAligned - 1; i >= 0; i--) {
+                if (alignedPeaks[2 * i] == -1) {
+                    return nAligned - i - 1;
                 }
             }
-            coverage = aligned_peaks.size();
         }
 
-        return coverage;
+        return nAligned;
+
     }
 
     /**
@@ -716,78 +855,27 @@ public class PercolatorUtils {
      *
      * @param measuredSpectrum The measured spectrum.
      * @param predictedSpectrum The predicted spectrum.
-     * @param alignedPeaks The indices of the matched peaks.
+     * @param alignedPeaks The indices of aligned peaks.
+     * @param nAligned The number of aligned peaks.
      *
      * @return ArrayList(ScaledObservedSpectrum, ScaledPredictedSpectrum)
      */
     public static ArrayList<Spectrum> scaleIntensities(
             Spectrum measuredSpectrum,
             Spectrum predictedSpectrum,
-            ArrayList<ArrayList<Integer>> alignedPeaks
+            int[] alignedPeaks,
+            int nAligned
     ) {
 
         double[] measuredIntensity = measuredSpectrum.intensity;
         double[] predictedIntensity = predictedSpectrum.intensity;
 
-        double scaleFactorMeasured = 0.0;
-        double scaleFactorPredicted = 0.0;
-
-        if (alignedPeaks.size() <= 1) {
-
-            double[] sortedMeasuredIntensity = Arrays.copyOf(measuredIntensity, measuredIntensity.length);
-            Arrays.sort(sortedMeasuredIntensity);
-            double avgIntensityMeasured = 0.0;
-            int counter = 0;
-            for (int i = sortedMeasuredIntensity.length - 1; i > Math.max(sortedMeasuredIntensity.length - 10, -1); i--) {
-                avgIntensityMeasured += sortedMeasuredIntensity[i];
-                counter = counter + 1;
-            }
-            avgIntensityMeasured = (double) avgIntensityMeasured / counter;
-
-            double[] sortedPredictedIntensity = Arrays.copyOf(predictedIntensity, predictedIntensity.length);
-            Arrays.sort(sortedPredictedIntensity);
-            double avgIntensityPredicted = 0.0;
-            counter = 0;
-            for (int i = sortedPredictedIntensity.length - 1; i > Math.max(sortedPredictedIntensity.length - 10, -1); i--) {
-                avgIntensityPredicted += sortedPredictedIntensity[i];
-                counter = counter + 1;
-            }
-            avgIntensityPredicted = (double) avgIntensityPredicted / counter;
-
-            scaleFactorMeasured = avgIntensityMeasured;
-            scaleFactorPredicted = avgIntensityPredicted;
-
-        } else {
-
-            double[] measuredAlignedIntensities = new double[alignedPeaks.size()];
-            for (int i = 0; i < measuredAlignedIntensities.length; i++) {
-                measuredAlignedIntensities[i] = measuredIntensity[alignedPeaks.get(i).get(0)];
-            }
-            Arrays.sort(measuredAlignedIntensities);
-
-            double[] predictedAlignedIntensities = new double[alignedPeaks.size()];
-            for (int i = 0; i < measuredAlignedIntensities.length; i++) {
-                predictedAlignedIntensities[i] = predictedIntensity[alignedPeaks.get(i).get(1)];
-            }
-            Arrays.sort(predictedAlignedIntensities);
+        int nMatched = getnMatchedPeaks(alignedPeaks, nAligned);
+        double[] values = new double[Math.max(nMatched, N_TOP_PEAKS_SCALING)];
 
-            if (alignedPeaks.size() % 2 == 0) {
-                scaleFactorMeasured = (measuredAlignedIntensities[alignedPeaks.size() / 2] + measuredAlignedIntensities[(alignedPeaks.size() / 2) - 1]) / 2.0;
-                scaleFactorPredicted = (predictedAlignedIntensities[alignedPeaks.size() / 2] + predictedAlignedIntensities[(alignedPeaks.size() / 2) - 1]) / 2.0;
-            } else {
-                scaleFactorMeasured = measuredAlignedIntensities[alignedPeaks.size() / 2];
-                scaleFactorPredicted = predictedAlignedIntensities[alignedPeaks.size() / 2];
-            }
-        }
+        double scaleFactorMeasured = getScalingFactor(measuredIntensity, alignedPeaks, nAligned, nMatched, 0, values);
+        double scaleFactorPredicted = getScalingFactor(predictedIntensity, alignedPeaks, nAligned, nMatched, 1, values);
 
-        /*if (measuredMedian == 0.0){
-            System.out.println("Measured median = 0.0");
-        }
-        if (predictedMedian == 0.0){
-            System.out.println("Predicted median = 0.0");
-            System.out.println(alignedPeaks.size());
-            System.out.println(Arrays.toString(predictedIntensity));
-        }*/
         double[] scaledMeasuredIntensity = new double[measuredIntensity.length];
         for (int i = 0; i < scaledMeasuredIntensity.length; i++) {
             scaledMeasuredIntensity[i] = measuredIntensity[i] / scaleFactorMeasured;
@@ -810,106 +898,202 @@ public class PercolatorUtils {
     }
 
     /**
-     * Normalize the intensities of the observed and predicted spectra, as
-     * probability distributions for cross entropy computation.
+     * Returns the factor used to scale the intensities of a spectrum: the
+     * median intensity of the matched peaks, or the average intensity of the
+     * most intense peaks if less than two peaks are matched.
      *
-     * @param measuredSpectrum The measured spectrum.
-     * @param predictedSpectrum The predicted spectrum.
-     * @param alignedPeaks The indices of the matched peaks.
+     * @param intensities The intensities of the spectrum.
+     * @param alignedPeaks The indices of aligned peaks.
+     * @param nAligned The number of aligned peaks.
+     * @param nMatched The number of matched peaks.
+     * @param side 0 for the measured spectrum, 1 for the predicted spectrum.
+     * @param buffer Scratch array of at least max(nMatched,
+     * N_TOP_PEAKS_SCALING) values.
      *
-     * @return ArrayList(NormalizedObservedSpectrum,
-     * NormalizedPredictedSpectrum)
+     * @return The scaling factor.
      */
-    public static ArrayList<Spectrum> normalizeIntensities(
-            Spectrum measuredSpectrum,
-            Spectrum predictedSpectrum,
-            ArrayList<ArrayList<Integer>> alignedPeaks
+    private static double getScalingFactor(
+            double[] intensities,
+            int[] alignedPeaks,
+            int nAligned,
+            int nMatched,
+            int side,
+            double[] buffer
     ) {
 
-        double[] measuredIntensity = measuredSpectrum.intensity;
-        double[] predictedIntensity = predictedSpectrum.intensity;
+        if (nMatched <= 1) {
+            return getTopIntensitiesAverage(intensities, buffer);
+        }
 
-        double predictedIntsSum = 0.0;
-        double measuredIntsSum = 0.0;
-        for (int i = 0; i < alignedPeaks.size(); i++) {
-            predictedIntsSum += predictedIntensity[alignedPeaks.get(i).get(1)];
-            if (alignedPeaks.get(i).get(0) != -1) {
-                measuredIntsSum += measuredIntensity[alignedPeaks.get(i).get(0)];
+        int nValues = 0;
+        for (int i = 0; i < nAligned; i++) {
+            if (alignedPeaks[2 * i] != -1) {
+                buffer[nValues++] = intensities[alignedPeaks[2 * i + side]];
             }
         }
 
-        double[] normMeasuredInts = new double[alignedPeaks.size()];
-        double[] normPredictedInts = new double[alignedPeaks.size()];
-        double[] mzs = new double[alignedPeaks.size()];
-        for (int i = 0; i < alignedPeaks.size(); i++) {
-            if (alignedPeaks.get(i).get(0) != -1) {
-                normMeasuredInts[i] = measuredIntensity[alignedPeaks.get(i).get(0)] / measuredIntsSum;
-            } else {
-                normMeasuredInts[i] = 0.0;
+        int middle = nValues / 2;
+        double median = select(buffer, nValues, middle);
+
+        if (nValues % 2 == 0) {
+
+            // after the selection the values before the middle are the smallest ones
+            double lowerMedian = buffer[0];
+            for (int i = 1; i < middle; i++) {
+                lowerMedian = Math.max(lowerMedian, buffer[i]);
             }
-            normPredictedInts[i] = predictedIntensity[alignedPeaks.get(i).get(1)] / predictedIntsSum;
-            mzs[i] = predictedSpectrum.mz[alignedPeaks.get(i).get(1)];
+
+            median = (median + lowerMedian) / 2.0;
+
         }
 
-        Spectrum normMeasuredSpectrum = new Spectrum(null, mzs, normMeasuredInts, 2);
-        Spectrum normPredictedSpectrum = new Spectrum(null, mzs, normPredictedInts, 2);
+        return median;
 
-        ArrayList<Spectrum> normSpectra = new ArrayList<>();
-        normSpectra.add(normMeasuredSpectrum);
-        normSpectra.add(normPredictedSpectrum);
+    }
 
-        return normSpectra;
+    /**
+     * Returns the average of the N_TOP_PEAKS_SCALING most intense peaks. The
+     * most intense values are kept in decreasing order in the buffer instead
+     * of sorting all intensities.
+     *
+     * @param intensities The intensities of the spectrum.
+     * @param buffer Scratch array of at least N_TOP_PEAKS_SCALING values.
+     *
+     * @return The average of the most intense peaks.
+     */
+    private static double getTopIntensitiesAverage(
+            double[] intensities,
+            double[] buffer
+    ) {
+
+        int nTop = 0;
+
+        for (double intensity : intensities) {
+
+            if (nTop < N_TOP_PEAKS_SCALING || intensity > buffer[nTop - 1]) {
+
+                int j = nTop < N_TOP_PEAKS_SCALING ? nTop++ : nTop - 1;
+
+                while (j > 0 && buffer[j - 1] < intensity) {
+                    buffer[j] = buffer[j - 1];
+                    j--;
+                }
+
+                buffer[j] = intensity;
+
+            }
+        }
+
+        double sum = 0.0;
+        for (int i = 0; i < nTop; i++) {
+            sum += buffer[i];
+        }
+
+        return sum / nTop;
+
+    }
+
+    /**
+     * Partially sorts the given values so that the value at index k is the
+     * one it would have if the values were sorted, the values before being
+     * smaller or equal and the values after larger or equal.
+     *
+     * @param values The values.
+     * @param length The number of values to consider.
+     * @param k The index of the value to select.
+     *
+     * @return The k-th smallest value.
+     */
+    private static double select(
+            double[] values,
+            int length,
+            int k
+    ) {
+
+        int left = 0;
+        int right = length - 1;
+
+        while (left < right) {
+
+            double pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+
+            while (i <= j) {
+
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double temp = values[i];
+                    values[i] = values[j];
+                    values[j] = temp;
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+
+        return values[k];
 
     }
 
-    //ArrayList<ArrayList<Integer>> alignedPeaks
     /**
      * Returns the cross entropy between the measured and predicted mass
-     * spectrum.
+     * spectrum, after normalization of the intensities of the aligned peaks as
+     * probability distributions.
      *
-     * @param measuredSpectrum The measured spectrum.
-     * @param predictedSpectrum The predicted spectrum.
-     * @param matchedPeaksRatio The ratio of matched predicted peaks. //@param
-     * alignedPeaks The indices of the matched peaks.
+     * @param measuredIntensities The intensities of the measured spectrum.
+     * @param predictedIntensities The intensities of the predicted spectrum.
+     * @param alignedPeaks The indices of aligned peaks.
+     * @param nAligned The number of aligned peaks.
+     * @param matchedPeaksRatio The ratio of matched predicted peaks.
      *
      * @return spectra cross entropy
      */
     public static double getCrossEntropy(
-            Spectrum measuredSpectrum,
-            Spectrum predictedSpectrum,
+            double[] measuredIntensities,
+            double[] predictedIntensities,
+            int[] alignedPeaks,
+            int nAligned,
             double matchedPeaksRatio
     ) {
 
         //Need to define a max value for all the spectra with 0 matched peaks
         if (matchedPeaksRatio == 0.0) {
-            //return 10.0;
             return 15.0;
         }
 
-        double[] measuredIntensities = measuredSpectrum.intensity;
-        double[] predictedIntensities = predictedSpectrum.intensity;
-
-        /*
-        //Replace 0 measured intensity when peak is not matched
-        // with the entropy of the bionomial distribution for the 
-        // specific number of predicted peaks.
-        double entropy = 2 * Math.PI * Math.exp(1) * predictedIntensities.length;
-        entropy = entropy * matchedPeaksRatio * (1.0 - matchedPeaksRatio);
-        entropy = Math.log(entropy);
-        entropy = 0.5 * entropy;
-         */
-        for (int i = 0; i < measuredIntensities.length; i++) {
-            if (measuredIntensities[i] == 0.0) {
-                //measuredIntensities[i] = entropy;
-                measuredIntensities[i] = 0.000001;
+        double predictedIntsSum = 0.0;
+        double measuredIntsSum = 0.0;
+        for (int i = 0; i < nAligned; i++) {
+            predictedIntsSum += predictedIntensities[alignedPeaks[2 * i + 1]];
+            if (alignedPeaks[2 * i] != -1) {
+                measuredIntsSum += measuredIntensities[alignedPeaks[2 * i]];
             }
         }
 
         double crossEntropy = 0.0;
-        for (int i = 0; i < measuredIntensities.length; i++) {
-            double predictedIntensity = predictedIntensities[i];
-            double measuredIntensity = measuredIntensities[i];
-            //crossEntropy = crossEntropy - (measuredIntensity * Math.log(predictedIntensity));
+        for (int i = 0; i < nAligned; i++) {
+            double predictedIntensity = predictedIntensities[alignedPeaks[2 * i + 1]] / predictedIntsSum;
+            double measuredIntensity = 0.0;
+            if (alignedPeaks[2 * i] != -1) {
+                measuredIntensity = measuredIntensities[alignedPeaks[2 * i]] / measuredIntsSum;
+            }
+            if (measuredIntensity == 0.0) {
+                measuredIntensity = 0.000001;
+            }
             crossEntropy = crossEntropy - (predictedIntensity * Math.log(measuredIntensity));
         }
 
@@ -918,35 +1102,37 @@ public class PercolatorUtils {
     }
 
     /**
-     * Returns the cosine distance between the measured and predicted mass
-     * spectrum.
+     * Returns the cosine distance between the scaled intensities of the
+     * measured and predicted mass spectrum.
      *
-     * @param measuredSpectrum The measured spectrum.
-     * @param predictedSpectrum The predicted spectrum.
-     * @param alignedPeaks The indices of the matched peaks.
+     * @param measuredIntensities The intensities of the measured spectrum.
+     * @param measuredScalingFactor The scaling factor of the measured
+     * intensities.
+     * @param predictedIntensities The intensities of the predicted spectrum.
+     * @param predictedScalingFactor The scaling factor of the predicted
+     * intensities.
+     * @param alignedPeaks The indices of aligned peaks.
+     * @param nAligned The number of aligned peaks.
      *
      * @return spectra cosine similarity
      */
     public static double getSpectraCosine(
-            Spectrum measuredSpectrum,
-            Spectrum predictedSpectrum,
-            ArrayList<ArrayList<Integer>> alignedPeaks
+            double[] measuredIntensities,
+            double measuredScalingFactor,
+            double[] predictedIntensities,
+            double predictedScalingFactor,
+            int[] alignedPeaks,
+            int nAligned
     ) {
-        /*if (alignedPeaks.isEmpty()){
-            return -1.0;
-        }*/
-
-        double[] measuredIntensities = measuredSpectrum.intensity;
-        double[] predictedIntensities = predictedSpectrum.intensity;
 
         double sumMP = 0.0;
         double sumM = 0.0;
         double sumP = 0.0;
-        for (int i = 0; i < alignedPeaks.size(); i++) {
-            double predictedIntensity = predictedIntensities[alignedPeaks.get(i).get(1)];
+        for (int i = 0; i < nAligned; i++) {
+            double predictedIntensity = predictedIntensities[alignedPeaks[2 * i + 1]] / predictedScalingFactor;
             double measuredIntensity = 0.0;
-            if (alignedPeaks.get(i).get(0) != -1) {
-                measuredIntensity = measuredIntensities[alignedPeaks.get(i).get(0)];
+            if (alignedPeaks[2 * i] != -1) {
+                measuredIntensity = measuredIntensities[alignedPeaks[2 * i]] / measuredScalingFactor;
             }
             sumMP += measuredIntensity * predictedIntensity;
             sumM += Math.pow(measuredIntensity, 2.0);
@@ -964,20 +1150,28 @@ public class PercolatorUtils {
     }
 
     /**
-     * Returns the log distance between the measured and predicted mass
-     * spectrum.
+     * Returns the log distance between the scaled intensities of the measured
+     * and predicted mass spectrum.
      *
-     * @param measuredSpectrum The measured spectrum.
-     * @param predictedSpectrum The predicted spectrum.
-     * @param alignedPeaks The indices of the matched peaks.
+     * @param measuredIntensities The intensities of the measured spectrum.
+     * @param measuredScalingFactor The scaling factor of the measured
+     * intensities.
+     * @param predictedIntensities The intensities of the predicted spectrum.
+     * @param predictedScalingFactor The scaling factor of the predicted
+     * intensities.
+     * @param alignedPeaks The indices of aligned peaks.
+     * @param nAligned The number of aligned peaks.
      * @param matchedPeaksRatio The ratio of matched predicted peaks.
      *
      * @return spectra log distance
      */
     public static double getSpectraLogDist(
-            Spectrum measuredSpectrum,
-            Spectrum predictedSpectrum,
-            ArrayList<ArrayList<Integer>> alignedPeaks,
+            double[] measuredIntensities,
+            double measuredScalingFactor,
+            double[] predictedIntensities,
+            double predictedScalingFactor,
+            int[] alignedPeaks,
+            int nAligned,
             double matchedPeaksRatio
     ) {
 
@@ -986,17 +1180,15 @@ public class PercolatorUtils {
             return 18.0;
         }
 
-        double[] measuredIntensities = measuredSpectrum.intensity;
-        double[] predictedIntensities = predictedSpectrum.intensity;
+        double minimumIntensity = 0.000001;
 
         double dist = 0.0;
-        for (int i = 0; i < alignedPeaks.size(); i++) {
-            double predictedIntensity = predictedIntensities[alignedPeaks.get(i).get(1)];
+        for (int i = 0; i < nAligned; i++) {
+            double predictedIntensity = predictedIntensities[alignedPeaks[2 * i + 1]] / predictedScalingFactor;
             double measuredIntensity = 0.0;
-            if (alignedPeaks.get(i).get(0) != -1) {
-                measuredIntensity = measuredIntensities[alignedPeaks.get(i).get(0)];
+            if (alignedPeaks[2 * i] != -1) {
+                measuredIntensity = measuredIntensities[alignedPeaks[2 * i]] / measuredScalingFactor;
             }
-            double minimumIntensity = 0.000001;
             if (predictedIntensity == 0.0) {
                 predictedIntensity = minimumIntensity;
             }
@@ -1007,32 +1199,36 @@ public class PercolatorUtils {
             measuredIntensity = Math.log(measuredIntensity);
             dist += Math.abs(measuredIntensity - predictedIntensity);
         }
-        dist = dist / alignedPeaks.size();
+        dist = dist / nAligned;
 
         return dist;
     }
 
     /**
-     * Returns the indices of the predicted peaks and their measured matches
-     * (measuredIndex = -1 if predicted peak unmatched).
+     * Aligns the predicted peaks of non-null intensity to the measured peaks.
+     * The pairs of indices are written in the given array: for the aligned
+     * peak i, alignedPeaks[2 * i] is the index of the measured peak (-1 if the
+     * predicted peak is unmatched), and alignedPeaks[2 * i + 1] the index of
+     * the predicted peak.
      *
      * @param measuredSpectrum The measured spectrum.
      * @param predictedSpectrum The predicted spectrum.
+     * @param alignedPeaks The array where to write the indices, of at least
+     * twice the number of predicted peaks.
      *
-     * @return [ [measuredMatchedPeakIndex_1, predictedMatchedPeakIndex_1], ...
-     * [] [measuredMatchedPeakIndex_n, predictedMatchedPeakIndex_n]]
+     * @return The number of aligned peaks.
      */
-    public static ArrayList<ArrayList<Integer>> getAlignedPeaks(
+    public static int getAlignedPeaks(
             Spectrum measuredSpectrum,
-            Spectrum predictedSpectrum
+            Spectrum predictedSpectrum,
+            int[] alignedPeaks
     ) {
-        double ppm_error_threshold = 10.0;
-        ArrayList<ArrayList<Integer>> alignedPeaks = new ArrayList<>();
 
         double[] measuredMzs = measuredSpectrum.mz;
         double[] predictedMzs = predictedSpectrum.mz;
         double[] predictedIntensities = predictedSpectrum.intensity;
 
+        int nAligned = 0;
         int measuredMzIndex = 0;
         for (int i = 0; i < predictedMzs.length; i++) {
 
@@ -1040,19 +1236,15 @@ public class PercolatorUtils {
                 continue;
             }
 
+            int matchedIndex = -1;
             double minMzDist = Math.abs(predictedMzs[i] - measuredMzs[measuredMzIndex]);
-            boolean foundMatchedPeak = false;
             while (measuredMzIndex < measuredMzs.length - 1) {
                 measuredMzIndex++;
                 double mzDist = Math.abs(predictedMzs[i] - measuredMzs[measuredMzIndex]);
                 if (minMzDist < mzDist) {
-                    double ppm_error = 1000000 * minMzDist / predictedMzs[i];
-                    if (ppm_error <= ppm_error_threshold) {
-                        ArrayList<Integer> matchedPeaksIndices = new ArrayList<>();
-                        matchedPeaksIndices.add(measuredMzIndex - 1);
-                        matchedPeaksIndices.add(i);
-                        alignedPeaks.add(matchedPeaksIndices);
-                        foundMatchedPeak = true;
+                    double ppmError = 1000000 * minMzDist / predictedMzs[i];
+                    if (ppmError <= ALIGNMENT_PPM_TOLERANCE) {
+                        matchedIndex = measuredMzIndex - 1;
                     }
                     break;
                 } else {
@@ -1060,16 +1252,13 @@ public class PercolatorUtils {
                 }
             }
 
-            if (!foundMatchedPeak) {
-                ArrayList<Integer> unmatchedPeakIndex = new ArrayList<>();
-                unmatchedPeakIndex.add(-1);
-                unmatchedPeakIndex.add(i);
-                alignedPeaks.add(unmatchedPeakIndex);
-            }
+            alignedPeaks[2 * nAligned] = matchedIndex;
+            alignedPeaks[2 * nAligned + 1] = i;
+            nAligned++;
 
         }
 
-        return alignedPeaks;
+        return nAligned;
 
     }
 
@@ -1351,6 +1540,60 @@ public class PercolatorUtils {
 
     }
 
+    /**
+     * Scratch arrays of the spectra similarity metrics, grown to fit the
+     * largest spectra processed by a thread.
+     */
+    private static class SimilarityBuffers {
+
+        /**
+         * The indices of aligned peaks.
+         */
+        private int[] alignedPeaks = new int[0];
+        /**
+         * Array of intensity values.
+         */
+        private double[] values = new double[0];
+
+        /**
+         * Returns an array for the indices of the aligned peaks of a predicted
+         * spectrum.
+         *
+         * @param nPredictedPeaks The number of predicted peaks.
+         *
+         * @return An array for the indices of aligned peaks.
+         */
+        public int[] getAlignedPeaks(
+                int nPredictedPeaks
+        ) {
+
+            if (alignedPeaks.length < 2 * nPredictedPeaks) {
+                alignedPeaks = new int[2 * nPredictedPeaks];
+            }
+
+            return alignedPeaks;
+
+        }
+
+        /**
+         * Returns an array of at least the given number of values.
+         *
+         * @param nValues The number of values.
+         *
+         * @return An array of at least the given number of values.
+         */
+        public double[] getValues(
+                int nValues
+        ) {
+
+            if (values.length < nValues) {
+                values = new double[nValues];
+            }
+
+            return values;
+
+        }
+    }
 }
 
 /**
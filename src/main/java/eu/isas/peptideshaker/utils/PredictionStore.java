@@ -0,0 +1,1271 @@
+package eu.isas.peptideshaker.utils;
+
+import com.compomics.util.experiment.mass_spectrometry.spectra.Spectrum;
+import com.compomics.util.io.flat.SimpleFileReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Store of the predictions of ms2pip and DeepLC. A prediction file is
+ * converted once into a binary file next to it, which is then mapped in memory
+ * and queried without loading the predictions on the heap. The binary file
+ * contains a header, one entry per key of the prediction file, and an open
+ * addressing hash table of the keys pointing to the entries. Fragmentation
+ * entries contain the m/z and intensities of the predicted peaks as packed
+ * floats sorted by m/z, retention time entries contain a predicted retention
+ * time. The binary file is converted again when the prediction file changes.
+ * The store must be closed once all queries are done, the mapped segments
+ * otherwise keep the file locked on some systems until they are garbage
+ * collected.
+ *
+ * @author Marc Vaudel
+ */
+public class PredictionStore implements AutoCloseable {
+
+    /**
+     * The extension of the store file, appended to the name of the prediction
+     * file.
+     */
+    public static final String EXTENSION = ".pred";
+    /**
+     * The version of the file format. Files of other versions are converted
+     * again.
+     */
+    public static final int VERSION = 1;
+    /**
+     * The magic number starting the file.
+     */
+    private static final int MAGIC_NUMBER = 0x50535052;
+    /**
+     * The type of the stores of fragmentation predictions.
+     */
+    private static final int FRAGMENTATION = 0;
+    /**
+     * The type of the stores of retention time predictions.
+     */
+    private static final int RETENTION_TIME = 1;
+    /**
+     * The size of the header in bytes.
+     */
+    private static final int HEADER_SIZE = 4 * Integer.BYTES + 3 * Long.BYTES;
+    /**
+     * The binary logarithm of the size of the segments mapped in memory.
+     */
+    private static final int SEGMENT_SHIFT = 30;
+    /**
+     * The size of the segments mapped in memory. Entries never overlap two
+     * segments.
+     */
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    /**
+     * The size of a slot of the hash table: the hash of the key and the offset
+     * of the last entry of this hash.
+     */
+    private static final int SLOT_SIZE = 2 * Long.BYTES;
+    /**
+     * The initial number of slots of the hash table.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    /**
+     * The maximal share of occupied slots in the hash table.
+     */
+    private static final double MAX_LOAD = 0.75;
+    /**
+     * The size of the buffers used to read and write the file.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+    /**
+     * The segments of the file mapped in memory.
+     */
+    private final MappedByteBuffer[] segments;
+    /**
+     * The type of predictions in the store.
+     */
+    private final int type;
+    /**
+     * The number of slots of the hash table, a power of two.
+     */
+    private final int nSlots;
+    /**
+     * The offset of the hash table in the file.
+     */
+    private final long tableOffset;
+    /**
+     * Indicates whether the store is closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param segments the segments of the file mapped in memory
+     * @param type the type of predictions in the store
+     * @param nSlots the number of slots of the hash table
+     * @param tableOffset the offset of the hash table in the file
+     */
+    private PredictionStore(
+            MappedByteBuffer[] segments,
+            int type,
+            int nSlots,
+            long tableOffset
+    ) {
+
+        this.segments = segments;
+        this.type = type;
+        this.nSlots = nSlots;
+        this.tableOffset = tableOffset;
+
+    }
+
+    /**
+     * Returns the store of the fragmentation predictions of the given ms2pip
+     * file, converting the file if needed.
+     *
+     * Expected format:
+     * predicted_spectrum_key,charge,ion,ionnumber,mz,prediction
+     * 2238942014911164193,3,B,1,138.066,0
+     *
+     * @param ms2pipFile File with spectra fragmentation predictions from
+     * MS2PIP.
+     *
+     * @return the store of the fragmentation predictions
+     */
+    public static PredictionStore getFragmentationStore(
+            File ms2pipFile
+    ) {
+
+        return getStore(ms2pipFile, FRAGMENTATION);
+
+    }
+
+    /**
+     * Returns the store of the retention time predictions of the given DeepLC
+     * file, converting the file if needed.
+     *
+     * Expected format: ,seq,modifications,predicted_tr
+     * 0,NSVNGTFPAEPMKGPIAMQSGPKPLFR,12|Oxidation,3878.9216854262777
+     *
+     * @param deepLcFile File with RT predictions from DeepLC.
+     *
+     * @return the store of the retention time predictions
+     */
+    public static PredictionStore getRetentionTimeStore(
+            File deepLcFile
+    ) {
+
+        return getStore(deepLcFile, RETENTION_TIME);
+
+    }
+
+    /**
+     * Returns the store file of the given prediction file.
+     *
+     * @param predictionFile the prediction file
+     *
+     * @return the store file of the given prediction file
+     */
+    public static File getStoreFile(
+            File predictionFile
+    ) {
+
+        return new File(predictionFile.getAbsoluteFile().getParentFile(), predictionFile.getName() + EXTENSION);
+
+    }
+
+    /**
+     * Returns the predicted spectra of the given key: all peaks, b ions, and y
+     * ions. Null if no prediction is available for this key.
+     *
+     * @param key the ms2pip key
+     *
+     * @return the predicted spectra of the given key
+     */
+    public ArrayList<Spectrum> getSpectra(
+            String key
+    ) {
+
+        if (type != FRAGMENTATION) {
+
+            throw new IllegalStateException("The store does not contain fragmentation predictions.");
+
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+        for (long entry = getLastEntry(hash(keyBytes)); entry != 0; entry = getPreviousEntry(entry)) {
+
+            if (keyEquals(entry, keyBytes)) {
+
+                MappedByteBuffer segment = getSegment(entry);
+                int position = getPosition(entry) + Long.BYTES + Integer.BYTES + keyBytes.length;
+
+                int nPeaks = segment.getInt(position);
+                int nB = segment.getInt(position + Integer.BYTES);
+                int nY = segment.getInt(position + 2 * Integer.BYTES);
+                position += 3 * Integer.BYTES;
+
+                ArrayList<Spectrum> predictedSpectra = new ArrayList<>(3);
+                position = readSpectrum(segment, position, nPeaks, predictedSpectra);
+                position = readSpectrum(segment, position, nB, predictedSpectra);
+                readSpectrum(segment, position, nY, predictedSpectra);
+
+                return predictedSpectra;
+
+            }
+        }
+
+        return null;
+
+    }
+
+    /**
+     * Returns the predicted retention times of the given key in the order of
+     * the prediction file. Null if no prediction is available for this key.
+     *
+     * @param key the DeepLC key
+     *
+     * @return the predicted retention times of the given key
+     */
+    public ArrayList<Double> getRetentionTimes(
+            String key
+    ) {
+
+        if (type != RETENTION_TIME) {
+
+            throw new IllegalStateException("The store does not contain retention time predictions.");
+
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ArrayList<Double> retentionTimes = null;
+
+        for (long entry = getLastEntry(hash(keyBytes)); entry != 0; entry = getPreviousEntry(entry)) {
+
+            if (keyEquals(entry, keyBytes)) {
+
+                if (retentionTimes == null) {
+
+                    retentionTimes = new ArrayList<>(1);
+
+                }
+
+                int position = getPosition(entry) + Long.BYTES + Integer.BYTES + keyBytes.length;
+                retentionTimes.add(getSegment(entry).getDouble(position));
+
+            }
+        }
+
+        if (retentionTimes != null) {
+
+            Collections.reverse(retentionTimes);
+
+        }
+
+        return retentionTimes;
+
+    }
+
+    /**
+     * Reads a spectrum stored as packed floats, m/z then intensities, and
+     * adds it to the given list.
+     *
+     * @param segment the segment containing the spectrum
+     * @param position the position of the spectrum in the segment
+     * @param nPeaks the number of peaks
+     * @param spectra the list where to add the spectrum
+     *
+     * @return the position after the spectrum
+     */
+    private static int readSpectrum(
+            MappedByteBuffer segment,
+            int position,
+            int nPeaks,
+            ArrayList<Spectrum> spectra
+    ) {
+
+        double[] mz = new double[nPeaks];
+        double[] intensity = new double[nPeaks];
+
+        for (int i = 0; i < nPeaks; i++) {
+
+            mz[i] = segment.getFloat(position);
+            position += Float.BYTES;
+
+        }
+
+        for (int i = 0; i < nPeaks; i++) {
+
+            intensity[i] = segment.getFloat(position);
+            position += Float.BYTES;
+
+        }
+
+        spectra.add(new Spectrum(null, mz, intensity, 2));
+
+        return position;
+
+    }
+
+    /**
+     * Returns the offset of the last entry of the given hash, 0 if none.
+     *
+     * @param hash the hash of the key
+     *
+     * @return the offset of the last entry of the given hash
+     */
+    private long getLastEntry(
+            long hash
+    ) {
+
+        int slot = getSlot(hash, nSlots);
+
+        while (true) {
+
+            long slotOffset = tableOffset + (long) slot * SLOT_SIZE;
+            MappedByteBuffer segment = getSegment(slotOffset);
+            int position = getPosition(slotOffset);
+
+            long entry = segment.getLong(position + Long.BYTES);
+
+            if (entry == 0 || segment.getLong(position) == hash) {
+
+                return entry;
+
+            }
+
+            slot = (slot + 1) & (nSlots - 1);
+
+        }
+    }
+
+    /**
+     * Returns the offset of the previous entry with the same hash as the given
+     * entry, 0 if none.
+     *
+     * @param entry the offset of the entry
+     *
+     * @return the offset of the previous entry with the same hash
+     */
+    private long getPreviousEntry(
+            long entry
+    ) {
+
+        return getSegment(entry).getLong(getPosition(entry));
+
+    }
+
+    /**
+     * Indicates whether the key of the given entry is the given key.
+     *
+     * @param entry the offset of the entry
+     * @param key the key as UTF-8 bytes
+     *
+     * @return a boolean indicating whether the key of the entry is the given
+     * key
+     */
+    private boolean keyEquals(
+            long entry,
+            byte[] key
+    ) {
+
+        MappedByteBuffer segment = getSegment(entry);
+        int position = getPosition(entry) + Long.BYTES;
+
+        if (segment.getInt(position) != key.length) {
+
+            return false;
+
+        }
+
+        position += Integer.BYTES;
+
+        for (int i = 0; i < key.length; i++) {
+
+            if (segment.get(position + i) != key[i]) {
+
+                return false;
+
+            }
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Returns the segment containing the given offset.
+     *
+     * @param offset the offset in the file
+     *
+     * @return the segment containing the given offset
+     */
+    private MappedByteBuffer getSegment(
+            long offset
+    ) {
+
+        if (closed) {
+
+            throw new IllegalStateException("The prediction store is closed.");
+
+        }
+
+        return segments[(int) (offset >>> SEGMENT_SHIFT)];
+
+    }
+
+    /**
+     * Releases the segments mapped in memory. The store cannot be queried
+     * anymore, and it must not be closed while other threads query it.
+     */
+    @Override
+    public synchronized void close() {
+
+        if (closed) {
+
+            return;
+
+        }
+
+        closed = true;
+
+        for (int i = 0; i < segments.length; i++) {
+
+            MappedByteBuffer segment = segments[i];
+            segments[i] = null;
+            unmap(segment);
+
+        }
+    }
+
+    /**
+     * Unmaps the given buffer without waiting for it to be garbage collected.
+     * The cleaner is accessed by reflection, via Unsafe from Java 9 and via
+     * the buffer in Java 8. If no cleaner is available, the buffer is left to
+     * the garbage collector.
+     *
+     * @param buffer the buffer to unmap
+     */
+    private static void unmap(
+            MappedByteBuffer buffer
+    ) {
+
+        try {
+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+
+            try {
+
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+
+            } catch (NoSuchMethodException e) {
+
+                // Java 8
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+
+                if (cleaner != null) {
+
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+
+                }
+            }
+
+        } catch (ReflectiveOperationException | RuntimeException e) {
+
+            // the buffer is released by the garbage collector
+
+        }
+    }
+
+    /**
+     * Returns the position of the given offset in its segment.
+     *
+     * @param offset the offset in the file
+     *
+     * @return the position of the given offset in its segment
+     */
+    private static int getPosition(
+            long offset
+    ) {
+
+        return (int) (offset & (SEGMENT_SIZE - 1));
+
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the given key.
+     *
+     * @param key the key as UTF-8 bytes
+     *
+     * @return the hash of the key
+     */
+    private static long hash(
+            byte[] key
+    ) {
+
+        long hash = 0xcbf29ce484222325L;
+
+        for (byte b : key) {
+
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+
+        }
+
+        return hash;
+
+    }
+
+    /**
+     * Returns the first slot to probe for the given hash.
+     *
+     * @param hash the hash of the key
+     * @param nSlots the number of slots, a power of two
+     *
+     * @return the first slot to probe
+     */
+    private static int getSlot(
+            long hash,
+            int nSlots
+    ) {
+
+        long spread = hash ^ (hash >>> 33);
+        spread *= 0xff51afd7ed558ccdL;
+        spread ^= spread >>> 33;
+
+        return (int) (spread & (nSlots - 1));
+
+    }
+
+    /**
+     * Returns the store of the given prediction file, converting the file if
+     * no valid store file is found.
+     *
+     * @param predictionFile the prediction file
+     * @param type the type of predictions
+     *
+     * @return the store of the given prediction file
+     */
+    private static PredictionStore getStore(
+            File predictionFile,
+            int type
+    ) {
+
+        File storeFile = getStoreFile(predictionFile);
+
+        try {
+
+            PredictionStore store = open(storeFile, predictionFile, type);
+
+            if (store != null) {
+
+                return store;
+
+            }
+
+            if (!storeFile.getParentFile().canWrite()) {
+
+                // the folder of the predictions is not writable, the store is converted again at every use
+                storeFile = File.createTempFile(predictionFile.getName(), EXTENSION);
+                storeFile.deleteOnExit();
+
+            }
+
+            convert(predictionFile, storeFile, type);
+
+            store = open(storeFile, predictionFile, type);
+
+            if (store == null) {
+
+                throw new IOException("Impossible to read " + storeFile + ".");
+
+            }
+
+            return store;
+
+        } catch (IOException e) {
+
+            throw new RuntimeException("An error occurred while converting the predictions of " + predictionFile + ".", e);
+
+        }
+    }
+
+    /**
+     * Maps the given store file in memory. Null if the file does not exist, if
+     * it was written with another version or for another type, or if it does
+     * not correspond to the current prediction file.
+     *
+     * @param storeFile the store file
+     * @param predictionFile the prediction file
+     * @param type the type of predictions
+     *
+     * @return the store
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * the file
+     */
+    private static PredictionStore open(
+            File storeFile,
+            File predictionFile,
+            int type
+    ) throws IOException {
+
+        if (!storeFile.exists() || storeFile.length() < HEADER_SIZE) {
+
+            return null;
+
+        }
+
+        int nSlots;
+        long tableOffset;
+
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(storeFile), HEADER_SIZE))) {
+
+            if (inputStream.readInt() != MAGIC_NUMBER
+                    || inputStream.readInt() != VERSION
+                    || inputStream.readInt() != type) {
+
+                return null;
+
+            }
+
+            nSlots = inputStream.readInt();
+
+            if (inputStream.readLong() != predictionFile.length()
+                    || inputStream.readLong() != predictionFile.lastModified()) {
+
+                return null;
+
+            }
+
+            tableOffset = inputStream.readLong();
+
+        }
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(storeFile, "r")) {
+
+            FileChannel channel = randomAccessFile.getChannel();
+            long fileLength = channel.size();
+
+            if (tableOffset + (long) nSlots * SLOT_SIZE != fileLength) {
+
+                return null;
+
+            }
+
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((fileLength + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+
+            for (int i = 0; i < segments.length; i++) {
+
+                long start = ((long) i) << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, fileLength - start));
+
+            }
+
+            return new PredictionStore(segments, type, nSlots, tableOffset);
+
+        }
+    }
+
+    /**
+     * Converts the given prediction file into a store file. The store is
+     * written in a temporary file which then replaces the store file, so that
+     * an interrupted conversion does not leave a corrupted file.
+     *
+     * @param predictionFile the prediction file
+     * @param storeFile the store file
+     * @param type the type of predictions
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the file
+     */
+    private static void convert(
+            File predictionFile,
+            File storeFile,
+            int type
+    ) throws IOException {
+
+        File tempFile = new File(storeFile.getParentFile(), storeFile.getName() + ".tmp");
+
+        try {
+
+            try (StoreWriter writer = new StoreWriter(tempFile)) {
+
+                if (type == FRAGMENTATION) {
+
+                    convertFragmentation(predictionFile, writer);
+
+                } else {
+
+                    convertRetentionTimes(predictionFile, writer);
+
+                }
+
+                writer.finish(type, predictionFile);
+
+            }
+
+            Files.move(tempFile.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        } finally {
+
+            Files.deleteIfExists(tempFile.toPath());
+
+        }
+    }
+
+    /**
+     * Converts the fragmentation predictions of an ms2pip file. The lines of a
+     * key are expected to be consecutive, if a key is found in different
+     * blocks the last block is used.
+     *
+     * @param ms2pipFile the ms2pip file
+     * @param writer the writer of the store
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the store
+     */
+    private static void convertFragmentation(
+            File ms2pipFile,
+            StoreWriter writer
+    ) throws IOException {
+
+        PeakList peaks = new PeakList();
+        PeakList bPeaks = new PeakList();
+        PeakList yPeaks = new PeakList();
+        String predictedSpectrumKey = null;
+
+        try (SimpleFileReader reader = SimpleFileReader.getFileReader(ms2pipFile)) {
+
+            String line = reader.readLine();
+
+            while ((line = reader.readLine()) != null) {
+
+                if (line.isEmpty()) {
+
+                    continue;
+
+                }
+
+                int[] fieldEnds = getFieldEnds(line, 6);
+
+                String key = getField(line, fieldEnds, 0);
+                String ion = getField(line, fieldEnds, 2);
+                float mz = Float.parseFloat(getField(line, fieldEnds, 4));
+                float prediction = Float.parseFloat(getField(line, fieldEnds, 5));
+
+                if (!key.equals(predictedSpectrumKey)) {
+
+                    if (predictedSpectrumKey != null) {
+
+                        writeSpectra(predictedSpectrumKey, peaks, bPeaks, yPeaks, writer);
+
+                    }
+
+                    predictedSpectrumKey = key;
+                    peaks.clear();
+                    bPeaks.clear();
+                    yPeaks.clear();
+
+                }
+
+                peaks.add(mz, prediction);
+
+                if (ion.equals("B") || ion.equals("B2")) {
+
+                    bPeaks.add(mz, prediction);
+
+                } else if (ion.equals("Y") || ion.equals("Y2")) {
+
+                    yPeaks.add(mz, prediction);
+
+                }
+            }
+        }
+
+        if (predictedSpectrumKey != null) {
+
+            writeSpectra(predictedSpectrumKey, peaks, bPeaks, yPeaks, writer);
+
+        }
+    }
+
+    /**
+     * Writes the entry of the predicted spectra of a key.
+     *
+     * @param key the ms2pip key
+     * @param peaks all predicted peaks
+     * @param bPeaks the predicted peaks of b ions
+     * @param yPeaks the predicted peaks of y ions
+     * @param writer the writer of the store
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the store
+     */
+    private static void writeSpectra(
+            String key,
+            PeakList peaks,
+            PeakList bPeaks,
+            PeakList yPeaks,
+            StoreWriter writer
+    ) throws IOException {
+
+        int nPeaks = peaks.size + bPeaks.size + yPeaks.size;
+
+        writer.startEntry(
+                key.getBytes(StandardCharsets.UTF_8),
+                3 * Integer.BYTES + 2 * Float.BYTES * nPeaks
+        );
+
+        writer.outputStream.writeInt(peaks.size);
+        writer.outputStream.writeInt(bPeaks.size);
+        writer.outputStream.writeInt(yPeaks.size);
+
+        peaks.write(writer.outputStream);
+        bPeaks.write(writer.outputStream);
+        yPeaks.write(writer.outputStream);
+
+    }
+
+    /**
+     * Converts the retention time predictions of a DeepLC file.
+     *
+     * @param deepLcFile the DeepLC file
+     * @param writer the writer of the store
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the store
+     */
+    private static void convertRetentionTimes(
+            File deepLcFile,
+            StoreWriter writer
+    ) throws IOException {
+
+        try (SimpleFileReader reader = SimpleFileReader.getFileReader(deepLcFile)) {
+
+            String line = reader.readLine();
+
+            while ((line = reader.readLine()) != null) {
+
+                if (line.isEmpty()) {
+
+                    continue;
+
+                }
+
+                int[] fieldEnds = getFieldEnds(line, 5);
+
+                // the key is the sequence and the modifications separated by a comma
+                String key = line.substring(fieldEnds[0] + 1, fieldEnds[2]);
+                double rt = Double.parseDouble(getField(line, fieldEnds, 4));
+
+                writer.startEntry(
+                        key.getBytes(StandardCharsets.UTF_8),
+                        Double.BYTES
+                );
+
+                writer.outputStream.writeDouble(rt);
+
+            }
+        }
+    }
+
+    /**
+     * Returns the end index of the first fields of a comma separated line.
+     *
+     * @param line the line
+     * @param nFields the number of fields
+     *
+     * @return the end index of the first fields
+     */
+    private static int[] getFieldEnds(
+            String line,
+            int nFields
+    ) {
+
+        int[] fieldEnds = new int[nFields];
+        int start = 0;
+
+        for (int i = 0; i < nFields; i++) {
+
+            int end = line.indexOf(',', start);
+            fieldEnds[i] = end == -1 ? line.length() : end;
+            start = fieldEnds[i] + 1;
+
+        }
+
+        return fieldEnds;
+
+    }
+
+    /**
+     * Returns a field of a comma separated line.
+     *
+     * @param line the line
+     * @param fieldEnds the end index of the fields
+     * @param index the index of the field
+     *
+     * @return the field
+     */
+    private static String getField(
+            String line,
+            int[] fieldEnds,
+            int index
+    ) {
+
+        int start = index == 0 ? 0 : fieldEnds[index - 1] + 1;
+
+        return line.substring(start, fieldEnds[index]);
+
+    }
+
+    /**
+     * List of peaks of a predicted spectrum.
+     */
+    private static class PeakList {
+
+        /**
+         * The m/z of the peaks.
+         */
+        private float[] mz = new float[64];
+        /**
+         * The intensities of the peaks.
+         */
+        private float[] intensity = new float[64];
+        /**
+         * The number of peaks.
+         */
+        private int size = 0;
+        /**
+         * Buffer used to sort the peaks by m/z.
+         */
+        private long[] order = new long[64];
+
+        /**
+         * Adds a peak.
+         *
+         * @param peakMz the m/z of the peak
+         * @param peakIntensity the intensity of the peak
+         */
+        public void add(
+                float peakMz,
+                float peakIntensity
+        ) {
+
+            if (size == mz.length) {
+
+                mz = Arrays.copyOf(mz, 2 * size);
+                intensity = Arrays.copyOf(intensity, 2 * size);
+                order = new long[2 * size];
+
+            }
+
+            mz[size] = peakMz;
+            intensity[size] = peakIntensity;
+            size++;
+
+        }
+
+        /**
+         * Removes all peaks.
+         */
+        public void clear() {
+
+            size = 0;
+
+        }
+
+        /**
+         * Writes the m/z and then the intensities of the peaks sorted by m/z.
+         *
+         * @param outputStream the output stream
+         *
+         * @throws IOException exception thrown if an error occurred while
+         * writing
+         */
+        public void write(
+                DataOutputStream outputStream
+        ) throws IOException {
+
+            // the bits of positive floats are ordered like the floats, the index is kept in the lower bits
+            for (int i = 0; i < size; i++) {
+
+                order[i] = (((long) Float.floatToIntBits(mz[i])) << 32) | i;
+
+            }
+
+            Arrays.sort(order, 0, size);
+
+            for (int i = 0; i < size; i++) {
+
+                outputStream.writeFloat(mz[(int) order[i]]);
+
+            }
+
+            for (int i = 0; i < size; i++) {
+
+                outputStream.writeFloat(intensity[(int) order[i]]);
+
+            }
+        }
+    }
+
+    /**
+     * Writer of a store file. The entries are written after the header, the
+     * hash table is kept in memory and written after the entries.
+     */
+    private static class StoreWriter implements AutoCloseable {
+
+        /**
+         * The file being written.
+         */
+        private final File file;
+        /**
+         * The output stream.
+         */
+        private final DataOutputStream outputStream;
+        /**
+         * The offset of the next entry.
+         */
+        private long offset = HEADER_SIZE;
+        /**
+         * The hashes of the keys in the slots of the table.
+         */
+        private long[] hashes = new long[INITIAL_CAPACITY];
+        /**
+         * The offsets of the last entries of the hashes in the slots of the
+         * table, 0 for empty slots.
+         */
+        private long[] lastEntries = new long[INITIAL_CAPACITY];
+        /**
+         * The number of occupied slots.
+         */
+        private int nOccupied = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param file the file to write
+         *
+         * @throws IOException exception thrown if an error occurred while
+         * opening the file
+         */
+        public StoreWriter(
+                File file
+        ) throws IOException {
+
+            this.file = file;
+            outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+            outputStream.write(new byte[HEADER_SIZE]);
+
+        }
+
+        /**
+         * Starts a new entry by writing the offset of the previous entry with
+         * the same hash and the key. The entry is moved to the next segment if
+         * it would overlap two segments. The caller then writes exactly the
+         * given number of bytes of values.
+         *
+         * @param key the key as UTF-8 bytes
+         * @param valuesSize the size of the values of the entry in bytes
+         *
+         * @throws IOException exception thrown if an error occurred while
+         * writing
+         */
+        public void startEntry(
+                byte[] key,
+                int valuesSize
+        ) throws IOException {
+
+            long entrySize = Long.BYTES + Integer.BYTES + key.length + (long) valuesSize;
+
+            if (entrySize > SEGMENT_SIZE) {
+
+                throw new IOException("Prediction of " + new String(key, StandardCharsets.UTF_8) + " too large to be stored.");
+
+            }
+
+            long segmentEnd = ((offset >>> SEGMENT_SHIFT) + 1) << SEGMENT_SHIFT;
+
+            if (offset + entrySize > segmentEnd) {
+
+                pad(segmentEnd - offset);
+
+            }
+
+            long previousEntry = put(hash(key), offset);
+
+            outputStream.writeLong(previousEntry);
+            outputStream.writeInt(key.length);
+            outputStream.write(key);
+
+            offset += entrySize;
+
+        }
+
+        /**
+         * Sets the given entry as last entry of the given hash and returns the
+         * previous one, 0 if none.
+         *
+         * @param hash the hash of the key
+         * @param entry the offset of the entry
+         *
+         * @return the offset of the previous entry of the hash
+         */
+        private long put(
+                long hash,
+                long entry
+        ) {
+
+            if (nOccupied + 1 > MAX_LOAD * hashes.length) {
+
+                grow();
+
+            }
+
+            int slot = getSlot(hash, hashes.length);
+
+            while (lastEntries[slot] != 0) {
+
+                if (hashes[slot] == hash) {
+
+                    long previousEntry = lastEntries[slot];
+                    lastEntries[slot] = entry;
+
+                    return previousEntry;
+
+                }
+
+                slot = (slot + 1) & (hashes.length - 1);
+
+            }
+
+            hashes[slot] = hash;
+            lastEntries[slot] = entry;
+            nOccupied++;
+
+            return 0;
+
+        }
+
+        /**
+         * Doubles the number of slots of the table.
+         */
+        private void grow() {
+
+            long[] oldHashes = hashes;
+            long[] oldLastEntries = lastEntries;
+
+            hashes = new long[2 * oldHashes.length];
+            lastEntries = new long[2 * oldHashes.length];
+
+            for (int i = 0; i < oldHashes.length; i++) {
+
+                if (oldLastEntries[i] != 0) {
+
+                    int slot = getSlot(oldHashes[i], hashes.length);
+
+                    while (lastEntries[slot] != 0) {
+
+                        slot = (slot + 1) & (hashes.length - 1);
+
+                    }
+
+                    hashes[slot] = oldHashes[i];
+                    lastEntries[slot] = oldLastEntries[i];
+
+                }
+            }
+        }
+
+        /**
+         * Writes the hash table after the entries, and then the header.
+         *
+         * @param type the type of predictions
+         * @param predictionFile the prediction file
+         *
+         * @throws IOException exception thrown if an error occurred while
+         * writing
+         */
+        public void finish(
+                int type,
+                File predictionFile
+        ) throws IOException {
+
+            long tableOffset = (offset + SLOT_SIZE - 1) / SLOT_SIZE * SLOT_SIZE;
+            pad(tableOffset - offset);
+
+            for (int i = 0; i < hashes.length; i++) {
+
+                outputStream.writeLong(hashes[i]);
+                outputStream.writeLong(lastEntries[i]);
+
+            }
+
+            outputStream.close();
+
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+
+                randomAccessFile.writeInt(MAGIC_NUMBER);
+                randomAccessFile.writeInt(VERSION);
+                randomAccessFile.writeInt(type);
+                randomAccessFile.writeInt(hashes.length);
+                randomAccessFile.writeLong(predictionFile.length());
+                randomAccessFile.writeLong(predictionFile.lastModified());
+                randomAccessFile.writeLong(tableOffset);
+
+            }
+        }
+
+        /**
+         * Writes the given number of zeros.
+         *
+         * @param length the number of zeros
+         *
+         * @throws IOException exception thrown if an error occurred while
+         * writing
+         */
+        private void pad(
+                long length
+        ) throws IOException {
+
+            for (long i = 0; i < length; i++) {
+
+                outputStream.write(0);
+
+            }
+
+            offset += length;
+
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            outputStream.close();
+
+        }
+    }
+}
@@ -35,7 +35,9 @@ import com.compomics.util.parameters.peptide_shaker.ProjectType;
 import eu.isas.peptideshaker.scoring.PSMaps;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -185,7 +187,11 @@ public class PsdbParent extends UserPreferencesParent implements AutoCloseable {
     }
 
     /**
-     * Loads the information from a psdb file.
+     * Loads the information from a psdb file. The psdb file is copied to the
+     * database folder before being opened, so that the original file is never
+     * modified. The psdb file cannot be opened in place without copy because
+     * ObjectsDB has no read-only mode. A psdb file extracted from a zip file
+     * is already a temporary copy and is opened where it is.
      *
      * @param dbFolder the folder where to untar the project
      * @param waitingHandler a waiting handler displaying feedback to the user.
@@ -214,16 +220,27 @@ public class PsdbParent extends UserPreferencesParent implements AutoCloseable {
             }
         }
 
-        SimpleDateFormat df = new SimpleDateFormat("yyyyMMdd-HHmmss");
-        String dbName = "tempDB-" + df.format(new Date()) + ".psdb";
+        File destinationFile;
+
+        if (openFromZip) {
+
+            destinationFile = psdbFile;
+
+        } else {
+
+            SimpleDateFormat df = new SimpleDateFormat("yyyyMMdd-HHmmss");
+            String dbName = "tempDB-" + df.format(new Date()) + ".psdb";
 
-        File destinationFile = new File(dbFolder.getAbsolutePath(), dbName);
+            destinationFile = new File(dbFolder.getAbsolutePath(), dbName);
 
-        IoUtil.copyFile(psdbFile, destinationFile);
-        //GzUtils.gunzipFile(psdbFile, destinationFile, false); // @TODO: re-add when the zipping works
+            // ObjectsDB has no read-only mode, opening a project therefore still costs a full copy of the psdb file
+            Files.copy(psdbFile.toPath(), destinationFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            //GzUtils.gunzipFile(psdbFile, destinationFile, false); // @TODO: re-add when the zipping works
+
+        }
 
         ObjectsDB objectsDB = new ObjectsDB(
-                dbFolder.getAbsolutePath(),
+                destinationFile.getAbsoluteFile().getParent(),
                 destinationFile.getName(),
                 false
         );
@@ -252,13 +269,11 @@ public class PsdbParent extends UserPreferencesParent implements AutoCloseable {
 
                 if (file.getAbsoluteFile().toString().toLowerCase().endsWith(".fasta")) {
 
-                    fmIndex = new FMIndex(
+                    fmIndex = loadFmIndex(
                             file,
-                            psParameters.getIdentificationParameters().getFastaParameters(),
+                            psParameters.getIdentificationParameters(),
                             waitingHandler,
-                            true,
-                            psParameters.getIdentificationParameters().getPeptideVariantsParameters(),
-                            psParameters.getIdentificationParameters().getSearchParameters()
+                            false
                     );
 
                     break;
@@ -286,13 +301,11 @@ public class PsdbParent extends UserPreferencesParent implements AutoCloseable {
 
                 File fastaFile = new File(psParameters.getProjectDetails().getFastaFile());
 
-                fmIndex = new FMIndex(
+                fmIndex = loadFmIndex(
                         fastaFile,
-                        psParameters.getIdentificationParameters().getFastaParameters(),
+                        psParameters.getIdentificationParameters(),
                         waitingHandler,
-                        true,
-                        psParameters.getIdentificationParameters().getPeptideVariantsParameters(),
-                        psParameters.getIdentificationParameters().getSearchParameters()
+                        true
                 );
 
             } else {
@@ -305,7 +318,11 @@ public class PsdbParent extends UserPreferencesParent implements AutoCloseable {
         sequenceProvider = fmIndex;
         proteinDetailsProvider = fmIndex;
 
-        objectsDB.updateObject(PeptideShakerParameters.KEY, psParameters);
+        if (!openFromZip) {
+
+            objectsDB.updateObject(PeptideShakerParameters.KEY, psParameters);
+
+        }
 
         projectParameters = (ProjectParameters) objectsDB.retrieveObject(ProjectParameters.key);
         identification = new Identification(objectsDB);
@@ -353,6 +370,71 @@ public class PsdbParent extends UserPreferencesParent implements AutoCloseable {
 
     }
 
+    /**
+     * Returns the FM index of the given FASTA file. The index is read from the
+     * sidecar file of the psdb file if it was built from the same FASTA file
+     * and parameters, and built otherwise.
+     *
+     * @param fastaFile the FASTA file
+     * @param identificationParameters the identification parameters
+     * @param waitingHandler a waiting handler displaying feedback to the user
+     * @param writeSidecar if true, an index that had to be built is written to
+     * the sidecar file
+     *
+     * @return the FM index of the given FASTA file
+     *
+     * @throws IOException thrown if an error occurred while reading the FASTA
+     * file
+     */
+    private FMIndex loadFmIndex(
+            File fastaFile,
+            IdentificationParameters identificationParameters,
+            WaitingHandler waitingHandler,
+            boolean writeSidecar
+    ) throws IOException {
+
+        File sidecarFile = FmIndexSidecar.getSidecarFile(psdbFile);
+        String key = FmIndexSidecar.getKey(
+                fastaFile,
+                identificationParameters.getFastaParameters(),
+                identificationParameters.getPeptideVariantsParameters(),
+                identificationParameters.getSearchParameters()
+        );
+
+        FMIndex fmIndex = FmIndexSidecar.read(sidecarFile, key);
+
+        if (fmIndex == null) {
+
+            fmIndex = new FMIndex(
+                    fastaFile,
+                    identificationParameters.getFastaParameters(),
+                    waitingHandler,
+                    true,
+                    identificationParameters.getPeptideVariantsParameters(),
+                    identificationParameters.getSearchParameters()
+            );
+
+            if (writeSidecar) {
+
+                try {
+
+                    FmIndexSidecar.write(sidecarFile, key, fmIndex);
+
+                } catch (IOException e) {
+
+                    // the folder of the project is not writable, the index will be built again at the next opening
+                    if (waitingHandler != null) {
+                        waitingHandler.appendReport("The protein index could not be saved next to the project: " + e.getMessage(), true, true);
+                    }
+
+                }
+            }
+        }
+
+        return fmIndex;
+
+    }
+
     /**
      * Saves the project in the psdb file.
      *
@@ -50,16 +50,19 @@ import com.compomics.util.parameters.peptide_shaker.ProjectType;
 import eu.isas.peptideshaker.utils.PercolatorUtils;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.stream.Collectors;
 
 /**
  * This class validates the quality of identification matches.
@@ -1038,128 +1041,142 @@ public class MatchesValidator {
         waitingHandler.setSecondaryProgressCounterIndeterminate(false);
         waitingHandler.setMaxSecondaryProgressCounter(identification.getPeptideIdentification().size() * 2);
 
-        HashSet<String> foundModifications = new HashSet<>();
-        HashMap<String, ArrayList<Long>> fractionPsmMatches = new HashMap<>();
-
-        PeptideMatchesIterator peptideMatchesIterator = identification.getPeptideMatchesIterator(waitingHandler);
-        int nFractions = identification.getSpectrumIdentification().size();
-        PeptideMatch peptideMatch;
-
-        while ((peptideMatch = peptideMatchesIterator.next()) != null) {
-
-            long peptideKey = peptideMatch.getKey();
-
-            foundModifications.addAll(
-                    Arrays.stream(peptideMatch.getPeptide().getVariableModifications())
-                            .map(
-                                    ModificationMatch::getModification
-                            )
-                            .collect(
-                                    Collectors.toSet()
-                            )
-            );
-
-            double probaScore = 1.0;
-            HashMap<String, Double> fractionScores = new HashMap<>(nFractions);
-
-            // get the global and fraction level peptide scores
-            for (long spectrumKey : peptideMatch.getSpectrumMatchesKeys()) {
-
-                SpectrumMatch spectrumMatch = identification.getSpectrumMatch(spectrumKey);
-                PSParameter psmParameter = (PSParameter) spectrumMatch.getUrParam(PSParameter.dummy);
-                probaScore *= psmParameter.getProbability();
+        PeptideMapRunnable runnable = new PeptideMapRunnable(
+                identification.getPeptideMatchesIterator(waitingHandler),
+                identification,
+                sequenceProvider,
+                spectrumProvider,
+                waitingHandler,
+                null
+        );
+        runnable.processMatches();
 
-                if (nFractions > 1) {
+        if (waitingHandler.isRunCanceled()) {
+            return;
+        }
 
-                    String fraction = spectrumMatch.getSpectrumFile();
-                    Double fractionScore = fractionScores.get(fraction);
-                    boolean change = false;
+        waitingHandler.setSecondaryProgressCounterIndeterminate(true);
 
-                    if (fractionScore == null) {
+        setPeptideMapMetrics(
+                metrics,
+                Collections.singletonList(runnable)
+        );
+    }
 
-                        fractionScore = 1.0;
-                        change = true;
+    /**
+     * Fills the peptide specific map using multiple threads.
+     *
+     * @param identification the identification class containing the matches to
+     * validate
+     * @param metrics if provided fraction information and found modifications
+     * will be saved while iterating the matches
+     * @param waitingHandler the handler displaying feedback to the user
+     * @param exceptionHandler the handler for exceptions
+     * @param identificationParameters the identification parameters
+     * @param sequenceProvider the sequence provider
+     * @param spectrumProvider The spectrum provider.
+     * @param processingParameters the processing parameters
+     *
+     * @throws java.lang.InterruptedException exception thrown if a thread gets
+     * interrupted
+     * @throws java.util.concurrent.TimeoutException exception thrown if the
+     * operation times out
+     */
+    public void fillPeptideMaps(
+            Identification identification,
+            Metrics metrics,
+            WaitingHandler waitingHandler,
+            ExceptionHandler exceptionHandler,
+            IdentificationParameters identificationParameters,
+            SequenceProvider sequenceProvider,
+            SpectrumProvider spectrumProvider,
+            ProcessingParameters processingParameters
+    ) throws InterruptedException, TimeoutException {
 
-                    }
+        waitingHandler.setWaitingText("Filling Peptide Maps. Please Wait...");
 
-                    double tempScore = psmParameter.getProbability();
+        waitingHandler.setSecondaryProgressCounterIndeterminate(false);
+        waitingHandler.setMaxSecondaryProgressCounter(identification.getPeptideIdentification().size() * 2);
 
-                    if (tempScore != 1.0 && fractionScore != 0.0) {
+        ExecutorService pool = Executors.newFixedThreadPool(processingParameters.getnThreads());
 
-                        fractionScore *= tempScore;
-                        change = true;
+        PeptideMatchesIterator peptideMatchesIterator = identification.getPeptideMatchesIterator(waitingHandler);
+        ArrayList<PeptideMapRunnable> runnables = new ArrayList<>(processingParameters.getnThreads());
 
-                    }
+        for (int i = 1; i <= processingParameters.getnThreads(); i++) {
 
-                    if (change) {
+            PeptideMapRunnable runnable = new PeptideMapRunnable(
+                    peptideMatchesIterator,
+                    identification,
+                    sequenceProvider,
+                    spectrumProvider,
+                    waitingHandler,
+                    exceptionHandler
+            );
+            pool.submit(runnable);
+            runnables.add(runnable);
 
-                        fractionScores.put(fraction, fractionScore);
+        }
 
-                    }
+        if (waitingHandler.isRunCanceled()) {
 
-                    String peptideKeyString = Long.toString(peptideKey);
-                    StringBuilder fractionKeyB = new StringBuilder(fraction.length() + peptideKeyString.length() + 1);
-                    fractionKeyB.append(fraction).append('_').append(peptideKeyString);
-                    String fractionKey = fractionKeyB.toString();
+            pool.shutdownNow();
+            return;
 
-                    ArrayList<Long> spectrumMatches = fractionPsmMatches.get(fractionKey);
+        }
 
-                    if (spectrumMatches == null) {
+        pool.shutdown();
 
-                        spectrumMatches = new ArrayList<>(1);
-                        fractionPsmMatches.put(fractionKey, spectrumMatches);
+        if (!pool.awaitTermination(identification.getPeptideIdentification().size(), TimeUnit.MINUTES)) {
 
-                    }
+            throw new TimeoutException("Peptide map filling timed out. Please contact the developers.");
 
-                    spectrumMatches.add(spectrumKey);
+        }
 
-                }
-            }
+        if (waitingHandler.isRunCanceled()) {
+            return;
+        }
 
-            if (nFractions == 1) {
+        waitingHandler.setSecondaryProgressCounterIndeterminate(true);
 
-                String fraction = spectrumProvider.getOrderedFileNamesWithoutExtensions()[0];
-                fractionScores.put(fraction, probaScore);
+        setPeptideMapMetrics(
+                metrics,
+                runnables
+        );
+    }
 
-                String peptideKeyString = Long.toString(peptideKey);
-                StringBuilder fractionKeyB = new StringBuilder(fraction.length() + peptideKeyString.length() + 1);
-                fractionKeyB.append(fraction).append('_').append(peptideKeyString);
-                String fractionKey = fractionKeyB.toString();
+    /**
+     * Combines the fraction information and found modifications gathered by
+     * the given runnables and saves them in the metrics.
+     *
+     * @param metrics the metrics, ignored if null
+     * @param runnables the runnables used to fill the peptide map
+     */
+    private void setPeptideMapMetrics(
+            Metrics metrics,
+            List<PeptideMapRunnable> runnables
+    ) {
 
-                fractionPsmMatches.put(
-                        fractionKey,
-                        Arrays.stream(peptideMatch.getSpectrumMatchesKeys())
-                                .boxed()
-                                .collect(
-                                        Collectors.toCollection(ArrayList::new)
-                                ));
-            }
+        if (metrics != null) {
 
-            PSParameter peptideParameter = new PSParameter();
+            HashSet<String> foundModifications = new HashSet<>();
+            int nFractionKeys = 0;
 
-            // set the fraction scores
-            for (String fractionName : fractionScores.keySet()) {
+            for (PeptideMapRunnable runnable : runnables) {
 
-                peptideParameter.setFractionScore(fractionName, fractionScores.get(fractionName));
+                foundModifications.addAll(runnable.getFoundModifications());
+                nFractionKeys += runnable.getFractionPsmMatches().size();
 
             }
 
-            // Set the global score and grouping key
-            peptideParameter.setScore(probaScore);
+            // fraction keys are peptide specific, the maps of the threads do not overlap
+            HashMap<String, ArrayList<Long>> fractionPsmMatches = new HashMap<>(nFractionKeys);
 
-            peptideMatch.addUrParam(peptideParameter);
-            peptideMap.put(peptideParameter.getScore(), PeptideUtils.isDecoy(peptideMatch.getPeptide(), sequenceProvider));
+            for (PeptideMapRunnable runnable : runnables) {
 
-            waitingHandler.increaseSecondaryProgressCounter();
+                fractionPsmMatches.putAll(runnable.getFractionPsmMatches());
 
-            if (waitingHandler.isRunCanceled()) {
-                return;
             }
-        }
-
-        waitingHandler.setSecondaryProgressCounterIndeterminate(true);
-
-        if (metrics != null) {
 
             // set the fraction psm matches
             metrics.setFractionPsmMatches(fractionPsmMatches);
@@ -1190,56 +1207,85 @@ public class MatchesValidator {
         waitingHandler.setSecondaryProgressCounterIndeterminate(false);
         waitingHandler.setMaxSecondaryProgressCounter(identification.getPeptideIdentification().size());
 
-        PSParameter psParameter = new PSParameter();
-        PeptideMatchesIterator peptideMatchesIterator = identification.getPeptideMatchesIterator(waitingHandler);
-        PeptideMatch peptideMatch;
-
-        while ((peptideMatch = peptideMatchesIterator.next()) != null) {
-
-            long peptideKey = peptideMatch.getKey();
-            psParameter = (PSParameter) peptideMatch.getUrParam(psParameter);
-
-            if (fastaParameters.isTargetDecoy()) {
+        PeptideProbabilityRunnable runnable = new PeptideProbabilityRunnable(
+                identification.getPeptideMatchesIterator(waitingHandler),
+                identification,
+                fastaParameters,
+                waitingHandler,
+                null
+        );
+        runnable.processMatches();
 
-                double probability = peptideMap.getProbability(psParameter.getScore());
-                psParameter.setProbability(probability);
+        if (waitingHandler.isRunCanceled()) {
+            return;
+        }
 
-            } else {
+        waitingHandler.setSecondaryProgressCounterIndeterminate(true);
+    }
 
-                psParameter.setProbability(1.0);
+    /**
+     * Attaches the peptide posterior error probabilities to the peptide matches
+     * using multiple threads.
+     *
+     * @param identification the identification class containing the matches to
+     * validate
+     * @param fastaParameters the FASTA file parameters
+     * @param waitingHandler the handler displaying feedback to the user
+     * @param exceptionHandler the handler for exceptions
+     * @param processingParameters the processing parameters
+     *
+     * @throws java.lang.InterruptedException exception thrown if a thread gets
+     * interrupted
+     * @throws java.util.concurrent.TimeoutException exception thrown if the
+     * operation times out
+     */
+    public void attachPeptideProbabilities(
+            Identification identification,
+            FastaParameters fastaParameters,
+            WaitingHandler waitingHandler,
+            ExceptionHandler exceptionHandler,
+            ProcessingParameters processingParameters
+    ) throws InterruptedException, TimeoutException {
 
-            }
+        waitingHandler.setWaitingText("Attaching Peptide Probabilities. Please Wait...");
 
-            Set<String> fractions = psParameter.getFractions();
+        waitingHandler.setSecondaryProgressCounterIndeterminate(false);
+        waitingHandler.setMaxSecondaryProgressCounter(identification.getPeptideIdentification().size());
 
-            if (fractions == null) {
+        ExecutorService pool = Executors.newFixedThreadPool(processingParameters.getnThreads());
 
-                throw new IllegalArgumentException("Fractions not found for peptide " + peptideKey + ".");
+        PeptideMatchesIterator peptideMatchesIterator = identification.getPeptideMatchesIterator(waitingHandler);
 
-            }
+        for (int i = 1; i <= processingParameters.getnThreads(); i++) {
 
-            for (String fraction : fractions) {
+            PeptideProbabilityRunnable runnable = new PeptideProbabilityRunnable(
+                    peptideMatchesIterator,
+                    identification,
+                    fastaParameters,
+                    waitingHandler,
+                    exceptionHandler
+            );
+            pool.submit(runnable);
 
-                if (fastaParameters.isTargetDecoy()) {
+        }
 
-                    double probability = peptideMap.getProbability(psParameter.getFractionScore(fraction));
-                    psParameter.setFractionPEP(fraction, probability);
+        if (waitingHandler.isRunCanceled()) {
 
-                } else {
+            pool.shutdownNow();
+            return;
 
-                    psParameter.setFractionPEP(fraction, 1.0);
+        }
 
-                }
-            }
-            identification.updateObject(peptideKey, peptideMatch);
+        pool.shutdown();
 
-            waitingHandler.increaseSecondaryProgressCounter();
+        if (!pool.awaitTermination(identification.getPeptideIdentification().size(), TimeUnit.MINUTES)) {
 
-            if (waitingHandler.isRunCanceled()) {
+            throw new TimeoutException("Attaching peptide probabilities timed out. Please contact the developers.");
 
-                return;
+        }
 
-            }
+        if (waitingHandler.isRunCanceled()) {
+            return;
         }
 
         waitingHandler.setSecondaryProgressCounterIndeterminate(true);
@@ -1261,116 +1307,149 @@ public class MatchesValidator {
 
         waitingHandler.setWaitingText("Filling Protein Map. Please Wait...");
 
-        int totalProgress = identification.getProteinIdentification().size();
-
         waitingHandler.setSecondaryProgressCounterIndeterminate(false);
-        waitingHandler.setMaxSecondaryProgressCounter(totalProgress);
-
-        ProteinMatchesIterator proteinMatchesIterator = identification.getProteinMatchesIterator(waitingHandler);
-        int nFractions = identification.getSpectrumIdentification().size();
-        ProteinMatch proteinMatch;
-
-        while ((proteinMatch = proteinMatchesIterator.next()) != null) {
-
-            long proteinKey = proteinMatch.getKey();
-
-            waitingHandler.increaseSecondaryProgressCounter();
-
-            if (waitingHandler.isRunCanceled()) {
-
-                return;
-
-            }
-
-            HashMap<String, Double> fractionScores = new HashMap<>(nFractions);
-            double proteinGroupScore = 1.0;
+        waitingHandler.setMaxSecondaryProgressCounter(identification.getProteinIdentification().size());
 
-            if (proteinMatch == null) {
+        ProteinMapRunnable runnable = new ProteinMapRunnable(
+                identification.getProteinMatchesIterator(waitingHandler),
+                identification,
+                spectrumProvider,
+                new ConcurrentHashMap<>(),
+                waitingHandler,
+                null
+        );
+        runnable.processMatches();
 
-                throw new IllegalArgumentException("Protein match " + proteinKey + " not found.");
+        if (waitingHandler.isRunCanceled()) {
+            return;
+        }
 
-            }
+        waitingHandler.setSecondaryProgressCounterIndeterminate(true);
 
-            // get the global and fraction level scores
-            for (long peptideKey : proteinMatch.getPeptideMatchesKeys()) {
+    }
 
-                PeptideMatch peptideMatch = identification.getPeptideMatch(peptideKey);
-                PSParameter psParameter = (PSParameter) peptideMatch.getUrParam(PSParameter.dummy);
+    /**
+     * Fills the protein map using multiple threads.
+     *
+     * @param identification the identification class containing the matches to
+     * validate
+     * @param spectrumProvider The spectrum provider.
+     * @param waitingHandler the handler displaying feedback to the user
+     * @param exceptionHandler the handler for exceptions
+     * @param processingParameters the processing parameters
+     *
+     * @throws java.lang.InterruptedException exception thrown if a thread gets
+     * interrupted
+     * @throws java.util.concurrent.TimeoutException exception thrown if the
+     * operation times out
+     */
+    public void fillProteinMap(
+            Identification identification,
+            SpectrumProvider spectrumProvider,
+            WaitingHandler waitingHandler,
+            ExceptionHandler exceptionHandler,
+            ProcessingParameters processingParameters
+    ) throws InterruptedException, TimeoutException {
 
-                // Compute the score based on peptides unique to a group only.
-                TreeSet<Long> proteinGroups = identification.getProteinMatches(peptideKey);
+        waitingHandler.setWaitingText("Filling Protein Map. Please Wait...");
 
-                if (proteinGroups.size() == 1) {
+        waitingHandler.setSecondaryProgressCounterIndeterminate(false);
+        waitingHandler.setMaxSecondaryProgressCounter(identification.getProteinIdentification().size());
 
-                    proteinGroupScore = proteinGroupScore * psParameter.getProbability();
+        ExecutorService pool = Executors.newFixedThreadPool(processingParameters.getnThreads());
 
-                }
+        ProteinMatchesIterator proteinMatchesIterator = identification.getProteinMatchesIterator(waitingHandler);
+        ConcurrentHashMap<Long, String[]> sharedPeptideFractions = new ConcurrentHashMap<>();
 
-                if (nFractions > 1) {
+        for (int i = 1; i <= processingParameters.getnThreads(); i++) {
 
-                    for (String fraction : psParameter.getFractions()) {
+            ProteinMapRunnable runnable = new ProteinMapRunnable(
+                    proteinMatchesIterator,
+                    identification,
+                    spectrumProvider,
+                    sharedPeptideFractions,
+                    waitingHandler,
+                    exceptionHandler
+            );
+            pool.submit(runnable);
 
-                        Double fractionScore = fractionScores.get(fraction);
+        }
 
-                        boolean change = false;
+        if (waitingHandler.isRunCanceled()) {
 
-                        if (fractionScore == null) {
+            pool.shutdownNow();
+            return;
 
-                            fractionScore = 1.0;
-                            change = true;
+        }
 
-                        }
+        pool.shutdown();
 
-                        if (proteinGroups.size() == 1) {
+        if (!pool.awaitTermination(identification.getProteinIdentification().size(), TimeUnit.MINUTES)) {
 
-                            double peptideScore = psParameter.getFractionPEP(fraction);
+            throw new TimeoutException("Protein map filling timed out. Please contact the developers.");
 
-                            if (peptideScore != 1.0) {
+        }
 
-                                fractionScore *= peptideScore;
-                                change = true;
+        if (waitingHandler.isRunCanceled()) {
+            return;
+        }
 
-                            }
-                        }
+        waitingHandler.setSecondaryProgressCounterIndeterminate(true);
 
-                        if (change) {
+    }
 
-                            fractionScores.put(fraction, fractionScore);
-
-                        }
-                    }
-                }
-            }
-
-            if (nFractions == 1) {
-
-                String spectrumFile = spectrumProvider.getOrderedFileNamesWithoutExtensions()[0];
-                fractionScores.put(spectrumFile, proteinGroupScore);
-
-            }
-
-            PSParameter proteinParameter = new PSParameter();
-
-            // set the fraction scores
-            for (String fractionName : fractionScores.keySet()) {
+    /**
+     * Attaches the protein posterior error probability to the protein matches.
+     *
+     * @param identification the identification class containing the matches to
+     * validate
+     * @param sequenceProvider the sequence provider
+     * @param fastaParameters the FASTA file parameters
+     * @param metrics if provided fraction information
+     * @param waitingHandler the handler displaying feedback to the user
+     * @param fractionParameters the fraction parameters
+     */
+    public void attachProteinProbabilities(
+            Identification identification,
+            SequenceProvider sequenceProvider,
+            FastaParameters fastaParameters,
+            Metrics metrics,
+            WaitingHandler waitingHandler,
+            FractionParameters fractionParameters
+    ) {
 
-                proteinParameter.setFractionScore(fractionName, fractionScores.get(fractionName));
+        waitingHandler.setWaitingText("Attaching Protein Probabilities. Please Wait...");
 
-            }
+        waitingHandler.setSecondaryProgressCounterIndeterminate(false);
+        waitingHandler.setMaxSecondaryProgressCounter(identification.getProteinIdentification().size());
 
-            // Set the global score
-            proteinParameter.setScore(proteinGroupScore);
-            proteinMatch.addUrParam(proteinParameter);
-            proteinMap.put(proteinParameter.getScore(), proteinMatch.isDecoy());
+        ProteinProbabilityRunnable runnable = new ProteinProbabilityRunnable(
+                identification.getProteinMatchesIterator(waitingHandler),
+                identification,
+                sequenceProvider,
+                fastaParameters,
+                fractionParameters,
+                waitingHandler,
+                null
+        );
+        runnable.processMatches();
 
+        if (waitingHandler.isRunCanceled()) {
+            return;
         }
 
+        setProteinProbabilitiesMetrics(
+                metrics,
+                Collections.singletonList(runnable)
+        );
+
         waitingHandler.setSecondaryProgressCounterIndeterminate(true);
 
     }
 
     /**
-     * Attaches the protein posterior error probability to the protein matches.
+     * Attaches the protein posterior error probability to the protein matches
+     * using multiple threads.
      *
      * @param identification the identification class containing the matches to
      * validate
@@ -1378,7 +1457,14 @@ public class MatchesValidator {
      * @param fastaParameters the FASTA file parameters
      * @param metrics if provided fraction information
      * @param waitingHandler the handler displaying feedback to the user
+     * @param exceptionHandler the handler for exceptions
      * @param fractionParameters the fraction parameters
+     * @param processingParameters the processing parameters
+     *
+     * @throws java.lang.InterruptedException exception thrown if a thread gets
+     * interrupted
+     * @throws java.util.concurrent.TimeoutException exception thrown if the
+     * operation times out
      */
     public void attachProteinProbabilities(
             Identification identification,
@@ -1386,85 +1472,103 @@ public class MatchesValidator {
             FastaParameters fastaParameters,
             Metrics metrics,
             WaitingHandler waitingHandler,
-            FractionParameters fractionParameters
-    ) {
+            ExceptionHandler exceptionHandler,
+            FractionParameters fractionParameters,
+            ProcessingParameters processingParameters
+    ) throws InterruptedException, TimeoutException {
 
         waitingHandler.setWaitingText("Attaching Protein Probabilities. Please Wait...");
 
         waitingHandler.setSecondaryProgressCounterIndeterminate(false);
         waitingHandler.setMaxSecondaryProgressCounter(identification.getProteinIdentification().size());
 
-        HashMap<String, ArrayList<Double>> fractionMW = new HashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(processingParameters.getnThreads());
 
         ProteinMatchesIterator proteinMatchesIterator = identification.getProteinMatchesIterator(waitingHandler);
-        ProteinMatch proteinMatch;
+        ArrayList<ProteinProbabilityRunnable> runnables = new ArrayList<>(processingParameters.getnThreads());
 
-        while ((proteinMatch = proteinMatchesIterator.next()) != null) {
+        for (int i = 1; i <= processingParameters.getnThreads(); i++) {
 
-            double proteinMW = ProteinUtils.computeMolecularWeight(
-                    sequenceProvider.getSequence(proteinMatch.getLeadingAccession()));
+            ProteinProbabilityRunnable runnable = new ProteinProbabilityRunnable(
+                    proteinMatchesIterator,
+                    identification,
+                    sequenceProvider,
+                    fastaParameters,
+                    fractionParameters,
+                    waitingHandler,
+                    exceptionHandler
+            );
+            pool.submit(runnable);
+            runnables.add(runnable);
 
-            PSParameter psParameter = (PSParameter) proteinMatch.getUrParam(PSParameter.dummy);
+        }
 
-            if (fastaParameters.isTargetDecoy()) {
+        if (waitingHandler.isRunCanceled()) {
 
-                double proteinProbability = proteinMap.getProbability(psParameter.getScore());
-                psParameter.setProbability(proteinProbability);
+            pool.shutdownNow();
+            return;
 
-            } else {
+        }
 
-                psParameter.setProbability(1.0);
+        pool.shutdown();
 
-            }
+        if (!pool.awaitTermination(identification.getProteinIdentification().size(), TimeUnit.MINUTES)) {
 
-            for (String fraction : psParameter.getFractions()) {
+            throw new TimeoutException("Attaching protein probabilities timed out. Please contact the developers.");
 
-                if (fastaParameters.isTargetDecoy()) {
+        }
 
-                    psParameter.setFractionPEP(fraction, proteinMap.getProbability(psParameter.getFractionScore(fraction)));
+        if (waitingHandler.isRunCanceled()) {
+            return;
+        }
 
-                } else {
+        setProteinProbabilitiesMetrics(
+                metrics,
+                runnables
+        );
 
-                    psParameter.setFractionPEP(fraction, 1.0);
+        waitingHandler.setSecondaryProgressCounterIndeterminate(true);
 
-                }
+    }
 
-                // set the fraction molecular weights
-                if (!proteinMatch.isDecoy() && psParameter.getFractionConfidence(fraction) > fractionParameters.getProteinConfidenceMwPlots()) {
+    /**
+     * Combines the molecular weights per fraction gathered by the given
+     * runnables and saves them in the metrics.
+     *
+     * @param metrics the metrics, ignored if null
+     * @param runnables the runnables used to attach the protein probabilities
+     */
+    private void setProteinProbabilitiesMetrics(
+            Metrics metrics,
+            List<ProteinProbabilityRunnable> runnables
+    ) {
 
-                    ArrayList<Double> mw = fractionMW.get(fraction);
+        if (metrics != null) {
 
-                    if (mw == null) {
+            HashMap<String, ArrayList<Double>> fractionMW = new HashMap<>();
 
-                        mw = new ArrayList<>(1);
-                        fractionMW.put(fraction, mw);
+            for (ProteinProbabilityRunnable runnable : runnables) {
 
-                    }
+                for (Entry<String, ArrayList<Double>> entry : runnable.getFractionMW().entrySet()) {
 
-                    mw.add(proteinMW);
+                    ArrayList<Double> mw = fractionMW.get(entry.getKey());
 
-                }
-            }
+                    if (mw == null) {
 
-            identification.updateObject(proteinMatch.getKey(), proteinMatch);
-            waitingHandler.increaseSecondaryProgressCounter();
+                        fractionMW.put(entry.getKey(), entry.getValue());
 
-            if (waitingHandler.isRunCanceled()) {
+                    } else {
 
-                return;
+                        mw.addAll(entry.getValue());
 
+                    }
+                }
             }
-        }
-
-        if (metrics != null) {
 
             // set the observed fractional molecular weights per fraction
             metrics.setObservedFractionalMassesAll(fractionMW);
 
         }
-
-        waitingHandler.setSecondaryProgressCounterIndeterminate(true);
-
     }
 
     /**
@@ -2518,4 +2622,744 @@ public class MatchesValidator {
             return validatedProteinMatches;
         }
     }
+
+    /**
+     * Runnable filling the peptide map.
+     *
+     * @author Marc Vaudel
+     */
+    private class PeptideMapRunnable implements Runnable {
+
+        /**
+         * An iterator for the peptide matches.
+         */
+        private final PeptideMatchesIterator peptideMatchesIterator;
+        /**
+         * The identification.
+         */
+        private final Identification identification;
+        /**
+         * The sequence provider.
+         */
+        private final SequenceProvider sequenceProvider;
+        /**
+         * The number of fractions.
+         */
+        private final int nFractions;
+        /**
+         * The name of the fraction if only one fraction is present, null
+         * otherwise.
+         */
+        private final String singleFraction;
+        /**
+         * The waiting handler.
+         */
+        private final WaitingHandler waitingHandler;
+        /**
+         * Handler for the exceptions.
+         */
+        private final ExceptionHandler exceptionHandler;
+        /**
+         * The modifications found by this thread.
+         */
+        private final HashSet<String> foundModifications = new HashSet<>();
+        /**
+         * The keys of the spectrum matches of the peptides processed by this
+         * thread indexed by fraction key.
+         */
+        private final HashMap<String, ArrayList<Long>> fractionPsmMatches = new HashMap<>();
+
+        /**
+         * Constructor.
+         *
+         * @param peptideMatchesIterator a peptide matches iterator
+         * @param identification the identification containing the matches
+         * @param sequenceProvider a protein sequence provider
+         * @param spectrumProvider The spectrum provider.
+         * @param waitingHandler a waiting handler to display progress and allow
+         * canceling the process
+         * @param exceptionHandler handler for exceptions
+         */
+        public PeptideMapRunnable(
+                PeptideMatchesIterator peptideMatchesIterator,
+                Identification identification,
+                SequenceProvider sequenceProvider,
+                SpectrumProvider spectrumProvider,
+                WaitingHandler waitingHandler,
+                ExceptionHandler exceptionHandler
+        ) {
+
+            this.peptideMatchesIterator = peptideMatchesIterator;
+            this.identification = identification;
+            this.sequenceProvider = sequenceProvider;
+            this.waitingHandler = waitingHandler;
+            this.exceptionHandler = exceptionHandler;
+            this.nFractions = identification.getSpectrumIdentification().size();
+            this.singleFraction = nFractions == 1 ? spectrumProvider.getOrderedFileNamesWithoutExtensions()[0] : null;
+
+        }
+
+        @Override
+        public void run() {
+
+            try {
+
+                processMatches();
+
+            } catch (Exception e) {
+
+                exceptionHandler.catchException(e);
+                waitingHandler.setRunCanceled();
+
+            }
+        }
+
+        /**
+         * Iterates the peptide matches and adds their scores to the peptide
+         * map.
+         */
+        private void processMatches() {
+
+            PeptideMatch peptideMatch;
+
+            while ((peptideMatch = peptideMatchesIterator.next()) != null && !waitingHandler.isRunCanceled()) {
+
+                processMatch(peptideMatch);
+                waitingHandler.increaseSecondaryProgressCounter();
+
+            }
+        }
+
+        /**
+         * Computes the global and fraction level scores of a peptide match and
+         * adds the match to the peptide map.
+         *
+         * @param peptideMatch the peptide match
+         */
+        private void processMatch(
+                PeptideMatch peptideMatch
+        ) {
+
+            long peptideKey = peptideMatch.getKey();
+            String peptideKeyString = Long.toString(peptideKey);
+
+            for (ModificationMatch modificationMatch : peptideMatch.getPeptide().getVariableModifications()) {
+
+                foundModifications.add(modificationMatch.getModification());
+
+            }
+
+            double probaScore = 1.0;
+            HashMap<String, Double> fractionScores = new HashMap<>(nFractions);
+
+            // get the global and fraction level peptide scores
+            if (nFractions > 1) {
+
+                HashMap<String, ArrayList<Long>> peptideFractionPsmMatches = new HashMap<>(nFractions);
+
+                for (long spectrumKey : peptideMatch.getSpectrumMatchesKeys()) {
+
+                    SpectrumMatch spectrumMatch = identification.getSpectrumMatch(spectrumKey);
+                    PSParameter psmParameter = (PSParameter) spectrumMatch.getUrParam(PSParameter.dummy);
+                    double tempScore = psmParameter.getProbability();
+                    probaScore *= tempScore;
+
+                    String fraction = spectrumMatch.getSpectrumFile();
+                    Double fractionScore = fractionScores.get(fraction);
+
+                    if (fractionScore == null) {
+
+                        fractionScore = 1.0;
+
+                    }
+
+                    if (tempScore != 1.0 && fractionScore != 0.0) {
+
+                        fractionScore *= tempScore;
+
+                    }
+
+                    fractionScores.put(fraction, fractionScore);
+
+                    ArrayList<Long> spectrumMatches = peptideFractionPsmMatches.get(fraction);
+
+                    if (spectrumMatches == null) {
+
+                        spectrumMatches = new ArrayList<>(1);
+                        peptideFractionPsmMatches.put(fraction, spectrumMatches);
+
+                    }
+
+                    spectrumMatches.add(spectrumKey);
+
+                }
+
+                for (Entry<String, ArrayList<Long>> entry : peptideFractionPsmMatches.entrySet()) {
+
+                    fractionPsmMatches.put(
+                            getFractionKey(entry.getKey(), peptideKeyString),
+                            entry.getValue()
+                    );
+                }
+
+            } else {
+
+                long[] spectrumMatchesKeys = peptideMatch.getSpectrumMatchesKeys();
+                ArrayList<Long> spectrumMatches = new ArrayList<>(spectrumMatchesKeys.length);
+
+                for (long spectrumKey : spectrumMatchesKeys) {
+
+                    SpectrumMatch spectrumMatch = identification.getSpectrumMatch(spectrumKey);
+                    PSParameter psmParameter = (PSParameter) spectrumMatch.getUrParam(PSParameter.dummy);
+                    probaScore *= psmParameter.getProbability();
+                    spectrumMatches.add(spectrumKey);
+
+                }
+
+                fractionScores.put(singleFraction, probaScore);
+                fractionPsmMatches.put(
+                        getFractionKey(singleFraction, peptideKeyString),
+                        spectrumMatches
+                );
+            }
+
+            PSParameter peptideParameter = new PSParameter();
+
+            // set the fraction scores
+            for (Entry<String, Double> entry : fractionScores.entrySet()) {
+
+                peptideParameter.setFractionScore(entry.getKey(), entry.getValue());
+
+            }
+
+            // Set the global score and grouping key
+            peptideParameter.setScore(probaScore);
+
+            peptideMatch.addUrParam(peptideParameter);
+            peptideMap.put(peptideParameter.getScore(), PeptideUtils.isDecoy(peptideMatch.getPeptide(), sequenceProvider));
+
+        }
+
+        /**
+         * Returns the key of a peptide in a fraction.
+         *
+         * @param fraction the name of the fraction
+         * @param peptideKeyString the key of the peptide as string
+         *
+         * @return the key of the peptide in the fraction
+         */
+        private String getFractionKey(
+                String fraction,
+                String peptideKeyString
+        ) {
+
+            StringBuilder fractionKeyB = new StringBuilder(fraction.length() + peptideKeyString.length() + 1);
+            fractionKeyB.append(fraction).append('_').append(peptideKeyString);
+
+            return fractionKeyB.toString();
+
+        }
+
+        /**
+         * Returns the modifications found by this thread.
+         *
+         * @return the modifications found by this thread
+         */
+        public HashSet<String> getFoundModifications() {
+
+            return foundModifications;
+
+        }
+
+        /**
+         * Returns the keys of the spectrum matches of the peptides processed by
+         * this thread indexed by fraction key.
+         *
+         * @return the keys of the spectrum matches indexed by fraction key
+         */
+        public HashMap<String, ArrayList<Long>> getFractionPsmMatches() {
+
+            return fractionPsmMatches;
+
+        }
+    }
+
+    /**
+     * Runnable attaching the peptide probabilities.
+     *
+     * @author Marc Vaudel
+     */
+    private class PeptideProbabilityRunnable implements Runnable {
+
+        /**
+         * An iterator for the peptide matches.
+         */
+        private final PeptideMatchesIterator peptideMatchesIterator;
+        /**
+         * The identification.
+         */
+        private final Identification identification;
+        /**
+         * The FASTA file parameters.
+         */
+        private final FastaParameters fastaParameters;
+        /**
+         * The waiting handler.
+         */
+        private final WaitingHandler waitingHandler;
+        /**
+         * Handler for the exceptions.
+         */
+        private final ExceptionHandler exceptionHandler;
+
+        /**
+         * Constructor.
+         *
+         * @param peptideMatchesIterator a peptide matches iterator
+         * @param identification the identification containing the matches
+         * @param fastaParameters the FASTA file parameters
+         * @param waitingHandler a waiting handler to display progress and allow
+         * canceling the process
+         * @param exceptionHandler handler for exceptions
+         */
+        public PeptideProbabilityRunnable(
+                PeptideMatchesIterator peptideMatchesIterator,
+                Identification identification,
+                FastaParameters fastaParameters,
+                WaitingHandler waitingHandler,
+                ExceptionHandler exceptionHandler
+        ) {
+
+            this.peptideMatchesIterator = peptideMatchesIterator;
+            this.identification = identification;
+            this.fastaParameters = fastaParameters;
+            this.waitingHandler = waitingHandler;
+            this.exceptionHandler = exceptionHandler;
+
+        }
+
+        @Override
+        public void run() {
+
+            try {
+
+                processMatches();
+
+            } catch (Exception e) {
+
+                exceptionHandler.catchException(e);
+                waitingHandler.setRunCanceled();
+
+            }
+        }
+
+        /**
+         * Iterates the peptide matches and attaches their probabilities.
+         */
+        private void processMatches() {
+
+            PeptideMatch peptideMatch;
+
+            while ((peptideMatch = peptideMatchesIterator.next()) != null && !waitingHandler.isRunCanceled()) {
+
+                long peptideKey = peptideMatch.getKey();
+                PSParameter psParameter = (PSParameter) peptideMatch.getUrParam(PSParameter.dummy);
+
+                if (fastaParameters.isTargetDecoy()) {
+
+                    double probability = peptideMap.getProbability(psParameter.getScore());
+                    psParameter.setProbability(probability);
+
+                } else {
+
+                    psParameter.setProbability(1.0);
+
+                }
+
+                Set<String> fractions = psParameter.getFractions();
+
+                if (fractions == null) {
+
+                    throw new IllegalArgumentException("Fractions not found for peptide " + peptideKey + ".");
+
+                }
+
+                for (String fraction : fractions) {
+
+                    if (fastaParameters.isTargetDecoy()) {
+
+                        double probability = peptideMap.getProbability(psParameter.getFractionScore(fraction));
+                        psParameter.setFractionPEP(fraction, probability);
+
+                    } else {
+
+                        psParameter.setFractionPEP(fraction, 1.0);
+
+                    }
+                }
+
+                identification.updateObject(peptideKey, peptideMatch);
+                waitingHandler.increaseSecondaryProgressCounter();
+
+            }
+        }
+    }
+
+    /**
+     * Runnable filling the protein map.
+     *
+     * @author Marc Vaudel
+     */
+    private class ProteinMapRunnable implements Runnable {
+
+        /**
+         * An iterator for the protein matches.
+         */
+        private final ProteinMatchesIterator proteinMatchesIterator;
+        /**
+         * The identification.
+         */
+        private final Identification identification;
+        /**
+         * The number of fractions.
+         */
+        private final int nFractions;
+        /**
+         * The name of the fraction if only one fraction is present, null
+         * otherwise.
+         */
+        private final String singleFraction;
+        /**
+         * Cache for the fractions of the peptides shared between protein
+         * groups, shared between threads.
+         */
+        private final ConcurrentHashMap<Long, String[]> sharedPeptideFractions;
+        /**
+         * The waiting handler.
+         */
+        private final WaitingHandler waitingHandler;
+        /**
+         * Handler for the exceptions.
+         */
+        private final ExceptionHandler exceptionHandler;
+
+        /**
+         * Constructor.
+         *
+         * @param proteinMatchesIterator a protein matches iterator
+         * @param identification the identification containing the matches
+         * @param spectrumProvider The spectrum provider.
+         * @param sharedPeptideFractions cache for the fractions of the
+         * peptides shared between protein groups
+         * @param waitingHandler a waiting handler to display progress and allow
+         * canceling the process
+         * @param exceptionHandler handler for exceptions
+         */
+        public ProteinMapRunnable(
+                ProteinMatchesIterator proteinMatchesIterator,
+                Identification identification,
+                SpectrumProvider spectrumProvider,
+                ConcurrentHashMap<Long, String[]> sharedPeptideFractions,
+                WaitingHandler waitingHandler,
+                ExceptionHandler exceptionHandler
+        ) {
+
+            this.proteinMatchesIterator = proteinMatchesIterator;
+            this.identification = identification;
+            this.sharedPeptideFractions = sharedPeptideFractions;
+            this.waitingHandler = waitingHandler;
+            this.exceptionHandler = exceptionHandler;
+            this.nFractions = identification.getSpectrumIdentification().size();
+            this.singleFraction = nFractions == 1 ? spectrumProvider.getOrderedFileNamesWithoutExtensions()[0] : null;
+
+        }
+
+        @Override
+        public void run() {
+
+            try {
+
+                processMatches();
+
+            } catch (Exception e) {
+
+                exceptionHandler.catchException(e);
+                waitingHandler.setRunCanceled();
+
+            }
+        }
+
+        /**
+         * Iterates the protein matches and adds their scores to the protein
+         * map.
+         */
+        private void processMatches() {
+
+            ProteinMatch proteinMatch;
+
+            while ((proteinMatch = proteinMatchesIterator.next()) != null && !waitingHandler.isRunCanceled()) {
+
+                processMatch(proteinMatch);
+                waitingHandler.increaseSecondaryProgressCounter();
+
+            }
+        }
+
+        /**
+         * Computes the global and fraction level scores of a protein match and
+         * adds the match to the protein map. Only peptides unique to the group
+         * contribute to the score, shared peptides are therefore only loaded
+         * to get their fractions, at most once per run.
+         *
+         * @param proteinMatch the protein match
+         */
+        private void processMatch(
+                ProteinMatch proteinMatch
+        ) {
+
+            HashMap<String, Double> fractionScores = new HashMap<>(nFractions);
+            double proteinGroupScore = 1.0;
+
+            // get the global and fraction level scores
+            for (long peptideKey : proteinMatch.getPeptideMatchesKeys()) {
+
+                // Compute the score based on peptides unique to a group only.
+                TreeSet<Long> proteinGroups = identification.getProteinMatches(peptideKey);
+
+                if (proteinGroups.size() == 1) {
+
+                    PeptideMatch peptideMatch = identification.getPeptideMatch(peptideKey);
+                    PSParameter psParameter = (PSParameter) peptideMatch.getUrParam(PSParameter.dummy);
+                    proteinGroupScore = proteinGroupScore * psParameter.getProbability();
+
+                    if (nFractions > 1) {
+
+                        for (String fraction : psParameter.getFractions()) {
+
+                            Double fractionScore = fractionScores.get(fraction);
+
+                            if (fractionScore == null) {
+
+                                fractionScore = 1.0;
+
+                            }
+
+                            double peptideScore = psParameter.getFractionPEP(fraction);
+
+                            if (peptideScore != 1.0) {
+
+                                fractionScore *= peptideScore;
+
+                            }
+
+                            fractionScores.put(fraction, fractionScore);
+
+                        }
+                    }
+
+                } else if (nFractions > 1) {
+
+                    String[] fractions = sharedPeptideFractions.computeIfAbsent(
+                            peptideKey,
+                            key -> {
+
+                                PeptideMatch peptideMatch = identification.getPeptideMatch(key);
+                                PSParameter psParameter = (PSParameter) peptideMatch.getUrParam(PSParameter.dummy);
+
+                                return psParameter.getFractions().toArray(new String[0]);
+
+                            }
+                    );
+
+                    for (String fraction : fractions) {
+
+                        fractionScores.putIfAbsent(fraction, 1.0);
+
+                    }
+                }
+            }
+
+            if (nFractions == 1) {
+
+                fractionScores.put(singleFraction, proteinGroupScore);
+
+            }
+
+            PSParameter proteinParameter = new PSParameter();
+
+            // set the fraction scores
+            for (Entry<String, Double> entry : fractionScores.entrySet()) {
+
+                proteinParameter.setFractionScore(entry.getKey(), entry.getValue());
+
+            }
+
+            // Set the global score
+            proteinParameter.setScore(proteinGroupScore);
+            proteinMatch.addUrParam(proteinParameter);
+            proteinMap.put(proteinParameter.getScore(), proteinMatch.isDecoy());
+
+        }
+    }
+
+    /**
+     * Runnable attaching the protein probabilities.
+     *
+     * @author Marc Vaudel
+     */
+    private class ProteinProbabilityRunnable implements Runnable {
+
+        /**
+         * An iterator for the protein matches.
+         */
+        private final ProteinMatchesIterator proteinMatchesIterator;
+        /**
+         * The identification.
+         */
+        private final Identification identification;
+        /**
+         * The sequence provider.
+         */
+        private final SequenceProvider sequenceProvider;
+        /**
+         * The FASTA file parameters.
+         */
+        private final FastaParameters fastaParameters;
+        /**
+         * The fraction parameters.
+         */
+        private final FractionParameters fractionParameters;
+        /**
+         * The waiting handler.
+         */
+        private final WaitingHandler waitingHandler;
+        /**
+         * Handler for the exceptions.
+         */
+        private final ExceptionHandler exceptionHandler;
+        /**
+         * The molecular weights of the confident target proteins processed by
+         * this thread indexed by fraction.
+         */
+        private final HashMap<String, ArrayList<Double>> fractionMW = new HashMap<>();
+
+        /**
+         * Constructor.
+         *
+         * @param proteinMatchesIterator a protein matches iterator
+         * @param identification the identification containing the matches
+         * @param sequenceProvider a protein sequence provider
+         * @param fastaParameters the FASTA file parameters
+         * @param fractionParameters the fraction parameters
+         * @param waitingHandler a waiting handler to display progress and allow
+         * canceling the process
+         * @param exceptionHandler handler for exceptions
+         */
+        public ProteinProbabilityRunnable(
+                ProteinMatchesIterator proteinMatchesIterator,
+                Identification identification,
+                SequenceProvider sequenceProvider,
+                FastaParameters fastaParameters,
+                FractionParameters fractionParameters,
+                WaitingHandler waitingHandler,
+                ExceptionHandler exceptionHandler
+        ) {
+
+            this.proteinMatchesIterator = proteinMatchesIterator;
+            this.identification = identification;
+            this.sequenceProvider = sequenceProvider;
+            this.fastaParameters = fastaParameters;
+            this.fractionParameters = fractionParameters;
+            this.waitingHandler = waitingHandler;
+            this.exceptionHandler = exceptionHandler;
+
+        }
+
+        @Override
+        public void run() {
+
+            try {
+
+                processMatches();
+
+            } catch (Exception e) {
+
+                exceptionHandler.catchException(e);
+                waitingHandler.setRunCanceled();
+
+            }
+        }
+
+        /**
+         * Iterates the protein matches and attaches their probabilities.
+         */
+        private void processMatches() {
+
+            ProteinMatch proteinMatch;
+
+            while ((proteinMatch = proteinMatchesIterator.next()) != null && !waitingHandler.isRunCanceled()) {
+
+                double proteinMW = ProteinUtils.computeMolecularWeight(
+                        sequenceProvider.getSequence(proteinMatch.getLeadingAccession()));
+
+                PSParameter psParameter = (PSParameter) proteinMatch.getUrParam(PSParameter.dummy);
+
+                if (fastaParameters.isTargetDecoy()) {
+
+                    double proteinProbability = proteinMap.getProbability(psParameter.getScore());
+                    psParameter.setProbability(proteinProbability);
+
+                } else {
+
+                    psParameter.setProbability(1.0);
+
+                }
+
+                for (String fraction : psParameter.getFractions()) {
+
+                    if (fastaParameters.isTargetDecoy()) {
+
+                        psParameter.setFractionPEP(fraction, proteinMap.getProbability(psParameter.getFractionScore(fraction)));
+
+                    } else {
+
+                        psParameter.setFractionPEP(fraction, 1.0);
+
+                    }
+
+                    // set the fraction molecular weights
+                    if (!proteinMatch.isDecoy() && psParameter.getFractionConfidence(fraction) > fractionParameters.getProteinConfidenceMwPlots()) {
+
+                        ArrayList<Double> mw = fractionMW.get(fraction);
+
+                        if (mw == null) {
+
+                            mw = new ArrayList<>(1);
+                            fractionMW.put(fraction, mw);
+
+                        }
+
+                        mw.add(proteinMW);
+
+                    }
+                }
+
+                identification.updateObject(proteinMatch.getKey(), proteinMatch);
+                waitingHandler.increaseSecondaryProgressCounter();
+
+            }
+        }
+
+        /**
+         * Returns the molecular weights of the confident target proteins
+         * processed by this thread indexed by fraction.
+         *
+         * @return the molecular weights indexed by fraction
+         */
+        public HashMap<String, ArrayList<Double>> getFractionMW() {
+
+            return fractionMW;
+
+        }
+    }
 }
@@ -1,6 +1,12 @@
 package eu.isas.peptideshaker.test;
 
 import eu.isas.peptideshaker.pride.PrideWebServiceTest;
+import eu.isas.peptideshaker.test.scoring.TargetDecoyMapTest;
+import eu.isas.peptideshaker.test.scoring.TieBreakerTest;
+import eu.isas.peptideshaker.test.utils.ParallelZipWriterTest;
+import eu.isas.peptideshaker.test.utils.PercolatorFeatureStoreTest;
+import eu.isas.peptideshaker.test.utils.PercolatorUtilsTest;
+import eu.isas.peptideshaker.test.utils.PredictionStoreTest;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -19,6 +25,12 @@ public class FullSuite extends TestCase {
     public static Test suite() {
         TestSuite ts = new TestSuite("Test suite for the PeptideShaker project.");
         ts.addTest(new TestSuite(PrideWebServiceTest.class));
+        ts.addTest(new TestSuite(TargetDecoyMapTest.class));
+        ts.addTest(new TestSuite(TieBreakerTest.class));
+        ts.addTest(new TestSuite(ParallelZipWriterTest.class));
+        ts.addTest(new TestSuite(PredictionStoreTest.class));
+        ts.addTest(new TestSuite(PercolatorFeatureStoreTest.class));
+        ts.addTest(new TestSuite(PercolatorUtilsTest.class));
         return ts;
     }
 }
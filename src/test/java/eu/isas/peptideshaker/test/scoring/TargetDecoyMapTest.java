@@ -0,0 +1,170 @@
+package eu.isas.peptideshaker.test.scoring;
+
+import com.compomics.util.gui.waiting.waitinghandlers.WaitingHandlerCLIImpl;
+import eu.isas.peptideshaker.scoring.targetdecoy.TargetDecoyMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+import junit.framework.TestCase;
+import org.junit.Assert;
+
+/**
+ * Tests the target/decoy map.
+ *
+ * @author Marc Vaudel
+ */
+public class TargetDecoyMapTest extends TestCase {
+
+    /**
+     * Tests that hits added concurrently are all counted.
+     *
+     * @throws InterruptedException exception thrown if a thread is interrupted
+     */
+    public void testConcurrentPut() throws InterruptedException {
+
+        TargetDecoyMap targetDecoyMap = new TargetDecoyMap();
+
+        int nThreads = 4;
+        int nHitsPerThread = 10000;
+        Thread[] threads = new Thread[nThreads];
+
+        for (int i = 0; i < nThreads; i++) {
+
+            Random random = new Random(i);
+
+            threads[i] = new Thread(() -> {
+
+                for (int j = 0; j < nHitsPerThread; j++) {
+
+                    double score = random.nextInt(1000) / 1000.0;
+                    targetDecoyMap.put(score, random.nextDouble() < score);
+
+                }
+            });
+            threads[i].start();
+
+        }
+
+        for (Thread thread : threads) {
+
+            thread.join();
+
+        }
+
+        int nHits = 0;
+        double previousScore = -1.0;
+
+        for (double score : targetDecoyMap.getScores()) {
+
+            Assert.assertTrue(score > previousScore);
+            previousScore = score;
+            nHits += targetDecoyMap.getNTarget(score) + targetDecoyMap.getNDecoy(score);
+
+        }
+
+        Assert.assertEquals(nThreads * nHitsPerThread, nHits);
+
+    }
+
+    /**
+     * Tests the estimation and lookup of probabilities.
+     */
+    public void testProbabilities() {
+
+        TargetDecoyMap targetDecoyMap = new TargetDecoyMap();
+
+        for (int i = 0; i < 1000; i++) {
+
+            double score = i / 1000.0;
+            targetDecoyMap.put(score, false);
+
+            if (i % 10 == 0) {
+
+                targetDecoyMap.put(score, true);
+
+            }
+        }
+
+        targetDecoyMap.estimateProbabilities(new WaitingHandlerCLIImpl());
+
+        double[] scores = targetDecoyMap.getScores();
+
+        Assert.assertEquals(
+                targetDecoyMap.getProbability(scores[scores.length - 1]),
+                targetDecoyMap.getProbability(2.0),
+                0.0
+        );
+
+        double expected = (targetDecoyMap.getProbability(scores[10]) + targetDecoyMap.getProbability(scores[11])) / 2;
+
+        Assert.assertEquals(
+                expected,
+                targetDecoyMap.getProbability((scores[10] + scores[11]) / 2),
+                0.0
+        );
+
+        targetDecoyMap.remove(scores[5], false);
+        targetDecoyMap.cleanUp();
+
+        Assert.assertEquals(scores.length - 1, targetDecoyMap.getMapSize());
+
+    }
+
+    /**
+     * Tests that the points and probabilities are kept through serialization.
+     *
+     * @throws IOException exception thrown if an error occurred while
+     * serializing the map
+     * @throws ClassNotFoundException exception thrown if the class of the map
+     * cannot be found
+     */
+    public void testSerialization() throws IOException, ClassNotFoundException {
+
+        TargetDecoyMap targetDecoyMap = new TargetDecoyMap();
+
+        for (int i = 0; i < 1000; i++) {
+
+            double score = i / 1000.0;
+            targetDecoyMap.put(score, i % 7 == 0);
+
+        }
+
+        targetDecoyMap.estimateProbabilities(new WaitingHandlerCLIImpl());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+
+            out.writeObject(targetDecoyMap);
+
+        }
+
+        TargetDecoyMap deserialized;
+
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+
+            deserialized = (TargetDecoyMap) in.readObject();
+
+        }
+
+        double[] scores = targetDecoyMap.getScores();
+
+        Assert.assertArrayEquals(scores, deserialized.getScores(), 0.0);
+
+        for (double score : scores) {
+
+            Assert.assertEquals(targetDecoyMap.getNTarget(score), deserialized.getNTarget(score));
+            Assert.assertEquals(targetDecoyMap.getNDecoy(score), deserialized.getNDecoy(score));
+            Assert.assertEquals(targetDecoyMap.getProbability(score), deserialized.getProbability(score), 0.0);
+
+        }
+
+        deserialized.put(2.0, false);
+
+        Assert.assertEquals(scores.length + 1, deserialized.getMapSize());
+
+    }
+}
@@ -0,0 +1,267 @@
+package eu.isas.peptideshaker.test.scoring;
+
+import com.compomics.util.experiment.identification.matches.IonMatch;
+import eu.isas.peptideshaker.scoring.psm_scoring.TieBreaker;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.stream.Collectors;
+import junit.framework.TestCase;
+import org.junit.Assert;
+
+/**
+ * Tests the annotated intensity used by the tie breaker against the former
+ * implementation.
+ *
+ * @author Marc Vaudel
+ */
+public class TieBreakerTest extends TestCase {
+
+    /**
+     * The number of spectra to simulate.
+     */
+    private static final int N_SPECTRA = 2000;
+    /**
+     * The number of tied candidates per spectrum.
+     */
+    private static final int N_CANDIDATES = 6;
+
+    /**
+     * Tests that every annotated peak is counted once and that the given
+     * matches are left unchanged.
+     */
+    public void testDistinctPeaks() {
+
+        IonMatch[] ionMatches = new IonMatch[]{
+            getIonMatch(300.1, 4.0),
+            getIonMatch(175.1, 1.0),
+            getIonMatch(300.1, 4.0),
+            getIonMatch(88.0, 0.5),
+            getIonMatch(175.1, 1.0)
+        };
+
+        Assert.assertEquals(5.5, TieBreaker.getAnnotatedIntensity(ionMatches), 0.0);
+        Assert.assertEquals(0.0, TieBreaker.getAnnotatedIntensity(new IonMatch[0]), 0.0);
+
+        // the matches given are not reordered
+        Assert.assertEquals(300.1, ionMatches[0].peakMz, 0.0);
+        Assert.assertEquals(175.1, ionMatches[1].peakMz, 0.0);
+
+    }
+
+    /**
+     * Tests that the annotated intensity does not depend on the order of the
+     * matches.
+     */
+    public void testOrder() {
+
+        Random random = new Random(7);
+
+        for (int i = 0; i < N_SPECTRA; i++) {
+
+            ArrayList<IonMatch> ionMatches = getIonMatches(random, getPeaks(random));
+            double annotatedIntensity = TieBreaker.getAnnotatedIntensity(ionMatches.toArray(new IonMatch[0]));
+
+            Collections.shuffle(ionMatches, random);
+
+            Assert.assertEquals(annotatedIntensity, TieBreaker.getAnnotatedIntensity(ionMatches.toArray(new IonMatch[0])), 0.0);
+
+        }
+    }
+
+    /**
+     * Tests that the candidate selected among tied candidates is the one
+     * selected by the former implementation, unless the annotated intensities
+     * of the candidates are within the rounding error of the sums. Every
+     * other candidate annotates the same peaks as the previous one.
+     */
+    public void testSelection() {
+
+        Random random = new Random(42);
+
+        for (int i = 0; i < N_SPECTRA; i++) {
+
+            double[][] peaks = getPeaks(random);
+            double[] formerIntensities = new double[N_CANDIDATES];
+            double[] intensities = new double[N_CANDIDATES];
+            double[] roundingErrors = new double[N_CANDIDATES];
+
+            ArrayList<IonMatch> previousIonMatches = null;
+
+            for (int j = 0; j < N_CANDIDATES; j++) {
+
+                ArrayList<IonMatch> candidateIonMatches;
+
+                if (j % 2 == 1) {
+
+                    // a candidate annotating the same peaks in another order
+                    candidateIonMatches = new ArrayList<>(previousIonMatches);
+                    candidateIonMatches.addAll(previousIonMatches.subList(0, previousIonMatches.size() / 2));
+                    Collections.shuffle(candidateIonMatches, random);
+
+                } else {
+
+                    candidateIonMatches = getIonMatches(random, peaks);
+
+                }
+
+                previousIonMatches = candidateIonMatches;
+                IonMatch[] ionMatches = candidateIonMatches.toArray(new IonMatch[0]);
+
+                formerIntensities[j] = getFormerAnnotatedIntensity(ionMatches);
+                intensities[j] = TieBreaker.getAnnotatedIntensity(ionMatches);
+                roundingErrors[j] = 2 * ionMatches.length * Math.ulp(formerIntensities[j]);
+
+                Assert.assertEquals(formerIntensities[j], intensities[j], roundingErrors[j]);
+
+            }
+
+            int formerBest = getBest(formerIntensities);
+            int best = getBest(intensities);
+
+            if (formerBest != best) {
+
+                Assert.assertEquals(
+                        formerIntensities[formerBest],
+                        formerIntensities[best],
+                        roundingErrors[formerBest] + roundingErrors[best]
+                );
+
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the best candidate, ranking the candidates in a
+     * single pass as done by the tie breaker, the first candidate being kept
+     * in case of tie.
+     *
+     * @param annotatedIntensities the annotated intensities of the candidates
+     *
+     * @return the index of the best candidate
+     */
+    private static int getBest(
+            double[] annotatedIntensities
+    ) {
+
+        int best = 0;
+
+        for (int i = 1; i < annotatedIntensities.length; i++) {
+
+            if (annotatedIntensities[i] > annotatedIntensities[best]) {
+
+                best = i;
+
+            }
+        }
+
+        return best;
+
+    }
+
+    /**
+     * Returns the annotated intensity as computed by the former implementation
+     * of the tie breaker.
+     *
+     * @param ionMatches the ion matches
+     *
+     * @return the annotated intensity
+     */
+    private static double getFormerAnnotatedIntensity(
+            IonMatch[] ionMatches
+    ) {
+
+        return Arrays.stream(ionMatches)
+                .collect(
+                        Collectors.toMap(
+                                ionMatch -> ionMatch.peakMz,
+                                ionMatch -> ionMatch.peakIntensity,
+                                (a, b) -> a,
+                                HashMap::new
+                        )
+                )
+                .values()
+                .stream()
+                .mapToDouble(
+                        a -> a
+                )
+                .sum();
+
+    }
+
+    /**
+     * Returns random peaks, m/z in the first row and intensities spanning
+     * several orders of magnitude in the second.
+     *
+     * @param random the random number generator
+     *
+     * @return random peaks
+     */
+    private static double[][] getPeaks(
+            Random random
+    ) {
+
+        int nPeaks = 20 + random.nextInt(200);
+        double[][] peaks = new double[2][nPeaks];
+
+        for (int i = 0; i < nPeaks; i++) {
+
+            peaks[0][i] = 100.0 + 1900.0 * random.nextDouble();
+            peaks[1][i] = Math.pow(10.0, 6.0 * random.nextDouble()) * random.nextDouble();
+
+        }
+
+        return peaks;
+
+    }
+
+    /**
+     * Returns random matches of the given peaks, some peaks being matched
+     * several times.
+     *
+     * @param random the random number generator
+     * @param peaks the peaks
+     *
+     * @return random matches of the given peaks
+     */
+    private static ArrayList<IonMatch> getIonMatches(
+            Random random,
+            double[][] peaks
+    ) {
+
+        ArrayList<IonMatch> ionMatches = new ArrayList<>();
+
+        for (int i = 0; i < peaks[0].length; i++) {
+
+            int nMatches = random.nextInt(4) == 0 ? 1 + random.nextInt(3) : 0;
+
+            for (int j = 0; j < nMatches; j++) {
+
+                ionMatches.add(getIonMatch(peaks[0][i], peaks[1][i]));
+
+            }
+        }
+
+        return ionMatches;
+
+    }
+
+    /**
+     * Returns an ion match on the given peak.
+     *
+     * @param mz the m/z of the peak
+     * @param intensity the intensity of the peak
+     *
+     * @return an ion match on the given peak
+     */
+    private static IonMatch getIonMatch(
+            double mz,
+            double intensity
+    ) {
+
+        return new IonMatch(mz, intensity, null, 1);
+
+    }
+}
@@ -0,0 +1,437 @@
+package eu.isas.peptideshaker.test.utils;
+
+import com.compomics.util.gui.waiting.waitinghandlers.WaitingHandlerCLIImpl;
+import eu.isas.peptideshaker.utils.ParallelZipReader;
+import eu.isas.peptideshaker.utils.ParallelZipWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import junit.framework.TestCase;
+import org.junit.Assert;
+
+/**
+ * Tests the parallel zip writer by reading the files it writes with the zip
+ * classes of the JDK.
+ *
+ * @author Marc Vaudel
+ */
+public class ParallelZipWriterTest extends TestCase {
+
+    /**
+     * The size of the blocks used in the tests, small to have files spanning
+     * multiple blocks.
+     */
+    private static final int BLOCK_SIZE = 1024;
+
+    /**
+     * Tests small, multi-block, and empty files, and folders.
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * or writing a file
+     */
+    public void testRoundTrip() throws IOException {
+
+        try (TestFolder testFolder = new TestFolder("parallel_zip_test")) {
+
+            File folder = testFolder.getFolder();
+
+            Random random = new Random(42);
+            HashMap<String, byte[]> expected = new HashMap<>();
+
+            File smallFile = writeFile(folder, "small.txt", "PeptideShaker".getBytes("UTF-8"));
+            expected.put("small.txt", Files.readAllBytes(smallFile.toPath()));
+
+            byte[] largeContent = new byte[10 * BLOCK_SIZE + 17];
+
+            for (int i = 0; i < largeContent.length; i++) {
+
+                largeContent[i] = (byte) (random.nextInt(4) + 'A');
+
+            }
+
+            File largeFile = writeFile(folder, "large.txt", largeContent);
+            expected.put("data/large.txt", largeContent);
+
+            File blockFile = writeFile(folder, "block.bin", randomBytes(random, BLOCK_SIZE));
+            expected.put("block.bin", Files.readAllBytes(blockFile.toPath()));
+
+            File emptyFile = writeFile(folder, "empty.txt", new byte[0]);
+            expected.put("data/empty.txt", new byte[0]);
+
+            File zipFile = new File(folder, "test.zip");
+
+            try (ParallelZipWriter writer = new ParallelZipWriter(zipFile, 4, BLOCK_SIZE, 6)) {
+
+                writer.addFile(smallFile, null, 0);
+                writer.addFolder("data");
+                writer.addFile("data", largeFile, null, 0);
+                writer.addFile(blockFile, null, 0);
+                writer.addFile("data", emptyFile, null, 0);
+                writer.finish();
+
+            }
+
+            Assert.assertFalse(ParallelZipWriter.getTempFile(zipFile).exists());
+
+            try (ZipFile zip = new ZipFile(zipFile)) {
+
+                Assert.assertEquals(expected.size() + 1, zip.size());
+
+                ZipEntry folderEntry = zip.getEntry("data/");
+                Assert.assertNotNull(folderEntry);
+                Assert.assertTrue(folderEntry.isDirectory());
+
+                for (String name : expected.keySet()) {
+
+                    ZipEntry entry = zip.getEntry(name);
+                    Assert.assertNotNull(name, entry);
+                    Assert.assertEquals(name, expected.get(name).length, entry.getSize());
+
+                    try (InputStream inputStream = zip.getInputStream(entry)) {
+
+                        Assert.assertArrayEquals(name, expected.get(name), readAll(inputStream));
+
+                    }
+                }
+            }
+
+            // the streaming reader relies on the local headers
+            int nFiles = 0;
+
+            try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(zipFile.toPath()))) {
+
+                ZipEntry entry;
+
+                while ((entry = zipInputStream.getNextEntry()) != null) {
+
+                    if (!entry.isDirectory()) {
+
+                        Assert.assertArrayEquals(entry.getName(), expected.get(entry.getName()), readAll(zipInputStream));
+                        nFiles++;
+
+                    }
+                }
+            }
+
+            Assert.assertEquals(expected.size(), nFiles);
+
+        }
+    }
+
+    /**
+     * Tests that more than 65535 entries are written using the Zip64
+     * extensions.
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * or writing a file
+     */
+    public void testZip64Entries() throws IOException {
+
+        try (TestFolder testFolder = new TestFolder("parallel_zip_test")) {
+
+            File folder = testFolder.getFolder();
+
+            byte[] content = "zip64".getBytes("UTF-8");
+            File file = writeFile(folder, "entry.txt", content);
+            File zipFile = new File(folder, "test.zip");
+            int nEntries = 70000;
+
+            try (ParallelZipWriter writer = new ParallelZipWriter(zipFile, 2, BLOCK_SIZE, 1)) {
+
+                for (int i = 0; i < nEntries; i++) {
+
+                    writer.addFile("folder_" + i, file, null, 0);
+
+                }
+
+                writer.finish();
+
+            }
+
+            try (ZipFile zip = new ZipFile(zipFile)) {
+
+                Assert.assertEquals(nEntries, zip.size());
+
+                int nChecked = 0;
+                Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+
+                while (zipEntries.hasMoreElements()) {
+
+                    ZipEntry entry = zipEntries.nextElement();
+
+                    if (nChecked % 1000 == 0 || !zipEntries.hasMoreElements()) {
+
+                        try (InputStream inputStream = zip.getInputStream(entry)) {
+
+                            Assert.assertArrayEquals(entry.getName(), content, readAll(inputStream));
+
+                        }
+                    }
+
+                    nChecked++;
+
+                }
+
+                Assert.assertEquals(nEntries, nChecked);
+                Assert.assertNotNull(zip.getEntry("folder_" + (nEntries - 1) + "/entry.txt"));
+
+            }
+
+        }
+    }
+
+    /**
+     * Tests that no zip file is left when the run is canceled or when the
+     * writer is closed without being finished.
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * or writing a file
+     */
+    public void testCancel() throws IOException {
+
+        try (TestFolder testFolder = new TestFolder("parallel_zip_test")) {
+
+            File folder = testFolder.getFolder();
+
+            File file = writeFile(folder, "content.bin", randomBytes(new Random(1), 8 * BLOCK_SIZE));
+            File zipFile = new File(folder, "test.zip");
+
+            WaitingHandlerCLIImpl waitingHandler = new WaitingHandlerCLIImpl();
+            waitingHandler.setRunCanceled();
+
+            try (ParallelZipWriter writer = new ParallelZipWriter(zipFile, 2, BLOCK_SIZE, 6)) {
+
+                writer.addFile(file, waitingHandler, file.length());
+                writer.finish();
+
+            }
+
+            Assert.assertFalse(zipFile.exists());
+            Assert.assertFalse(ParallelZipWriter.getTempFile(zipFile).exists());
+
+            try (ParallelZipWriter writer = new ParallelZipWriter(zipFile, 2, BLOCK_SIZE, 6)) {
+
+                writer.addFile(file, null, 0);
+
+            }
+
+            Assert.assertFalse(zipFile.exists());
+            Assert.assertFalse(ParallelZipWriter.getTempFile(zipFile).exists());
+            Assert.assertTrue(file.exists());
+
+        }
+    }
+
+    /**
+     * Tests that the content of a file can be read from any block using the
+     * block index, with every block indexed and with only every n-th block
+     * indexed.
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * or writing a file
+     */
+    public void testRandomAccess() throws IOException {
+
+        try (TestFolder testFolder = new TestFolder("parallel_zip_test")) {
+
+            File folder = testFolder.getFolder();
+            Random random = new Random(3);
+
+            byte[] content = new byte[10 * BLOCK_SIZE + 17];
+
+            for (int i = 0; i < content.length; i++) {
+
+                content[i] = (byte) (random.nextInt(4) + 'A');
+
+            }
+
+            File file = writeFile(folder, "content.txt", content);
+
+            // small blocks so that not all blocks can be indexed
+            int smallBlockSize = 16;
+            int nSmallBlocks = 2 * ParallelZipWriter.MAX_INDEXED_BLOCKS + 5;
+            byte[] largeContent = randomBytes(random, nSmallBlocks * smallBlockSize);
+            File largeFile = writeFile(folder, "large.bin", largeContent);
+
+            File zipFile = new File(folder, "test.zip");
+            File largeZipFile = new File(folder, "large.zip");
+
+            try (ParallelZipWriter writer = new ParallelZipWriter(zipFile, 4, BLOCK_SIZE, 6)) {
+
+                writer.addFolder("data");
+                writer.addFile("data", file, null, 0);
+                writer.finish();
+
+            }
+
+            try (ParallelZipWriter writer = new ParallelZipWriter(largeZipFile, 4, smallBlockSize, 6)) {
+
+                writer.addFile(largeFile, null, 0);
+                writer.finish();
+
+            }
+
+            try (ParallelZipReader reader = new ParallelZipReader(zipFile)) {
+
+                ParallelZipReader.BlockIndex blockIndex = reader.getBlockIndex("data/content.txt");
+
+                Assert.assertEquals(11, blockIndex.getnBlocks());
+
+                for (int block = 0; block < blockIndex.getnBlocks(); block++) {
+
+                    long position = (long) block * BLOCK_SIZE;
+
+                    Assert.assertEquals(block, blockIndex.getBlock(position + 5));
+                    Assert.assertEquals(position, blockIndex.getUncompressedOffset(block));
+
+                    assertContent(reader, "data/content.txt", content, (int) position);
+                    assertContent(reader, "data/content.txt", content, (int) position + 5);
+
+                }
+
+                assertContent(reader, "data/content.txt", content, content.length);
+
+                try {
+
+                    reader.getBlockIndex("data/");
+                    Assert.fail("A block index was found for a folder.");
+
+                } catch (IOException e) {
+
+                    // expected
+
+                }
+            }
+
+            try (ParallelZipReader reader = new ParallelZipReader(largeZipFile)) {
+
+                ParallelZipReader.BlockIndex blockIndex = reader.getBlockIndex("large.bin");
+
+                Assert.assertTrue(blockIndex.getnBlocks() <= ParallelZipWriter.MAX_INDEXED_BLOCKS);
+                Assert.assertEquals(3 * smallBlockSize, blockIndex.getUncompressedOffset(1));
+
+                int lastBlock = blockIndex.getnBlocks() - 1;
+                long lastPosition = blockIndex.getUncompressedOffset(lastBlock);
+
+                Assert.assertEquals(lastBlock, blockIndex.getBlock(largeContent.length - 1));
+
+                assertContent(reader, "large.bin", largeContent, 0);
+                assertContent(reader, "large.bin", largeContent, 3 * smallBlockSize + 1);
+                assertContent(reader, "large.bin", largeContent, (int) lastPosition);
+                assertContent(reader, "large.bin", largeContent, largeContent.length - 1);
+
+            }
+        }
+    }
+
+    /**
+     * Asserts that the content read from the given position is the end of the
+     * expected content.
+     *
+     * @param reader the zip reader
+     * @param entryName the name of the file in the zip file
+     * @param expected the expected content of the file
+     * @param position the position where to start reading
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * the file
+     */
+    private static void assertContent(
+            ParallelZipReader reader,
+            String entryName,
+            byte[] expected,
+            int position
+    ) throws IOException {
+
+        try (InputStream inputStream = reader.getInputStream(entryName, position)) {
+
+            Assert.assertArrayEquals(
+                    entryName + " from " + position,
+                    Arrays.copyOfRange(expected, position, expected.length),
+                    readAll(inputStream)
+            );
+        }
+    }
+
+    /**
+     * Writes the given content to a new file.
+     *
+     * @param folder the folder where to write the file
+     * @param name the name of the file
+     * @param content the content of the file
+     *
+     * @return the file
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the file
+     */
+    private static File writeFile(
+            File folder,
+            String name,
+            byte[] content
+    ) throws IOException {
+
+        File file = new File(folder, name);
+        Files.write(file.toPath(), content);
+
+        return file;
+
+    }
+
+    /**
+     * Returns random bytes.
+     *
+     * @param random the random number generator
+     * @param length the number of bytes
+     *
+     * @return random bytes
+     */
+    private static byte[] randomBytes(
+            Random random,
+            int length
+    ) {
+
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+
+        return bytes;
+
+    }
+
+    /**
+     * Reads the remaining content of the given stream.
+     *
+     * @param inputStream the input stream
+     *
+     * @return the content of the stream
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * the stream
+     */
+    private static byte[] readAll(
+            InputStream inputStream
+    ) throws IOException {
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int length;
+
+        while ((length = inputStream.read(buffer)) != -1) {
+
+            content.write(buffer, 0, length);
+
+        }
+
+        return content.toByteArray();
+
+    }
+}
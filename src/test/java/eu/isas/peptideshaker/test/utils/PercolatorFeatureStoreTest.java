@@ -0,0 +1,247 @@
+package eu.isas.peptideshaker.test.utils;
+
+import com.compomics.util.parameters.identification.IdentificationParameters;
+import com.compomics.util.parameters.identification.search.SearchParameters;
+import eu.isas.peptideshaker.utils.PercolatorFeatureStore;
+import eu.isas.peptideshaker.utils.PercolatorFeatureStore.PsmFeatures;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import junit.framework.TestCase;
+import org.junit.Assert;
+
+/**
+ * Tests the saving and loading of the store of Percolator features.
+ *
+ * @author Marc Vaudel
+ */
+public class PercolatorFeatureStoreTest extends TestCase {
+
+    /**
+     * The offset of the number of PSMs in the file.
+     */
+    private static final int N_PSMS_OFFSET = 2 * Integer.BYTES + Long.BYTES;
+
+    /**
+     * Tests that the features collected in batches are saved, loaded, and
+     * returned unchanged.
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * or writing a file
+     */
+    public void testRoundTrip() throws IOException {
+
+        try (TestFolder testFolder = new TestFolder("percolator_features_test")) {
+
+            File folder = testFolder.getFolder();
+
+            File fastaFile = writeFasta(folder, ">P1\nPEPTIDEK\n");
+            File file = new File(folder, "features.bin");
+
+            PsmFeatures target = new PsmFeatures(11L, false, 523.7, -0.002, 0.45, new boolean[]{false, true, false, true}, "PEPTIDEK");
+            PsmFeatures decoy = new PsmFeatures(-22L, true, 612.3, 0.004, 0.0, null, "KEDITPEP[35]");
+            PsmFeatures other = new PsmFeatures(33L, false, 400.2, 0.0, 1.0, new boolean[]{true, false, false, false}, "M[35]TESTK");
+
+            PercolatorFeatureStore store = load(file, "project", fastaFile);
+
+            Assert.assertNull(store.get(1L));
+
+            PercolatorFeatureStore.Batch batch1 = store.newBatch();
+            batch1.put(1L, target);
+            batch1.put(2L, decoy);
+            batch1.put(1L, other);
+
+            PercolatorFeatureStore.Batch batch2 = store.newBatch();
+            batch2.put(2L, other);
+            batch2.put(3L, other);
+
+            Assert.assertEquals(2, batch1.getnPsms());
+
+            // the batches are only visible after saving
+            Assert.assertNull(store.get(1L));
+
+            store.save();
+
+            Assert.assertEquals(3, store.getnPsms());
+            assertFeatures(target, store.get(1L));
+
+            PercolatorFeatureStore loadedStore = load(file, "project", fastaFile);
+
+            Assert.assertEquals(3, loadedStore.getnPsms());
+            assertFeatures(target, loadedStore.get(1L));
+            assertFeatures(decoy, loadedStore.get(2L));
+            assertFeatures(other, loadedStore.get(3L));
+            Assert.assertNull(loadedStore.get(4L));
+
+            // new features are appended to the loaded ones
+            loadedStore.newBatch().put(4L, decoy);
+            loadedStore.save();
+
+            PercolatorFeatureStore reloadedStore = load(file, "project", fastaFile);
+
+            Assert.assertEquals(4, reloadedStore.getnPsms());
+            assertFeatures(target, reloadedStore.get(1L));
+            assertFeatures(decoy, reloadedStore.get(4L));
+
+        }
+    }
+
+    /**
+     * Tests that the features are not reused for another project or another
+     * FASTA file.
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * or writing a file
+     */
+    public void testProjectAndFasta() throws IOException {
+
+        try (TestFolder testFolder = new TestFolder("percolator_features_test")) {
+
+            File folder = testFolder.getFolder();
+
+            File fastaFile = writeFasta(folder, ">P1\nPEPTIDEK\n");
+            File file = new File(folder, "features.bin");
+
+            PercolatorFeatureStore store = load(file, "project", fastaFile);
+            store.newBatch().put(1L, new PsmFeatures(11L, false, 523.7, -0.002, 0.45, null, "PEPTIDEK"));
+            store.save();
+
+            Assert.assertEquals(1, load(file, "project", fastaFile).getnPsms());
+            Assert.assertEquals(0, load(file, "other_project", fastaFile).getnPsms());
+
+            writeFasta(folder, ">P1\nPEPTIDEK\n>P2\nPEPTIDER\n");
+
+            Assert.assertEquals(0, load(file, "project", fastaFile).getnPsms());
+
+        }
+    }
+
+    /**
+     * Tests that a corrupted file is ignored and replaced at the next save.
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * or writing a file
+     */
+    public void testCorruptedFile() throws IOException {
+
+        try (TestFolder testFolder = new TestFolder("percolator_features_test")) {
+
+            File folder = testFolder.getFolder();
+
+            File fastaFile = writeFasta(folder, ">P1\nPEPTIDEK\n");
+            File file = new File(folder, "features.bin");
+            PsmFeatures psmFeatures = new PsmFeatures(11L, false, 523.7, -0.002, 0.45, null, "PEPTIDEK");
+
+            for (int nPsms : new int[]{Integer.MAX_VALUE, -1, 2}) {
+
+                PercolatorFeatureStore store = load(file, "project", fastaFile);
+                store.newBatch().put(1L, psmFeatures);
+                store.save();
+
+                try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+
+                    randomAccessFile.seek(N_PSMS_OFFSET);
+                    randomAccessFile.writeInt(nPsms);
+
+                }
+
+                PercolatorFeatureStore corruptedStore = load(file, "project", fastaFile);
+
+                Assert.assertEquals(0, corruptedStore.getnPsms());
+
+                corruptedStore.newBatch().put(1L, psmFeatures);
+                corruptedStore.save();
+
+                assertFeatures(psmFeatures, load(file, "project", fastaFile).get(1L));
+
+            }
+
+            // truncated file
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+
+                randomAccessFile.setLength(randomAccessFile.length() - 3);
+
+            }
+
+            Assert.assertEquals(0, load(file, "project", fastaFile).getnPsms());
+
+        }
+    }
+
+    /**
+     * Loads the store of the given file with default parameters.
+     *
+     * @param file the file of the store
+     * @param projectName the name of the project
+     * @param fastaFile the FASTA file
+     *
+     * @return the store
+     */
+    private static PercolatorFeatureStore load(
+            File file,
+            String projectName,
+            File fastaFile
+    ) {
+
+        IdentificationParameters identificationParameters = new IdentificationParameters(new SearchParameters());
+
+        return PercolatorFeatureStore.load(
+                file,
+                projectName,
+                fastaFile,
+                identificationParameters.getSearchParameters(),
+                identificationParameters.getSequenceMatchingParameters(),
+                identificationParameters.getAnnotationParameters(),
+                identificationParameters.getModificationLocalizationParameters(),
+                identificationParameters.getSearchParameters().getModificationParameters()
+        );
+
+    }
+
+    /**
+     * Asserts that the given features are the expected ones.
+     *
+     * @param expected the expected features
+     * @param actual the features
+     */
+    private static void assertFeatures(
+            PsmFeatures expected,
+            PsmFeatures actual
+    ) {
+
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected.getMs2PipKey(), actual.getMs2PipKey());
+        Assert.assertEquals(expected.isDecoy(), actual.isDecoy());
+        Assert.assertEquals(expected.getMeasuredMz(), actual.getMeasuredMz(), 0.0);
+        Assert.assertEquals(expected.getDeltaMz(), actual.getDeltaMz(), 0.0);
+        Assert.assertEquals(expected.getIntensityCoverage(), actual.getIntensityCoverage(), 0.0);
+        Assert.assertArrayEquals(expected.getEnzymaticity(), actual.getEnzymaticity());
+        Assert.assertEquals(expected.getSequenceWithModifications(), actual.getSequenceWithModifications());
+
+    }
+
+    /**
+     * Writes the FASTA file of the tests.
+     *
+     * @param folder the folder where to write the file
+     * @param content the content of the file
+     *
+     * @return the FASTA file
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the file
+     */
+    private static File writeFasta(
+            File folder,
+            String content
+    ) throws IOException {
+
+        File file = new File(folder, "test.fasta");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+        return file;
+
+    }
+}
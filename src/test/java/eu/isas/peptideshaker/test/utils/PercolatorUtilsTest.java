@@ -0,0 +1,558 @@
+package eu.isas.peptideshaker.test.utils;
+
+import com.compomics.util.experiment.mass_spectrometry.spectra.Spectrum;
+import eu.isas.peptideshaker.utils.PercolatorUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+import org.junit.Assert;
+
+/**
+ * Tests the spectra similarity features exported for Percolator against the
+ * former implementation.
+ *
+ * @author Marc Vaudel
+ */
+public class PercolatorUtilsTest extends TestCase {
+
+    /**
+     * The number of random spectrum pairs to compare.
+     */
+    private static final int N_SPECTRA = 20000;
+    /**
+     * The ion spectra to compare the features of.
+     */
+    private static final String[] ION_SPECTRA = new String[]{"whole", "B", "Y"};
+
+    /**
+     * Tests that the peaks are aligned as done by the former implementation.
+     */
+    public void testAlignedPeaks() {
+
+        Random random = new Random(11);
+
+        for (int i = 0; i < N_SPECTRA; i++) {
+
+            Spectrum[] spectra = getRandomSpectra(random);
+
+            ArrayList<ArrayList<Integer>> formerAlignedPeaks = getFormerAlignedPeaks(spectra[0], spectra[1]);
+
+            int[] alignedPeaks = new int[2 * spectra[1].mz.length];
+            int nAligned = PercolatorUtils.getAlignedPeaks(spectra[0], spectra[1], alignedPeaks);
+
+            Assert.assertEquals(formerAlignedPeaks.size(), nAligned);
+
+            for (int j = 0; j < nAligned; j++) {
+
+                Assert.assertEquals((int) formerAlignedPeaks.get(j).get(0), alignedPeaks[2 * j]);
+                Assert.assertEquals((int) formerAlignedPeaks.get(j).get(1), alignedPeaks[2 * j + 1]);
+
+            }
+        }
+    }
+
+    /**
+     * Tests that the intensities are scaled as done by the former
+     * implementation: by the median of an odd or even number of matched
+     * peaks, and by the average of the most intense peaks when no or one peak
+     * is matched, including when the spectra have fewer peaks than averaged.
+     */
+    public void testScaling() {
+
+        Random random = new Random(23);
+
+        for (int nMeasured : new int[]{1, 2, 5, 8, 9, 10, 30, 300}) {
+
+            for (int nPredicted : new int[]{1, 2, 5, 8, 9, 10, 30, 60}) {
+
+                int maxMatched = Math.min(nPredicted, (nMeasured + 1) / 3);
+
+                for (int nMatched = 0; nMatched <= Math.min(maxMatched, 12); nMatched++) {
+
+                    for (int i = 0; i < 50; i++) {
+
+                        Spectrum[] spectra = getSpectra(random, nMeasured, nPredicted, nMatched);
+
+                        int[] alignedPeaks = new int[2 * spectra[1].mz.length];
+                        int nAligned = PercolatorUtils.getAlignedPeaks(spectra[0], spectra[1], alignedPeaks);
+
+                        Assert.assertEquals(nMatched, PercolatorUtils.getnMatchedPeaks(alignedPeaks, nAligned));
+
+                        ArrayList<Spectrum> formerScaledSpectra = getFormerScaledSpectra(spectra[0], spectra[1]);
+                        ArrayList<Spectrum> scaledSpectra = PercolatorUtils.scaleIntensities(spectra[0], spectra[1], alignedPeaks, nAligned);
+
+                        Assert.assertArrayEquals(formerScaledSpectra.get(0).intensity, scaledSpectra.get(0).intensity, 0.0);
+                        Assert.assertArrayEquals(formerScaledSpectra.get(1).intensity, scaledSpectra.get(1).intensity, 0.0);
+
+                        assertSameDistances(spectra);
+
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that the features of random spectrum pairs are identical to the
+     * ones of the former implementation.
+     */
+    public void testSpectraDistances() {
+
+        Random random = new Random(42);
+
+        for (int i = 0; i < N_SPECTRA; i++) {
+
+            assertSameDistances(getRandomSpectra(random));
+
+        }
+    }
+
+    /**
+     * Asserts that the features of the given spectra are identical to the
+     * ones of the former implementation, for all ion spectra, and that the
+     * spectra are left unchanged.
+     *
+     * @param spectra the measured and predicted spectra
+     */
+    private static void assertSameDistances(
+            Spectrum[] spectra
+    ) {
+
+        double[] measuredIntensities = Arrays.copyOf(spectra[0].intensity, spectra[0].intensity.length);
+        double[] predictedIntensities = Arrays.copyOf(spectra[1].intensity, spectra[1].intensity.length);
+
+        for (String ionSpectrum : ION_SPECTRA) {
+
+            String formerDistances = getFormerSpectraDistances(spectra[0], spectra[1], ionSpectrum);
+            String distances = PercolatorUtils.calculateSpectraDistances(spectra[0], spectra[1], ionSpectrum).toString();
+
+            Assert.assertEquals(formerDistances, distances);
+
+            StringBuilder line = new StringBuilder("prefix\t");
+            PercolatorUtils.appendSpectraDistances(line, spectra[0], spectra[1], ionSpectrum);
+
+            Assert.assertEquals("prefix\t" + formerDistances, line.toString());
+
+        }
+
+        Assert.assertArrayEquals(measuredIntensities, spectra[0].intensity, 0.0);
+        Assert.assertArrayEquals(predictedIntensities, spectra[1].intensity, 0.0);
+
+    }
+
+    /**
+     * Returns a measured and a predicted spectrum where the given number of
+     * predicted peaks are matched. The measured peaks are spaced by 2 m/z,
+     * the matched predicted peaks fall on every third measured peak and the
+     * unmatched ones in between. Some predicted peaks have a null intensity,
+     * and intensities are often tied to test the selection of the median.
+     *
+     * @param random the random number generator
+     * @param nMeasured the number of measured peaks
+     * @param nPredicted the number of predicted peaks
+     * @param nMatched the number of matched predicted peaks
+     *
+     * @return the measured and the predicted spectrum
+     */
+    private static Spectrum[] getSpectra(
+            Random random,
+            int nMeasured,
+            int nPredicted,
+            int nMatched
+    ) {
+
+        double[] measuredMz = new double[nMeasured];
+        double[] measuredIntensity = new double[nMeasured];
+
+        for (int i = 0; i < nMeasured; i++) {
+
+            measuredMz[i] = 100.0 + 2.0 * i + 0.1 * random.nextDouble();
+            measuredIntensity[i] = getIntensity(random);
+
+        }
+
+        // the last measured peak cannot be matched by the alignment
+        int nSlots = Math.min(nPredicted, (nMeasured + 1) / 3);
+        boolean[] matched = new boolean[nSlots];
+
+        for (int i = 0; i < nMatched; i++) {
+
+            int slot = random.nextInt(nSlots);
+
+            while (matched[slot]) {
+
+                slot = (slot + 1) % nSlots;
+
+            }
+
+            matched[slot] = true;
+
+        }
+
+        double[] predictedMz = new double[nPredicted];
+        double[] predictedIntensity = new double[nPredicted];
+
+        for (int i = 0; i < nPredicted; i++) {
+
+            if (i < nSlots && matched[i]) {
+
+                predictedMz[i] = measuredMz[3 * i];
+                predictedIntensity[i] = 0.5 + getIntensity(random);
+
+            } else {
+
+                // peaks between measured peaks or above the measured range, unmatched or null
+                predictedMz[i] = i < nSlots ? measuredMz[3 * i] + 1.0 : measuredMz[nMeasured - 1] + 10.0 * (i + 1);
+                predictedIntensity[i] = random.nextBoolean() ? getIntensity(random) : 0.0;
+
+            }
+        }
+
+        return new Spectrum[]{
+            new Spectrum(null, measuredMz, measuredIntensity, 2),
+            new Spectrum(null, predictedMz, predictedIntensity, 2)
+        };
+    }
+
+    /**
+     * Returns a random measured and predicted spectrum, some predicted peaks
+     * being drawn next to measured peaks.
+     *
+     * @param random the random number generator
+     *
+     * @return the measured and the predicted spectrum
+     */
+    private static Spectrum[] getRandomSpectra(
+            Random random
+    ) {
+
+        int nMeasured = 1 + random.nextInt(300);
+        double[] measuredMz = new double[nMeasured];
+        double[] measuredIntensity = new double[nMeasured];
+
+        for (int i = 0; i < nMeasured; i++) {
+
+            measuredMz[i] = 100.0 + 1900.0 * random.nextDouble();
+            measuredIntensity[i] = random.nextInt(20) == 0 ? 0.0 : 1e5 * random.nextDouble();
+
+        }
+
+        Arrays.sort(measuredMz);
+
+        int nPredicted = random.nextInt(60);
+        double[] predictedMz = new double[nPredicted];
+        double[] predictedIntensity = new double[nPredicted];
+
+        for (int i = 0; i < nPredicted; i++) {
+
+            predictedMz[i] = random.nextBoolean()
+                    ? measuredMz[random.nextInt(nMeasured)] * (1.0 + 3e-5 * (random.nextDouble() - 0.5))
+                    : 100.0 + 1900.0 * random.nextDouble();
+            predictedIntensity[i] = random.nextInt(8) == 0 ? 0.0 : getIntensity(random);
+
+        }
+
+        Arrays.sort(predictedMz);
+
+        return new Spectrum[]{
+            new Spectrum(null, measuredMz, measuredIntensity, 2),
+            new Spectrum(null, predictedMz, predictedIntensity, 2)
+        };
+    }
+
+    /**
+     * Returns a random intensity, tied to other intensities one time out of
+     * three.
+     *
+     * @param random the random number generator
+     *
+     * @return a random intensity
+     */
+    private static double getIntensity(
+            Random random
+    ) {
+
+        return random.nextInt(3) == 0 ? random.nextInt(4) / 2.0 : random.nextDouble();
+
+    }
+
+    /**
+     * Returns the spectra features as computed by the former implementation.
+     *
+     * @param measuredSpectrum the measured spectrum
+     * @param predictedSpectrum the predicted spectrum
+     * @param ionSpectrum the ion spectrum
+     *
+     * @return the spectra features
+     */
+    private static String getFormerSpectraDistances(
+            Spectrum measuredSpectrum,
+            Spectrum predictedSpectrum,
+            String ionSpectrum
+    ) {
+
+        StringBuilder results = new StringBuilder();
+
+        ArrayList<ArrayList<Integer>> alignedPeaks = getFormerAlignedPeaks(measuredSpectrum, predictedSpectrum);
+
+        int nMatched = 0;
+        for (ArrayList<Integer> peak : alignedPeaks) {
+            if (peak.get(0) != -1) {
+                nMatched++;
+            }
+        }
+
+        if (ionSpectrum.equals("B") || ionSpectrum.equals("Y")) {
+            results.append(getFormerTerminiCoverage(alignedPeaks, ionSpectrum)).append("\t");
+        }
+
+        double matchedPeaksRatio = PercolatorUtils.findMatchedPeaksRatio(predictedSpectrum, nMatched);
+        results.append(matchedPeaksRatio);
+
+        ArrayList<Spectrum> scaledSpectra = getFormerScaledSpectra(measuredSpectrum, predictedSpectrum);
+        double[] scaledMeasured = scaledSpectra.get(0).intensity;
+        double[] scaledPredicted = scaledSpectra.get(1).intensity;
+
+        // log distance
+        double logDistance = 18.0;
+        if (matchedPeaksRatio != 0.0) {
+            logDistance = 0.0;
+            for (ArrayList<Integer> peak : alignedPeaks) {
+                double predictedIntensity = scaledPredicted[peak.get(1)];
+                double measuredIntensity = peak.get(0) != -1 ? scaledMeasured[peak.get(0)] : 0.0;
+                if (predictedIntensity == 0.0) {
+                    predictedIntensity = 0.000001;
+                }
+                if (measuredIntensity == 0.0) {
+                    measuredIntensity = 0.000001;
+                }
+                logDistance += Math.abs(Math.log(measuredIntensity) - Math.log(predictedIntensity));
+            }
+            logDistance = logDistance / alignedPeaks.size();
+        }
+        results.append("\t").append(logDistance);
+
+        // cosine similarity
+        double sumMP = 0.0;
+        double sumM = 0.0;
+        double sumP = 0.0;
+        for (ArrayList<Integer> peak : alignedPeaks) {
+            double predictedIntensity = scaledPredicted[peak.get(1)];
+            double measuredIntensity = peak.get(0) != -1 ? scaledMeasured[peak.get(0)] : 0.0;
+            sumMP += measuredIntensity * predictedIntensity;
+            sumM += Math.pow(measuredIntensity, 2.0);
+            sumP += Math.pow(predictedIntensity, 2.0);
+        }
+        sumM = Math.sqrt(sumM);
+        sumP = Math.sqrt(sumP);
+        double cosine = sumM != 0 ? sumMP / (sumM * sumP) : 0.0;
+        results.append("\t").append(cosine);
+
+        results.append("\t").append(1.0 - (Math.acos(cosine) / Math.PI));
+
+        // cross entropy
+        double crossEntropy = 15.0;
+        if (matchedPeaksRatio != 0.0) {
+            double predictedSum = 0.0;
+            double measuredSum = 0.0;
+            for (ArrayList<Integer> peak : alignedPeaks) {
+                predictedSum += predictedSpectrum.intensity[peak.get(1)];
+                if (peak.get(0) != -1) {
+                    measuredSum += measuredSpectrum.intensity[peak.get(0)];
+                }
+            }
+            crossEntropy = 0.0;
+            for (ArrayList<Integer> peak : alignedPeaks) {
+                double measuredIntensity = peak.get(0) != -1 ? measuredSpectrum.intensity[peak.get(0)] / measuredSum : 0.0;
+                double predictedIntensity = predictedSpectrum.intensity[peak.get(1)] / predictedSum;
+                if (measuredIntensity == 0.0) {
+                    measuredIntensity = 0.000001;
+                }
+                crossEntropy = crossEntropy - (predictedIntensity * Math.log(measuredIntensity));
+            }
+        }
+        results.append("\t").append(crossEntropy);
+
+        return results.toString();
+
+    }
+
+    /**
+     * Returns the termini coverage as computed by the former implementation.
+     *
+     * @param alignedPeaks the aligned peaks
+     * @param ion "B" or "Y" ion
+     *
+     * @return the termini coverage
+     */
+    private static int getFormerTerminiCoverage(
+            ArrayList<ArrayList<Integer>> alignedPeaks,
+            String ion
+    ) {
+
+        if (ion.equals("B")) {
+            for (int i = 0; i < alignedPeaks.size(); i++) {
+                if (alignedPeaks.get(i).get(0) == -1) {
+                    return i;
+                }
+            }
+        } else {
+            for (int i = alignedPeaks.size() - 1; i >= 0; i--) {
+                if (alignedPeaks.get(i).get(0) == -1) {
+                    return alignedPeaks.size() - i - 1;
+                }
+            }
+        }
+
+        return alignedPeaks.size();
+
+    }
+
+    /**
+     * Returns the spectra scaled as done by the former implementation, sorting
+     * the intensities.
+     *
+     * @param measuredSpectrum the measured spectrum
+     * @param predictedSpectrum the predicted spectrum
+     *
+     * @return the scaled measured and predicted spectra
+     */
+    private static ArrayList<Spectrum> getFormerScaledSpectra(
+            Spectrum measuredSpectrum,
+            Spectrum predictedSpectrum
+    ) {
+
+        ArrayList<ArrayList<Integer>> matchedPeaks = new ArrayList<>();
+        for (ArrayList<Integer> peak : getFormerAlignedPeaks(measuredSpectrum, predictedSpectrum)) {
+            if (peak.get(0) != -1) {
+                matchedPeaks.add(peak);
+            }
+        }
+
+        double[] measuredIntensity = measuredSpectrum.intensity;
+        double[] predictedIntensity = predictedSpectrum.intensity;
+
+        double scaleFactorMeasured;
+        double scaleFactorPredicted;
+
+        if (matchedPeaks.size() <= 1) {
+
+            scaleFactorMeasured = getFormerTopAverage(measuredIntensity);
+            scaleFactorPredicted = getFormerTopAverage(predictedIntensity);
+
+        } else {
+
+            double[] measuredMatched = new double[matchedPeaks.size()];
+            double[] predictedMatched = new double[matchedPeaks.size()];
+            for (int i = 0; i < matchedPeaks.size(); i++) {
+                measuredMatched[i] = measuredIntensity[matchedPeaks.get(i).get(0)];
+                predictedMatched[i] = predictedIntensity[matchedPeaks.get(i).get(1)];
+            }
+            Arrays.sort(measuredMatched);
+            Arrays.sort(predictedMatched);
+
+            int middle = matchedPeaks.size() / 2;
+
+            if (matchedPeaks.size() % 2 == 0) {
+                scaleFactorMeasured = (measuredMatched[middle] + measuredMatched[middle - 1]) / 2.0;
+                scaleFactorPredicted = (predictedMatched[middle] + predictedMatched[middle - 1]) / 2.0;
+            } else {
+                scaleFactorMeasured = measuredMatched[middle];
+                scaleFactorPredicted = predictedMatched[middle];
+            }
+        }
+
+        double[] scaledMeasuredIntensity = new double[measuredIntensity.length];
+        for (int i = 0; i < scaledMeasuredIntensity.length; i++) {
+            scaledMeasuredIntensity[i] = measuredIntensity[i] / scaleFactorMeasured;
+        }
+
+        double[] scaledPredictedIntensity = new double[predictedIntensity.length];
+        for (int i = 0; i < scaledPredictedIntensity.length; i++) {
+            scaledPredictedIntensity[i] = predictedIntensity[i] / scaleFactorPredicted;
+        }
+
+        ArrayList<Spectrum> scaledSpectra = new ArrayList<>(2);
+        scaledSpectra.add(new Spectrum(null, measuredSpectrum.mz, scaledMeasuredIntensity, 2));
+        scaledSpectra.add(new Spectrum(null, predictedSpectrum.mz, scaledPredictedIntensity, 2));
+
+        return scaledSpectra;
+
+    }
+
+    /**
+     * Returns the average of the nine most intense peaks as computed by the
+     * former implementation, sorting the intensities.
+     *
+     * @param intensities the intensities
+     *
+     * @return the average of the most intense peaks
+     */
+    private static double getFormerTopAverage(
+            double[] intensities
+    ) {
+
+        double[] sortedIntensities = Arrays.copyOf(intensities, intensities.length);
+        Arrays.sort(sortedIntensities);
+
+        double sum = 0.0;
+        int counter = 0;
+        for (int i = sortedIntensities.length - 1; i > Math.max(sortedIntensities.length - 10, -1); i--) {
+            sum += sortedIntensities[i];
+            counter++;
+        }
+
+        return sum / counter;
+
+    }
+
+    /**
+     * Returns the aligned peaks as computed by the former implementation.
+     *
+     * @param measuredSpectrum the measured spectrum
+     * @param predictedSpectrum the predicted spectrum
+     *
+     * @return the indices of the measured and predicted peaks
+     */
+    private static ArrayList<ArrayList<Integer>> getFormerAlignedPeaks(
+            Spectrum measuredSpectrum,
+            Spectrum predictedSpectrum
+    ) {
+
+        ArrayList<ArrayList<Integer>> alignedPeaks = new ArrayList<>();
+
+        double[] measuredMzs = measuredSpectrum.mz;
+        double[] predictedMzs = predictedSpectrum.mz;
+        double[] predictedIntensities = predictedSpectrum.intensity;
+
+        int measuredMzIndex = 0;
+        for (int i = 0; i < predictedMzs.length; i++) {
+
+            if (predictedIntensities[i] == 0.0) {
+                continue;
+            }
+
+            int matchedIndex = -1;
+            double minMzDist = Math.abs(predictedMzs[i] - measuredMzs[measuredMzIndex]);
+            while (measuredMzIndex < measuredMzs.length - 1) {
+                measuredMzIndex++;
+                double mzDist = Math.abs(predictedMzs[i] - measuredMzs[measuredMzIndex]);
+                if (minMzDist < mzDist) {
+                    if (1000000 * minMzDist / predictedMzs[i] <= 10.0) {
+                        matchedIndex = measuredMzIndex - 1;
+                    }
+                    break;
+                } else {
+                    minMzDist = mzDist;
+                }
+            }
+
+            alignedPeaks.add(new ArrayList<>(Arrays.asList(matchedIndex, i)));
+
+        }
+
+        return alignedPeaks;
+
+    }
+}
@@ -0,0 +1,277 @@
+package eu.isas.peptideshaker.test.utils;
+
+import com.compomics.util.experiment.mass_spectrometry.spectra.Spectrum;
+import eu.isas.peptideshaker.utils.PredictionStore;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import junit.framework.TestCase;
+import org.junit.Assert;
+
+/**
+ * Tests the conversion and the queries of the prediction store.
+ *
+ * @author Marc Vaudel
+ */
+public class PredictionStoreTest extends TestCase {
+
+    /**
+     * The tolerance used to compare values stored as floats.
+     */
+    private static final double TOLERANCE = 1e-4;
+
+    /**
+     * Tests that the predicted spectra are returned sorted by m/z and split in
+     * all, b, and y ions, and that missing keys return null.
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * or writing a file
+     */
+    public void testFragmentationRoundTrip() throws IOException {
+
+        try (TestFolder testFolder = new TestFolder("prediction_store_test")) {
+
+            File folder = testFolder.getFolder();
+
+            File ms2pipFile = writeFile(
+                    folder,
+                    "ms2pip.csv",
+                    "predicted_spectrum_key,charge,ion,ionnumber,mz,prediction",
+                    "11,2,B,1,300.1,0.5",
+                    "11,2,Y,1,175.119,0.25",
+                    "11,2,B2,2,150.6,0.125",
+                    "11,2,Y2,2,88.06,0.0625",
+                    "22,3,Y,1,147.113,0.75"
+            );
+
+            try (PredictionStore store = PredictionStore.getFragmentationStore(ms2pipFile)) {
+
+                ArrayList<Spectrum> spectra = store.getSpectra("11");
+
+                Assert.assertNotNull(spectra);
+                Assert.assertEquals(3, spectra.size());
+
+                assertPeaks(spectra.get(0), new double[]{88.06, 150.6, 175.119, 300.1}, new double[]{0.0625, 0.125, 0.25, 0.5});
+                assertPeaks(spectra.get(1), new double[]{150.6, 300.1}, new double[]{0.125, 0.5});
+                assertPeaks(spectra.get(2), new double[]{88.06, 175.119}, new double[]{0.0625, 0.25});
+
+                spectra = store.getSpectra("22");
+
+                Assert.assertNotNull(spectra);
+                assertPeaks(spectra.get(0), new double[]{147.113}, new double[]{0.75});
+                assertPeaks(spectra.get(1), new double[0], new double[0]);
+                assertPeaks(spectra.get(2), new double[]{147.113}, new double[]{0.75});
+
+                Assert.assertNull(store.getSpectra("33"));
+                Assert.assertNull(store.getSpectra("1"));
+
+            }
+
+            Assert.assertTrue(PredictionStore.getStoreFile(ms2pipFile).exists());
+
+        }
+    }
+
+    /**
+     * Tests that the last block of a repeated ms2pip key wins, and that the
+     * retention times of a repeated DeepLC key are returned in file order.
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * or writing a file
+     */
+    public void testDuplicateKeys() throws IOException {
+
+        try (TestFolder testFolder = new TestFolder("prediction_store_test")) {
+
+            File folder = testFolder.getFolder();
+
+            File ms2pipFile = writeFile(
+                    folder,
+                    "ms2pip.csv",
+                    "predicted_spectrum_key,charge,ion,ionnumber,mz,prediction",
+                    "7,2,B,1,100.0,0.1",
+                    "7,2,Y,1,200.0,0.2",
+                    "8,2,B,1,300.0,0.3",
+                    "7,2,Y,1,400.0,0.4"
+            );
+
+            try (PredictionStore store = PredictionStore.getFragmentationStore(ms2pipFile)) {
+
+                ArrayList<Spectrum> spectra = store.getSpectra("7");
+
+                assertPeaks(spectra.get(0), new double[]{400.0}, new double[]{0.4});
+                assertPeaks(spectra.get(1), new double[0], new double[0]);
+                assertPeaks(spectra.get(2), new double[]{400.0}, new double[]{0.4});
+
+                assertPeaks(store.getSpectra("8").get(0), new double[]{300.0}, new double[]{0.3});
+
+            }
+
+            File deepLcFile = writeFile(
+                    folder,
+                    "deeplc.csv",
+                    ",seq,modifications,tr,predicted_tr",
+                    "0,PEPTIDE,,10.0,12.5",
+                    "1,PEPTIDEK,1|Oxidation,11.0,3.25",
+                    "2,PEPTIDE,,13.0,7.75",
+                    "3,PEPTIDE,,14.0,9.0"
+            );
+
+            try (PredictionStore store = PredictionStore.getRetentionTimeStore(deepLcFile)) {
+
+                Assert.assertEquals(Arrays.asList(12.5, 7.75, 9.0), store.getRetentionTimes("PEPTIDE,"));
+                Assert.assertEquals(Arrays.asList(3.25), store.getRetentionTimes("PEPTIDEK,1|Oxidation"));
+                Assert.assertNull(store.getRetentionTimes("PEPTIDEK,"));
+
+            }
+
+        }
+    }
+
+    /**
+     * Tests a number of keys large enough to grow the hash table several times
+     * and to have keys probing past occupied slots.
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * or writing a file
+     */
+    public void testCollisions() throws IOException {
+
+        try (TestFolder testFolder = new TestFolder("prediction_store_test")) {
+
+            File folder = testFolder.getFolder();
+
+            int nKeys = 20000;
+            String[] lines = new String[nKeys + 1];
+            lines[0] = ",seq,modifications,tr,predicted_tr";
+
+            for (int i = 0; i < nKeys; i++) {
+
+                lines[i + 1] = i + ",PEP" + i + ",,0.0," + i;
+
+            }
+
+            File deepLcFile = writeFile(folder, "deeplc.csv", lines);
+
+            try (PredictionStore store = PredictionStore.getRetentionTimeStore(deepLcFile)) {
+
+                for (int i = 0; i < nKeys; i++) {
+
+                    Assert.assertEquals(Arrays.asList((double) i), store.getRetentionTimes("PEP" + i + ","));
+
+                }
+
+                Assert.assertNull(store.getRetentionTimes("PEP" + nKeys + ","));
+
+            }
+
+        }
+    }
+
+    /**
+     * Tests that the store file is reused, converted again when the prediction
+     * file changes, and released when the store is closed.
+     *
+     * @throws IOException exception thrown if an error occurred while reading
+     * or writing a file
+     */
+    public void testReopenAndClose() throws IOException {
+
+        try (TestFolder testFolder = new TestFolder("prediction_store_test")) {
+
+            File folder = testFolder.getFolder();
+
+            File deepLcFile = writeFile(
+                    folder,
+                    "deeplc.csv",
+                    ",seq,modifications,tr,predicted_tr",
+                    "0,PEPTIDE,,10.0,12.5"
+            );
+            File storeFile = PredictionStore.getStoreFile(deepLcFile);
+
+            PredictionStore store = PredictionStore.getRetentionTimeStore(deepLcFile);
+            store.close();
+            long storeModified = storeFile.lastModified();
+
+            store = PredictionStore.getRetentionTimeStore(deepLcFile);
+            Assert.assertEquals(Arrays.asList(12.5), store.getRetentionTimes("PEPTIDE,"));
+            store.close();
+            Assert.assertEquals(storeModified, storeFile.lastModified());
+
+            try {
+
+                store.getRetentionTimes("PEPTIDE,");
+                Assert.fail("A closed store was queried.");
+
+            } catch (IllegalStateException e) {
+
+                // expected
+
+            }
+
+            writeFile(
+                    folder,
+                    "deeplc.csv",
+                    ",seq,modifications,tr,predicted_tr",
+                    "0,PEPTIDE,,10.0,20.25",
+                    "1,PEPTIDES,,10.0,21.5"
+            );
+
+            try (PredictionStore updatedStore = PredictionStore.getRetentionTimeStore(deepLcFile)) {
+
+                Assert.assertEquals(Arrays.asList(20.25), updatedStore.getRetentionTimes("PEPTIDE,"));
+                Assert.assertEquals(Arrays.asList(21.5), updatedStore.getRetentionTimes("PEPTIDES,"));
+
+            }
+
+            Assert.assertTrue(storeFile.delete());
+
+        }
+    }
+
+    /**
+     * Asserts that the peaks of a spectrum are the expected ones.
+     *
+     * @param spectrum the spectrum
+     * @param mz the expected m/z
+     * @param intensity the expected intensities
+     */
+    private static void assertPeaks(
+            Spectrum spectrum,
+            double[] mz,
+            double[] intensity
+    ) {
+
+        Assert.assertArrayEquals(mz, spectrum.mz, TOLERANCE);
+        Assert.assertArrayEquals(intensity, spectrum.intensity, TOLERANCE);
+
+    }
+
+    /**
+     * Writes the given lines to a file.
+     *
+     * @param folder the folder where to write the file
+     * @param name the name of the file
+     * @param lines the lines of the file
+     *
+     * @return the file
+     *
+     * @throws IOException exception thrown if an error occurred while writing
+     * the file
+     */
+    private static File writeFile(
+            File folder,
+            String name,
+            String... lines
+    ) throws IOException {
+
+        File file = new File(folder, name);
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+
+        return file;
+
+    }
+}
@@ -0,0 +1,95 @@
+package eu.isas.peptideshaker.test.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * A temporary folder for the files written by a test, deleted with its
+ * content when closed.
+ *
+ * @author Marc Vaudel
+ */
+public class TestFolder implements AutoCloseable {
+
+    /**
+     * The folder.
+     */
+    private final File folder;
+
+    /**
+     * Constructor, creates a new temporary folder.
+     *
+     * @param prefix the prefix of the name of the folder
+     *
+     * @throws IOException exception thrown if an error occurred while creating
+     * the folder
+     */
+    public TestFolder(
+            String prefix
+    ) throws IOException {
+
+        folder = Files.createTempDirectory(prefix).toFile();
+
+    }
+
+    /**
+     * Returns the folder.
+     *
+     * @return the folder
+     */
+    public File getFolder() {
+
+        return folder;
+
+    }
+
+    /**
+     * Returns a file of the given name in the folder.
+     *
+     * @param name the name of the file
+     *
+     * @return a file of the given name in the folder
+     */
+    public File getFile(
+            String name
+    ) {
+
+        return new File(folder, name);
+
+    }
+
+    /**
+     * Deletes the folder and its content.
+     */
+    @Override
+    public void close() {
+
+        delete(folder);
+
+    }
+
+    /**
+     * Deletes the given file, and its content if it is a folder.
+     *
+     * @param file the file to delete
+     */
+    private static void delete(
+            File file
+    ) {
+
+        File[] files = file.listFiles();
+
+        if (files != null) {
+
+            for (File child : files) {
+
+                delete(child);
+
+            }
+        }
+
+        file.delete();
+
+    }
+}